@@ -0,0 +1,224 @@
+package com.ipiecole.batch.chunk;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.AfterChunk;
+import org.springframework.batch.core.annotation.AfterStep;
+import org.springframework.batch.core.annotation.BeforeChunk;
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.CompletionPolicy;
+import org.springframework.batch.repeat.RepeatContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.repeat.context.RepeatContextSupport;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// Taille des chunks ajustée pendant la step : après chaque chunk validé, le temps moyen par élément (lecture, traitement,
+// écriture et commit) donne la taille qui tiendrait dans la durée visée par transaction
+//  - moyenne glissante (EWMA) du temps et de la mémoire allouée par élément, sur les chunks validés seulement
+//  - taille au plus doublée ou divisée par deux d'un chunk à l'autre, bornée par minSize et maxSize
+//  - limitée par la mémoire allouée pendant un chunk (maxMemoryBytes), si la JVM la mesure par thread ; minSize l'emporte
+// Tailles successives enregistrées dans le contexte d'exécution de la step (adaptiveChunk.*) : la step reprise après
+// un arrêt repart de la dernière taille
+// A déclarer comme politique de fin de chunk et comme listener de la step (cf. ChunkSizing) ; une instance par step,
+// partagée par ses partitions (état propre à chaque exécution de step)
+public class AdaptiveCompletionPolicy implements CompletionPolicy {
+
+    // Clés du contexte d'exécution de la step
+    public static final String SIZE_KEY = "adaptiveChunk.size";
+    public static final String SIZES_KEY = "adaptiveChunk.sizes";
+    public static final String ITEM_MICROS_KEY = "adaptiveChunk.itemMicros";
+    public static final String ITEM_BYTES_KEY = "adaptiveChunk.itemBytes";
+
+    // Historique limité (contexte d'exécution enregistré à chaque commit) : la convergence figure au début
+    private static final int MAX_HISTORY = 100;
+    private static final double SMOOTHING = 0.5;
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final int initialSize;
+    private final int minSize;
+    private final int maxSize;
+    private final long targetNanos;
+    private final long maxMemoryBytes;
+    private final com.sun.management.ThreadMXBean threadMXBean;
+    // Par exécution de step (identité de l'objet : son égalité dépend de son id, attribué par le JobRepository)
+    private final Map<StepExecution, Sizing> sizings = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    public AdaptiveCompletionPolicy(int initialSize, int minSize, int maxSize, Duration targetDuration, long maxMemoryBytes) {
+        if (minSize < 1 || maxSize < minSize) {
+            throw new IllegalArgumentException("Bornes de la taille des chunks invalides : " + minSize + ".." + maxSize);
+        }
+        this.initialSize = Math.max(minSize, Math.min(maxSize, initialSize));
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetNanos = targetDuration.toNanos();
+        this.maxMemoryBytes = maxMemoryBytes;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        this.threadMXBean = bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled()
+                ? (com.sun.management.ThreadMXBean) bean : null;
+    }
+
+    @BeforeStep
+    public void beforeStep(StepExecution stepExecution) {
+        ExecutionContext context = stepExecution.getExecutionContext();
+        // Reprise : dernière taille de l'exécution précédente
+        int size = context.containsKey(SIZE_KEY) ? context.getInt(SIZE_KEY) : initialSize;
+        Sizing sizing = new Sizing(Math.max(minSize, Math.min(maxSize, size)));
+        sizing.history.append(sizing.size);
+        sizings.put(stepExecution, sizing);
+    }
+
+    @BeforeChunk
+    public void beforeChunk(ChunkContext context) {
+        Sizing sizing = sizings.get(context.getStepContext().getStepExecution());
+        if (sizing != null) {
+            sizing.chunkStart = System.nanoTime();
+            sizing.chunkStartBytes = allocatedBytes();
+        }
+    }
+
+    // Appelé après le commit du chunk (jamais après un chunk annulé) : le contexte d'exécution est enregistré
+    // avec le chunk suivant
+    @AfterChunk
+    public void afterChunk(ChunkContext context) {
+        StepExecution stepExecution = context.getStepContext().getStepExecution();
+        Sizing sizing = sizings.get(stepExecution);
+        if (sizing == null || sizing.chunkItems == 0) {
+            return;
+        }
+        double itemNanos = (double) (System.nanoTime() - sizing.chunkStart) / sizing.chunkItems;
+        sizing.itemNanos = sizing.itemNanos == 0 ? itemNanos : SMOOTHING * itemNanos + (1 - SMOOTHING) * sizing.itemNanos;
+        long bytes = allocatedBytes();
+        if (bytes >= 0 && sizing.chunkStartBytes >= 0) {
+            double itemBytes = (double) (bytes - sizing.chunkStartBytes) / sizing.chunkItems;
+            sizing.itemBytes = sizing.itemBytes == 0 ? itemBytes : SMOOTHING * itemBytes + (1 - SMOOTHING) * sizing.itemBytes;
+        }
+        sizing.chunkItems = 0;
+
+        int size = nextSize(sizing.size, sizing.itemNanos, sizing.itemBytes);
+        sizing.record(size);
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+        executionContext.putInt(SIZE_KEY, size);
+        executionContext.putString(SIZES_KEY, sizing.toString());
+        executionContext.putLong(ITEM_MICROS_KEY, Math.round(sizing.itemNanos / 1000));
+        if (sizing.itemBytes > 0) {
+            executionContext.putLong(ITEM_BYTES_KEY, Math.round(sizing.itemBytes));
+        }
+    }
+
+    // Taille du prochain chunk selon le temps et la mémoire allouée par élément
+    int nextSize(int size, double itemNanos, double itemBytes) {
+        double target = itemNanos <= 0 ? maxSize : targetNanos / itemNanos;
+        target = Math.max(size / 2.0, Math.min(size * 2.0, target));
+        if (itemBytes > 0 && maxMemoryBytes > 0) {
+            target = Math.min(target, maxMemoryBytes / itemBytes);
+        }
+        return (int) Math.max(minSize, Math.min(maxSize, Math.floor(target)));
+    }
+
+    @AfterStep
+    public void afterStep(StepExecution stepExecution) {
+        Sizing sizing = sizings.remove(stepExecution);
+        if (sizing != null) {
+            logger.info("Taille des chunks de la step {} (taille x nombre de chunks) : {}", stepExecution.getStepName(), sizing);
+        }
+    }
+
+    private long allocatedBytes() {
+        return threadMXBean == null ? -1 : threadMXBean.getCurrentThreadAllocatedBytes();
+    }
+
+    private Sizing currentSizing() {
+        StepContext stepContext = StepSynchronizationManager.getContext();
+        return stepContext == null ? null : sizings.get(stepContext.getStepExecution());
+    }
+
+    @Override
+    public RepeatContext start(RepeatContext parent) {
+        Sizing sizing = currentSizing();
+        return new ChunkRepeatContext(parent, sizing, sizing == null ? initialSize : sizing.size);
+    }
+
+    @Override
+    public boolean isComplete(RepeatContext context, RepeatStatus result) {
+        return result == null || !result.isContinuable() || isComplete(context);
+    }
+
+    @Override
+    public boolean isComplete(RepeatContext context) {
+        ChunkRepeatContext chunk = (ChunkRepeatContext) context;
+        return chunk.getStartedCount() >= chunk.size;
+    }
+
+    @Override
+    public void update(RepeatContext context) {
+        ChunkRepeatContext chunk = (ChunkRepeatContext) context;
+        chunk.increment();
+        if (chunk.sizing != null) {
+            chunk.sizing.chunkItems = chunk.getStartedCount();
+        }
+    }
+
+    // Taille fixée au début du chunk
+    private static final class ChunkRepeatContext extends RepeatContextSupport {
+        final Sizing sizing;
+        final int size;
+
+        ChunkRepeatContext(RepeatContext parent, Sizing sizing, int size) {
+            super(parent);
+            this.sizing = sizing;
+            this.size = size;
+        }
+    }
+
+    // Etat d'une exécution de step (un seul thread : les chunks d'une step sont traités l'un après l'autre)
+    private static final class Sizing {
+        int size;
+        int chunkItems;
+        long chunkStart;
+        long chunkStartBytes = -1;
+        double itemNanos;
+        double itemBytes;
+        // Tailles successives, ex : "10x1,20x1,40x1,80x12" (taille x nombre de chunks)
+        final StringBuilder history = new StringBuilder();
+        int repeats = 1;
+        int entries = 1;
+
+        Sizing(int size) {
+            this.size = size;
+        }
+
+        void record(int next) {
+            if (next == size) {
+                repeats++;
+                return;
+            }
+            if (entries < MAX_HISTORY) {
+                history.append('x').append(repeats).append(',').append(next);
+                entries++;
+            } else if (entries == MAX_HISTORY) {
+                history.append('x').append(repeats).append(",...");
+                entries++;
+            }
+            size = next;
+            repeats = 1;
+        }
+
+        @Override
+        public String toString() {
+            return entries > MAX_HISTORY ? history.toString() : history + "x" + repeats;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.ipiecole.batch.chunk;
+
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
+import org.springframework.batch.core.step.builder.StepBuilder;
+
+import java.time.Duration;
+
+// Taille des chunks des steps d'import et d'export : fixe (pas de commit configuré) ou adaptative (cf. AdaptiveCompletionPolicy),
+// la taille configurée servant alors de taille de départ
+public class ChunkSizing {
+
+    private final boolean adaptive;
+    private final int minSize;
+    private final int maxSize;
+    private final Duration targetDuration;
+    private final long maxMemoryBytes;
+
+    public ChunkSizing(boolean adaptive, int minSize, int maxSize, Duration targetDuration, long maxMemoryBytes) {
+        this.adaptive = adaptive;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetDuration = targetDuration;
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    // Remplace stepBuilder.chunk(size)
+    public <I, O> SimpleStepBuilder<I, O> chunk(StepBuilder stepBuilder, int size) {
+        if (!adaptive) {
+            return stepBuilder.chunk(size);
+        }
+        AdaptiveCompletionPolicy policy = new AdaptiveCompletionPolicy(size, minSize, maxSize, targetDuration, maxMemoryBytes);
+        SimpleStepBuilder<I, O> builder = stepBuilder.chunk(policy);
+        builder.listener(policy);
+        return builder;
+    }
+}
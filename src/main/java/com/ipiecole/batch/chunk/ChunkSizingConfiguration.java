@@ -0,0 +1,37 @@
+package com.ipiecole.batch.chunk;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+// Taille des chunks partagée par les jobs d'import et d'export (cf. ChunkSizing)
+@Configuration
+public class ChunkSizingConfiguration {
+
+    // Taille des chunks ajustée pendant la step (sinon : pas de commit fixe de chaque step)
+    @Value("${chunk.adaptive:false}")
+    private boolean adaptive;
+
+    // Bornes de la taille des chunks
+    @Value("${chunk.adaptive.minSize:10}")
+    private Integer minSize;
+
+    @Value("${chunk.adaptive.maxSize:5000}")
+    private Integer maxSize;
+
+    // Durée visée pour un chunk (lecture, traitement, écriture et commit)
+    @Value("${chunk.adaptive.targetDuration:500ms}")
+    private Duration targetDuration;
+
+    // Mémoire allouée au plus pendant un chunk
+    @Value("${chunk.adaptive.maxMemory:64MB}")
+    private DataSize maxMemory;
+
+    @Bean
+    public ChunkSizing chunkSizing() {
+        return new ChunkSizing(adaptive, minSize, maxSize, targetDuration, maxMemory.toBytes());
+    }
+}
@@ -0,0 +1,204 @@
+package com.ipiecole.batch.chunk;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.ParseException;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Lecture et traitement en amont des chunks : pendant l'écriture et le commit d'un chunk, les éléments des chunks
+// suivants sont déjà lus et traités
+//  - un thread lit les éléments du reader délégué et les dépose, dans l'ordre, dans une file bornée (queueSize)
+//  - chaque élément lu est traité dans un pool de threads ; le délégué traité doit donc supporter les appels concurrents
+//  - read() rend les éléments dans l'ordre de lecture, et processor() (processor de la step) le résultat de leur traitement
+// Les erreurs de lecture (ParseException) et de traitement sont relancées par read() et processor() sur le thread de la
+// step, à la place de l'élément : skips, listeners et rollbacks restent ceux d'une step séquentielle
+// Traitements conservés jusqu'au commit du chunk (éléments retraités après un rollback), par identité de l'élément lu
+// Reprise : la position du délégué enregistrée est celle qui suit le dernier élément rendu par read(), pas celle de la
+// lecture anticipée (même clés du contexte d'exécution que le délégué seul)
+public class PipelinedItemReader<I, O> extends ItemStreamSupport implements ItemStreamReader<I> {
+
+    private final ItemReader<I> delegate;
+    private final ItemProcessor<I, O> processor;
+    private final int threads;
+    private final int queueSize;
+
+    // Préfixe des noms des threads
+    private String name;
+
+    private BlockingQueue<Entry<I, O>> entries;
+    private ExecutorService executor;
+    private Thread producer;
+    // Fin de la lecture (ou erreur bloquante), rendue à chaque appel suivant
+    private Entry<I, O> end;
+    // Position du délégué après le dernier élément rendu par read()
+    private ExecutionContext position;
+    // Traitements des éléments du chunk en cours (thread de la step seulement)
+    private final Map<I, Future<O>> pending = new IdentityHashMap<>();
+
+    public PipelinedItemReader(ItemReader<I> delegate, ItemProcessor<I, O> processor, int threads, int queueSize) {
+        this.delegate = delegate;
+        this.processor = processor;
+        this.threads = threads;
+        this.queueSize = queueSize;
+        setName("pipelinedItemReader");
+    }
+
+    @Override
+    public void setName(String name) {
+        super.setName(name);
+        this.name = name;
+    }
+
+    // Processor de la step : résultat du traitement fait en amont
+    public ItemProcessor<I, O> processor() {
+        return item -> {
+            Future<O> result = pending.get(item);
+            if (result == null) {
+                return processor.process(item);
+            }
+            try {
+                return result.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw (Error) e.getCause();
+            }
+        };
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        if (delegate instanceof ItemStream) {
+            ((ItemStream) delegate).open(executionContext);
+        }
+        entries = new ArrayBlockingQueue<>(queueSize);
+        end = null;
+        pending.clear();
+        position = position();
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        producer = new Thread(this::produce, name + "-reader");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    private void produce() {
+        try {
+            Entry<I, O> entry;
+            do {
+                entry = readAhead();
+                entries.put(entry);
+            } while (!entry.last);
+        } catch (InterruptedException | RejectedExecutionException e) {
+            // Fermeture de la step
+        }
+    }
+
+    private Entry<I, O> readAhead() {
+        I item;
+        try {
+            item = delegate.read();
+        } catch (ParseException e) {
+            // Ligne rejetée (éventuellement ignorée par la step) : la lecture continue
+            return new Entry<>(null, null, e, position(), false);
+        } catch (Exception e) {
+            return new Entry<>(null, null, e, position(), true);
+        }
+        if (item == null) {
+            return new Entry<>(null, null, null, position(), true);
+        }
+        Future<O> result = executor.submit(() -> processor.process(item));
+        return new Entry<>(item, result, null, position(), false);
+    }
+
+    // Position courante du délégué (thread de lecture, ou avant son démarrage)
+    private ExecutionContext position() {
+        if (!(delegate instanceof ItemStream)) {
+            return null;
+        }
+        ExecutionContext context = new ExecutionContext();
+        ((ItemStream) delegate).update(context);
+        return context;
+    }
+
+    @Override
+    public I read() throws Exception {
+        Entry<I, O> entry = end != null ? end : entries.take();
+        if (entry.last) {
+            end = entry;
+        }
+        position = entry.position;
+        if (entry.failure != null) {
+            throw entry.failure;
+        }
+        if (entry.item != null) {
+            pending.put(entry.item, entry.result);
+        }
+        return entry.item;
+    }
+
+    // Appelé avant le commit de chaque chunk réussi : ses éléments ne seront plus retraités
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        pending.clear();
+        if (position != null) {
+            position.entrySet().forEach(entry -> executionContext.put(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        if (producer != null) {
+            producer.interrupt();
+            executor.shutdownNow();
+            try {
+                // Le délégué n'est fermé qu'une fois sa dernière lecture terminée
+                producer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            producer = null;
+            pending.clear();
+        }
+        if (delegate instanceof ItemStream) {
+            ((ItemStream) delegate).close();
+        }
+    }
+
+    // Elément lu (ou erreur de lecture), son traitement en cours et la position du délégué après sa lecture
+    private static final class Entry<I, O> {
+        final I item;
+        final Future<O> result;
+        final Exception failure;
+        final ExecutionContext position;
+        final boolean last;
+
+        Entry(I item, Future<O> result, Exception failure, ExecutionContext position, boolean last) {
+            this.item = item;
+            this.result = result;
+            this.failure = failure;
+            this.position = position;
+            this.last = last;
+        }
+    }
+}
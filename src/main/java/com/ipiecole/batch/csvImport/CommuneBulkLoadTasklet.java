@@ -0,0 +1,114 @@
+package com.ipiecole.batch.csvImport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.AfterStep;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.support.DatabaseType;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.sql.DataSource;
+
+// Chargement en masse (mode "bulk") du fichier propre produit par la step importFileBulkPrepare :
+//  - le fichier est chargé dans la table de transit COMMUNE_STAGING par l'outil de la base
+//    (CSVREAD sur H2, LOAD DATA LOCAL INFILE sur MySQL, qui demande allowLoadLocalInfile=true dans l'URL JDBC)
+//  - les communes sont ensuite fusionnées dans COMMUNE en une seule requête ensembliste,
+//    dans l'ordre du fichier pour qu'un code Insee en double garde la dernière ligne, comme l'import par chunk
+public class CommuneBulkLoadTasklet implements Tasklet {
+
+    public static final String PREPARE_STEP_NAME = "importFileBulkPrepare";
+
+    private static final String COLUMNS = "code_insee, nom, code_postal, latitude, longitude, import_fingerprint";
+    // Table créée par le script V6 (cf. SchemaMigrator)
+    private static final String CLEAR_STAGING_SQL = "DELETE FROM commune_staging";
+    private static final String H2_LOAD_SQL = "INSERT INTO commune_staging (" + COLUMNS + ") "
+            + "SELECT code_insee, nom, code_postal, CAST(NULLIF(latitude, '') AS DOUBLE), CAST(NULLIF(longitude, '') AS DOUBLE), "
+            + "CAST(NULLIF(import_fingerprint, '') AS BIGINT) "
+            + "FROM CSVREAD(%s, NULL, 'charset=UTF-8 fieldSeparator=;')";
+    // Le nom du fichier ne peut pas être un paramètre de requête (ni pour CSVREAD, ni pour LOAD DATA) ;
+    // CSVREAD accepte les fins de ligne \n comme \r\n, LOAD DATA laisse le \r d'une fin \r\n dans la dernière colonne
+    private static final String MYSQL_LOAD_SQL = "LOAD DATA LOCAL INFILE %s INTO TABLE commune_staging CHARACTER SET utf8mb4 "
+            + "FIELDS TERMINATED BY ';' LINES TERMINATED BY '\\n' IGNORE 1 LINES "
+            + "(code_insee, nom, code_postal, @latitude, @longitude, @import_fingerprint) "
+            + "SET latitude = NULLIF(@latitude, ''), longitude = NULLIF(@longitude, ''), "
+            + "import_fingerprint = NULLIF(TRIM(TRAILING '\\r' FROM @import_fingerprint), '')";
+    // Indicateur des communes à géocoder déduit des coordonnées, comme pour les autres écritures (cf. Commune) ;
+    // origine et précision remises à zéro : les coordonnées viennent du fichier (cf. CommuneJdbcUpsertItemWriter)
+    private static final String MERGE_COLUMNS = COLUMNS + ", coordinates_source, coordinates_precision, geocoding_pending";
+    private static final String SELECT_STAGING_SQL = "SELECT " + COLUMNS + ", NULL, NULL, (latitude IS NULL OR longitude IS NULL) "
+            + "FROM commune_staging ORDER BY id";
+    private static final String H2_MERGE_SQL = "MERGE INTO commune (" + MERGE_COLUMNS + ") KEY (code_insee) " + SELECT_STAGING_SQL;
+    private static final String MYSQL_MERGE_SQL = "INSERT INTO commune (" + MERGE_COLUMNS + ") " + SELECT_STAGING_SQL + " "
+            + "ON DUPLICATE KEY UPDATE nom = VALUES(nom), code_postal = VALUES(code_postal), "
+            + "latitude = VALUES(latitude), longitude = VALUES(longitude), coordinates_source = NULL, coordinates_precision = NULL, "
+            + "geocoding_pending = VALUES(geocoding_pending), "
+            + "import_fingerprint = VALUES(import_fingerprint)";
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Resource bulkFile;
+    private final DatabaseType databaseType;
+    private final String mergeSql;
+
+    public CommuneBulkLoadTasklet(DataSource dataSource, Resource bulkFile) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.bulkFile = bulkFile;
+        try {
+            databaseType = DatabaseType.fromMetaData(dataSource);
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Impossible de déterminer le type de base de données", e);
+        }
+        switch (databaseType) {
+            case H2:
+                mergeSql = H2_MERGE_SQL;
+                break;
+            case MYSQL:
+                mergeSql = MYSQL_MERGE_SQL;
+                break;
+            default:
+                throw new IllegalStateException("Base de données non supportée par l'import en masse : " + databaseType);
+        }
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        String path = bulkFile.getFile().getAbsolutePath();
+        jdbcTemplate.update(CLEAR_STAGING_SQL);
+        int loaded = databaseType == DatabaseType.MYSQL
+                ? jdbcTemplate.update(String.format(MYSQL_LOAD_SQL, "'" + path.replace("\\", "\\\\").replace("'", "\\'") + "'"))
+                : jdbcTemplate.update(String.format(H2_LOAD_SQL, "'" + path.replace("'", "''") + "'"));
+        logger.info(loaded + " communes chargées dans COMMUNE_STAGING depuis " + path);
+        int merged = jdbcTemplate.update(mergeSql);
+        logger.info(merged + " communes fusionnées dans COMMUNE");
+        jdbcTemplate.update(CLEAR_STAGING_SQL);
+        contribution.incrementWriteCount(loaded);
+        return RepeatStatus.FINISHED;
+    }
+
+    // La step reprend le statut de la préparation du fichier (COMPLETED_WITH_MISSING_COORDINATES s'il manque des coordonnées)
+    // pour que le flot du job enchaîne sur la récupération des coordonnées comme en mode séquentiel
+    @AfterStep
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        logger.info(stepExecution.getSummary());
+        int nbCommunesWithoutCoordinates = 0;
+        for (StepExecution previous : stepExecution.getJobExecution().getStepExecutions()) {
+            if (PREPARE_STEP_NAME.equals(previous.getStepName())) {
+                nbCommunesWithoutCoordinates = previous.getExecutionContext()
+                        .getInt(CommuneCSVItemProcessor.MISSING_COORDINATES_KEY, 0);
+            }
+        }
+        stepExecution.getExecutionContext().putInt(CommuneCSVItemProcessor.MISSING_COORDINATES_KEY, nbCommunesWithoutCoordinates);
+        if (nbCommunesWithoutCoordinates > 0 && ExitStatus.COMPLETED.getExitCode().equals(stepExecution.getExitStatus().getExitCode())) {
+            return new ExitStatus(CommuneCSVItemProcessor.COMPLETED_WITH_MISSING_COORDINATES);
+        }
+        return stepExecution.getExitStatus();
+    }
+}
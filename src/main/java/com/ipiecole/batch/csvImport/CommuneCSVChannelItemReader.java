@@ -0,0 +1,305 @@
+package com.ipiecole.batch.csvImport;
+
+import com.ipiecole.batch.dto.CommuneCSV;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.batch.item.file.transform.FieldSet;
+import org.springframework.batch.item.file.transform.IncorrectTokenCountException;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+// Lecteur dédié au fichier laposte_hexasmal.csv, alternative au FlatFileItemReader
+// Le fichier est lu par blocs dans un grand buffer via un canal NIO, les champs sont découpés directement
+// sur les octets et seules les colonnes utiles (code Insee, nom, code postal, coordonnées) sont converties en String
+// Les règles du FlatFileItemReader configuré dans CommunesImportBatch sont reproduites :
+// valeurs trimées, lignes commençant par # ignorées, FlatFileParseException si le nombre de colonnes est incorrect
+// Reprise : la position (en octets) qui suit le dernier enregistrement lu est conservée dans le contexte d'exécution
+// à chaque commit ; une reprise se positionne directement à cet octet au lieu de relire et d'ignorer les lignes déjà traitées
+public class CommuneCSVChannelItemReader extends AbstractItemCountingItemStreamItemReader<CommuneCSV> {
+
+    private static final int NB_COLUMNS = 6;
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    private static final String BYTE_OFFSET = "byte.offset";
+    private static final String LINE_NUMBER = "line.number";
+
+    private Resource resource;
+    private Charset encoding = StandardCharsets.UTF_8;
+    private int linesToSkip = 0;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private long startOffset = 0;
+    private long endOffset = -1;
+
+    private ReadableByteChannel channel;
+    private byte[] buffer;
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private long remainingBytes;
+    // Position dans le fichier du premier octet du buffer
+    private long bufferOffset;
+    // Position et numéro de ligne de reprise lus dans le contexte d'exécution (-1 : lecture depuis startOffset)
+    private long restartOffset = -1;
+    private int restartLineNumber;
+    private int lineStart;
+    private int lineEnd;
+    private int lineNumber;
+    private final int[] separators = new int[NB_COLUMNS + 1];
+
+    // Utilisé uniquement pour les lignes contenant des guillemets (cas non rencontré dans le fichier La Poste)
+    private final DelimitedLineTokenizer quotedLineTokenizer = new DelimitedLineTokenizer(";");
+
+    public CommuneCSVChannelItemReader() {
+        setName(ClassUtils.getShortName(CommuneCSVChannelItemReader.class));
+        quotedLineTokenizer.setNames("codeInsee", "nom", "codePostal", "ligne5", "libelleAcheminement", "coordonneesGps");
+    }
+
+    public void setResource(Resource resource) {
+        this.resource = resource;
+    }
+
+    public void setEncoding(Charset encoding) {
+        this.encoding = encoding;
+    }
+
+    public void setLinesToSkip(int linesToSkip) {
+        this.linesToSkip = linesToSkip;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    // Plage d'octets [startOffset, endOffset[ à lire (endOffset négatif = jusqu'à la fin du fichier)
+    public void setStartOffset(long startOffset) {
+        this.startOffset = startOffset;
+    }
+
+    public void setEndOffset(long endOffset) {
+        this.endOffset = endOffset;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        restartOffset = -1;
+        if (isSaveState() && executionContext.containsKey(getExecutionContextKey(BYTE_OFFSET))) {
+            restartOffset = executionContext.getLong(getExecutionContextKey(BYTE_OFFSET));
+            restartLineNumber = executionContext.getInt(getExecutionContextKey(LINE_NUMBER), 0);
+        }
+        super.open(executionContext);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+        if (isSaveState() && buffer != null) {
+            executionContext.putLong(getExecutionContextKey(BYTE_OFFSET), bufferOffset + pos);
+            executionContext.putInt(getExecutionContextKey(LINE_NUMBER), lineNumber);
+        }
+    }
+
+    // Reprise : le canal est déjà positionné après le dernier enregistrement lu (cf. doOpen)
+    @Override
+    protected void jumpToItem(int itemIndex) throws Exception {
+        if (restartOffset < 0) {
+            super.jumpToItem(itemIndex);
+        }
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        Assert.notNull(resource, "La ressource à lire doit être renseignée");
+        if (!resource.exists()) {
+            throw new ItemStreamException("Le fichier " + resource.getDescription() + " n'existe pas");
+        }
+        long offset = restartOffset < 0 ? startOffset : restartOffset;
+        if (resource.isFile()) {
+            FileChannel fileChannel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ);
+            fileChannel.position(offset);
+            channel = fileChannel;
+        } else {
+            // Ressource packagée dans le jar : lecture séquentielle du flux
+            InputStream inputStream = resource.getInputStream();
+            FileRangeResource.skipFully(inputStream, offset);
+            channel = Channels.newChannel(inputStream);
+        }
+        remainingBytes = endOffset < 0 ? Long.MAX_VALUE : endOffset - offset;
+        buffer = new byte[bufferSize];
+        bufferOffset = offset;
+        pos = 0;
+        limit = 0;
+        eof = false;
+        if (restartOffset >= 0) {
+            // Entête déjà sautée avant l'arrêt
+            lineNumber = restartLineNumber;
+            return;
+        }
+        lineNumber = 0;
+        for (int i = 0; i < linesToSkip && nextLine(); i++) {
+            lineNumber++;
+        }
+    }
+
+    @Override
+    protected CommuneCSV doRead() throws Exception {
+        while (nextLine()) {
+            lineNumber++;
+            if (lineEnd > lineStart && buffer[lineStart] == '#') {
+                continue;
+            }
+            return mapLine();
+        }
+        return null;
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        buffer = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // Positionne lineStart/lineEnd sur la ligne suivante (sans le séparateur de fin de ligne)
+    private boolean nextLine() throws IOException {
+        int from = pos;
+        while (true) {
+            for (int i = from; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    lineStart = pos;
+                    lineEnd = i > pos && buffer[i - 1] == '\r' ? i - 1 : i;
+                    pos = i + 1;
+                    return true;
+                }
+            }
+            if (eof) {
+                if (pos < limit) {
+                    lineStart = pos;
+                    lineEnd = buffer[limit - 1] == '\r' ? limit - 1 : limit;
+                    pos = limit;
+                    return true;
+                }
+                return false;
+            }
+            from = limit - pos;
+            fill();
+        }
+    }
+
+    // Décale la ligne en cours au début du buffer (agrandi si nécessaire) puis le complète depuis le canal
+    private void fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            bufferOffset += pos;
+            pos = 0;
+        }
+        if (limit == buffer.length) {
+            byte[] larger = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, larger, 0, limit);
+            buffer = larger;
+        }
+        int toRead = (int) Math.min(buffer.length - limit, remainingBytes);
+        int read = toRead == 0 ? -1 : channel.read(ByteBuffer.wrap(buffer, limit, toRead));
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+            remainingBytes -= read;
+        }
+    }
+
+    private CommuneCSV mapLine() {
+        int nbSeparators = 0;
+        separators[0] = lineStart - 1;
+        for (int i = lineStart; i < lineEnd; i++) {
+            byte b = buffer[i];
+            if (b == ';') {
+                if (++nbSeparators > NB_COLUMNS - 1) {
+                    throw incorrectTokenCount(nbSeparators + 1 + countSeparators(i + 1));
+                }
+                separators[nbSeparators] = i;
+            } else if (b == '"') {
+                return mapQuotedLine();
+            }
+        }
+        if (nbSeparators != NB_COLUMNS - 1) {
+            throw incorrectTokenCount(lineEnd == lineStart ? 0 : nbSeparators + 1);
+        }
+        separators[NB_COLUMNS] = lineEnd;
+        CommuneCSV communeCSV = new CommuneCSV();
+        communeCSV.setCodeInsee(column(0));
+        communeCSV.setNom(column(1));
+        communeCSV.setCodePostal(column(2));
+        communeCSV.setCoordonneesGps(column(5));
+        return communeCSV;
+    }
+
+    // Valeur trimée de la colonne, comme le fait DefaultFieldSet
+    private String column(int index) {
+        int start = separators[index] + 1;
+        int end = separators[index + 1];
+        while (start < end && (buffer[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (buffer[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        return new String(buffer, start, end - start, encoding);
+    }
+
+    private int countSeparators(int from) {
+        int count = 0;
+        for (int i = from; i < lineEnd; i++) {
+            if (buffer[i] == ';') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private CommuneCSV mapQuotedLine() {
+        String line = currentLine();
+        try {
+            FieldSet fieldSet = quotedLineTokenizer.tokenize(line);
+            CommuneCSV communeCSV = new CommuneCSV();
+            communeCSV.setCodeInsee(fieldSet.readString(0));
+            communeCSV.setNom(fieldSet.readString(1));
+            communeCSV.setCodePostal(fieldSet.readString(2));
+            communeCSV.setCoordonneesGps(fieldSet.readString(5));
+            return communeCSV;
+        } catch (IncorrectTokenCountException e) {
+            throw parseException(line, e);
+        }
+    }
+
+    private FlatFileParseException incorrectTokenCount(int actualCount) {
+        String line = currentLine();
+        return parseException(line, new IncorrectTokenCountException(
+                "Incorrect number of tokens found in record: expected " + NB_COLUMNS + " actual " + actualCount,
+                NB_COLUMNS, actualCount, line));
+    }
+
+    private FlatFileParseException parseException(String line, Exception cause) {
+        return new FlatFileParseException("Parsing error at line: " + lineNumber + " in resource=["
+                + resource.getDescription() + "], input=[" + line + "]", cause, line, lineNumber);
+    }
+
+    private String currentLine() {
+        return new String(buffer, lineStart, lineEnd - lineStart, encoding);
+    }
+}
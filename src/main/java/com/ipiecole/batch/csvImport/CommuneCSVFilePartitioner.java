@@ -0,0 +1,163 @@
+package com.ipiecole.batch.csvImport;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.core.io.Resource;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Découpe le fichier CSV en plages d'octets alignées sur les fins de ligne
+// Chaque plage est lue par une step "worker" indépendante (cf. CommunesImportBatch.stepImportCSVPartitioned)
+// Le fichier contient plusieurs lignes par code Insee, pas toujours consécutives : écrites par des partitions différentes,
+// elles provoqueraient des insertions concurrentes de la même clé (rejetées puis ignorées par la politique de skip)
+// et la ligne conservée dépendrait de l'ordre d'exécution des threads. Chaque code Insee est donc attribué à la partition
+// qui contient sa dernière ligne (celle que conserve l'import séquentiel) ; les autres partitions reçoivent la liste
+// des codes qu'elles doivent filtrer (IGNORED_CODES_INSEE_KEY, cf. CommuneCSVItemProcessor.setIgnoredCodesInsee)
+public class CommuneCSVFilePartitioner implements Partitioner {
+
+    public static final String START_OFFSET_KEY = "startOffset";
+    public static final String END_OFFSET_KEY = "endOffset";
+    // Codes Insee présents dans la plage mais attribués à une partition suivante, séparés par des virgules
+    public static final String IGNORED_CODES_INSEE_KEY = "ignoredCodesInsee";
+
+    private final Resource resource;
+
+    public CommuneCSVFilePartitioner(Resource resource) {
+        this.resource = resource;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+        try {
+            long length = resource.contentLength();
+            // La première ligne (entête) n'est lue par aucune partition
+            long headerEnd = nextLineStart(0);
+            long bodyLength = length - headerEnd;
+            long start = headerEnd;
+            List<Long> ends = new ArrayList<>();
+            for (int i = 1; i <= gridSize && start < length; i++) {
+                long end = i == gridSize ? length : nextLineStart(headerEnd + bodyLength * i / gridSize);
+                end = Math.max(end, start);
+                if (end > start) {
+                    ExecutionContext context = new ExecutionContext();
+                    context.putLong(START_OFFSET_KEY, start);
+                    context.putLong(END_OFFSET_KEY, end);
+                    partitions.put("partition" + partitions.size(), context);
+                    ends.add(end);
+                }
+                start = end;
+            }
+            List<Set<String>> ignoredCodesInsee = ignoredCodesInsee(headerEnd, ends);
+            int index = 0;
+            for (ExecutionContext context : partitions.values()) {
+                context.putString(IGNORED_CODES_INSEE_KEY, String.join(",", ignoredCodesInsee.get(index++)));
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Impossible de partitionner " + resource.getDescription(), e);
+        }
+        return partitions;
+    }
+
+    // Relit le corps du fichier une fois : codes Insee (premier champ de chaque ligne) de chaque plage,
+    // puis, pour chaque plage, ceux dont la dernière ligne se trouve dans une plage suivante
+    private List<Set<String>> ignoredCodesInsee(long headerEnd, List<Long> ends) throws IOException {
+        List<Set<String>> codesInsee = new ArrayList<>();
+        Map<String, Integer> lastPartition = new HashMap<>();
+        for (int i = 0; i < ends.size(); i++) {
+            codesInsee.add(new LinkedHashSet<>());
+        }
+        try (InputStream inputStream = new BufferedInputStream(resource.getInputStream())) {
+            FileRangeResource.skipFully(inputStream, headerEnd);
+            long position = headerEnd;
+            int partition = 0;
+            byte[] code = new byte[16];
+            int codeLength = 0;
+            // Vrai tant que le premier champ de la ligne n'est pas terminé
+            boolean inCode = true;
+            int b;
+            while ((b = inputStream.read()) >= 0) {
+                position++;
+                if (b == '\n') {
+                    addCodeInsee(code, codeLength, partition, codesInsee, lastPartition);
+                    codeLength = 0;
+                    inCode = true;
+                    while (partition < ends.size() - 1 && position >= ends.get(partition)) {
+                        partition++;
+                    }
+                } else if (inCode) {
+                    if (b == ';' || b == '\r') {
+                        inCode = false;
+                    } else if (codeLength < code.length) {
+                        code[codeLength++] = (byte) b;
+                    }
+                }
+            }
+            // Dernière ligne sans fin de ligne
+            addCodeInsee(code, codeLength, partition, codesInsee, lastPartition);
+        }
+        List<Set<String>> ignoredCodesInsee = new ArrayList<>();
+        for (int i = 0; i < ends.size(); i++) {
+            Set<String> ignored = new TreeSet<>();
+            for (String codeInsee : codesInsee.get(i)) {
+                if (lastPartition.get(codeInsee) != i) {
+                    ignored.add(codeInsee);
+                }
+            }
+            ignoredCodesInsee.add(ignored);
+        }
+        return ignoredCodesInsee;
+    }
+
+    private static void addCodeInsee(byte[] code, int codeLength, int partition,
+                                     List<Set<String>> codesInsee, Map<String, Integer> lastPartition) {
+        String codeInsee = new String(code, 0, codeLength, StandardCharsets.ISO_8859_1).trim();
+        if (!codeInsee.isEmpty()) {
+            codesInsee.get(partition).add(codeInsee);
+            lastPartition.put(codeInsee, partition);
+        }
+    }
+
+    // Liste IGNORED_CODES_INSEE_KEY du contexte d'une partition (vide si absente)
+    public static Set<String> ignoredCodesInsee(String value) {
+        if (value == null || value.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(Arrays.asList(value.split(",")));
+    }
+
+    // Position du premier octet de la ligne qui suit l'offset donné (ou la taille du fichier)
+    private long nextLineStart(long offset) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(resource.getInputStream())) {
+            long position = offset;
+            if (offset > 0) {
+                // Si l'octet précédent est déjà une fin de ligne, l'offset est aligné
+                FileRangeResource.skipFully(inputStream, offset - 1);
+                position = offset - 1;
+            }
+            int b;
+            while ((b = inputStream.read()) >= 0) {
+                position++;
+                if (b == '\n') {
+                    return position;
+                }
+            }
+            return position;
+        }
+    }
+}
@@ -1,38 +1,72 @@
 package com.ipiecole.batch.csvImport;
 
+import com.ipiecole.batch.diagnostics.ItemDiagnostics;
 import com.ipiecole.batch.dto.CommuneCSV;
 import com.ipiecole.batch.model.Commune;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.batch.core.ItemReadListener;
-import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.AfterRead;
+import org.springframework.batch.core.annotation.AfterWrite;
+import org.springframework.batch.core.annotation.BeforeChunk;
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.core.annotation.BeforeWrite;
+import org.springframework.batch.core.annotation.OnReadError;
+import org.springframework.batch.core.annotation.OnWriteError;
+import org.springframework.batch.core.scope.context.ChunkContext;
 
 import java.util.List;
 
-public class CommuneCSVItemListener implements ItemReadListener<CommuneCSV>, ItemWriteListener<Commune> {
+// Diagnostics des lectures et écritures de l'import, échantillonnés selon le réglage de la step (cf. ItemDiagnostics)
+// Les écritures sont résumées (nombre de communes, premier et dernier code Insee du chunk), les erreurs toujours journalisées
+public class CommuneCSVItemListener {
     Logger logger = LoggerFactory.getLogger(this.getClass());
-    @Override
-    public void beforeRead() {
-        logger.info("Before Read CSV Import");
+
+    private final ItemDiagnostics diagnostics;
+    private volatile ItemDiagnostics.Probe readProbe = ItemDiagnostics.Probe.OFF;
+    private volatile ItemDiagnostics.Probe writeProbe = ItemDiagnostics.Probe.OFF;
+
+    public CommuneCSVItemListener(ItemDiagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    // En mode partitionné, les partitions d'une même step partagent le même réglage
+    @BeforeStep
+    public void beforeStep(StepExecution stepExecution) {
+        readProbe = diagnostics.probe(stepExecution.getStepName());
+        writeProbe = diagnostics.probe(stepExecution.getStepName());
+    }
+    @BeforeChunk
+    public void beforeChunk(ChunkContext context) {
+        readProbe.startChunk();
+        writeProbe.startChunk();
     }
-    @Override
+    @AfterRead
     public void afterRead(CommuneCSV item) {
-        logger.info("After Read CSV Import => " + item.toString());
+        if (readProbe.sample()) {
+            logger.info("After Read CSV Import => {}", item);
+        }
     }
-    @Override
+    @OnReadError
     public void onReadError(Exception ex) {
-        logger.error("On Read Error CSV Import => " + ex.getMessage());
+        logger.error("On Read Error CSV Import => {}", ex.getMessage());
     }
-    @Override
+    @BeforeWrite
     public void beforeWrite(List<? extends Commune> items) {
-        logger.info("Before Write CSV Import => " + items.toString());
+        if (writeProbe.sample()) {
+            logger.info("Before Write CSV Import => {} communes ({} .. {})", items.size(),
+                    items.isEmpty() ? null : items.get(0).getCodeInsee(),
+                    items.isEmpty() ? null : items.get(items.size() - 1).getCodeInsee());
+        }
     }
-    @Override
+    @AfterWrite
     public void afterWrite(List<? extends Commune> items) {
-        logger.info("After Write CSV Import => " + items.toString());
+        if (writeProbe.sample()) {
+            logger.info("After Write CSV Import => {} communes", items.size());
+        }
     }
-    @Override
+    @OnWriteError
     public void onWriteError(Exception exception, List<? extends Commune> items) {
-        logger.error("On Write Error CSV Import => " + exception.getMessage() + " " + items.toString());
+        logger.error("On Write Error CSV Import => {} {}", exception.getMessage(), items);
     }
-}
\ No newline at end of file
+}
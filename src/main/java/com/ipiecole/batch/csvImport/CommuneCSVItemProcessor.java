@@ -1,96 +1,136 @@
 package com.ipiecole.batch.csvImport;
 
+import com.ipiecole.batch.diagnostics.ItemDiagnostics;
 import com.ipiecole.batch.dto.CommuneCSV;
 import com.ipiecole.batch.exception.CommuneCSVException;
 import com.ipiecole.batch.model.Commune;
-import org.apache.commons.text.WordUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.annotation.AfterProcess;
 import org.springframework.batch.core.annotation.AfterStep;
-import org.springframework.batch.core.annotation.BeforeProcess;
+import org.springframework.batch.core.annotation.BeforeChunk;
+import org.springframework.batch.core.annotation.BeforeStep;
 import org.springframework.batch.core.annotation.OnProcessError;
+import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.item.ItemProcessor;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
 
 //  C'est une interface prenant deux types en paramètres,
 //  le premier correspond à la classe d'entrée (la même que l'ItemReader), => ici correspondant au format "Commune CSV"
 //  le second à la classe de sortie (la même que l'ItemWriter) => ici correspondant au format "Commune"
 public class CommuneCSVItemProcessor implements ItemProcessor<CommuneCSV, Commune> {
 
-    private Integer nbCommunesWithoutCoordinates = 0;
+    public static final String COMPLETED_WITH_MISSING_COORDINATES = "COMPLETED_WITH_MISSING_COORDINATES";
+
+    // Clé du contexte d'exécution de la step contenant le nombre de communes sans coordonnées
+    // (utilisée pour regrouper les compteurs des partitions, cf. CommuneCSVPartitionAggregator)
+    public static final String MISSING_COORDINATES_KEY = "nbCommunesWithoutCoordinates";
+
+    // Compteur partagé par les threads de traitement en mode "pipelined" (cf. PipelinedItemReader)
+    private final AtomicInteger nbCommunesWithoutCoordinates = new AtomicInteger();
+
+    // Règles de contrôle et de mise en forme, construites une seule fois pour la step
+    private final CommuneCSVRules rules = new CommuneCSVRules();
+
+    // Diagnostics des communes traitées (échantillonnés, cf. ItemDiagnostics), désactivés sans diagnostics
+    private ItemDiagnostics diagnostics;
+    private ItemDiagnostics.Probe processProbe = ItemDiagnostics.Probe.OFF;
+
+    // Mode "partitioned" : codes Insee attribués à une autre partition (cf. CommuneCSVFilePartitioner)
+    private Set<String> ignoredCodesInsee = Collections.emptySet();
+
+    public void setDiagnostics(ItemDiagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    public void setIgnoredCodesInsee(Set<String> ignoredCodesInsee) {
+        this.ignoredCodesInsee = ignoredCodesInsee;
+    }
 
     @Override
     public Commune process(CommuneCSV item) throws Exception {
         Commune commune = new Commune();
-        validateCommuneCSV(item);
+        double[] coordonnees = validateCommuneCSV(item);
+        //Filtrée après le contrôle : rejets et communes sans coordonnées comptés comme en import séquentiel
+        if(item.getCodeInsee() != null && ignoredCodesInsee.contains(item.getCodeInsee())){
+            return null;
+        }
         commune.setCodeInsee(item.getCodeInsee());
         commune.setCodePostal(item.getCodePostal());
-        //Majuscule première lettre de chaque terme
-        String nomCommune = WordUtils.capitalizeFully(item.getNom());
-        //Proprification du nom
-        nomCommune = nomCommune.replaceAll("^L ", "L'");
-        nomCommune = nomCommune.replaceAll(" L ", " L'");
-        nomCommune = nomCommune.replaceAll("^D ", "D'");
-        nomCommune = nomCommune.replaceAll(" D ", " D'");
-        nomCommune = nomCommune.replaceAll("^St ", "Saint ");
-        nomCommune = nomCommune.replaceAll(" St ", " Saint ");
-        nomCommune = nomCommune.replaceAll("^Ste ", "Sainte ");
-        nomCommune = nomCommune.replaceAll(" Sainte ", " Sainte ");
-        commune.setNom(nomCommune);
-        //Latitude/Longitude
-        String[] coordonnees = item.getCoordonneesGps().split(",");
-        if(coordonnees.length == 2){
-            commune.setLatitude(Double.valueOf(coordonnees[0]));
-            commune.setLongitude(Double.valueOf(coordonnees[1]));
-        }
+        //Majuscule première lettre de chaque terme et proprification du nom (L', D', Saint, Sainte)
+        commune.setNom(rules.normalizeNom(item.getNom()));
+        //Latitude/Longitude (lues pendant le contrôle des coordonnées)
+        commune.setLatitude(coordonnees[0]);
+        commune.setLongitude(coordonnees[1]);
         return commune;
     }
 
-    private void validateCommuneCSV(CommuneCSV item) throws CommuneCSVException {
+    private double[] validateCommuneCSV(CommuneCSV item) throws CommuneCSVException {
         //Contrôler Code INSEE 5 chiffres
-        if(item.getCodeInsee() != null && !item.getCodeInsee().matches("^[0-9AB]{5}$")){
+        if(item.getCodeInsee() != null && !rules.isCodeInsee(item.getCodeInsee())){
             throw new CommuneCSVException("Le code Insee ne contient pas 5 chiffres");
         }
         //Contrôler Code postal 5 chiffres
-        if(item.getCodePostal() != null && !item.getCodePostal().matches("^[0-9]{5}$")){
+        if(item.getCodePostal() != null && !rules.isCodePostal(item.getCodePostal())){
             throw new CommuneCSVException("Le code Postal ne contient pas 5 chiffres");
         }
         //Contrôler nom de la communes lettres en majuscules, espaces, tirets, et apostrophes
-        if(item.getNom() != null && !item.getNom().matches("^[A-Z-' ]+$")){
+        if(item.getNom() != null && !rules.isNom(item.getNom())){
             throw new CommuneCSVException("Le nom de la commune n'est pas composé uniquement de lettres, espaces et tirets");
         }
         //Contrôler les coordonnées GPS
-        if(item.getCoordonneesGps() != null && !item.getCoordonneesGps().matches("^[-+]?([1-8]?\\d(\\.\\d+)?|90(\\.0+)?),\\s*[-+]?(180(\\.0+)?|((1[0-7]\\d)|([1-9]?\\d))(\\.\\d+)?)$")){
-            //+1 sur le nombre de communes où il manque des coordonnées
-            nbCommunesWithoutCoordinates++;
-            throw new CommuneCSVException("Les coordonnées GPS sont incorrectes ! " + item.getCoordonneesGps());
+        double[] coordonnees = null;
+        if(item.getCoordonneesGps() != null){
+            coordonnees = rules.parseCoordonneesGps(item.getCoordonneesGps());
+            if(coordonnees == null){
+                //+1 sur le nombre de communes où il manque des coordonnées
+                nbCommunesWithoutCoordinates.incrementAndGet();
+                throw new CommuneCSVException("Les coordonnées GPS sont incorrectes ! " + item.getCoordonneesGps());
+            }
         }
+        return coordonnees;
     }
 
     Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    @BeforeStep
+    public void beforeStep(StepExecution stepExecution) {
+        nbCommunesWithoutCoordinates.set(0);
+        if (diagnostics != null) {
+            processProbe = diagnostics.probe(stepExecution.getStepName());
+        }
+    }
+
     @AfterStep
     public ExitStatus afterStep(StepExecution stepExecution) {
         logger.info("After Step CSV Import");
         logger.info(stepExecution.getSummary());
+        int nbCommunesWithoutCoordinates = this.nbCommunesWithoutCoordinates.get();
+        stepExecution.getExecutionContext().putInt(MISSING_COORDINATES_KEY, nbCommunesWithoutCoordinates);
         if(nbCommunesWithoutCoordinates > 0){
-            return new ExitStatus("COMPLETED_WITH_MISSING_COORDINATES");
+            return new ExitStatus(COMPLETED_WITH_MISSING_COORDINATES);
         }
         return ExitStatus.COMPLETED;
     }
-    @BeforeProcess
-    public void beforeProcess(CommuneCSV input){
-        logger.info("Before Process => " + input.toString());
+    @BeforeChunk
+    public void beforeChunk(ChunkContext context) {
+        processProbe.startChunk();
     }
+    // L'entrée et la sortie du traitement sont journalisées ensemble, pour les seules communes échantillonnées
     @AfterProcess
     public void afterProcess(CommuneCSV input, Commune output){
-        logger.info("After Process => " + input.toString() + " => " + output.toString());
+        if (processProbe.sample()) {
+            logger.info("After Process => {} => {}", input, output);
+        }
     }
     @OnProcessError
     public void onProcessError(CommuneCSV input, Exception ex){
-        logger.error("Error Process => " + input.toString() + " => " + ex.getMessage());
+        logger.error("Error Process => {} => {}", input, ex.getMessage());
     }
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+package com.ipiecole.batch.csvImport;
+
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.partition.support.DefaultStepExecutionAggregator;
+import org.springframework.batch.core.partition.support.StepExecutionAggregator;
+
+import java.util.Collection;
+import java.util.Comparator;
+
+// Regroupe les compteurs des partitions dans la step parente
+// Les compteurs standards (lectures, écritures, skips...) sont sommés par le DefaultStepExecutionAggregator,
+// le nombre de communes sans coordonnées est sommé ici afin que la step parente renvoie COMPLETED_WITH_MISSING_COORDINATES
+// Le compte rendu du dédoublonnage, commun aux partitions, est repris de la dernière partition terminée (date de fin la plus récente)
+public class CommuneCSVPartitionAggregator implements StepExecutionAggregator {
+
+    private static final String[] DEDUP_KEYS = {CommuneDedupItemProcessor.ROWS_KEY, CommuneDedupItemProcessor.COMMUNES_KEY,
+            CommuneDedupItemProcessor.CODES_POSTAUX_KEY, CommuneDedupItemProcessor.REDUNDANT_WRITES_AVOIDED_KEY};
+
+    private final StepExecutionAggregator delegate = new DefaultStepExecutionAggregator();
+
+    @Override
+    public void aggregate(StepExecution result, Collection<StepExecution> executions) {
+        delegate.aggregate(result, executions);
+        int nbCommunesWithoutCoordinates = 0;
+        for (StepExecution execution : executions) {
+            nbCommunesWithoutCoordinates += execution.getExecutionContext()
+                    .getInt(CommuneCSVItemProcessor.MISSING_COORDINATES_KEY, 0);
+        }
+        result.getExecutionContext().putInt(CommuneCSVItemProcessor.MISSING_COORDINATES_KEY, nbCommunesWithoutCoordinates);
+        for (String key : DEDUP_KEYS) {
+            executions.stream().filter(execution -> execution.getExecutionContext().containsKey(key))
+                    .max(Comparator.comparing(StepExecution::getEndTime, Comparator.nullsFirst(Comparator.naturalOrder())))
+                    .ifPresent(execution -> result.getExecutionContext().putInt(key, execution.getExecutionContext().getInt(key)));
+        }
+        if (nbCommunesWithoutCoordinates > 0 && ExitStatus.COMPLETED.getExitCode().equals(result.getExitStatus().getExitCode())) {
+            result.setExitStatus(new ExitStatus(CommuneCSVItemProcessor.COMPLETED_WITH_MISSING_COORDINATES));
+        }
+    }
+}
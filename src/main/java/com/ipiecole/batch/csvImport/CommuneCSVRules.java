@@ -0,0 +1,277 @@
+package com.ipiecole.batch.csvImport;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Règles de contrôle et de mise en forme d'une ligne du fichier CSV, sans expression régulière
+// Chaque contrôle est fait en un seul parcours des caractères, et les coordonnées GPS sont lues pendant leur contrôle
+// Les règles reproduisent exactement les expressions régulières et les remplacements utilisés jusqu'ici :
+//  - code Insee : ^[0-9AB]{5}$ (codes 2A/2B de la Corse)
+//  - code postal : ^[0-9]{5}$
+//  - nom : ^[A-Z-' ]+$
+//  - coordonnées : ^[-+]?([1-8]?\d(\.\d+)?|90(\.0+)?),\s*[-+]?(180(\.0+)?|((1[0-7]\d)|([1-9]?\d))(\.\d+)?)$
+//  - nom : WordUtils.capitalizeFully puis "^L " / " L " -> L', "^D " / " D " -> D', "^St " / " St " -> Saint, "^Ste " -> Sainte
+public class CommuneCSVRules {
+
+    // Nombre maximum de noms mis en forme conservés (les noms de communes se répètent d'une ligne à l'autre)
+    private static final int MAX_CACHED_NOMS = 65536;
+
+    // Puissances de 10 représentables exactement en double
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final boolean[] codeInseeChars = new boolean[128];
+    private final boolean[] nomChars = new boolean[128];
+    private final Map<String, String> noms = new ConcurrentHashMap<>();
+
+    public CommuneCSVRules() {
+        for (char c = '0'; c <= '9'; c++) {
+            codeInseeChars[c] = true;
+        }
+        codeInseeChars['A'] = true;
+        codeInseeChars['B'] = true;
+        for (char c = 'A'; c <= 'Z'; c++) {
+            nomChars[c] = true;
+        }
+        nomChars['-'] = true;
+        nomChars['\''] = true;
+        nomChars[' '] = true;
+    }
+
+    public boolean isCodeInsee(String codeInsee) {
+        if (codeInsee.length() != 5) {
+            return false;
+        }
+        for (int i = 0; i < 5; i++) {
+            char c = codeInsee.charAt(i);
+            if (c >= 128 || !codeInseeChars[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isCodePostal(String codePostal) {
+        if (codePostal.length() != 5) {
+            return false;
+        }
+        for (int i = 0; i < 5; i++) {
+            if (!isDigit(codePostal.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isNom(String nom) {
+        int length = nom.length();
+        if (length == 0) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = nom.charAt(i);
+            if (c >= 128 || !nomChars[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Contrôle et lecture des coordonnées "latitude,longitude"
+    // Renvoie {latitude, longitude} (mêmes valeurs que Double.valueOf), ou null si les coordonnées sont incorrectes
+    public double[] parseCoordonneesGps(String coordonneesGps) {
+        int length = coordonneesGps.length();
+        // Latitude
+        int i = skipSign(coordonneesGps, 0);
+        int integerStart = i;
+        i = skipDigits(coordonneesGps, i);
+        int integerDigits = i - integerStart;
+        boolean ninety = integerDigits == 2 && coordonneesGps.charAt(integerStart) == '9' && coordonneesGps.charAt(integerStart + 1) == '0';
+        if (!(integerDigits == 1 || integerDigits == 2 && isBetween(coordonneesGps.charAt(integerStart), '1', '8') || ninety)) {
+            return null;
+        }
+        int fractionEnd = skipFraction(coordonneesGps, i, ninety);
+        if (fractionEnd < 0) {
+            return null;
+        }
+        i = fractionEnd;
+        int latitudeEnd = i;
+        if (i >= length || coordonneesGps.charAt(i) != ',') {
+            return null;
+        }
+        i++;
+        while (i < length && isRegexWhitespace(coordonneesGps.charAt(i))) {
+            i++;
+        }
+        // Longitude
+        int longitudeStart = i;
+        i = skipSign(coordonneesGps, i);
+        integerStart = i;
+        i = skipDigits(coordonneesGps, i);
+        integerDigits = i - integerStart;
+        boolean oneEighty = integerDigits == 3 && coordonneesGps.startsWith("180", integerStart);
+        boolean validInteger;
+        switch (integerDigits) {
+            case 1:
+                validInteger = true;
+                break;
+            case 2:
+                validInteger = coordonneesGps.charAt(integerStart) != '0';
+                break;
+            case 3:
+                validInteger = oneEighty || coordonneesGps.charAt(integerStart) == '1'
+                        && isBetween(coordonneesGps.charAt(integerStart + 1), '0', '7');
+                break;
+            default:
+                validInteger = false;
+        }
+        if (!validInteger) {
+            return null;
+        }
+        // Pour 180, seule la partie décimale nulle est acceptée (sinon 1[0-7]\d ne peut pas correspondre)
+        fractionEnd = skipFraction(coordonneesGps, i, oneEighty);
+        if (fractionEnd != length) {
+            return null;
+        }
+        return new double[]{
+                parseDouble(coordonneesGps, 0, latitudeEnd),
+                parseDouble(coordonneesGps, longitudeStart, length)};
+    }
+
+    // Met en forme un nom de commune déjà contrôlé (isNom) : majuscule en début de chaque mot, L', D', Saint, Sainte
+    public String normalizeNom(String nom) {
+        String normalized = noms.get(nom);
+        if (normalized == null) {
+            normalized = doNormalizeNom(nom);
+            if (noms.size() < MAX_CACHED_NOMS) {
+                noms.put(nom, normalized);
+            }
+        }
+        return normalized;
+    }
+
+    private String doNormalizeNom(String nom) {
+        int length = nom.length();
+        // Equivalent de WordUtils.capitalizeFully (seuls les blancs séparent les mots)
+        char[] c = new char[length];
+        boolean wordStart = true;
+        for (int i = 0; i < length; i++) {
+            char ch = nom.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                c[i] = ch;
+                wordStart = true;
+            } else {
+                c[i] = wordStart ? Character.toTitleCase(ch) : Character.toLowerCase(ch);
+                wordStart = false;
+            }
+        }
+        // Les remplacements sont appliqués dans l'ordre L, D, St : pour chaque position on garde la dernière
+        // position remplacée par chaque règle, ce qui reproduit les remplacements successifs sans repasser sur la chaîne
+        // (l'espace après un L ou un D remplacé devient une apostrophe, l'espace après un " St " remplacé est consommé)
+        StringBuilder result = new StringBuilder(length + 8);
+        int lastL = -3;
+        int lastD = -3;
+        int lastSt = -4;
+        int i = 0;
+        if (length >= 4 && c[0] == 'S' && c[1] == 't' && c[2] == 'e' && c[3] == ' ') {
+            result.append("Sainte");
+            i = 3;
+        }
+        for (; i < length; i++) {
+            char ch = c[i];
+            boolean followedBySpace = i + 1 < length && c[i + 1] == ' ';
+            if (ch == 'L' && followedBySpace && (i == 0 || c[i - 1] == ' ' && lastL != i - 2)) {
+                lastL = i;
+                result.append("L'");
+                i++;
+            } else if (ch == 'D' && followedBySpace && (i == 0 || c[i - 1] == ' ' && lastL != i - 2 && lastD != i - 2)) {
+                lastD = i;
+                result.append("D'");
+                i++;
+            } else if (ch == 'S' && i + 2 < length && c[i + 1] == 't' && c[i + 2] == ' '
+                    && (i == 0 || c[i - 1] == ' ' && lastL != i - 2 && lastD != i - 2 && lastSt != i - 3)) {
+                if (i > 0) {
+                    lastSt = i;
+                }
+                result.append("Saint");
+                i++;
+            } else {
+                result.append(ch);
+            }
+        }
+        return result.toString();
+    }
+
+    private static int skipSign(String s, int i) {
+        return i < s.length() && (s.charAt(i) == '-' || s.charAt(i) == '+') ? i + 1 : i;
+    }
+
+    private static int skipDigits(String s, int i) {
+        while (i < s.length() && isDigit(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    // Partie décimale optionnelle : '.' suivi d'au moins un chiffre (uniquement des zéros si zerosOnly)
+    // Renvoie la position qui suit la partie décimale, ou -1 si elle est incorrecte
+    private static int skipFraction(String s, int i, boolean zerosOnly) {
+        if (i >= s.length() || s.charAt(i) != '.') {
+            return i;
+        }
+        int start = ++i;
+        while (i < s.length() && (zerosOnly ? s.charAt(i) == '0' : isDigit(s.charAt(i)))) {
+            i++;
+        }
+        if (i == start || zerosOnly && i < s.length() && isDigit(s.charAt(i))) {
+            return -1;
+        }
+        return i;
+    }
+
+    // Lecture d'un nombre déjà contrôlé ([-+]?\d+(\.\d+)?)
+    // Quand la mantisse et la puissance de 10 sont exactes, la division donne le même double que Double.parseDouble
+    private static double parseDouble(String s, int start, int end) {
+        int i = start;
+        boolean negative = s.charAt(i) == '-';
+        if (negative || s.charAt(i) == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '.') {
+                fractionDigits = 0;
+                continue;
+            }
+            mantissa = mantissa * 10 + (c - '0');
+            if (mantissa >= MAX_EXACT_MANTISSA) {
+                return Double.parseDouble(s.substring(start, end));
+            }
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+        }
+        if (fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(s.substring(start, end));
+        }
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isBetween(char c, char min, char max) {
+        return c >= min && c <= max;
+    }
+
+    // Equivalent de \s dans une expression régulière Java
+    private static boolean isRegexWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,135 @@
+package com.ipiecole.batch.csvImport;
+
+import com.ipiecole.batch.index.CommuneIndex;
+import com.ipiecole.batch.index.CommuneKdTree;
+import com.ipiecole.batch.utils.CommuneCodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+// Contrôle des coordonnées des communes en fin d'import (importFile.validateCoordinates=true), après la récupération
+// des coordonnées manquantes : les expressions régulières de l'import ne vérifient que les bornes des coordonnées,
+// une commune placée à 500 km de son département (ou mal géocodée) passe sans erreur
+//  - un arbre k-d par département (cf. CommuneCodes.department) est construit en mémoire
+//    à partir de la table COMMUNE (cf. CommuneIndex et CommuneKdTree)
+//  - pour chaque commune, distance à son k-ième plus proche voisin du même département (k = neighbours : un petit groupe
+//    de communes mal placées ensemble reste signalé)
+//  - commune signalée si cette distance dépasse à la fois minDistance et factor fois la distance médiane du département
+//    (seuil adapté aux départements peu denses, montagne, outre-mer)
+// Les communes signalées sont seulement journalisées (20 premières, de la plus éloignée à la plus proche) et comptées
+// dans le contexte d'exécution de la step, leurs coordonnées ne sont pas modifiées
+public class CommuneCoordinatesValidationTasklet implements Tasklet {
+
+    // Nombre de communes signalées (contexte d'exécution de la step)
+    public static final String OUTLIERS_KEY = "coordinatesOutliers";
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final DataSource dataSource;
+    private final int neighbours;
+    private final double minDistanceKm;
+    private final double factor;
+
+    public CommuneCoordinatesValidationTasklet(DataSource dataSource, int neighbours, double minDistanceKm, double factor) {
+        this.dataSource = dataSource;
+        this.neighbours = neighbours;
+        this.minDistanceKm = minDistanceKm;
+        this.factor = factor;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) {
+        List<Outlier> outliers = outliers(CommuneIndex.load(dataSource));
+        chunkContext.getStepContext().getStepExecution().getExecutionContext().putInt(OUTLIERS_KEY, outliers.size());
+        if (!outliers.isEmpty()) {
+            logger.warn(outliers.size() + " communes éloignées des autres communes de leur département : "
+                    + outliers.stream().limit(20).map(Outlier::toString).collect(Collectors.joining(", "))
+                    + (outliers.size() > 20 ? "..." : ""));
+        }
+        return RepeatStatus.FINISHED;
+    }
+
+    // Communes signalées, de la plus éloignée de ses voisins à la plus proche
+    List<Outlier> outliers(CommuneIndex index) {
+        Map<String, List<Integer>> departements = new TreeMap<>();
+        for (int row = 0; row < index.size(); row++) {
+            if (!Double.isNaN(index.latitude(row)) && !Double.isNaN(index.longitude(row))) {
+                departements.computeIfAbsent(CommuneCodes.department(index.codeInsee(row)), d -> new ArrayList<>()).add(row);
+            }
+        }
+        List<Outlier> outliers = new ArrayList<>();
+        long lookups = 0;
+        long start = System.nanoTime();
+        for (Map.Entry<String, List<Integer>> departement : departements.entrySet()) {
+            int[] rows = departement.getValue().stream().mapToInt(Integer::intValue).toArray();
+            if (rows.length <= neighbours) {
+                continue;
+            }
+            CommuneKdTree tree = CommuneKdTree.build(index, rows);
+            double[] distances = new double[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                distances[i] = neighbourDistance(tree, rows[i]);
+            }
+            lookups += rows.length;
+            double[] sorted = distances.clone();
+            Arrays.sort(sorted);
+            double threshold = Math.max(minDistanceKm, factor * sorted[sorted.length / 2]);
+            for (int i = 0; i < rows.length; i++) {
+                if (distances[i] > threshold) {
+                    outliers.add(new Outlier(index.codeInsee(rows[i]), index.nom(rows[i]), departement.getKey(), distances[i]));
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (lookups > 0) {
+            logger.info(lookups + " communes contrôlées en " + elapsed / 1_000_000 + " ms ("
+                    + elapsed / 1000 / lookups + " µs par recherche de voisins)");
+        }
+        outliers.sort(Comparator.comparingDouble((Outlier outlier) -> outlier.distanceKm).reversed());
+        return outliers;
+    }
+
+    // Distance au k-ième plus proche voisin, la commune elle-même exclue (une autre commune peut avoir les mêmes coordonnées)
+    private double neighbourDistance(CommuneKdTree tree, int row) {
+        double latitude = tree.getIndex().latitude(row);
+        double longitude = tree.getIndex().longitude(row);
+        int found = 0;
+        for (int neighbour : tree.nearest(latitude, longitude, neighbours + 1)) {
+            if (neighbour != row && ++found == neighbours) {
+                return tree.distanceKm(latitude, longitude, neighbour);
+            }
+        }
+        throw new IllegalStateException("Voisins introuvables : " + row);
+    }
+
+    static final class Outlier {
+        final String codeInsee;
+        final String nom;
+        final String departement;
+        final double distanceKm;
+
+        Outlier(String codeInsee, String nom, String departement, double distanceKm) {
+            this.codeInsee = codeInsee;
+            this.nom = nom;
+            this.departement = departement;
+            this.distanceKm = distanceKm;
+        }
+
+        @Override
+        public String toString() {
+            return codeInsee + " " + nom + " (" + departement + ", " + Math.round(distanceKm) + " km)";
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.ipiecole.batch.csvImport;
+
+import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.utils.CommuneCodes;
+import com.ipiecole.batch.utils.LongHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.AfterChunk;
+import org.springframework.batch.core.annotation.AfterChunkError;
+import org.springframework.batch.core.annotation.AfterStep;
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Dédoublonnage de l'import (importFile.dedup=true) : le fichier contient une ligne par code postal (et ligne 5) de chaque
+// commune, pas toujours consécutives, alors que COMMUNE n'a qu'une ligne par code Insee
+//  - la première ligne lue d'une commune est écrite (nom, code postal et coordonnées de cette ligne)
+//  - les lignes suivantes ne réécrivent plus la commune (Commune.isDuplicate()) : seul leur code postal est enregistré,
+//    s'il est nouveau pour la commune (Commune.isNewCodePostal(), table COMMUNE_CODE_POSTAL, cf. CommuneDedupItemWriter)
+// Codes Insee et couples (code Insee, code postal) déjà lus conservés sous forme de long (cf. CommuneCodes et LongHashSet)
+// Les ajouts d'un chunk annulé sont retirés (ses éléments sont retraités ensuite) ; la reprise d'une step arrêtée repart
+// d'ensembles vides : les communes du début de la step sont alors écrites une seconde fois
+// Placé avant le filtre différentiel, qui ne compare ainsi que la première ligne de chaque commune
+// En mode partitionné, les partitions partagent la même instance
+public class CommuneDedupItemProcessor implements ItemProcessor<Commune, Commune> {
+
+    // Compte rendu de la step (contexte d'exécution)
+    public static final String ROWS_KEY = "dedup.rows";
+    public static final String COMMUNES_KEY = "dedup.communes";
+    public static final String CODES_POSTAUX_KEY = "dedup.codesPostaux";
+    public static final String REDUNDANT_WRITES_AVOIDED_KEY = "dedup.redundantWritesAvoided";
+
+    // Environ 35 000 communes et 40 000 couples (code Insee, code postal) dans le fichier de La Poste
+    private static final int EXPECTED_SIZE = 40000;
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final LongHashSet codesInsee = new LongHashSet(EXPECTED_SIZE);
+    private final LongHashSet codesPostaux = new LongHashSet(EXPECTED_SIZE);
+    private int rows = 0;
+    private int openCount = 0;
+    // Ajouts du chunk en cours, par thread de step
+    private final ThreadLocal<ChunkAdditions> chunkAdditions = ThreadLocal.withInitial(ChunkAdditions::new);
+
+    @BeforeStep
+    public synchronized void beforeStep(StepExecution stepExecution) {
+        if (openCount++ == 0) {
+            codesInsee.clear();
+            codesPostaux.clear();
+            rows = 0;
+        }
+        chunkAdditions.get().clear();
+    }
+
+    // La dernière step (ou partition) terminée enregistre le compte rendu de l'ensemble des lignes lues
+    @AfterStep
+    public synchronized ExitStatus afterStep(StepExecution stepExecution) {
+        if (openCount > 0 && --openCount == 0) {
+            ExecutionContext executionContext = stepExecution.getExecutionContext();
+            executionContext.putInt(ROWS_KEY, rows);
+            executionContext.putInt(COMMUNES_KEY, codesInsee.size());
+            executionContext.putInt(CODES_POSTAUX_KEY, codesPostaux.size());
+            executionContext.putInt(REDUNDANT_WRITES_AVOIDED_KEY, rows - codesInsee.size());
+            logger.info("Dédoublonnage => " + rows + " lignes, " + codesInsee.size() + " communes, "
+                    + codesPostaux.size() + " codes postaux : " + (rows - codesInsee.size()) + " écritures de communes évitées");
+        }
+        return null;
+    }
+
+    @AfterChunk
+    public void afterChunk(ChunkContext context) {
+        chunkAdditions.get().clear();
+    }
+
+    @AfterChunkError
+    public synchronized void afterChunkError(ChunkContext context) {
+        ChunkAdditions additions = chunkAdditions.get();
+        additions.codesInsee.forEach(codesInsee::remove);
+        additions.codesPostaux.forEach(codesPostaux::remove);
+        rows -= additions.rows;
+        additions.clear();
+    }
+
+    @Override
+    public Commune process(Commune commune) {
+        long codeInsee = CommuneCodes.codeInsee(commune.getCodeInsee());
+        if (codeInsee < 0) {
+            // Code Insee absent ou inattendu : ligne écrite telle quelle
+            return commune;
+        }
+        long codePostal = CommuneCodes.codePostal(commune.getCodePostal());
+        ChunkAdditions additions = chunkAdditions.get();
+        synchronized (this) {
+            rows++;
+            additions.rows++;
+            if (codesInsee.add(codeInsee)) {
+                additions.codesInsee.add(codeInsee);
+            } else {
+                commune.setDuplicate(true);
+            }
+            if (codePostal >= 0 && codesPostaux.add(codeInsee * 100000 + codePostal)) {
+                additions.codesPostaux.add(codeInsee * 100000 + codePostal);
+                commune.setNewCodePostal(true);
+            }
+        }
+        return commune;
+    }
+
+    private static final class ChunkAdditions {
+        final List<Long> codesInsee = new ArrayList<>();
+        final List<Long> codesPostaux = new ArrayList<>();
+        int rows;
+
+        void clear() {
+            codesInsee.clear();
+            codesPostaux.clear();
+            rows = 0;
+        }
+    }
+}
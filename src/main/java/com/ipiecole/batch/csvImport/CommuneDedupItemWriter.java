@@ -0,0 +1,95 @@
+package com.ipiecole.batch.csvImport;
+
+import com.ipiecole.batch.model.Commune;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.support.DatabaseType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+// Ecriture des communes dédoublonnées (cf. CommuneDedupItemProcessor)
+//  - la première ligne de chaque commune est écrite par le writer délégué, les lignes suivantes ne le sont plus
+//  - les codes postaux nouveaux sont ajoutés à COMMUNE_CODE_POSTAL par lot JDBC, dans la transaction du chunk
+//    (H2 : MERGE INTO ... KEY, MySQL : INSERT IGNORE ; couples déjà enregistrés par un import précédent ignorés)
+// Ouverture, mise à jour et fermeture transmises au writer délégué
+public class CommuneDedupItemWriter extends ItemStreamSupport implements ItemWriter<Commune> {
+
+    private static final String H2_INSERT_SQL = "MERGE INTO commune_code_postal (code_insee, code_postal) "
+            + "KEY (code_insee, code_postal) VALUES (?, ?)";
+    private static final String MYSQL_INSERT_SQL = "INSERT IGNORE INTO commune_code_postal (code_insee, code_postal) VALUES (?, ?)";
+
+    private final ItemWriter<Commune> delegate;
+    private final JdbcTemplate jdbcTemplate;
+    private final String insertSql;
+
+    public CommuneDedupItemWriter(ItemWriter<Commune> delegate, DataSource dataSource) {
+        this.delegate = delegate;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.insertSql = insertSql(dataSource);
+    }
+
+    private static String insertSql(DataSource dataSource) {
+        DatabaseType databaseType;
+        try {
+            databaseType = DatabaseType.fromMetaData(dataSource);
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Impossible de déterminer le type de base de données", e);
+        }
+        switch (databaseType) {
+            case H2:
+                return H2_INSERT_SQL;
+            case MYSQL:
+                return MYSQL_INSERT_SQL;
+            default:
+                throw new IllegalStateException("Base de données non supportée par le dédoublonnage : " + databaseType);
+        }
+    }
+
+    @Override
+    public void write(List<? extends Commune> items) throws Exception {
+        List<Commune> communes = new ArrayList<>(items.size());
+        List<Object[]> codesPostaux = new ArrayList<>();
+        for (Commune commune : items) {
+            if (!commune.isDuplicate()) {
+                communes.add(commune);
+            }
+            if (commune.isNewCodePostal()) {
+                codesPostaux.add(new Object[]{commune.getCodeInsee(), commune.getCodePostal()});
+            }
+        }
+        if (!communes.isEmpty()) {
+            delegate.write(communes);
+        }
+        if (!codesPostaux.isEmpty()) {
+            jdbcTemplate.batchUpdate(insertSql, codesPostaux);
+        }
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        if (delegate instanceof ItemStream) {
+            ((ItemStream) delegate).open(executionContext);
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (delegate instanceof ItemStream) {
+            ((ItemStream) delegate).update(executionContext);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        if (delegate instanceof ItemStream) {
+            ((ItemStream) delegate).close();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.ipiecole.batch.csvImport;
+
+import com.ipiecole.batch.dto.CommuneCSV;
+import com.ipiecole.batch.model.Commune;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.annotation.AfterChunk;
+import org.springframework.batch.core.annotation.AfterChunkError;
+import org.springframework.batch.core.annotation.AfterRead;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Import différentiel (importFile.delta=true) : seules les communes nouvelles ou modifiées depuis le dernier import sont écrites
+//  - l'empreinte de la ligne importée (nom, code postal et coordonnées, après contrôle et mise en forme) est conservée
+//    dans COMMUNE.IMPORT_FINGERPRINT
+//  - les empreintes en base sont chargées en mémoire au début de la step : une commune dont l'empreinte n'a pas changé
+//    est filtrée (FILTER_COUNT de la step), sans aucune requête ; les coordonnées récupérées après l'import sont conservées
+//  - les codes Insee lus dans le fichier (lignes rejetées comprises) sont conservés pour détecter les communes disparues
+//    (cf. CommuneImportDeltaTasklet)
+// Un code Insee présent sur plusieurs lignes du fichier est écrit à chaque ligne (la dernière l'emporte, comme sans delta),
+// sauf avec le dédoublonnage (importFile.dedup) : les lignes suivantes d'une commune ne sont pas comparées et ne sont
+// transmises au writer que pour leur code postal (cf. CommuneDedupItemProcessor)
+// Les empreintes d'un chunk ne sont retenues qu'une fois le chunk validé : un chunk annulé (ligne rejetée, erreur
+// d'écriture) est retraité sans être filtré par ses propres empreintes
+// Chargement des empreintes une seule fois par import (cf. stepListener()) : par la step d'import, ou par la step maître
+// en mode partitionné ; les partitions partagent la même instance et ne sont à l'écoute que des lectures et des chunks
+public class CommuneDeltaItemProcessor implements ItemProcessor<Commune, Commune> {
+
+    private static final String SELECT_SQL = "SELECT code_insee, import_fingerprint FROM commune WHERE import_fingerprint IS NOT NULL";
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, Long> fingerprints = new ConcurrentHashMap<>();
+    private final Set<String> codesInsee = ConcurrentHashMap.newKeySet();
+    // Empreintes du chunk en cours, par thread de step
+    private final ThreadLocal<Map<String, Long>> chunkFingerprints = ThreadLocal.withInitial(HashMap::new);
+    private volatile boolean complete = false;
+
+    public CommuneDeltaItemProcessor(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    // Début et fin de l'import : à enregistrer sur la step d'import, ou sur la step maître en mode partitionné
+    // (jamais sur les partitions, qui se terminent pendant que les autres lisent encore le fichier)
+    public StepExecutionListener stepListener() {
+        return new StepExecutionListener() {
+            @Override
+            public void beforeStep(StepExecution stepExecution) {
+                open();
+            }
+
+            @Override
+            public ExitStatus afterStep(StepExecution stepExecution) {
+                close();
+                return null;
+            }
+        };
+    }
+
+    public synchronized void open() {
+        fingerprints.clear();
+        jdbcTemplate.query(SELECT_SQL, rs -> {
+            fingerprints.put(rs.getString(1), rs.getLong(2));
+        });
+        logger.info(fingerprints.size() + " empreintes de communes chargées");
+        codesInsee.clear();
+        chunkFingerprints.get().clear();
+        complete = true;
+    }
+
+    // Les codes Insee lus sont conservés pour la recherche des communes disparues (cf. CommuneImportDeltaTasklet)
+    public synchronized void close() {
+        fingerprints.clear();
+    }
+
+    @AfterChunk
+    public void afterChunk(ChunkContext context) {
+        Map<String, Long> chunk = chunkFingerprints.get();
+        fingerprints.putAll(chunk);
+        chunk.clear();
+    }
+
+    @AfterChunkError
+    public void afterChunkError(ChunkContext context) {
+        chunkFingerprints.get().clear();
+    }
+
+    @AfterRead
+    public void afterRead(CommuneCSV item) {
+        if (item.getCodeInsee() != null) {
+            codesInsee.add(item.getCodeInsee());
+        }
+    }
+
+    // Une ligne en double plus loin dans le fichier est comparée à l'empreinte de la précédente : celle du chunk en cours,
+    // sinon celle d'un chunk validé ou de la base
+    @Override
+    public Commune process(Commune commune) {
+        if (commune.isDuplicate()) {
+            return commune;
+        }
+        long fingerprint = fingerprint(commune);
+        commune.setImportFingerprint(fingerprint);
+        Long previous = chunkFingerprints.get().put(commune.getCodeInsee(), fingerprint);
+        if (previous == null) {
+            previous = fingerprints.get(commune.getCodeInsee());
+        }
+        return previous != null && previous == fingerprint ? null : commune;
+    }
+
+    // Codes Insee lus dans le fichier, triés
+    public String[] getCodesInsee() {
+        String[] codes = codesInsee.toArray(new String[0]);
+        Arrays.sort(codes);
+        return codes;
+    }
+
+    // Faux si aucune step d'import n'a été ouverte depuis le démarrage de l'application
+    // (la reprise d'un job est détectée par CommuneImportDeltaTasklet)
+    public boolean isComplete() {
+        return complete;
+    }
+
+    // FNV-1a 64 bits sur les champs importés (séparés, valeurs absentes distinguées), puis mélange final de SplitMix64
+    static long fingerprint(Commune commune) {
+        long hash = 0xcbf29ce484222325L;
+        hash = hash(hash, commune.getNom());
+        hash = hash(hash, commune.getCodePostal());
+        hash = hash(hash, commune.getLatitude());
+        hash = hash(hash, commune.getLongitude());
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+
+    private static long hash(long hash, String value) {
+        if (value == null) {
+            return (hash ^ 1) * 0x100000001b3L;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        // Fin du champ : "AB" + "C" et "A" + "BC" n'ont pas la même empreinte
+        return hash * 0x100000001b3L;
+    }
+
+    private static long hash(long hash, Double value) {
+        if (value == null) {
+            return (hash ^ 1) * 0x100000001b3L;
+        }
+        long bits = Double.doubleToLongBits(value);
+        for (int i = 0; i < 64; i += 8) {
+            hash = (hash ^ ((bits >>> i) & 0xff)) * 0x100000001b3L;
+        }
+        return (hash ^ 2) * 0x100000001b3L;
+    }
+}
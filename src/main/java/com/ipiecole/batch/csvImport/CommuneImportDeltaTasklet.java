@@ -0,0 +1,133 @@
+package com.ipiecole.batch.csvImport;
+
+import com.ipiecole.batch.utils.Sha256;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Début et fin de l'import différentiel (importFile.delta=true) :
+//  - checkFile (step importFileDeltaCheck) : empreinte SHA-256 du fichier comparée à celle du dernier import réussi
+//    (table IMPORT_FILE) ; fichier inchangé : statut UNCHANGED, le job se termine sans lire le fichier
+//  - complete (step importFileDeltaComplete, après l'import) : communes disparues du fichier détectées par une jointure
+//    par fusion entre les codes Insee lus (triés, cf. CommuneDeltaItemProcessor) et la table parcourue dans l'ordre
+//    de sa clé primaire, en une seule requête ; supprimées si demandé (importFile.delta.deleteRemoved) ;
+//    puis enregistrement de l'empreinte du fichier
+public class CommuneImportDeltaTasklet {
+
+    public static final String UNCHANGED = "UNCHANGED";
+    // Clés des contextes d'exécution : empreinte du fichier (job), nombre de communes disparues (step importFileDeltaComplete)
+    public static final String FILE_SHA256_KEY = "importFileSha256";
+    public static final String REMOVED_KEY = "removedCommunes";
+    // Exécution du job ayant vérifié le fichier : une autre exécution à la fin de l'import signale une reprise
+    private static final String CHECK_EXECUTION_KEY = "importFileDeltaCheckExecution";
+
+    private static final String SELECT_SHA256_SQL = "SELECT sha256 FROM import_file WHERE resource = ?";
+    private static final String UPDATE_SHA256_SQL = "UPDATE import_file SET sha256 = ?, imported_on = ? WHERE resource = ?";
+    private static final String INSERT_SHA256_SQL = "INSERT INTO import_file (sha256, imported_on, resource) VALUES (?, ?, ?)";
+    private static final String SELECT_CODES_SQL = "SELECT code_insee FROM commune ORDER BY code_insee";
+    private static final String DELETE_SQL = "DELETE FROM commune WHERE code_insee = ?";
+    // Codes postaux de la commune (cf. CommuneDedupItemWriter), supprimés avec elle
+    private static final String DELETE_CODES_POSTAUX_SQL = "DELETE FROM commune_code_postal WHERE code_insee = ?";
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Resource resource;
+    private final CommuneDeltaItemProcessor deltaProcessor;
+    private final boolean deleteRemoved;
+
+    public CommuneImportDeltaTasklet(DataSource dataSource, Resource resource, CommuneDeltaItemProcessor deltaProcessor,
+                                     boolean deleteRemoved) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        // Parcours de toute la table : lignes lues par paquets (MySQL)
+        this.jdbcTemplate.setFetchSize(1000);
+        this.resource = resource;
+        this.deltaProcessor = deltaProcessor;
+        this.deleteRemoved = deleteRemoved;
+    }
+
+    public RepeatStatus checkFile(StepContribution contribution, ChunkContext chunkContext) throws IOException {
+        String sha256 = sha256(resource);
+        JobExecution jobExecution = chunkContext.getStepContext().getStepExecution().getJobExecution();
+        jobExecution.getExecutionContext().putString(FILE_SHA256_KEY, sha256);
+        jobExecution.getExecutionContext().putLong(CHECK_EXECUTION_KEY, jobExecution.getId());
+        List<String> previous = jdbcTemplate.queryForList(SELECT_SHA256_SQL, String.class, key());
+        if (previous.contains(sha256)) {
+            logger.info("Fichier " + resource.getDescription() + " inchangé depuis le dernier import (" + sha256 + ")");
+            contribution.setExitStatus(new ExitStatus(UNCHANGED));
+        }
+        return RepeatStatus.FINISHED;
+    }
+
+    public RepeatStatus complete(StepContribution contribution, ChunkContext chunkContext) throws IOException {
+        StepExecution stepExecution = chunkContext.getStepContext().getStepExecution();
+        ExecutionContext jobContext = stepExecution.getJobExecution().getExecutionContext();
+        // Après une reprise, les lignes lues avant l'arrêt ne l'ont pas été de nouveau : la liste des codes Insee est incomplète
+        boolean restarted = jobContext.getLong(CHECK_EXECUTION_KEY, -1) != stepExecution.getJobExecutionId();
+        if (!restarted && deltaProcessor.isComplete()) {
+            List<String> removed = removedCodesInsee(deltaProcessor.getCodesInsee());
+            stepExecution.getExecutionContext().putInt(REMOVED_KEY, removed.size());
+            if (!removed.isEmpty()) {
+                logger.info(removed.size() + " communes absentes du fichier : "
+                        + removed.stream().limit(20).collect(Collectors.joining(", ")) + (removed.size() > 20 ? "..." : ""));
+                if (deleteRemoved) {
+                    List<Object[]> codes = removed.stream().map(code -> new Object[]{code}).collect(Collectors.toList());
+                    jdbcTemplate.batchUpdate(DELETE_CODES_POSTAUX_SQL, codes);
+                    jdbcTemplate.batchUpdate(DELETE_SQL, codes);
+                    contribution.incrementWriteCount(removed.size());
+                }
+            }
+        } else {
+            logger.warn("Import repris après un arrêt : communes disparues du fichier non recherchées");
+        }
+        String sha256 = jobContext.containsKey(FILE_SHA256_KEY) ? jobContext.getString(FILE_SHA256_KEY) : sha256(resource);
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        if (jdbcTemplate.update(UPDATE_SHA256_SQL, sha256, now, key()) == 0) {
+            jdbcTemplate.update(INSERT_SHA256_SQL, sha256, now, key());
+        }
+        return RepeatStatus.FINISHED;
+    }
+
+    // Jointure par fusion : codes de la table (triés par la base) absents des codes du fichier (triés)
+    List<String> removedCodesInsee(String[] fileCodesInsee) {
+        List<String> removed = new ArrayList<>();
+        int[] index = {0};
+        jdbcTemplate.query(SELECT_CODES_SQL, rs -> {
+            String codeInsee = rs.getString(1);
+            while (index[0] < fileCodesInsee.length && fileCodesInsee[index[0]].compareTo(codeInsee) < 0) {
+                index[0]++;
+            }
+            if (index[0] == fileCodesInsee.length || !fileCodesInsee[index[0]].equals(codeInsee)) {
+                removed.add(codeInsee);
+            }
+        });
+        return removed;
+    }
+
+    private String key() {
+        String description = resource.getDescription();
+        return description.length() > 255 ? description.substring(description.length() - 255) : description;
+    }
+
+    static String sha256(Resource resource) throws IOException {
+        try (InputStream in = resource.getInputStream()) {
+            return Sha256.hex(in);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.ipiecole.batch.csvImport;
+
+import com.ipiecole.batch.model.Commune;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.support.DatabaseType;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Ecriture des communes par lot JDBC : chaque chunk est envoyé en une seule requête batchée
+//  - H2 : MERGE INTO ... KEY (code_insee)
+//  - MySQL : INSERT ... ON DUPLICATE KEY UPDATE (ajouter rewriteBatchedStatements=true à l'URL JDBC
+//    pour que le driver envoie le lot en une seule requête multi-lignes)
+// Contrairement au JpaItemWriter (merge = SELECT par code Insee puis INSERT ou UPDATE), aucune lecture n'est faite
+// Avec le filtre d'existence, les codes Insee présents en base sont chargés en mémoire à l'ouverture de la step :
+// les communes dont le code n'a encore jamais été vu sont insérées par un simple INSERT, les autres par l'upsert
+public class CommuneJdbcUpsertItemWriter extends ItemStreamSupport implements ItemWriter<Commune> {
+
+    private static final String COLUMNS = "code_insee, nom, code_postal, latitude, longitude, coordinates_source, "
+            + "coordinates_precision, geocoding_pending, import_fingerprint";
+    private static final String INSERT_SQL = "INSERT INTO commune (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String H2_UPSERT_SQL = "MERGE INTO commune (" + COLUMNS + ") KEY (code_insee) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String MYSQL_UPSERT_SQL = INSERT_SQL + " ON DUPLICATE KEY UPDATE nom = VALUES(nom), "
+            + "code_postal = VALUES(code_postal), latitude = VALUES(latitude), longitude = VALUES(longitude), "
+            + "coordinates_source = VALUES(coordinates_source), coordinates_precision = VALUES(coordinates_precision), "
+            + "geocoding_pending = VALUES(geocoding_pending), import_fingerprint = VALUES(import_fingerprint)";
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String upsertSql;
+    private final boolean existenceFilter;
+
+    // Codes Insee présents en base ou déjà écrits, partagés par les partitions d'une même step
+    private final Set<String> knownCodesInsee = ConcurrentHashMap.newKeySet();
+    private int openCount = 0;
+
+    public CommuneJdbcUpsertItemWriter(DataSource dataSource, boolean existenceFilter) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.existenceFilter = existenceFilter;
+        this.upsertSql = upsertSql(dataSource);
+        setName("communeJdbcUpsertItemWriter");
+    }
+
+    private String upsertSql(DataSource dataSource) {
+        DatabaseType databaseType;
+        try {
+            databaseType = DatabaseType.fromMetaData(dataSource);
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Impossible de déterminer le type de base de données", e);
+        }
+        switch (databaseType) {
+            case H2:
+                return H2_UPSERT_SQL;
+            case MYSQL:
+                warnIfBatchesNotRewritten(dataSource);
+                return MYSQL_UPSERT_SQL;
+            default:
+                throw new IllegalStateException("Base de données non supportée par l'écriture JDBC : " + databaseType);
+        }
+    }
+
+    private void warnIfBatchesNotRewritten(DataSource dataSource) {
+        try {
+            String url = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getURL);
+            if (url != null && !url.contains("rewriteBatchedStatements=true")) {
+                logger.warn("rewriteBatchedStatements=true absent de l'URL JDBC : les lots seront envoyés ligne à ligne");
+            }
+        } catch (MetaDataAccessException e) {
+            logger.warn("Impossible de lire l'URL JDBC : " + e.getMessage());
+        }
+    }
+
+    // En mode partitionné, les partitions ouvrent et ferment le même writer :
+    // les codes sont chargés par la première ouverture, quand plus aucune écriture n'est en cours
+    @Override
+    public synchronized void open(ExecutionContext executionContext) throws ItemStreamException {
+        if (existenceFilter && openCount++ == 0) {
+            knownCodesInsee.clear();
+            jdbcTemplate.query("SELECT code_insee FROM commune", rs -> {
+                knownCodesInsee.add(rs.getString(1));
+            });
+            logger.info(knownCodesInsee.size() + " communes déjà présentes en base");
+        }
+    }
+
+    @Override
+    public synchronized void close() throws ItemStreamException {
+        if (existenceFilter && openCount > 0 && --openCount == 0) {
+            knownCodesInsee.clear();
+        }
+    }
+
+    @Override
+    public void write(List<? extends Commune> items) {
+        if (!existenceFilter) {
+            batchUpdate(upsertSql, items);
+            return;
+        }
+        List<Commune> newCommunes = new ArrayList<>(items.size());
+        List<Commune> existingCommunes = new ArrayList<>();
+        for (Commune commune : items) {
+            // add renvoie false si le code est déjà en base ou a déjà été écrit (y compris plus haut dans le même chunk)
+            if (knownCodesInsee.add(commune.getCodeInsee())) {
+                newCommunes.add(commune);
+            } else {
+                existingCommunes.add(commune);
+            }
+        }
+        // Les insertions d'abord : un doublon plus loin dans le chunk écrase la ligne insérée, comme en séquentiel
+        batchUpdate(INSERT_SQL, newCommunes);
+        batchUpdate(upsertSql, existingCommunes);
+    }
+
+    private void batchUpdate(String sql, List<? extends Commune> communes) {
+        if (communes.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Commune commune = communes.get(i);
+                ps.setString(1, commune.getCodeInsee());
+                ps.setString(2, commune.getNom());
+                ps.setString(3, commune.getCodePostal());
+                setDouble(ps, 4, commune.getLatitude());
+                setDouble(ps, 5, commune.getLongitude());
+                ps.setString(6, commune.getCoordinatesSource() == null ? null : commune.getCoordinatesSource().name());
+                ps.setString(7, commune.getCoordinatesPrecision() == null ? null : commune.getCoordinatesPrecision().name());
+                ps.setBoolean(8, commune.isGeocodingPending());
+                if (commune.getImportFingerprint() == null) {
+                    ps.setNull(9, Types.BIGINT);
+                } else {
+                    ps.setLong(9, commune.getImportFingerprint());
+                }
+            }
+
+            @Override
+            public int getBatchSize() {
+                return communes.size();
+            }
+        });
+    }
+
+    private static void setDouble(PreparedStatement ps, int index, Double value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.DOUBLE);
+        } else {
+            ps.setDouble(index, value);
+        }
+    }
+}
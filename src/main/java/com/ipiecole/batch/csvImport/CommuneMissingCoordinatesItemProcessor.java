@@ -1,23 +1,44 @@
 package com.ipiecole.batch.csvImport;
 
+import com.ipiecole.batch.geocoding.Geocoder;
+import com.ipiecole.batch.geocoding.GeocodingResult;
 import com.ipiecole.batch.model.Commune;
-import com.ipiecole.batch.utils.OpenStreetMapUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.AfterStep;
 import org.springframework.batch.item.ItemProcessor;
 
 import java.util.Map;
 
 public class CommuneMissingCoordinatesItemProcessor implements ItemProcessor<Commune, Commune> {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    // Géocodage hors ligne puis OpenStreetMap (via le cache) selon la configuration
+    private final Geocoder geocoder;
+
+    public CommuneMissingCoordinatesItemProcessor(Geocoder geocoder) {
+        this.geocoder = geocoder;
+    }
+
     @Override
     public Commune process(Commune item) throws Exception {
 
-        Map<String, Double> coordinatesOSM = OpenStreetMapUtils.getInstance().getCoordinates(
-                item.getNom() + " " + item.getCodePostal());
+        GeocodingResult result = geocoder.geocode(item);
 
-        if(coordinatesOSM != null && coordinatesOSM.size() == 2) {
-            item.setLongitude(coordinatesOSM.get("lon"));
-            item.setLatitude(coordinatesOSM.get("lat"));
+        if(result != null) {
+            result.applyTo(item);
             return item;
         }
         return null;
     }
+
+    // Compteurs du géocodage (cumulés depuis le démarrage), conservés dans le contexte d'exécution de la step
+    @AfterStep
+    public void afterStep(StepExecution stepExecution) {
+        Map<String, Long> statistics = geocoder.getStatistics();
+        logger.info("Géocodage => " + statistics);
+        statistics.forEach((name, value) -> stepExecution.getExecutionContext().putLong("geocoding." + name, value));
+    }
 }
@@ -1,5 +1,6 @@
 package com.ipiecole.batch.csvImport;
 
+import com.ipiecole.batch.diagnostics.ItemDiagnostics;
 import com.ipiecole.batch.dto.CommuneCSV;
 import com.ipiecole.batch.model.Commune;
 import org.slf4j.Logger;
@@ -10,18 +11,31 @@ public class CommunesCSVImportSkipListener implements SkipListener<CommuneCSV, C
 
     Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    // Eléments ignorés toujours journalisés, dans la limite de débit des diagnostics (cf. ItemDiagnostics)
+    private final ItemDiagnostics.Probe skipProbe;
+
+    public CommunesCSVImportSkipListener(ItemDiagnostics diagnostics) {
+        this.skipProbe = diagnostics.rateLimited();
+    }
+
     @Override
     public void onSkipInRead(Throwable t) {
-        logger.warn("Skip in Read => " + t.getMessage());
+        if (skipProbe.sample()) {
+            logger.warn("Skip in Read => {}", t.getMessage());
+        }
     }
 
     @Override
     public void onSkipInWrite(Commune item, Throwable t) {
-        logger.warn("Skip in Write => " + item.toString() + ", " + t.getMessage());
+        if (skipProbe.sample()) {
+            logger.warn("Skip in Write => {}, {}", item, t.getMessage());
+        }
     }
 
     @Override
     public void onSkipInProcess(CommuneCSV item, Throwable t) {
-        logger.warn("Skip in Process => " + item.toString() + ", " + t.getMessage());
+        if (skipProbe.sample()) {
+            logger.warn("Skip in Process => {}, {}", item, t.getMessage());
+        }
     }
 }
@@ -1,38 +1,66 @@
 package com.ipiecole.batch.csvImport;
 
 
+import com.ipiecole.batch.chunk.ChunkSizing;
+import com.ipiecole.batch.chunk.PipelinedItemReader;
+import com.ipiecole.batch.diagnostics.ItemDiagnostics;
 import com.ipiecole.batch.dto.CommuneCSV;
 import com.ipiecole.batch.exception.CommuneCSVException;
 import com.ipiecole.batch.exception.NetworkException;
+import com.ipiecole.batch.geocoding.ConcurrentGeocodingItemReader;
+import com.ipiecole.batch.geocoding.Geocoder;
+import com.ipiecole.batch.geocoding.GeocodingCache;
+import com.ipiecole.batch.geocoding.MissingCoordinatesItemReader;
+import com.ipiecole.batch.geocoding.OfflineGeocoder;
+import com.ipiecole.batch.index.CommuneIndexHolder;
+import com.ipiecole.batch.metrics.BatchMetricsListener;
 import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.utils.OpenStreetMapUtils;
+import com.ipiecole.batch.utils.TokenBucketRateLimiter;
 import org.springframework.batch.core.*;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.builder.FlowBuilder;
+import org.springframework.batch.core.job.builder.FlowJobBuilder;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.step.builder.PartitionStepBuilder;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
 import org.springframework.batch.core.step.skip.AlwaysSkipItemSkipPolicy;
 import org.springframework.batch.core.step.tasklet.Tasklet;
-import org.springframework.batch.item.database.BeanPropertyItemSqlParameterSourceProvider;
-import org.springframework.batch.item.database.JdbcBatchItemWriter;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.JpaItemWriter;
-import org.springframework.batch.item.database.JpaPagingItemReader;
-import org.springframework.batch.item.database.builder.JdbcBatchItemWriterBuilder;
 import org.springframework.batch.item.database.builder.JpaItemWriterBuilder;
-import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
-import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.FlatFileItemWriter;
 import org.springframework.batch.item.file.FlatFileParseException;
 import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
 import org.springframework.batch.item.file.mapping.BeanWrapperFieldSetMapper;
 import org.springframework.batch.item.file.transform.IncorrectTokenCountException;
+import org.springframework.batch.item.support.CompositeItemProcessor;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.retry.backoff.FixedBackOffPolicy;
+import org.springframework.retry.policy.SimpleRetryPolicy;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 @Configuration
 @EnableBatchProcessing
@@ -51,36 +79,218 @@ public class CommunesImportBatch {
     @Value("${importFile.chunkSize}")
     private Integer chunkSize;
 
+    // Mode d'import du fichier : "sequential" (une seule step), "partitioned" (plages d'octets lues en parallèle),
+    // "pipelined" (lecture et contrôle des lignes en amont des chunks, dans leurs propres threads)
+    // ou "bulk" (fichier propre chargé par l'outil de chargement de la base puis fusionné dans COMMUNE)
+    @Value("${importFile.mode:sequential}")
+    private String importMode;
+
+    // Nombre de partitions (et de threads) utilisées en mode "partitioned"
+    @Value("${importFile.gridSize:4}")
+    private Integer gridSize;
+
+    // Mode "pipelined" : threads de contrôle des lignes et nombre de lignes lues d'avance
+    @Value("${importFile.pipeline.threads:4}")
+    private Integer pipelineThreads;
+
+    @Value("${importFile.pipeline.queueSize:1000}")
+    private Integer pipelineQueueSize;
+
+    // Fichier à importer : ressource du classpath par défaut, ou chemin du système de fichiers (ex : file:/data/laposte_hexasmal.csv)
+    @Value("${importFile.resource:classpath:laposte_hexasmal.csv}")
+    private Resource communesCSVResource;
+
+    // Lecteur du fichier : "flatfile" (FlatFileItemReader, reprise en relisant les lignes déjà traitées)
+    // ou "nio" (lecteur dédié, reprise à la position en octets enregistrée, cf. CommuneCSVChannelItemReader)
+    @Value("${importFile.reader:flatfile}")
+    private String readerType;
+
+    // Writer des steps d'import : "jdbc" (upsert JDBC par lot) ou "jpa" (JpaItemWriter)
+    @Value("${importFile.writer:jpa}")
+    private String importWriterType;
+
+    // Writer de la step de récupération des coordonnées manquantes : "jdbc" ou "jpa"
+    @Value("${missingCoordinates.writer:jpa}")
+    private String missingCoordinatesWriterType;
+
+    // Filtre d'existence du writer JDBC : les codes Insee jamais vus sont insérés sans upsert
+    @Value("${importFile.existenceFilter:true}")
+    private boolean existenceFilter;
+
+    // Fichier propre produit en mode "bulk", chargé ensuite par la base (doit être accessible par le serveur H2 / le client MySQL)
+    @Value("${importFile.bulkFile:file:${java.io.tmpdir}/communes_bulk.csv}")
+    private Resource communesBulkFile;
+
+    // Import différentiel : fichier inchangé ignoré, seules les communes nouvelles ou modifiées sont écrites
+    @Value("${importFile.delta:false}")
+    private boolean importDelta;
+
+    // Import différentiel : suppression des communes absentes du fichier (sinon elles sont seulement signalées)
+    @Value("${importFile.delta.deleteRemoved:false}")
+    private boolean importDeltaDeleteRemoved;
+
+    // Dédoublonnage : chaque commune n'est écrite qu'une fois par import (première ligne lue),
+    // tous ses codes postaux sont enregistrés dans COMMUNE_CODE_POSTAL
+    @Value("${importFile.dedup:false}")
+    private boolean importDedup;
+
+    // Contrôle des coordonnées en fin d'import : communes éloignées des autres communes de leur département
+    // (distance au k-ième plus proche voisin supérieure à minDistance km et à factor fois la médiane du département)
+    @Value("${importFile.validateCoordinates:false}")
+    private boolean validateCoordinates;
+
+    @Value("${importFile.validateCoordinates.neighbours:3}")
+    private Integer validateCoordinatesNeighbours;
+
+    @Value("${importFile.validateCoordinates.minDistance:20}")
+    private Double validateCoordinatesMinDistance;
+
+    @Value("${importFile.validateCoordinates.factor:10}")
+    private Double validateCoordinatesFactor;
+
+    // Pas de commit de la préparation du fichier propre (aucune écriture en base, seules les métadonnées du batch sont mises à jour)
+    @Value("${importFile.bulkChunkSize:1000}")
+    private Integer bulkChunkSize;
+
+    // Cache de géocodage : nombre d'entrées en mémoire, durée de vie des coordonnées trouvées et des communes introuvables,
+    // conservation en base entre deux exécutions
+    @Value("${geocoding.cache.maxSize:10000}")
+    private Integer geocodingCacheMaxSize;
+
+    @Value("${geocoding.cache.ttl:30d}")
+    private Duration geocodingCacheTtl;
+
+    @Value("${geocoding.cache.negativeTtl:1d}")
+    private Duration geocodingCacheNegativeTtl;
+
+    @Value("${geocoding.cache.persistent:true}")
+    private boolean geocodingCachePersistent;
+
+    // Step de récupération des coordonnées manquantes : "concurrent" (géocodage parallèle hors transaction)
+    // ou "sequential" (géocodage dans l'ItemProcessor, commune par commune)
+    @Value("${missingCoordinates.mode:sequential}")
+    private String missingCoordinatesMode;
+
+    // Nombre de communes à géocoder lues par requête
+    @Value("${missingCoordinates.pageSize:100}")
+    private Integer missingCoordinatesPageSize;
+
+    // Nombre maximum de recherches en cours en mode "concurrent"
+    @Value("${missingCoordinates.maxInFlight:4}")
+    private Integer geocodingMaxInFlight;
+
+    // Débit maximum d'appels à Nominatim (requêtes par seconde) et nombre d'appels pouvant partir d'un coup
+    @Value("${geocoding.rateLimit:1}")
+    private Double geocodingRateLimit;
+
+    @Value("${geocoding.burst:1}")
+    private Integer geocodingBurst;
+
+    @Value("${geocoding.nominatim.url:" + OpenStreetMapUtils.DEFAULT_SEARCH_URL + "}")
+    private String nominatimUrl;
+
+    @Value("${geocoding.nominatim.connectTimeout:5s}")
+    private Duration nominatimConnectTimeout;
+
+    @Value("${geocoding.nominatim.timeout:10s}")
+    private Duration nominatimTimeout;
+
+    // Géocodage hors ligne (communes proches déjà en base) avant OpenStreetMap
+    @Value("${geocoding.offline.enabled:false}")
+    private boolean geocodingOfflineEnabled;
+
+    // Similarité minimum (trigrammes) entre deux noms de communes d'un même département
+    @Value("${geocoding.offline.minSimilarity:0.8}")
+    private Double geocodingOfflineMinSimilarity;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ItemDiagnostics itemDiagnostics;
+
+    @Autowired
+    private BatchMetricsListener batchMetricsListener;
+
+    @Autowired
+    private ChunkSizing chunkSizing;
+
+    @Autowired
+    private CommuneIndexHolder communeIndexHolder;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
 
     /////////////////////////////////////////////
     ////////////// ITEM READER //////////////////
     /////////////////////////////////////////////
 
     // Les ItemReader sont les éléments permettant la lecture par lot de données issues de sources diverses (fichiers plats, XML, bases de données...)
+    // "nio" : lecteur dédié (CommuneCSVChannelItemReader), "flatfile" : FlatFileItemReader générique
+    @Bean
+    public ItemStreamReader<CommuneCSV> communesCSVItemReader(){
+        if ("flatfile".equals(readerType)) {
+            return communesFlatFileItemReaderBuilder()
+                    .name("communesCSVItemReader")
+                    .linesToSkip(1)
+                    .resource(communesCSVResource)
+                    .build();
+        }
+        return communesCSVChannelItemReader("communesCSVItemReader", 1, 0, -1);
+    }
+
+    // Cet ItemReader ne lit qu'une plage d'octets du fichier, calculée par le partitioner (mode "partitioned")
+    // L'entête est exclue des plages, il n'y a donc aucune ligne à sauter
+    @Bean
+    @StepScope
+    public ItemStreamReader<CommuneCSV> communesCSVPartitionItemReader(
+            @Value("#{stepExecutionContext['startOffset']}") Long startOffset,
+            @Value("#{stepExecutionContext['endOffset']}") Long endOffset){
+        if ("flatfile".equals(readerType)) {
+            return communesFlatFileItemReaderBuilder()
+                    .name("communesCSVPartitionItemReader")
+                    .resource(new FileRangeResource(communesCSVResource, startOffset, endOffset))
+                    .build();
+        }
+        return communesCSVChannelItemReader("communesCSVPartitionItemReader", 0, startOffset, endOffset);
+    }
+
+    // Mode "pipelined" : le fichier est lu et les lignes contrôlées en amont des chunks (cf. PipelinedItemReader),
+    // le processor de la step ne fait que reprendre le résultat du contrôle
     @Bean
-    public FlatFileItemReader<CommuneCSV> communesCSVItemReader(){
+    public PipelinedItemReader<CommuneCSV, Commune> communesCSVPipelinedItemReader(){
+        PipelinedItemReader<CommuneCSV, Commune> reader = new PipelinedItemReader<>(communesCSVItemReader(),
+                communeCSVToCommuneProcessor(), pipelineThreads, pipelineQueueSize);
+        reader.setName("communesCSVPipelinedItemReader");
+        return reader;
+    }
+
+    private CommuneCSVChannelItemReader communesCSVChannelItemReader(String name, int linesToSkip, long startOffset, long endOffset){
+        CommuneCSVChannelItemReader reader = new CommuneCSVChannelItemReader();
+        reader.setName(name);
+        reader.setResource(communesCSVResource);
+        reader.setLinesToSkip(linesToSkip);
+        reader.setStartOffset(startOffset);
+        reader.setEndOffset(endOffset);
+        return reader;
+    }
+
+    private FlatFileItemReaderBuilder<CommuneCSV> communesFlatFileItemReaderBuilder(){
         return new FlatFileItemReaderBuilder<CommuneCSV>()
-                .name("communesCSVItemReader")
-                .linesToSkip(1)
-                .resource(new ClassPathResource("laposte_hexasmal.csv"))
                 .delimited()
                 .delimiter(";")
                 .names("codeInsee", "nom", "codePostal", "ligne5", "libelleAcheminement", "coordonneesGPS")
                 .fieldSetMapper(new BeanWrapperFieldSetMapper<>(){{
                     setTargetType(CommuneCSV.class);
-                }})
-                .build();
+                }});
     }
 
     // Cet ItemReader lis les données à partir de la base de données => ici on récupères les infos n'ayant pas de coordonnées GPS
+    // Lecture par clé dans l'index des communes à géocoder (cf. Commune.isGeocodingPending())
     @Bean
-    public JpaPagingItemReader<Commune> communesMissingCoordinatesJpaItemReader(){
-        return new JpaPagingItemReaderBuilder<Commune>()
-                .name("communesMissingCoordinatesJpaItemReader")
-                .entityManagerFactory(entityManagerFactory)
-                .pageSize(10)
-                .queryString("from Commune c where c.latitude is null or c.longitude is null")
-                .build();
+    public MissingCoordinatesItemReader communesMissingCoordinatesItemReader(){
+        return new MissingCoordinatesItemReader(dataSource, missingCoordinatesPageSize);
     }
 
 
@@ -94,30 +304,153 @@ public class CommunesImportBatch {
     // Préférer dans ce cas des opérations ensemblistes (cf. Tasklet)
     @Bean
     public Step stepGetMissingCoordinates(){
+        if ("concurrent".equals(missingCoordinatesMode)) {
+            // Le géocodage est fait par le reader, en parallèle et hors transaction :
+            // le chunk (sans transaction) ne contient que des communes géocodées, enregistrées dans une courte transaction
+            return chunkSizing.<Commune, Commune> chunk(stepBuilderFactory.get("getMissingCoordinates")
+                    .transactionManager(new ResourcelessTransactionManager()), 10)
+                    .reader(concurrentGeocodingItemReader())
+                    .writer(new TransactionalItemWriter<>(communesItemWriter(missingCoordinatesWriterType), transactionManager))
+                    .listener(geocoder())
+                    .listener(batchMetricsListener)
+                    .build();
+        }
         FixedBackOffPolicy policy = new FixedBackOffPolicy();
         policy.setBackOffPeriod(2000);
-        return stepBuilderFactory.get("getMissingCoordinates")
-                .<Commune, Commune> chunk(10)
-                .reader(communesMissingCoordinatesJpaItemReader())
+        return chunkSizing.<Commune, Commune> chunk(stepBuilderFactory.get("getMissingCoordinates"), 10)
+                .reader(communesMissingCoordinatesItemReader())
                 .processor(communeMissingCoordinatesItemProcessor())
-                .writer(writerJPA())
+                .writer(communesItemWriter(missingCoordinatesWriterType))
                 .faultTolerant()
                 .retryLimit(5)
                 .retry(NetworkException.class)
                 .backOffPolicy(policy)
+                .listener(batchMetricsListener.retryListener("getMissingCoordinates"))
+                .listener(communeMissingCoordinatesItemProcessor())
+                .listener(geocoder())
+                .listener(batchMetricsListener)
                 .build();
     }
 
+    // Géocodage concurrent des communes sans coordonnées (mode "concurrent")
+    @Bean
+    public ConcurrentGeocodingItemReader concurrentGeocodingItemReader(){
+        return new ConcurrentGeocodingItemReader(communesMissingCoordinatesItemReader(), geocoder(),
+                geocodingRetryTemplate(), geocodingMaxInFlight);
+    }
+
+    // Mêmes réessais que la step séquentielle (5 tentatives espacées de 2 secondes), mais recherche par recherche
+    @Bean
+    public RetryTemplate geocodingRetryTemplate(){
+        FixedBackOffPolicy policy = new FixedBackOffPolicy();
+        policy.setBackOffPeriod(2000);
+        RetryTemplate retryTemplate = new RetryTemplate();
+        retryTemplate.setRetryPolicy(new SimpleRetryPolicy(5, Collections.singletonMap(NetworkException.class, true)));
+        retryTemplate.setBackOffPolicy(policy);
+        retryTemplate.registerListener(batchMetricsListener.retryListener("getMissingCoordinates"));
+        return retryTemplate;
+    }
+
     // l'Item Processor transforme les données afin qu'elles correspondent au format des données à écrire
     @Bean
     public CommuneMissingCoordinatesItemProcessor communeMissingCoordinatesItemProcessor(){
-        return new CommuneMissingCoordinatesItemProcessor();
+        return new CommuneMissingCoordinatesItemProcessor(geocoder());
+    }
+
+    // Géocodage des communes sans coordonnées : hors ligne d'abord (si activé), puis OpenStreetMap via le cache
+    @Bean
+    public Geocoder geocoder(){
+        if (geocodingOfflineEnabled) {
+            return new OfflineGeocoder(dataSource, geocodingCache(), geocodingOfflineMinSimilarity);
+        }
+        return geocodingCache();
+    }
+
+    // Cache des coordonnées récupérées sur OpenStreetMap (mémoire + table GEOCODING_CACHE)
+    // Seuls les appels réels à OpenStreetMap sont soumis à la limite de débit
+    @Bean
+    public GeocodingCache geocodingCache(){
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(geocodingRateLimit, geocodingBurst);
+        return new GeocodingCache(GeocodingCache.limit(rateLimiter, new OpenStreetMapUtils(nominatimUrl, nominatimConnectTimeout, nominatimTimeout)::getCoordinates),
+                geocodingCachePersistent ? dataSource : null,
+                geocodingCacheMaxSize, geocodingCacheTtl, geocodingCacheNegativeTtl, Clock.systemUTC());
     }
 
     // Cet Item Processor formate les données du fichiers d'entrée
     @Bean
     public CommuneCSVItemProcessor communeCSVToCommuneProcessor() {
-        return new CommuneCSVItemProcessor();
+        CommuneCSVItemProcessor processor = new CommuneCSVItemProcessor();
+        processor.setDiagnostics(itemDiagnostics);
+        return processor;
+    }
+
+    // En mode "partitioned", chaque partition dispose de sa propre instance (compteur de communes sans coordonnées)
+    // Les lignes d'une commune attribuée à une autre partition sont filtrées : une seule partition écrit chaque commune
+    // Avec le dédoublonnage, les partitions partagent les codes déjà lus (cf. CommuneDedupItemProcessor) : une commune
+    // n'est écrite qu'une fois et tous ses codes postaux sont enregistrés, mais la ligne retenue pour la commune est
+    // la première lue par l'ensemble des partitions, qui dépend de leur avancement
+    @Bean
+    @StepScope
+    public CommuneCSVItemProcessor communeCSVToCommunePartitionProcessor(
+            @Value("#{stepExecutionContext['ignoredCodesInsee']}") String ignoredCodesInsee) {
+        CommuneCSVItemProcessor processor = new CommuneCSVItemProcessor();
+        processor.setDiagnostics(itemDiagnostics);
+        if (!importDedup) {
+            processor.setIgnoredCodesInsee(CommuneCSVFilePartitioner.ignoredCodesInsee(ignoredCodesInsee));
+        }
+        return processor;
+    }
+
+    // Import différentiel : filtre des communes inchangées depuis le dernier import, après contrôle et mise en forme
+    @Bean
+    public CommuneDeltaItemProcessor communeDeltaItemProcessor() {
+        return new CommuneDeltaItemProcessor(dataSource);
+    }
+
+    // Dédoublonnage : premières lignes de chaque commune et codes postaux déjà lus, avant le filtre différentiel
+    @Bean
+    public CommuneDedupItemProcessor communeDedupItemProcessor() {
+        return new CommuneDedupItemProcessor();
+    }
+
+    // Chaîne de traitement des steps d'import
+    private ItemProcessor<CommuneCSV, Commune> communesImportProcessor(ItemProcessor<CommuneCSV, Commune> communeCSVItemProcessor) {
+        if (!importDedup && !importDelta) {
+            return communeCSVItemProcessor;
+        }
+        List<ItemProcessor<?, ?>> delegates = new ArrayList<>();
+        delegates.add(communeCSVItemProcessor);
+        if (importDedup) {
+            delegates.add(communeDedupItemProcessor());
+        }
+        if (importDelta) {
+            delegates.add(communeDeltaItemProcessor());
+        }
+        CompositeItemProcessor<CommuneCSV, Commune> processor = new CompositeItemProcessor<>();
+        processor.setDelegates(delegates);
+        return processor;
+    }
+
+    // Le dédoublonnage (ensembles vidés à chaque step, ajouts d'un chunk annulé retirés) et le filtre différentiel
+    // (chargement des empreintes, codes Insee lus, empreintes d'un chunk annulé abandonnées) sont à l'écoute des steps d'import
+    private <I, O> SimpleStepBuilder<I, O> withImportProcessorListeners(SimpleStepBuilder<I, O> builder) {
+        if (importDelta) {
+            builder.listener(communeDeltaItemProcessor().stepListener());
+        }
+        return withImportProcessorChunkListeners(builder);
+    }
+
+    // Partitions : empreintes chargées une seule fois, par la step maître (cf. stepImportCSVPartitioned)
+    private <I, O> SimpleStepBuilder<I, O> withImportProcessorChunkListeners(SimpleStepBuilder<I, O> builder) {
+        if (importDedup) {
+            builder.listener(communeDedupItemProcessor());
+        }
+        return importDelta ? builder.listener(communeDeltaItemProcessor()) : builder;
+    }
+
+    // Dédoublonnage : seules les premières lignes de chaque commune sont transmises au writer de la step
+    private ItemWriter<Commune> communesImportWriter(ItemWriter<Commune> writer) {
+        return importDedup ? new CommuneDedupItemWriter(writer, dataSource) : writer;
     }
 
 
@@ -132,17 +465,35 @@ public class CommunesImportBatch {
                 .build();
     }
 
+    // Chaque chunk est envoyé en une seule requête batchée (MERGE sur H2, INSERT ... ON DUPLICATE KEY UPDATE sur MySQL)
+    @Bean
+    public CommuneJdbcUpsertItemWriter writerJDBC(){
+        return new CommuneJdbcUpsertItemWriter(dataSource, existenceFilter);
+    }
+
+    // En mode "bulk", les communes contrôlées et mises en forme sont écrites dans un fichier propre
     @Bean
-    public JdbcBatchItemWriter<Commune> writerJDBC(DataSource dataSource){
-        return new JdbcBatchItemWriterBuilder<Commune>()
-                .itemSqlParameterSourceProvider(new BeanPropertyItemSqlParameterSourceProvider<>())
-                .sql("INSERT INTO COMMUNE(code_insee, nom, code_postal, latitude, longitude) " +
-                        "VALUES (:codeinsee, :nom, :codepostal, :, :longitude)" +
-                         "DUPLICATE KEY UPDATE (code_postal = code_postal, latitude = latitude, longitude = longitude)")
-                .dataSource(dataSource)
+    public FlatFileItemWriter<Commune> communesBulkFileItemWriter(){
+        return new FlatFileItemWriterBuilder<Commune>()
+                .name("communesBulkFileItemWriter")
+                .resource(communesBulkFile)
+                .encoding("UTF-8")
+                .headerCallback(writer -> writer.write("CODE_INSEE;NOM;CODE_POSTAL;LATITUDE;LONGITUDE;IMPORT_FINGERPRINT"))
+                .lineAggregator(commune -> commune.getCodeInsee() + ";" + commune.getNom() + ";" + commune.getCodePostal() + ";"
+                        + (commune.getLatitude() == null ? "" : commune.getLatitude()) + ";"
+                        + (commune.getLongitude() == null ? "" : commune.getLongitude()) + ";"
+                        + (commune.getImportFingerprint() == null ? "" : commune.getImportFingerprint()))
                 .build();
     }
 
+    // Sélection du writer d'une step : "jpa" ou "jdbc"
+    private ItemWriter<Commune> communesItemWriter(String writerType){
+        if ("jpa".equals(writerType)) {
+            return writerJPA();
+        }
+        return writerJDBC();
+    }
+
 
     //////////////////////////////////////////
     ////////////// TASKLETS //////////////////
@@ -179,25 +530,19 @@ public class CommunesImportBatch {
 
     // ItemReadListener : Intervenir avant ou après une lecture, ou lors d'une erreur de lecture
     // L'Item Read Listener définit les méthodes before*, after* et on*Error avec * = Read, Write, ou Process
-    @Bean
-    public ItemReadListener<CommuneCSV> communeCSVItemReadListener(){
-        return new CommuneCSVItemListener();
-    }
-
     // ItemProcessListener : Intervenir avant ou après un traitement, ou lors d'une erreur de traitement
-
     // ItemWriteListener : Intervenir avant ou après une écriture, ou lors d'une erreur d'écriture
-    // L'Item Write Listener définit les méthodes before*, after* et on*Error avec * = Read, Write, ou Process
+    // Ici par annotations (@AfterRead, @BeforeWrite...) : les diagnostics sont échantillonnés selon la step (cf. ItemDiagnostics)
     @Bean
-    public ItemWriteListener<Commune> communeCSVItemWriteListener(){
-        return new CommuneCSVItemListener();
+    public CommuneCSVItemListener communeCSVItemListener(){
+        return new CommuneCSVItemListener(itemDiagnostics);
     }
 
     // SkipListener : Intervenir lorsqu'un élément a été ignoré
     // Le SkipListener définit les méthodes onSkipInRead, onSkipInProcess, onSkipInWrite
     @Bean
     public CommunesCSVImportSkipListener communesCSVImportSkipListener(){
-        return new CommunesCSVImportSkipListener();
+        return new CommunesCSVImportSkipListener(itemDiagnostics);
     }
 
 
@@ -208,11 +553,10 @@ public class CommunesImportBatch {
     // Le plus simple moyen d'ordonnancer les Steps consiste à les enchaîner de manière séquentielle
     @Bean
     public Step stepImportCSV(){
-        return stepBuilderFactory.get("importFile")
-                .<CommuneCSV, Commune> chunk(chunkSize)
+        return withImportProcessorListeners(chunkSizing.<CommuneCSV, Commune> chunk(stepBuilderFactory.get("importFile"), chunkSize)
                 .reader(communesCSVItemReader())
-                .processor(communeCSVToCommuneProcessor())
-                .writer(writerJPA())
+                .processor(communesImportProcessor(communeCSVToCommuneProcessor()))
+                .writer(communesImportWriter(communesItemWriter(importWriterType)))
                 .faultTolerant()
                 .skipPolicy(new AlwaysSkipItemSkipPolicy())
                 .skip(CommuneCSVException.class)
@@ -220,12 +564,150 @@ public class CommunesImportBatch {
                 .listener(communesCSVImportSkipListener())
 //                .listener(communeCSVImportStepListener())
 //                .listener(communeCSVImportChunkListener())
-//                .listener(communeCSVItemReadListener())
-                .listener(communeCSVItemWriteListener())
+                .listener(communeCSVItemListener())
+                .listener(communeCSVToCommuneProcessor())
+                .listener(batchMetricsListener))
+                .build();
+    }
+
+    // Variante "pipelined" : mêmes rejets, même écriture (un seul writer, chunks dans l'ordre du fichier) et même reprise
+    // que la step importFile, mais la lecture et le contrôle des lignes des chunks suivants se poursuivent pendant
+    // l'écriture et le commit d'un chunk
+    // Le dédoublonnage et le filtre différentiel restent dans le thread de la step (ordre des lignes d'une même commune)
+    @Bean
+    public Step stepImportCSVPipelined(){
+        return withImportProcessorListeners(chunkSizing.<CommuneCSV, Commune> chunk(stepBuilderFactory.get("importFilePipelined"), chunkSize)
+                .reader(communesCSVPipelinedItemReader())
+                .processor(communesImportProcessor(communesCSVPipelinedItemReader().processor()))
+                .writer(communesImportWriter(communesItemWriter(importWriterType)))
+                .faultTolerant()
+                .skipPolicy(new AlwaysSkipItemSkipPolicy())
+                .skip(CommuneCSVException.class)
+                .skip(FlatFileParseException.class)
+                .listener(communesCSVImportSkipListener())
+                .listener(communeCSVItemListener())
+                .listener(communeCSVToCommuneProcessor())
+                .listener(batchMetricsListener))
+                .build();
+    }
+
+    // Variante partitionnée : le fichier est découpé en plages d'octets alignées sur les lignes,
+    // chaque plage est traitée par la même chaîne reader -> processor -> writer dans son propre thread
+    // Import différentiel : empreintes chargées avant le lancement des partitions et libérées une fois toutes terminées
+    @Bean
+    public Step stepImportCSVPartitioned(){
+        PartitionStepBuilder builder = stepBuilderFactory.get("importFilePartitioned")
+                .partitioner("importFilePartition", communeCSVFilePartitioner())
+                .step(stepImportCSVPartition())
+                .gridSize(gridSize)
+                .taskExecutor(importTaskExecutor())
+                .aggregator(new CommuneCSVPartitionAggregator());
+        if (importDelta) {
+            builder.listener(communeDeltaItemProcessor().stepListener());
+        }
+        return builder.build();
+    }
+
+    @Bean
+    public Step stepImportCSVPartition(){
+        return withImportProcessorChunkListeners(chunkSizing.<CommuneCSV, Commune> chunk(stepBuilderFactory.get("importFilePartition"), chunkSize)
+                .reader(communesCSVPartitionItemReader(null, null))
+                .processor(communesImportProcessor(communeCSVToCommunePartitionProcessor(null)))
+                .writer(communesImportWriter(communesItemWriter(importWriterType)))
+                .faultTolerant()
+                .skipPolicy(new AlwaysSkipItemSkipPolicy())
+                .skip(CommuneCSVException.class)
+                .skip(FlatFileParseException.class)
+                .listener(communesCSVImportSkipListener())
+                .listener(communeCSVItemListener())
+                .listener(communeCSVToCommunePartitionProcessor(null))
+                .listener(batchMetricsListener))
+                .build();
+    }
+
+    // Mode "bulk" : même chaîne reader -> processor que la step importFile (mêmes rejets, même compteur de communes
+    // sans coordonnées), mais les communes sont écrites dans le fichier propre au lieu de la base
+    @Bean
+    public Step stepImportCSVBulkPrepare(){
+        return withImportProcessorListeners(chunkSizing.<CommuneCSV, Commune> chunk(stepBuilderFactory.get(CommuneBulkLoadTasklet.PREPARE_STEP_NAME), bulkChunkSize)
+                .reader(communesCSVItemReader())
+                .processor(communesImportProcessor(communeCSVToCommuneProcessor()))
+                .writer(communesImportWriter(communesBulkFileItemWriter()))
+                .faultTolerant()
+                .skipPolicy(new AlwaysSkipItemSkipPolicy())
+                .skip(CommuneCSVException.class)
+                .skip(FlatFileParseException.class)
+                .listener(communesCSVImportSkipListener())
                 .listener(communeCSVToCommuneProcessor())
+                .listener(batchMetricsListener))
+                .build();
+    }
+
+    // Chargement du fichier propre dans la table de transit puis fusion dans COMMUNE
+    @Bean
+    public Step stepImportCSVBulkLoad(){
+        return stepBuilderFactory.get("importFileBulkLoad")
+                .tasklet(communeBulkLoadTasklet())
+                .listener(communeBulkLoadTasklet())
+                .build();
+    }
+
+    @Bean
+    public CommuneBulkLoadTasklet communeBulkLoadTasklet(){
+        return new CommuneBulkLoadTasklet(dataSource, communesBulkFile);
+    }
+
+    // Import différentiel : comparaison de l'empreinte du fichier avant l'import (statut UNCHANGED si identique)
+    @Bean
+    public Step stepImportDeltaCheck(){
+        return stepBuilderFactory.get("importFileDeltaCheck")
+                .tasklet(communeImportDeltaTasklet()::checkFile)
                 .build();
     }
 
+    // Import différentiel : communes disparues du fichier et enregistrement de son empreinte, une fois l'import terminé
+    @Bean
+    public Step stepImportDeltaComplete(){
+        return stepBuilderFactory.get("importFileDeltaComplete")
+                .tasklet(communeImportDeltaTasklet()::complete)
+                .build();
+    }
+
+    @Bean
+    public CommuneImportDeltaTasklet communeImportDeltaTasklet(){
+        return new CommuneImportDeltaTasklet(dataSource, communesCSVResource, communeDeltaItemProcessor(), importDeltaDeleteRemoved);
+    }
+
+    // Contrôle des coordonnées une fois l'import (et la récupération des coordonnées manquantes) terminé
+    @Bean
+    public Step stepValidateCoordinates(){
+        return stepBuilderFactory.get("importFileValidateCoordinates")
+                .tasklet(communeCoordinatesValidationTasklet())
+                .build();
+    }
+
+    @Bean
+    public CommuneCoordinatesValidationTasklet communeCoordinatesValidationTasklet(){
+        return new CommuneCoordinatesValidationTasklet(dataSource, validateCoordinatesNeighbours,
+                validateCoordinatesMinDistance, validateCoordinatesFactor);
+    }
+
+    @Bean
+    public CommuneCSVFilePartitioner communeCSVFilePartitioner(){
+        return new CommuneCSVFilePartitioner(communesCSVResource);
+    }
+
+    @Bean
+    public TaskExecutor importTaskExecutor(){
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(gridSize);
+        taskExecutor.setMaxPoolSize(gridSize);
+        taskExecutor.setThreadNamePrefix("importFile-");
+        // Threads daemon : le pool n'empêche pas l'arrêt de l'application une fois le job terminé
+        taskExecutor.setDaemon(true);
+        return taskExecutor;
+    }
+
     @Bean
     public Step stepHelloWorld(){
         return stepBuilderFactory.get("stepHelloWorld")
@@ -241,12 +723,54 @@ public class CommunesImportBatch {
     // Ordonnancement des Step
 
     @Bean
-    public Job importCsvJob(Step stepHelloWorld, Step stepImportCSV, Step stepGetMissingCoordinates){
-        return jobBuilderFactory.get("importCsvJob")
+    public Job importCsvJob(Step stepHelloWorld, Step stepImportCSV, Step stepImportCSVPartitioned,
+                            Step stepImportCSVPipelined, Step stepImportCSVBulkPrepare, Step stepImportCSVBulkLoad, Step stepGetMissingCoordinates,
+                            Step stepImportDeltaCheck, Step stepImportDeltaComplete, Step stepValidateCoordinates){
+        FlowBuilder<FlowJobBuilder> flow = jobBuilderFactory.get("importCsvJob")
                 .incrementer(new RunIdIncrementer())
-                .flow(stepHelloWorld)
-                .next(stepImportCSV)
-                .on("COMPLETED_WITH_MISSING_COORDINATES").to(stepGetMissingCoordinates)
-                .end().build();
+                .listener(batchMetricsListener)
+                // Index en mémoire reconstruit à partir de la table une fois l'import terminé
+                .listener(communeIndexHolder)
+                .flow(stepHelloWorld);
+        Step firstImportStep = "bulk".equals(importMode) ? stepImportCSVBulkPrepare
+                : "partitioned".equals(importMode) ? stepImportCSVPartitioned
+                : "pipelined".equals(importMode) ? stepImportCSVPipelined : stepImportCSV;
+        if (importDelta) {
+            // Fichier identique au dernier import réussi : rien à faire
+            flow = flow.next(stepImportDeltaCheck)
+                    .on(CommuneImportDeltaTasklet.UNCHANGED).end()
+                    .from(stepImportDeltaCheck).on("FAILED").fail()
+                    .from(stepImportDeltaCheck).on("*").to(firstImportStep);
+        } else {
+            flow = flow.next(firstImportStep);
+        }
+        Step lastImportStep = firstImportStep;
+        if ("bulk".equals(importMode)) {
+            // La préparation peut se terminer en COMPLETED_WITH_MISSING_COORDINATES : le chargement est fait dans tous les cas
+            // sauf échec, et c'est son statut (repris de la préparation) qui décide de la suite
+            flow = flow.from(stepImportCSVBulkPrepare).on("FAILED").fail()
+                    .from(stepImportCSVBulkPrepare).on("*").to(stepImportCSVBulkLoad);
+            lastImportStep = stepImportCSVBulkLoad;
+        }
+        flow = flow.from(lastImportStep)
+                .on(CommuneCSVItemProcessor.COMPLETED_WITH_MISSING_COORDINATES).to(stepGetMissingCoordinates);
+        if (importDelta) {
+            // Empreinte du fichier enregistrée une fois l'import (et la récupération des coordonnées) terminé
+            flow = flow.from(lastImportStep).on("FAILED").fail()
+                    .from(lastImportStep).on("*").to(stepImportDeltaComplete)
+                    .from(stepGetMissingCoordinates).on("FAILED").fail()
+                    .from(stepGetMissingCoordinates).on("*").to(stepImportDeltaComplete);
+            if (validateCoordinates) {
+                flow = flow.from(stepImportDeltaComplete).on("FAILED").fail()
+                        .from(stepImportDeltaComplete).on("*").to(stepValidateCoordinates);
+            }
+        } else if (validateCoordinates) {
+            // Contrôle fait sur les coordonnées définitives, après la récupération des coordonnées manquantes
+            flow = flow.from(lastImportStep).on("FAILED").fail()
+                    .from(lastImportStep).on("*").to(stepValidateCoordinates)
+                    .from(stepGetMissingCoordinates).on("FAILED").fail()
+                    .from(stepGetMissingCoordinates).on("*").to(stepValidateCoordinates);
+        }
+        return flow.end().build();
     }
 }
\ No newline at end of file
@@ -0,0 +1,112 @@
+package com.ipiecole.batch.csvImport;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Ressource donnant accès à une plage d'octets [startOffset, endOffset[ d'une autre ressource
+// Permet de faire lire à un FlatFileItemReader une partition du fichier CSV sans le découper physiquement
+public class FileRangeResource extends AbstractResource {
+
+    private final Resource delegate;
+    private final long startOffset;
+    private final long endOffset;
+
+    public FileRangeResource(Resource delegate, long startOffset, long endOffset) {
+        this.delegate = delegate;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+    }
+
+    @Override
+    public boolean exists() {
+        return delegate.exists();
+    }
+
+    @Override
+    public long contentLength() {
+        return endOffset - startOffset;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Plage [" + startOffset + ", " + endOffset + "[ de " + delegate.getDescription();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        InputStream inputStream = delegate.getInputStream();
+        skipFully(inputStream, startOffset);
+        return new RangeInputStream(inputStream, endOffset - startOffset);
+    }
+
+    // InputStream.skip peut sauter moins d'octets que demandé (notamment pour une ressource compressée dans le jar)
+    static void skipFully(InputStream inputStream, long bytes) throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            long skipped = inputStream.skip(remaining);
+            if (skipped <= 0) {
+                if (inputStream.read() < 0) {
+                    throw new IOException("Fin de fichier atteinte avant l'offset " + bytes);
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    // Flux limité au nombre d'octets de la plage
+    private static class RangeInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.ipiecole.batch.csvImport;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+// Ecriture d'un chunk dans sa propre transaction, pour une step dont le chunk ne porte pas de transaction
+// (ResourcelessTransactionManager) : la lecture, qui peut attendre le géocodage, ne bloque ni connexion ni ligne en base
+public class TransactionalItemWriter<T> implements ItemWriter<T>, ItemStream {
+
+    private final ItemWriter<T> delegate;
+    private final TransactionTemplate transactionTemplate;
+
+    public TransactionalItemWriter(ItemWriter<T> delegate, PlatformTransactionManager transactionManager) {
+        this.delegate = delegate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public void write(List<? extends T> items) throws Exception {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    delegate.write(items);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new WriteException(e);
+                }
+            });
+        } catch (WriteException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        if (delegate instanceof ItemStream) {
+            ((ItemStream) delegate).open(executionContext);
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (delegate instanceof ItemStream) {
+            ((ItemStream) delegate).update(executionContext);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        if (delegate instanceof ItemStream) {
+            ((ItemStream) delegate).close();
+        }
+    }
+
+    // Transporte l'exception contrôlée du writer délégué hors de la TransactionTemplate
+    private static class WriteException extends RuntimeException {
+        private WriteException(Exception cause) {
+            super(cause);
+        }
+    }
+}
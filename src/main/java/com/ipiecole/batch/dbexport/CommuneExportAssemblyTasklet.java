@@ -0,0 +1,145 @@
+package com.ipiecole.batch.dbexport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.FlatFileItemWriter;
+import org.springframework.batch.repeat.RepeatStatus;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Assemblage du fichier d'export : entête, fichiers des partitions dans l'ordre des plages, pied de page
+// Sans partitions (partitionStepName null), un seul fichier : celui de la step d'export (cf. bodyFile)
+// Les fichiers des partitions sont copiés par FileChannel.transferTo (sans passer par la mémoire de la JVM), puis supprimés
+// Le fichier obtenu est identique à celui de l'export séquentiel (même encodage et même séparateur de lignes
+// que le FlatFileItemWriter : entête suivie d'un saut de ligne, pied de page sans saut de ligne final)
+// Entête et pied de page : statistiques des partitions additionnées (cf. statisticsFor), recalculées à partir
+// du fichier de la partition si elles ne sont plus en mémoire (reprise, writer sans statistiques)
+public class CommuneExportAssemblyTasklet implements Tasklet {
+
+    private static final Charset CHARSET = Charset.forName(FlatFileItemWriter.DEFAULT_CHARSET);
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Path outputFile;
+    private final String partitionStepName;
+    private final CommuneExportStatistics emptyStatistics;
+    private final Map<Path, CommuneExportStatistics> partitionStatistics = new ConcurrentHashMap<>();
+
+    public CommuneExportAssemblyTasklet(String outputFile, String partitionStepName, CommuneExportStatistics emptyStatistics) {
+        this.outputFile = Paths.get(outputFile);
+        this.partitionStepName = partitionStepName;
+        this.emptyStatistics = emptyStatistics;
+    }
+
+    // Fichier des lignes de l'export séquentiel, sans entête ni pied de page
+    public static Path bodyFile(String outputFile) {
+        return Paths.get(outputFile + ".body");
+    }
+
+    // Statistiques (vides) à remplir par le writer de la partition écrivant partFile
+    public CommuneExportStatistics statisticsFor(String partFile) {
+        CommuneExportStatistics statistics = emptyStatistics.newEmpty();
+        partitionStatistics.put(Paths.get(partFile), statistics);
+        return statistics;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        List<Path> parts = partFiles(chunkContext.getStepContext().getStepExecution());
+        CommuneExportStatistics statistics = emptyStatistics.newEmpty();
+        for (Path part : parts) {
+            CommuneExportStatistics partStatistics = partitionStatistics.remove(part);
+            if (partStatistics == null) {
+                partStatistics = emptyStatistics.newEmpty();
+                partStatistics.addLines(part, CHARSET, 0);
+            }
+            statistics.merge(partStatistics);
+        }
+        StringWriter header = new StringWriter();
+        statistics.writeHeader(header);
+        header.write(FlatFileItemWriter.DEFAULT_LINE_SEPARATOR);
+        StringWriter footer = new StringWriter();
+        statistics.writeFooter(footer);
+        long size = assemble(outputFile, header.toString(), parts, footer.toString(), CHARSET);
+        for (Path part : parts) {
+            Files.deleteIfExists(part);
+        }
+        logger.info(parts.size() + " fichiers assemblés dans " + outputFile + " (" + size + " octets, "
+                + statistics.getCommunes() + " communes)");
+        return RepeatStatus.FINISHED;
+    }
+
+    // Ecrit output : header, contenu des fichiers parts dans l'ordre, footer. Renvoie la taille du fichier obtenu
+    static long assemble(Path output, String header, List<Path> parts, String footer, Charset charset) throws IOException {
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            write(channel, header, charset);
+            for (Path part : parts) {
+                try (FileChannel input = FileChannel.open(part, StandardOpenOption.READ)) {
+                    long position = 0;
+                    long partSize = input.size();
+                    while (position < partSize) {
+                        position += input.transferTo(position, partSize - position, channel);
+                    }
+                }
+            }
+            write(channel, footer, charset);
+            return channel.size();
+        }
+    }
+
+    // Fichiers écrits par les partitions de l'export, dans l'ordre des plages de codes postaux
+    // Lors d'une reprise où seul l'assemblage est relancé, les partitions (terminées) ne font pas partie de l'exécution :
+    // les fichiers sont alors retrouvés par leur nom (cf. CommuneExportPartitioner)
+    private List<Path> partFiles(StepExecution stepExecution) {
+        if (partitionStepName == null) {
+            return Collections.singletonList(bodyFile(outputFile.toString()));
+        }
+        List<StepExecution> partitions = new ArrayList<>();
+        for (StepExecution execution : stepExecution.getJobExecution().getStepExecutions()) {
+            if (execution.getStepName().startsWith(partitionStepName + ":")) {
+                partitions.add(execution);
+            }
+        }
+        partitions.sort(Comparator.comparingInt(execution ->
+                execution.getExecutionContext().getInt(CommuneExportPartitioner.PARTITION_INDEX_KEY)));
+        List<Path> parts = new ArrayList<>();
+        for (StepExecution partition : partitions) {
+            ExecutionContext context = partition.getExecutionContext();
+            parts.add(Paths.get(context.getString(CommuneExportPartitioner.PART_FILE_KEY)));
+        }
+        if (parts.isEmpty()) {
+            Path part;
+            while (Files.exists(part = CommuneExportPartitioner.partFile(outputFile.toString(), parts.size()))) {
+                parts.add(part);
+            }
+        }
+        return parts;
+    }
+
+    private static void write(FileChannel output, String text, Charset charset) throws IOException {
+        ByteBuffer buffer = charset.encode(text);
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.ipiecole.batch.dbexport;
+
+import com.ipiecole.batch.diagnostics.ItemDiagnostics;
+import com.ipiecole.batch.model.Commune;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.AfterRead;
+import org.springframework.batch.core.annotation.BeforeChunk;
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.core.annotation.BeforeWrite;
+import org.springframework.batch.core.scope.context.ChunkContext;
+
+import java.util.List;
+
+// Diagnostics des communes lues et écrites par l'export, échantillonnés selon le réglage de la step (cf. ItemDiagnostics)
+public class CommuneExportItemListener {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final ItemDiagnostics diagnostics;
+    private volatile ItemDiagnostics.Probe readProbe = ItemDiagnostics.Probe.OFF;
+    private volatile ItemDiagnostics.Probe writeProbe = ItemDiagnostics.Probe.OFF;
+
+    public CommuneExportItemListener(ItemDiagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    @BeforeStep
+    public void beforeStep(StepExecution stepExecution) {
+        readProbe = diagnostics.probe(stepExecution.getStepName());
+        writeProbe = diagnostics.probe(stepExecution.getStepName());
+    }
+
+    @BeforeChunk
+    public void beforeChunk(ChunkContext context) {
+        readProbe.startChunk();
+        writeProbe.startChunk();
+    }
+
+    @AfterRead
+    public void afterRead(Commune item) {
+        if (readProbe.sample()) {
+            logger.info("After Read Export => {}", item);
+        }
+    }
+
+    @BeforeWrite
+    public void beforeWrite(List<? extends Commune> items) {
+        if (writeProbe.sample()) {
+            logger.info("Before Write Export => {} communes ({} .. {})", items.size(),
+                    items.isEmpty() ? null : items.get(0).getCodeInsee(),
+                    items.isEmpty() ? null : items.get(items.size() - 1).getCodeInsee());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.ipiecole.batch.dbexport;
+
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Découpe l'export en plages contiguës de codes postaux, sur les préfixes de département (2 premiers caractères),
+// de tailles aussi proches que possible
+// Chaque plage est écrite dans son propre fichier par une step "worker" (cf. CommunesDBExportBatch.stepExportPartitioned),
+// les fichiers étant ensuite concaténés dans l'ordre des plages (cf. CommuneExportAssemblyTasklet)
+public class CommuneExportPartitioner implements Partitioner {
+
+    public static final String PARTITION_INDEX_KEY = "partitionIndex";
+    public static final String FROM_CODE_POSTAL_KEY = "fromCodePostal";
+    public static final String TO_CODE_POSTAL_KEY = "toCodePostal";
+    public static final String PART_FILE_KEY = "partFile";
+
+    private static final String COUNT_BY_PREFIX_SQL = "SELECT SUBSTRING(code_postal, 1, 2), COUNT(*) FROM commune "
+            + "WHERE code_postal IS NOT NULL GROUP BY SUBSTRING(code_postal, 1, 2) ORDER BY 1";
+    private static final String COUNT_NULL_SQL = "SELECT COUNT(*) FROM commune WHERE code_postal IS NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String outputFile;
+
+    public CommuneExportPartitioner(DataSource dataSource, String outputFile) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.outputFile = outputFile;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        List<String> prefixes = new ArrayList<>();
+        List<Long> counts = new ArrayList<>();
+        jdbcTemplate.query(COUNT_BY_PREFIX_SQL, rs -> {
+            prefixes.add(rs.getString(1));
+            counts.add(rs.getLong(2));
+        });
+        // Les communes sans code postal sont lues en premier, par la première plage
+        long cumulative = jdbcTemplate.queryForObject(COUNT_NULL_SQL, Long.class);
+        long total = cumulative + counts.stream().mapToLong(Long::longValue).sum();
+
+        // Premier préfixe de chaque plage, sauf la première
+        List<String> boundaries = new ArrayList<>();
+        for (int i = 0; i < prefixes.size(); i++) {
+            if (boundaries.size() + 1 < gridSize && cumulative > 0
+                    && cumulative >= total * (boundaries.size() + 1) / gridSize) {
+                boundaries.add(prefixes.get(i));
+            }
+            cumulative += counts.get(i);
+        }
+
+        Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+        for (int i = 0; i <= boundaries.size(); i++) {
+            ExecutionContext context = new ExecutionContext();
+            context.putInt(PARTITION_INDEX_KEY, i);
+            if (i > 0) {
+                context.putString(FROM_CODE_POSTAL_KEY, boundaries.get(i - 1));
+            }
+            if (i < boundaries.size()) {
+                context.putString(TO_CODE_POSTAL_KEY, boundaries.get(i));
+            }
+            context.putString(PART_FILE_KEY, partFile(outputFile, i).toString());
+            partitions.put("partition" + i, context);
+        }
+        return partitions;
+    }
+
+    public static Path partFile(String outputFile, int partitionIndex) {
+        return Paths.get(outputFile + ".part" + partitionIndex);
+    }
+}
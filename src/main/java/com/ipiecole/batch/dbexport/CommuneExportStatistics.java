@@ -0,0 +1,124 @@
+package com.ipiecole.batch.dbexport;
+
+import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.utils.HyperLogLog;
+import org.springframework.batch.item.file.FlatFileFooterCallback;
+import org.springframework.batch.item.file.FlatFileHeaderCallback;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+// Statistiques de l'entête et du pied de page calculées sur les communes écrites, pendant l'export
+// (au lieu des requêtes COUNT(DISTINCT ...) de CustomHeaderCallback et CustomFooterCallback, qui relisent la table) :
+//  - codes postaux distincts : les communes arrivent triées par code postal, il suffit de compter les changements
+//  - noms distincts : ensemble des noms (exact) ou HyperLogLog (estimation en mémoire constante, pour les grandes tables)
+// Comme COUNT(DISTINCT ...), les valeurs absentes ne sont pas comptées
+// Les statistiques de plages de codes postaux disjointes (export partitionné) s'additionnent avec merge()
+public class CommuneExportStatistics implements FlatFileHeaderCallback, FlatFileFooterCallback {
+
+    private final Set<String> noms;
+    private final HyperLogLog nomsHyperLogLog;
+    private long communes;
+    private long codesPostaux;
+    private String lastCodePostal;
+
+    private CommuneExportStatistics(Set<String> noms, HyperLogLog nomsHyperLogLog) {
+        this.noms = noms;
+        this.nomsHyperLogLog = nomsHyperLogLog;
+    }
+
+    public static CommuneExportStatistics exact() {
+        return new CommuneExportStatistics(new HashSet<>(), null);
+    }
+
+    public static CommuneExportStatistics hyperLogLog(int precision) {
+        return new CommuneExportStatistics(null, new HyperLogLog(precision));
+    }
+
+    // Statistiques du même type, vides
+    public CommuneExportStatistics newEmpty() {
+        return noms != null ? exact() : hyperLogLog(nomsHyperLogLog.getPrecision());
+    }
+
+    public void add(Commune commune) {
+        add(commune.getCodePostal(), commune.getNom());
+    }
+
+    private void add(String codePostal, String nom) {
+        communes++;
+        if (codePostal != null && !codePostal.equals(lastCodePostal)) {
+            codesPostaux++;
+            lastCodePostal = codePostal;
+        }
+        if (nom != null) {
+            if (noms != null) {
+                noms.add(nom);
+            } else {
+                nomsHyperLogLog.add(nom);
+            }
+        }
+    }
+
+    // Reprise : statistiques des lignes déjà écrites dans un fichier (lignes de CommuneLineAggregator, sans pied de page)
+    public void addLines(Path file, Charset encoding, int linesToSkip) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, encoding)) {
+            String line;
+            for (int i = 0; i < linesToSkip; i++) {
+                reader.readLine();
+            }
+            while ((line = reader.readLine()) != null) {
+                int codeInsee = line.indexOf(" - ");
+                int nom = line.indexOf(" - ", codeInsee + 3) + 3;
+                int coordinates = line.lastIndexOf(" : ");
+                if (codeInsee < 0 || nom < 3 || coordinates < nom) {
+                    throw new IOException("Ligne d'export invalide dans " + file + " : " + line);
+                }
+                String codePostal = line.substring(0, codeInsee).trim();
+                add(codePostal.isEmpty() ? null : codePostal, nom == coordinates ? null : line.substring(nom, coordinates));
+            }
+        }
+    }
+
+    // Ajoute les statistiques de la plage de codes postaux suivante (aucun code postal commun entre les plages)
+    public void merge(CommuneExportStatistics other) {
+        communes += other.communes;
+        codesPostaux += other.codesPostaux;
+        if (other.lastCodePostal != null) {
+            lastCodePostal = other.lastCodePostal;
+        }
+        if (noms != null) {
+            noms.addAll(other.noms);
+        } else {
+            nomsHyperLogLog.merge(other.nomsHyperLogLog);
+        }
+    }
+
+    public long getCommunes() {
+        return communes;
+    }
+
+    public long getCodesPostaux() {
+        return codesPostaux;
+    }
+
+    public long getNoms() {
+        return noms != null ? noms.size() : nomsHyperLogLog.count();
+    }
+
+    // Mêmes libellés que CustomHeaderCallback et CustomFooterCallback
+    @Override
+    public void writeHeader(Writer writer) throws IOException {
+        writer.write("Total codes postaux : " + getCodesPostaux());
+    }
+
+    @Override
+    public void writeFooter(Writer writer) throws IOException {
+        writer.write("Total communes : " + getNoms());
+    }
+}
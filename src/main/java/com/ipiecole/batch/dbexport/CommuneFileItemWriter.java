@@ -0,0 +1,228 @@
+package com.ipiecole.batch.dbexport;
+
+import com.ipiecole.batch.model.Commune;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.file.FlatFileFooterCallback;
+import org.springframework.batch.item.file.FlatFileHeaderCallback;
+import org.springframework.batch.item.file.FlatFileItemWriter;
+import org.springframework.batch.item.support.AbstractItemStreamItemWriter;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// Ecriture du fichier d'export des communes, alternative au FlatFileItemWriter produisant les mêmes octets :
+// entête suivie d'un saut de ligne, une ligne par commune (CommuneLineAggregator), pied de page sans saut de ligne final
+// Les lignes sont formatées dans un buffer de caractères réutilisé puis encodées dans un grand buffer d'octets,
+// écrit dans le fichier par un canal NIO une fois plein et à la fin de chaque chunk
+// La position du fichier à la fin du dernier chunk est conservée dans le contexte d'exécution :
+// une reprise tronque le fichier à cette position et continue à la suite, sans réécrire l'entête
+// Avec des statistiques (CommuneExportStatistics), chaque commune écrite y est comptée ; lors d'une reprise,
+// elles sont recalculées à partir des lignes déjà écrites
+// Entête calculée pendant l'écriture : les lignes sont écrites sans entête ni pied de page dans un fichier intermédiaire,
+// assemblé par la step suivante (cf. CommuneExportAssemblyTasklet)
+public class CommuneFileItemWriter extends AbstractItemStreamItemWriter<Commune> {
+
+    private static final String POSITION = "position";
+    private static final String WRITTEN = "written";
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private Path path;
+    private CommuneLineAggregator lineAggregator = new CommuneLineAggregator();
+    private Charset encoding = Charset.forName(FlatFileItemWriter.DEFAULT_CHARSET);
+    private String lineSeparator = FlatFileItemWriter.DEFAULT_LINE_SEPARATOR;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private FlatFileHeaderCallback headerCallback;
+    private FlatFileFooterCallback footerCallback;
+    private CommuneExportStatistics statistics;
+
+    private FileChannel channel;
+    private CharsetEncoder encoder;
+    private ByteBuffer bytes;
+    private final StringBuilder line = new StringBuilder(128);
+    private char[] chars = new char[128];
+    private CharBuffer charBuffer = CharBuffer.wrap(chars);
+    private long written;
+
+    public CommuneFileItemWriter() {
+        setName(ClassUtils.getShortName(CommuneFileItemWriter.class));
+    }
+
+    public void setPath(Path path) {
+        this.path = path;
+    }
+
+    public void setLineAggregator(CommuneLineAggregator lineAggregator) {
+        this.lineAggregator = lineAggregator;
+    }
+
+    public void setEncoding(Charset encoding) {
+        this.encoding = encoding;
+    }
+
+    public void setLineSeparator(String lineSeparator) {
+        this.lineSeparator = lineSeparator;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public void setHeaderCallback(FlatFileHeaderCallback headerCallback) {
+        this.headerCallback = headerCallback;
+    }
+
+    public void setFooterCallback(FlatFileFooterCallback footerCallback) {
+        this.footerCallback = footerCallback;
+    }
+
+    public void setStatistics(CommuneExportStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        super.open(executionContext);
+        Assert.notNull(path, "Le fichier à écrire doit être renseigné");
+        encoder = encoding.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        bytes = ByteBuffer.allocateDirect(bufferSize);
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            String positionKey = getExecutionContextKey(POSITION);
+            if (executionContext.containsKey(positionKey)) {
+                // Reprise : les octets écrits après le dernier chunk validé sont supprimés
+                long position = executionContext.getLong(positionKey);
+                channel.truncate(position);
+                channel.position(position);
+                written = executionContext.getLong(getExecutionContextKey(WRITTEN), 0);
+                if (statistics != null) {
+                    // Entête (d'une seule ligne) écrite à l'ouverture : ignorée
+                    statistics.addLines(path, encoding, headerCallback != null ? 1 : 0);
+                }
+            } else {
+                channel.truncate(0);
+                written = 0;
+                if (headerCallback != null) {
+                    StringWriter header = new StringWriter();
+                    headerCallback.writeHeader(header);
+                    line.setLength(0);
+                    line.append(header).append(lineSeparator);
+                    encode(line);
+                    flush();
+                }
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Impossible d'ouvrir le fichier " + path, e);
+        }
+    }
+
+    @Override
+    public void write(List<? extends Commune> items) throws Exception {
+        long chunkStart = channel.position();
+        try {
+            for (Commune item : items) {
+                line.setLength(0);
+                lineAggregator.append(item, line);
+                line.append(lineSeparator);
+                encode(line);
+            }
+            flush();
+        } catch (IOException | RuntimeException e) {
+            // Le chunk sera rejoué (retry, skip) : rien ne doit rester de son écriture partielle
+            bytes.clear();
+            channel.truncate(chunkStart);
+            channel.position(chunkStart);
+            throw e;
+        }
+        if (statistics != null) {
+            for (Commune item : items) {
+                statistics.add(item);
+            }
+        }
+        written += items.size();
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+        if (channel == null) {
+            return;
+        }
+        try {
+            executionContext.putLong(getExecutionContextKey(POSITION), channel.position());
+            executionContext.putLong(getExecutionContextKey(WRITTEN), written);
+        } catch (IOException e) {
+            throw new ItemStreamException("Impossible de lire la position du fichier " + path, e);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        super.close();
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (footerCallback != null) {
+                StringWriter footer = new StringWriter();
+                footerCallback.writeFooter(footer);
+                line.setLength(0);
+                line.append(footer);
+                encode(line);
+            }
+            flush();
+            channel.close();
+        } catch (IOException e) {
+            throw new ItemStreamException("Impossible de terminer le fichier " + path, e);
+        } finally {
+            channel = null;
+            bytes = null;
+        }
+    }
+
+    // Nombre de lignes écrites (hors entête et pied de page)
+    public long getWritten() {
+        return written;
+    }
+
+    private void encode(StringBuilder text) throws IOException {
+        int length = text.length();
+        if (length > chars.length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+            charBuffer = CharBuffer.wrap(chars);
+        }
+        text.getChars(0, length, chars, 0);
+        charBuffer.clear().limit(length);
+        encoder.reset();
+        CoderResult result = encoder.encode(charBuffer, bytes, true);
+        while (result.isOverflow()) {
+            flush();
+            result = encoder.encode(charBuffer, bytes, true);
+        }
+        while (encoder.flush(bytes).isOverflow()) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
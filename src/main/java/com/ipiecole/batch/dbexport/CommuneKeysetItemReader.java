@@ -0,0 +1,142 @@
+package com.ipiecole.batch.dbexport;
+
+import com.ipiecole.batch.model.Commune;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Lecture des communes triées par code postal puis code Insee, page par page à partir de la dernière clé lue
+// (pagination par clé : chaque page est une recherche dans l'index COMMUNE(code_postal, code_insee),
+// contrairement à la pagination par OFFSET dont le coût de chaque page augmente avec sa position)
+// Les communes sans code postal sont lues en premier, comme le tri de la base (NULL avant les autres valeurs)
+// La dernière clé lue est conservée dans le contexte d'exécution : une reprise repart directement de cette clé
+// La lecture peut être limitée à une plage de codes postaux [fromCodePostal, toCodePostal[ (export partitionné),
+// les communes sans code postal faisant partie de la première plage (fromCodePostal null)
+public class CommuneKeysetItemReader extends ItemStreamSupport implements ItemStreamReader<Commune> {
+
+    private static final String LAST_CODE_POSTAL = "lastCodePostal";
+    private static final String LAST_CODE_INSEE = "lastCodeInsee";
+
+    private static final String SELECT = "SELECT code_insee, nom, code_postal, latitude, longitude FROM commune ";
+    private static final String ORDER_BY = " ORDER BY code_postal, code_insee LIMIT ?";
+    private static final String NULL_FIRST_PAGE_SQL = SELECT + "WHERE code_postal IS NULL ORDER BY code_insee LIMIT ?";
+    private static final String NULL_NEXT_PAGE_SQL = SELECT + "WHERE code_postal IS NULL AND code_insee > ? ORDER BY code_insee LIMIT ?";
+
+    private static final RowMapper<Commune> ROW_MAPPER = (rs, rowNum) -> new Commune(rs.getString(1), rs.getString(2),
+            rs.getString(3), (Double) rs.getObject(4), (Double) rs.getObject(5));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int pageSize;
+    private final String fromCodePostal;
+    private final String toCodePostal;
+    private final String firstPageSql;
+    private final String nextPageSql;
+
+    // Clé de la dernière commune renvoyée par read() (codeInsee null : aucune commune lue)
+    private String lastCodePostal;
+    private String lastCodeInsee;
+    private boolean nullCodePostalPhase;
+    private boolean finished;
+    private List<Commune> page = Collections.emptyList();
+    private int index;
+
+    public CommuneKeysetItemReader(DataSource dataSource, int pageSize) {
+        this(dataSource, pageSize, null, null);
+    }
+
+    // fromCodePostal (inclus) et toCodePostal (exclu) : null pour ne pas borner la plage
+    public CommuneKeysetItemReader(DataSource dataSource, int pageSize, String fromCodePostal, String toCodePostal) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.pageSize = pageSize;
+        this.fromCodePostal = fromCodePostal;
+        this.toCodePostal = toCodePostal;
+        String upperBound = toCodePostal == null ? "" : " AND code_postal < ?";
+        this.firstPageSql = SELECT + "WHERE code_postal IS NOT NULL"
+                + (fromCodePostal == null ? "" : " AND code_postal >= ?") + upperBound + ORDER_BY;
+        // "code_postal >= ?" permet à la base de démarrer la lecture de l'index à la dernière clé
+        // (avec seulement "code_postal > ? OR (code_postal = ? AND code_insee > ?)", H2 parcourt l'index depuis le début)
+        this.nextPageSql = SELECT + "WHERE code_postal >= ? AND (code_postal > ? OR code_insee > ?)" + upperBound + ORDER_BY;
+        setName("communeKeysetItemReader");
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        lastCodePostal = executionContext.getString(getExecutionContextKey(LAST_CODE_POSTAL), null);
+        lastCodeInsee = executionContext.getString(getExecutionContextKey(LAST_CODE_INSEE), null);
+        // Tant qu'aucune commune avec code postal n'a été lue, on est dans les communes sans code postal
+        nullCodePostalPhase = fromCodePostal == null && lastCodePostal == null;
+        finished = false;
+        page = Collections.emptyList();
+        index = 0;
+    }
+
+    @Override
+    public Commune read() {
+        if (index >= page.size() && !nextPage()) {
+            return null;
+        }
+        Commune commune = page.get(index++);
+        lastCodePostal = commune.getCodePostal();
+        lastCodeInsee = commune.getCodeInsee();
+        return commune;
+    }
+
+    private boolean nextPage() {
+        while (!finished) {
+            if (nullCodePostalPhase) {
+                page = lastCodeInsee == null
+                        ? jdbcTemplate.query(NULL_FIRST_PAGE_SQL, ROW_MAPPER, pageSize)
+                        : jdbcTemplate.query(NULL_NEXT_PAGE_SQL, ROW_MAPPER, lastCodeInsee, pageSize);
+                nullCodePostalPhase = page.size() == pageSize;
+            } else {
+                page = lastCodePostal == null
+                        ? jdbcTemplate.query(firstPageSql, ROW_MAPPER, arguments(fromCodePostal))
+                        : jdbcTemplate.query(nextPageSql, ROW_MAPPER, arguments(lastCodePostal, lastCodePostal, lastCodeInsee));
+                finished = page.size() < pageSize;
+            }
+            index = 0;
+            if (!page.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Paramètres de la requête : clé de départ, puis borne haute et taille de la page
+    private Object[] arguments(String... keys) {
+        List<Object> arguments = new ArrayList<>();
+        for (String key : keys) {
+            if (key != null) {
+                arguments.add(key);
+            }
+        }
+        if (toCodePostal != null) {
+            arguments.add(toCodePostal);
+        }
+        arguments.add(pageSize);
+        return arguments.toArray();
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (lastCodeInsee != null) {
+            executionContext.putString(getExecutionContextKey(LAST_CODE_INSEE), lastCodeInsee);
+            if (lastCodePostal != null) {
+                executionContext.putString(getExecutionContextKey(LAST_CODE_POSTAL), lastCodePostal);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        page = Collections.emptyList();
+    }
+}
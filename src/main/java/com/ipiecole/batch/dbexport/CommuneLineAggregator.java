@@ -0,0 +1,117 @@
+package com.ipiecole.batch.dbexport;
+
+import com.ipiecole.batch.model.Commune;
+import org.springframework.batch.item.file.transform.LineAggregator;
+
+import java.text.DecimalFormatSymbols;
+import java.util.IllegalFormatConversionException;
+import java.util.Locale;
+
+// Ligne d'export d'une commune, identique à FormatterLineAggregator avec le format "%5s - %5s - %s : %.5f %.5f"
+// (cf. CommunesDBExportBatch) sans String.format : champs lus par les getters, coordonnées formatées à la main
+// Arrondi des coordonnées : String.format arrondit au plus proche (à égalité, en s'éloignant de zéro) la plus courte
+// écriture décimale du double. Le calcul direct sur le double donne le même résultat sauf quand la 6ème décimale
+// est très proche d'une égalité : dans ce cas (rare), la valeur est formatée par String.format
+// Séparateur décimal et chiffres de la locale, comme String.format (Locale.getDefault() par défaut)
+// Valeurs absentes traitées comme par FormatterLineAggregator (remplacées par "") : texte vide pour les codes et le nom,
+// IllegalFormatConversionException pour les coordonnées
+// Une instance ne doit être utilisée que par un seul thread (buffer réutilisé d'une ligne à l'autre)
+public class CommuneLineAggregator implements LineAggregator<Commune> {
+
+    private static final int FRACTION_DIGITS = 5;
+    private static final double SCALE = 1e5;
+    // Au-delà, l'écart entre le double et son écriture décimale peut dépasser la marge d'arrondi ci-dessous
+    private static final double MAX_FAST_VALUE = 1e7;
+    private static final double ROUNDING_MARGIN = 1e-3;
+
+    private final Locale locale;
+    private final char decimalSeparator;
+    private final char zeroDigit;
+    private final StringBuilder line = new StringBuilder(128);
+
+    public CommuneLineAggregator() {
+        this(Locale.getDefault());
+    }
+
+    public CommuneLineAggregator(Locale locale) {
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+        this.locale = locale;
+        this.decimalSeparator = symbols.getDecimalSeparator();
+        this.zeroDigit = symbols.getZeroDigit();
+    }
+
+    @Override
+    public String aggregate(Commune item) {
+        line.setLength(0);
+        append(item, line);
+        return line.toString();
+    }
+
+    // Ajoute la ligne (sans séparateur de fin de ligne) à la fin de out
+    public void append(Commune item, StringBuilder out) {
+        appendPadded(item.getCodePostal(), out);
+        out.append(" - ");
+        appendPadded(item.getCodeInsee(), out);
+        out.append(" - ");
+        if (item.getNom() != null) {
+            out.append(item.getNom());
+        }
+        out.append(" : ");
+        appendCoordinate(item.getLatitude(), out);
+        out.append(' ');
+        appendCoordinate(item.getLongitude(), out);
+    }
+
+    // "%5s" : complété à gauche par des espaces jusqu'à 5 caractères
+    private static void appendPadded(String value, StringBuilder out) {
+        String text = value == null ? "" : value;
+        for (int i = text.length(); i < 5; i++) {
+            out.append(' ');
+        }
+        out.append(text);
+    }
+
+    // "%.5f"
+    private void appendCoordinate(Double value, StringBuilder out) {
+        if (value == null) {
+            throw new IllegalFormatConversionException('f', String.class);
+        }
+        double v = value;
+        if (Double.isNaN(v) || Double.isInfinite(v) || Math.abs(v) >= MAX_FAST_VALUE) {
+            out.append(String.format(locale, "%.5f", v));
+            return;
+        }
+        double scaled = Math.abs(v) * SCALE;
+        double floor = Math.floor(scaled);
+        double fraction = scaled - floor;
+        if (Math.abs(fraction - 0.5) < ROUNDING_MARGIN) {
+            out.append(String.format(locale, "%.5f", v));
+            return;
+        }
+        long rounded = (long) floor + (fraction > 0.5 ? 1 : 0);
+        // Le signe est conservé pour -0.0 et les valeurs négatives arrondies à zéro, comme String.format
+        if (Double.doubleToRawLongBits(v) < 0) {
+            out.append('-');
+        }
+        appendDigits(rounded / 100000, 1, out);
+        out.append(decimalSeparator);
+        appendDigits(rounded % 100000, FRACTION_DIGITS, out);
+    }
+
+    // Chiffres de value, complétés à gauche par des zéros jusqu'à minDigits chiffres
+    private void appendDigits(long value, int minDigits, StringBuilder out) {
+        int digits = 1;
+        for (long n = value / 10; n > 0; n /= 10) {
+            digits++;
+        }
+        for (int i = digits; i < minDigits; i++) {
+            out.append(zeroDigit);
+        }
+        int start = out.length();
+        out.setLength(start + digits);
+        for (int i = start + digits - 1; i >= start; i--) {
+            out.setCharAt(i, (char) (zeroDigit + value % 10));
+            value /= 10;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.ipiecole.batch.dbexport;
 
+import com.ipiecole.batch.chunk.ChunkSizing;
+import com.ipiecole.batch.diagnostics.ItemDiagnostics;
+import com.ipiecole.batch.metrics.BatchMetricsListener;
 import com.ipiecole.batch.model.Commune;
 import com.ipiecole.batch.repository.CommuneReaderRepository;
 import com.ipiecole.batch.repository.CommuneRepository;
@@ -9,8 +12,12 @@ import org.springframework.batch.core.configuration.annotation.EnableBatchProces
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.builder.FlowBuilder;
+import org.springframework.batch.core.job.builder.FlowJobBuilder;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamWriter;
 import org.springframework.batch.item.data.RepositoryItemReader;
 import org.springframework.batch.item.database.JpaPagingItemReader;
 import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
@@ -23,15 +30,20 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.*;
 
 
 @Configuration
 @EnableBatchProcessing
-public class CommunesDBExportBatch<Commune> {
+public class CommunesDBExportBatch {
 
     @Autowired
     public JobBuilderFactory jobBuilderFactory;
@@ -48,10 +60,60 @@ public class CommunesDBExportBatch<Commune> {
     @Autowired
     public CommuneReaderRepository communeReaderRepository;
 
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ItemDiagnostics itemDiagnostics;
+
+    @Autowired
+    private BatchMetricsListener batchMetricsListener;
+
+    @Autowired
+    private ChunkSizing chunkSizing;
+
     // Correspond au pas de commit
     @Value("${importFile.chunkSize}")
     private Integer chunkSize;
 
+    // Lecture des communes à exporter : "keyset" (pagination par clé, cf. CommuneKeysetItemReader)
+    // ou "repository" (RepositoryItemReader, pagination par OFFSET)
+    @Value("${exportFile.reader:keyset}")
+    private String readerType;
+
+    // Nombre de communes lues par requête en mode "keyset"
+    @Value("${exportFile.pageSize:1000}")
+    private Integer pageSize;
+
+    // Ecriture du fichier : "fixed" (CommuneFileItemWriter, format écrit à la main)
+    // ou "formatter" (FlatFileItemWriter et FormatterLineAggregator), mêmes octets en sortie
+    @Value("${exportFile.writer:fixed}")
+    private String writerType;
+
+    // Taille du buffer d'écriture en mode "fixed"
+    @Value("${exportFile.bufferSize:1048576}")
+    private Integer bufferSize;
+
+    // Entête et pied de page en mode "fixed" : calculés pendant l'écriture (cf. CommuneExportStatistics),
+    // noms distincts comptés exactement ("exact") ou estimés ("hyperloglog", mémoire constante)
+    @Value("${exportFile.statistics:exact}")
+    private String statisticsType;
+
+    @Value("${exportFile.hyperLogLogPrecision:14}")
+    private Integer hyperLogLogPrecision;
+
+    // Mode d'export : "sequential" (une seule step) ou "partitioned" (plages de codes postaux écrites en parallèle
+    // dans des fichiers temporaires, puis concaténées dans l'ordre)
+    @Value("${exportFile.mode:sequential}")
+    private String exportMode;
+
+    // Nombre de partitions (et de threads) utilisées en mode "partitioned"
+    @Value("${exportFile.gridSize:4}")
+    private Integer gridSize;
+
+    @Value("${exportFile.output:target/test.txt}")
+    private String outputFile;
+
 
     //////////////////////////////////////////
     ////////////// TASKLETS //////////////////
@@ -78,13 +140,38 @@ public class CommunesDBExportBatch<Commune> {
         List<Commune> list = new ArrayList<Commune>();
         repositoryItemReader.setArguments(list);
         repositoryItemReader.setPageSize(40);
-        HashMap<String, Sort.Direction> sorts = new HashMap<>();
+        // LinkedHashMap : le tri se fait bien par code postal puis par code Insee
+        Map<String, Sort.Direction> sorts = new LinkedHashMap<>();
         sorts.put("codePostal", Sort.Direction.ASC);
         sorts.put("codeInsee", Sort.Direction.ASC);
         repositoryItemReader.setSort(sorts);
         return repositoryItemReader;
     }
 
+    // Lecture par clé (code postal, code Insee) : coût constant par page quelle que soit la taille de la table
+    @Bean
+    public CommuneKeysetItemReader communeKeysetItemReader() {
+        return new CommuneKeysetItemReader(dataSource, pageSize);
+    }
+
+    // Lecture par clé d'une plage de codes postaux, calculée par le partitioner (mode "partitioned")
+    @Bean
+    @StepScope
+    public CommuneKeysetItemReader communeKeysetPartitionItemReader(
+            @Value("#{stepExecutionContext['fromCodePostal']}") String fromCodePostal,
+            @Value("#{stepExecutionContext['toCodePostal']}") String toCodePostal) {
+        CommuneKeysetItemReader reader = new CommuneKeysetItemReader(dataSource, pageSize, fromCodePostal, toCodePostal);
+        reader.setName("communeKeysetPartitionItemReader");
+        return reader;
+    }
+
+    private ItemStreamReader<Commune> exportItemReader() {
+        if ("repository".equals(readerType)) {
+            return repositoryItemReaderWithParams();
+        }
+        return communeKeysetItemReader();
+    }
+
     /* 2ème méthode possible avec le JpaPagingItemReader
     @Bean
     public JpaPagingItemReader<Commune> repositoryItemReaderWithParams2() {
@@ -105,6 +192,82 @@ public class CommunesDBExportBatch<Commune> {
     @Bean
     @StepScope
     public FlatFileItemWriter<Commune> flatFileItemWriter() {
+        FlatFileItemWriter<Commune> flatFileItemWriter =
+                new FlatFileItemWriter<>();
+        flatFileItemWriter.setName("txtWriter");
+
+        flatFileItemWriter.setResource(
+                new FileSystemResource(outputFile));
+        flatFileItemWriter.setLineAggregator(communeLineAggregator());
+
+        // Ecriture de l'header et du footer (l'entête est écrite avant les lignes : comptages par requête)
+        flatFileItemWriter.setHeaderCallback(customHeaderCallback());
+        flatFileItemWriter.setFooterCallback(customFooterCallback());
+
+        return flatFileItemWriter;
+    }
+
+    // Ecriture d'une plage de codes postaux dans son fichier temporaire (mode "partitioned")
+    // sans entête ni pied de page, ajoutés à l'assemblage
+    @Bean
+    @StepScope
+    public FlatFileItemWriter<Commune> partFileItemWriter(
+            @Value("#{stepExecutionContext['partFile']}") String partFile) {
+        FlatFileItemWriter<Commune> flatFileItemWriter = new FlatFileItemWriter<>();
+        flatFileItemWriter.setName("partWriter");
+        flatFileItemWriter.setResource(new FileSystemResource(partFile));
+        flatFileItemWriter.setLineAggregator(communeLineAggregator());
+        return flatFileItemWriter;
+    }
+
+    // Lignes écrites dans un fichier intermédiaire : l'entête et le pied de page sont ajoutés par la step d'assemblage,
+    // une fois les codes postaux comptés
+    @Bean
+    @StepScope
+    public CommuneFileItemWriter communeFileItemWriter() {
+        CommuneFileItemWriter writer = new CommuneFileItemWriter();
+        writer.setName("txtWriter");
+        Path body = CommuneExportAssemblyTasklet.bodyFile(outputFile);
+        writer.setPath(body);
+        writer.setBufferSize(bufferSize);
+        writer.setStatistics(communeExportFileAssemblyTasklet().statisticsFor(body.toString()));
+        return writer;
+    }
+
+    @Bean
+    @StepScope
+    public CommuneFileItemWriter communePartFileItemWriter(
+            @Value("#{stepExecutionContext['partFile']}") String partFile) {
+        CommuneFileItemWriter writer = new CommuneFileItemWriter();
+        writer.setName("partWriter");
+        writer.setPath(Paths.get(partFile));
+        writer.setBufferSize(bufferSize);
+        writer.setStatistics(communeExportAssemblyTasklet().statisticsFor(partFile));
+        return writer;
+    }
+
+    private ItemStreamWriter<Commune> exportItemWriter() {
+        if ("formatter".equals(writerType)) {
+            return flatFileItemWriter();
+        }
+        return communeFileItemWriter();
+    }
+
+    private ItemStreamWriter<Commune> exportPartItemWriter() {
+        if ("formatter".equals(writerType)) {
+            return partFileItemWriter(null);
+        }
+        return communePartFileItemWriter(null);
+    }
+
+    private CommuneExportStatistics exportStatistics() {
+        if ("hyperloglog".equals(statisticsType)) {
+            return CommuneExportStatistics.hyperLogLog(hyperLogLogPrecision);
+        }
+        return CommuneExportStatistics.exact();
+    }
+
+    private LineAggregator<Commune> communeLineAggregator() {
         BeanWrapperFieldExtractor<Commune> bwfe = new BeanWrapperFieldExtractor<Commune>();
         bwfe.setNames(new String[]{"codePostal", "codeInsee", "nom", "latitude", "longitude"});
 
@@ -113,20 +276,45 @@ public class CommunesDBExportBatch<Commune> {
         FormatterLineAggregator<Commune> agg = new FormatterLineAggregator<Commune>();
         agg.setFormat("%5s - %5s - %s : %.5f %.5f");
         agg.setFieldExtractor(bwfe);
+        return agg;
+    }
 
-        FlatFileItemWriter<Commune> flatFileItemWriter =
-                new FlatFileItemWriter<>();
-        flatFileItemWriter.setName("txtWriter");
+    @Bean
+    public CustomHeaderCallback customHeaderCallback() {
+        return new CustomHeaderCallback(communeRepository);
+    }
 
-        flatFileItemWriter.setResource(
-                new FileSystemResource("target/test.txt"));
-        flatFileItemWriter.setLineAggregator(agg);
+    @Bean
+    public CustomFooterCallback customFooterCallback() {
+        return new CustomFooterCallback(communeRepository);
+    }
 
-        // Ecriture de l'header et du footer
-        flatFileItemWriter.setHeaderCallback(new CustomHeaderCallback(communeRepository));
-        flatFileItemWriter.setFooterCallback(new CustomFooterCallback(communeRepository));
+    // Concaténation des fichiers des partitions (mode "partitioned")
+    @Bean
+    public CommuneExportAssemblyTasklet communeExportAssemblyTasklet() {
+        return new CommuneExportAssemblyTasklet(outputFile, "exportFilePartition", exportStatistics());
+    }
 
-        return flatFileItemWriter;
+    // Entête et pied de page ajoutés au fichier intermédiaire de l'export séquentiel (writer "fixed")
+    @Bean
+    public CommuneExportAssemblyTasklet communeExportFileAssemblyTasklet() {
+        return new CommuneExportAssemblyTasklet(outputFile, null, exportStatistics());
+    }
+
+    @Bean
+    public CommuneExportPartitioner communeExportPartitioner() {
+        return new CommuneExportPartitioner(dataSource, outputFile);
+    }
+
+    @Bean
+    public TaskExecutor exportTaskExecutor() {
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(gridSize);
+        taskExecutor.setMaxPoolSize(gridSize);
+        taskExecutor.setThreadNamePrefix("exportFile-");
+        // Threads daemon : le pool n'empêche pas l'arrêt de l'application une fois le job terminé
+        taskExecutor.setDaemon(true);
+        return taskExecutor;
     }
 
 
@@ -138,7 +326,13 @@ public class CommunesDBExportBatch<Commune> {
     // Le SkipListener définit les méthodes onSkipInRead, onSkipInProcess, onSkipInWrite
     @Bean
     public CommunesDBExportSkipListener communesDBExportSkipListener() {
-        return new CommunesDBExportSkipListener();
+        return new CommunesDBExportSkipListener(itemDiagnostics);
+    }
+
+    // Diagnostics des communes lues et écrites (échantillonnés, désactivés par défaut, cf. ItemDiagnostics)
+    @Bean
+    public CommuneExportItemListener communeExportItemListener() {
+        return new CommuneExportItemListener(itemDiagnostics);
     }
 
 
@@ -156,11 +350,11 @@ public class CommunesDBExportBatch<Commune> {
 
     @Bean
     public Step stepExport() {
-        return stepBuilderFactory.get("exportFile")
-                .<Commune, Commune>chunk(chunkSize)
-                .reader(repositoryItemReaderWithParams())
-                .writer(flatFileItemWriter())
+        return chunkSizing.<Commune, Commune>chunk(stepBuilderFactory.get("exportFile"), chunkSize)
+                .reader(exportItemReader())
+                .writer(exportItemWriter())
                 .listener(communesDBExportSkipListener())
+                .listener(communeExportItemListener())
 
                 // gestion erreur => relance du traitement en cas d'indisponibilité limitée à 3 fois ici
                 .faultTolerant()
@@ -171,6 +365,52 @@ public class CommunesDBExportBatch<Commune> {
                 .skipLimit(10)
                 .skip(FlatFileParseException.class)
 
+                // mesures (durée des chunks, débit, éléments ignorés, tentatives en échec)
+                .listener(batchMetricsListener.retryListener("exportFile"))
+                .listener(batchMetricsListener)
+                .build();
+    }
+
+
+    // Variante partitionnée : chaque plage de codes postaux est écrite dans son propre fichier, en parallèle
+    @Bean
+    public Step stepExportPartitioned() {
+        return stepBuilderFactory.get("exportFilePartitioned")
+                .partitioner("exportFilePartition", communeExportPartitioner())
+                .step(stepExportPartition())
+                .gridSize(gridSize)
+                .taskExecutor(exportTaskExecutor())
+                .build();
+    }
+
+    @Bean
+    public Step stepExportPartition() {
+        return chunkSizing.<Commune, Commune>chunk(stepBuilderFactory.get("exportFilePartition"), chunkSize)
+                .reader(communeKeysetPartitionItemReader(null, null))
+                .writer(exportPartItemWriter())
+                .listener(communesDBExportSkipListener())
+                .listener(communeExportItemListener())
+                .faultTolerant()
+                .retryLimit(3)
+                .retry(SQLException.class)
+                .skipLimit(10)
+                .skip(FlatFileParseException.class)
+                .listener(batchMetricsListener.retryListener("exportFilePartition"))
+                .listener(batchMetricsListener)
+                .build();
+    }
+
+    @Bean
+    public Step stepExportAssembly() {
+        return stepBuilderFactory.get("exportFileAssembly")
+                .tasklet(communeExportAssemblyTasklet())
+                .build();
+    }
+
+    @Bean
+    public Step stepExportFileAssembly() {
+        return stepBuilderFactory.get("exportFileAssembly")
+                .tasklet(communeExportFileAssemblyTasklet())
                 .build();
     }
 
@@ -180,13 +420,24 @@ public class CommunesDBExportBatch<Commune> {
     //////////////////////////////////////
 
     // Ordonnancement des steps
+    // L'assemblage est une step à part entière : une erreur lors de l'écriture du fichier final fait échouer le job
+    // (les erreurs des listeners afterStep sont seulement journalisées), la reprise ne relance que l'assemblage
     @Bean
     @Qualifier("exportCommunes")
     public Job exportCommunes(Step stepExport){
-        return jobBuilderFactory.get("exportCommunes")
+        FlowBuilder<FlowJobBuilder> flow = jobBuilderFactory.get("exportCommunes")
                 .incrementer(new RunIdIncrementer())
-                .flow(stepExportTasklet())
-                .next(stepExport())
-                .end().build();
+                .listener(batchMetricsListener)
+                .flow(stepExportTasklet());
+        if ("partitioned".equals(exportMode)) {
+            flow = flow.next(stepExportPartitioned())
+                    .next(stepExportAssembly());
+        } else if ("formatter".equals(writerType)) {
+            flow = flow.next(stepExport);
+        } else {
+            flow = flow.next(stepExport)
+                    .next(stepExportFileAssembly());
+        }
+        return flow.end().build();
     }
 }
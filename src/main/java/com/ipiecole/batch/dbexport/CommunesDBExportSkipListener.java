@@ -1,5 +1,6 @@
 package com.ipiecole.batch.dbexport;
 
+import com.ipiecole.batch.diagnostics.ItemDiagnostics;
 import com.ipiecole.batch.dto.CommuneCSV;
 import com.ipiecole.batch.model.Commune;
 import org.slf4j.Logger;
@@ -10,22 +11,35 @@ public class CommunesDBExportSkipListener implements SkipListener<CommuneCSV, Co
 
     Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    // Eléments ignorés toujours journalisés, dans la limite de débit des diagnostics (cf. ItemDiagnostics)
+    private final ItemDiagnostics.Probe skipProbe;
+
+    public CommunesDBExportSkipListener(ItemDiagnostics diagnostics) {
+        this.skipProbe = diagnostics.rateLimited();
+    }
+
     // fournis l'implementation de cette méthode pour écouter les évènements sautés pendant l'export
     @Override
     public void onSkipInRead(Throwable t) {
-        logger.warn("Skip in Read => " + t.getMessage());
+        if (skipProbe.sample()) {
+            logger.warn("Skip in Read => {}", t.getMessage());
+        }
     }
 
     // fournis l'implementation de cette méthode pour écouter les évènements sautés pendant l'écriture d'un enregistrement
     @Override
     public void onSkipInWrite(Commune item, Throwable t) {
-        logger.warn("Skip in Write => " + item.toString() + ", " + t.getMessage());
+        if (skipProbe.sample()) {
+            logger.warn("Skip in Write => {}, {}", item, t.getMessage());
+        }
     }
 
     // permet de lister les évènements sautés pendant le traitement d'export
     @Override
     public void onSkipInProcess(CommuneCSV item, Throwable t) {
-        logger.warn("Skip in Process => " + item.toString() + ", " + t.getMessage());
+        if (skipProbe.sample()) {
+            logger.warn("Skip in Process => {}, {}", item, t.getMessage());
+        }
     }
 }
 
@@ -0,0 +1,23 @@
+package com.ipiecole.batch.diagnostics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Diagnostics par élément partagés par les jobs d'import et d'export (cf. ItemDiagnostics)
+@Configuration
+public class DiagnosticsConfiguration {
+
+    // Echantillonnage par step : step=off|all|every:N|first:N, séparés par des virgules (vide : aucun diagnostic)
+    @Value("${diagnostics.steps:}")
+    private String diagnosticsSteps;
+
+    // Nombre maximum de messages de diagnostics par seconde, toutes steps confondues
+    @Value("${diagnostics.maxPerSecond:20}")
+    private Double diagnosticsMaxPerSecond;
+
+    @Bean
+    public ItemDiagnostics itemDiagnostics() {
+        return new ItemDiagnostics(diagnosticsSteps, diagnosticsMaxPerSecond);
+    }
+}
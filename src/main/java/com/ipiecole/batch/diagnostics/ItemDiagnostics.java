@@ -0,0 +1,201 @@
+package com.ipiecole.batch.diagnostics;
+
+import com.ipiecole.batch.utils.TokenBucketRateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Diagnostics par élément des listeners d'import et d'export (éléments lus, traités, écrits, ignorés)
+//  - désactivés par défaut : le listener ne lit qu'un champ volatile, aucun message n'est construit
+//  - échantillonnage par step (diagnostics.steps, ex : importFile=every:1000,exportFile=first:2) :
+//    un élément sur N (every:N), les N premiers de chaque chunk (first:N), tous (all) ou aucun (off)
+//    (les partitions d'une step, "importFilePartition:partition0"..., suivent le réglage de "importFilePartition")
+//  - débit total des messages limité (diagnostics.maxPerSecond) : les messages au-delà sont ignorés et comptés
+//  - réglage modifiable pendant l'exécution, step par step (opération JMX configure, ex : importFile, every:100)
+// Les messages sont paramétrés ({} de SLF4J) : les toString() des éléments ne sont appelés que pour les messages écrits
+@ManagedResource(objectName = "com.ipiecole.batch:type=ItemDiagnostics")
+public class ItemDiagnostics {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Map<String, StepSettings> steps = new ConcurrentHashMap<>();
+    private final TokenBucketRateLimiter rateLimiter;
+    private final AtomicLong dropped = new AtomicLong();
+
+    public ItemDiagnostics(String configuration, double maxPerSecond) {
+        this.rateLimiter = new TokenBucketRateLimiter(maxPerSecond, (int) Math.max(1, maxPerSecond));
+        if (configuration != null) {
+            for (String entry : configuration.split(",")) {
+                if (entry.isBlank()) {
+                    continue;
+                }
+                int separator = entry.indexOf('=');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Réglage de diagnostics invalide (step=échantillonnage attendu) : " + entry);
+                }
+                configure(entry.substring(0, separator).trim(), entry.substring(separator + 1).trim());
+            }
+        }
+    }
+
+    // Sonde d'un type d'événement (lecture, traitement, écriture...) d'une step : compteurs propres, réglage de la step
+    public Probe probe(String stepName) {
+        return new Probe(this, settings(stepName));
+    }
+
+    // Sonde toujours active, soumise à la seule limite de débit (éléments ignorés, erreurs)
+    public Probe rateLimited() {
+        return new Probe(this, new StepSettings(Sampling.ALL));
+    }
+
+    @ManagedOperation(description = "Echantillonnage des diagnostics d'une step : off, all, every:N ou first:N")
+    public void configure(String stepName, String sampling) {
+        settings(stepName).sampling = Sampling.parse(sampling);
+        logger.info("Diagnostics de la step " + baseName(stepName) + " : " + sampling);
+    }
+
+    @ManagedAttribute(description = "Echantillonnage des diagnostics par step")
+    public String getConfiguration() {
+        Map<String, String> configuration = new TreeMap<>();
+        steps.forEach((step, settings) -> configuration.put(step, settings.sampling.toString()));
+        return configuration.toString();
+    }
+
+    @ManagedAttribute(description = "Messages de diagnostics ignorés par la limite de débit")
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private StepSettings settings(String stepName) {
+        return steps.computeIfAbsent(baseName(stepName), step -> new StepSettings(Sampling.OFF));
+    }
+
+    private static String baseName(String stepName) {
+        int separator = stepName.indexOf(':');
+        return separator < 0 ? stepName : stepName.substring(0, separator);
+    }
+
+    private boolean acquire() {
+        if (rateLimiter.tryAcquire()) {
+            long count = dropped.getAndSet(0);
+            if (count > 0) {
+                logger.info("{} messages de diagnostics ignorés (limite de débit)", count);
+            }
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    // Réglage courant d'une step, partagé par toutes ses sondes
+    private static final class StepSettings {
+        volatile Sampling sampling;
+
+        StepSettings(Sampling sampling) {
+            this.sampling = sampling;
+        }
+    }
+
+    enum Mode {OFF, ALL, EVERY, FIRST}
+
+    static final class Sampling {
+        static final Sampling OFF = new Sampling(Mode.OFF, 0);
+        static final Sampling ALL = new Sampling(Mode.ALL, 0);
+
+        final Mode mode;
+        final int n;
+
+        Sampling(Mode mode, int n) {
+            this.mode = mode;
+            this.n = n;
+        }
+
+        static Sampling parse(String sampling) {
+            String value = sampling.trim().toLowerCase();
+            if (value.equals("off") || value.isEmpty()) {
+                return OFF;
+            }
+            if (value.equals("all")) {
+                return ALL;
+            }
+            int separator = value.indexOf(':');
+            if (separator > 0) {
+                int n = Integer.parseInt(value.substring(separator + 1).trim());
+                switch (value.substring(0, separator)) {
+                    case "every":
+                        if (n > 0) {
+                            return n == 1 ? ALL : new Sampling(Mode.EVERY, n);
+                        }
+                        break;
+                    case "first":
+                        if (n > 0) {
+                            return new Sampling(Mode.FIRST, n);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            throw new IllegalArgumentException("Echantillonnage invalide (off, all, every:N ou first:N attendu) : " + sampling);
+        }
+
+        @Override
+        public String toString() {
+            return mode == Mode.EVERY || mode == Mode.FIRST ? mode.name().toLowerCase() + ":" + n : mode.name().toLowerCase();
+        }
+    }
+
+    // Décide pour chaque événement s'il est journalisé : à appeler avant de construire le moindre message
+    //   if (probe.sample()) logger.info("After Read => {}", item);
+    public static final class Probe {
+
+        // Sonde désactivée (listener utilisé sans diagnostics, avant le début de la step)
+        public static final Probe OFF = new Probe(null, new StepSettings(Sampling.OFF));
+
+        private final ItemDiagnostics diagnostics;
+        private final StepSettings settings;
+        private final AtomicLong count = new AtomicLong();
+        // Nombre d'événements du chunk en cours, par thread (first:N)
+        private final ThreadLocal<int[]> chunkCount = ThreadLocal.withInitial(() -> new int[1]);
+
+        private Probe(ItemDiagnostics diagnostics, StepSettings settings) {
+            this.diagnostics = diagnostics;
+            this.settings = settings;
+        }
+
+        public boolean sample() {
+            Sampling sampling = settings.sampling;
+            switch (sampling.mode) {
+                case OFF:
+                    return false;
+                case EVERY:
+                    if (count.getAndIncrement() % sampling.n != 0) {
+                        return false;
+                    }
+                    break;
+                case FIRST:
+                    if (chunkCount.get()[0]++ >= sampling.n) {
+                        return false;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            return diagnostics.acquire();
+        }
+
+        // Début d'un chunk (first:N)
+        public void startChunk() {
+            if (settings.sampling.mode == Mode.FIRST) {
+                chunkCount.get()[0] = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.ipiecole.batch.dto;
+
+public class PositionCSV {
+    private String identifiant;
+    private String latitude;
+    private String longitude;
+    public String getIdentifiant() {
+        return identifiant;
+    }
+    public void setIdentifiant(String identifiant) {
+        this.identifiant = identifiant;
+    }
+    public String getLatitude() {
+        return latitude;
+    }
+    public void setLatitude(String latitude) {
+        this.latitude = latitude;
+    }
+    public String getLongitude() {
+        return longitude;
+    }
+    public void setLongitude(String longitude) {
+        this.longitude = longitude;
+    }
+
+    @Override
+    public String toString() {
+        return "PositionCSV{" +
+                "identifiant='" + identifiant + '\'' +
+                ", latitude='" + latitude + '\'' +
+                ", longitude='" + longitude + '\'' +
+                '}';
+    }
+}
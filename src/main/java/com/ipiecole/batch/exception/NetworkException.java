@@ -2,5 +2,6 @@ package com.ipiecole.batch.exception;
 
 public class NetworkException extends Exception {
     public NetworkException(String message) {
+        super(message);
     }
 }
@@ -0,0 +1,7 @@
+package com.ipiecole.batch.exception;
+
+public class PositionCSVException extends Exception{
+    public PositionCSVException(String message){
+        super(message);
+    }
+}
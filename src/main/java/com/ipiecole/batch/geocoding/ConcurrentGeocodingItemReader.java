@@ -0,0 +1,193 @@
+package com.ipiecole.batch.geocoding;
+
+import com.ipiecole.batch.exception.NetworkException;
+import com.ipiecole.batch.model.Commune;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.retry.support.RetryTemplate;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Géocodage concurrent des communes sans coordonnées, en amont de la step d'écriture
+// Un thread lit les communes du reader délégué et lance leur géocodage dans un pool de maxInFlight threads
+// (au plus maxInFlight recherches en cours, le débit réseau étant limité par le TokenBucketRateLimiter du cache)
+// Les compteurs du Geocoder sont ajoutés à ceux du reader dans le contexte d'exécution
+// Les erreurs réseau sont réessayées par la RetryTemplate dans le thread de la recherche, sans bloquer les autres
+// read() ne renvoie que les communes dont les coordonnées ont été trouvées : seul leur enregistrement a lieu dans le chunk
+// Les communes introuvables ou en erreur restent sans coordonnées et seront recherchées à la prochaine exécution
+// Toute autre erreur arrête aussitôt la lecture et les recherches en cours : le read() suivant la lève
+public class ConcurrentGeocodingItemReader extends ItemStreamSupport implements ItemStreamReader<Commune> {
+
+    // Marque de fin de la file des communes géocodées
+    private static final Commune END = new Commune();
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final ItemReader<Commune> delegate;
+    private final Geocoder geocoder;
+    private final RetryTemplate retryTemplate;
+    private final int maxInFlight;
+
+    private BlockingQueue<Commune> geocoded;
+    private ExecutorService executor;
+    private Semaphore inFlight;
+    private Thread producer;
+    private volatile Exception failure;
+
+    private final AtomicInteger submitted = new AtomicInteger();
+    private final AtomicInteger resolved = new AtomicInteger();
+    private final AtomicInteger notFound = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+
+    public ConcurrentGeocodingItemReader(ItemReader<Commune> delegate, Geocoder geocoder,
+                                         RetryTemplate retryTemplate, int maxInFlight) {
+        this.delegate = delegate;
+        this.geocoder = geocoder;
+        this.retryTemplate = retryTemplate;
+        this.maxInFlight = maxInFlight;
+        setName("concurrentGeocodingItemReader");
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        // La reprise se fait naturellement (les communes géocodées ne sont plus lues) : le délégué repart du début
+        if (delegate instanceof ItemStream) {
+            ((ItemStream) delegate).open(new ExecutionContext());
+        }
+        submitted.set(0);
+        resolved.set(0);
+        notFound.set(0);
+        errors.set(0);
+        failure = null;
+        geocoded = new LinkedBlockingQueue<>();
+        inFlight = new Semaphore(maxInFlight);
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(maxInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "geocoding-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        producer = new Thread(this::produce, "geocoding-reader");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    private void produce() {
+        try {
+            Commune commune;
+            while (failure == null && (commune = delegate.read()) != null) {
+                inFlight.acquire();
+                submitted.incrementAndGet();
+                Commune toGeocode = commune;
+                executor.execute(() -> {
+                    try {
+                        geocode(toGeocode);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            // Attente de la fin des recherches en cours (abandonnées en cas d'erreur)
+            if (failure == null) {
+                inFlight.acquire(maxInFlight);
+            }
+        } catch (InterruptedException e) {
+            // Arrêt demandé par fail() ou close()
+        } catch (Exception e) {
+            fail(e);
+        } finally {
+            geocoded.add(END);
+        }
+    }
+
+    private void geocode(Commune commune) {
+        try {
+            GeocodingResult result = retryTemplate.execute(context -> geocoder.geocode(commune));
+            if (result != null) {
+                result.applyTo(commune);
+                resolved.incrementAndGet();
+                geocoded.add(commune);
+            } else {
+                notFound.incrementAndGet();
+            }
+        } catch (NetworkException e) {
+            errors.incrementAndGet();
+            logger.error("Géocodage en erreur => " + commune + " => " + e.getMessage());
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    // Première erreur conservée ; plus aucune commune lue ni recherchée
+    private synchronized void fail(Exception e) {
+        if (failure != null) {
+            return;
+        }
+        failure = e;
+        executor.shutdownNow();
+        Thread thread = producer;
+        if (thread != null && thread != Thread.currentThread()) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public Commune read() throws Exception {
+        if (failure != null) {
+            throw failure;
+        }
+        Commune commune = geocoded.take();
+        if (commune == END) {
+            // Les appels suivants renvoient aussi null
+            geocoded.add(END);
+            if (failure != null) {
+                throw failure;
+            }
+            return null;
+        }
+        return commune;
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        executionContext.putInt("geocoding.submitted", submitted.get());
+        executionContext.putInt("geocoding.resolved", resolved.get());
+        executionContext.putInt("geocoding.notFound", notFound.get());
+        executionContext.putInt("geocoding.errors", errors.get());
+        geocoder.getStatistics().forEach((name, value) -> executionContext.putLong("geocoding." + name, value));
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        if (producer != null) {
+            producer.interrupt();
+            executor.shutdownNow();
+            try {
+                // Le délégué n'est fermé qu'une fois sa dernière lecture terminée (MissingCoordinatesItemReader
+                // n'est pas thread-safe), et les compteurs relevés une fois les recherches interrompues terminées
+                producer.join();
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            producer = null;
+            logger.info("Géocodage => " + submitted.get() + " communes, " + resolved.get() + " trouvées, "
+                    + notFound.get() + " introuvables, " + errors.get() + " en erreur");
+        }
+        if (delegate instanceof ItemStream) {
+            ((ItemStream) delegate).close();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.ipiecole.batch.geocoding;
+
+import com.ipiecole.batch.exception.NetworkException;
+import com.ipiecole.batch.model.Commune;
+
+import java.util.Collections;
+import java.util.Map;
+
+// Recherche des coordonnées d'une commune (OpenStreetMap, cache du géocodage, géocodage hors ligne...)
+public interface Geocoder {
+
+    // null si les coordonnées n'ont pas été trouvées
+    GeocodingResult geocode(Commune commune) throws NetworkException;
+
+    // Compteurs de l'implémentation, conservés dans le contexte d'exécution de la step
+    default Map<String, Long> getStatistics() {
+        return Collections.emptyMap();
+    }
+}
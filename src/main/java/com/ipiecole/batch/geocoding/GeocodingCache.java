@@ -0,0 +1,309 @@
+package com.ipiecole.batch.geocoding;
+
+import com.ipiecole.batch.exception.NetworkException;
+import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.model.CoordinatesPrecision;
+import com.ipiecole.batch.model.CoordinatesSource;
+import com.ipiecole.batch.utils.Sha256;
+import com.ipiecole.batch.utils.TokenBucketRateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.text.Normalizer;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Cache des coordonnées renvoyées par le géocodage (OpenStreetMap), indexé sur la requête "nom + code postal" normalisée
+//  - 1er niveau en mémoire : nombre d'entrées limité (LRU) et durée de vie
+//  - 2ème niveau en base (table GEOCODING_CACHE, créée par les scripts versionnés, cf. SchemaMigrator) : conservé entre deux exécutions
+//  - les communes introuvables (réponse vide) sont aussi mises en cache, avec une durée de vie plus courte
+//  - les recherches identiques lancées en même temps ne donnent lieu qu'à un seul appel
+// Les erreurs réseau et les réponses HTTP en erreur (null) ne sont pas mises en cache
+public class GeocodingCache implements Geocoder {
+
+    // Appel réel du géocodage, même contrat que OpenStreetMapUtils.getCoordinates :
+    // {lat, lon} si trouvé, map vide si introuvable, null si la réponse HTTP est en erreur
+    public interface Loader {
+        Map<String, Double> load(String address) throws NetworkException;
+    }
+
+    // Appel réel du géocodage soumis à la limite (les réponses servies par le cache ne consomment pas de jeton)
+    public static Loader limit(TokenBucketRateLimiter rateLimiter, Loader loader) {
+        return address -> {
+            try {
+                rateLimiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NetworkException("Géocodage interrompu : " + address);
+            }
+            return loader.load(address);
+        };
+    }
+
+    private static final String SELECT_SQL = "SELECT latitude, longitude, found, created_at FROM geocoding_cache WHERE query_key = ?";
+    private static final String UPDATE_SQL = "UPDATE geocoding_cache SET latitude = ?, longitude = ?, found = ?, created_at = ? WHERE query_key = ?";
+    private static final String INSERT_SQL = "INSERT INTO geocoding_cache (latitude, longitude, found, created_at, query_key) VALUES (?, ?, ?, ?, ?)";
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Loader loader;
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration ttl;
+    private final Duration negativeTtl;
+    private final Clock clock;
+    private final Map<String, Entry> memory;
+    private final Map<String, CompletableFuture<Map<String, Double>>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    // dataSource null : pas de cache en base
+    public GeocodingCache(Loader loader, DataSource dataSource, int maxSize, Duration ttl, Duration negativeTtl, Clock clock) {
+        this.loader = loader;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.clock = clock;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        jdbcTemplate = dataSource == null ? null : new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public GeocodingResult geocode(Commune commune) throws NetworkException {
+        Map<String, Double> coordinates = getCoordinates(commune.getNom(), commune.getCodePostal());
+        if (coordinates == null || coordinates.size() != 2) {
+            return null;
+        }
+        return new GeocodingResult(coordinates.get("lat"), coordinates.get("lon"),
+                CoordinatesSource.OPENSTREETMAP, CoordinatesPrecision.COMMUNE);
+    }
+
+    public Map<String, Double> getCoordinates(String nom, String codePostal) throws NetworkException {
+        String key = key(nom, codePostal);
+        Entry entry = memoryGet(key);
+        if (entry != null) {
+            memoryHits.incrementAndGet();
+            return hit(entry);
+        }
+        CompletableFuture<Map<String, Double>> future = new CompletableFuture<>();
+        CompletableFuture<Map<String, Double>> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            return join(running);
+        }
+        try {
+            // Une recherche identique a pu se terminer entre la lecture du cache et l'enregistrement de celle-ci
+            entry = memoryGet(key);
+            Map<String, Double> coordinates = entry != null ? hit(entry) : load(key, nom + " " + codePostal);
+            future.complete(coordinates);
+            return coordinates;
+        } catch (NetworkException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private Map<String, Double> load(String key, String address) throws NetworkException {
+        Entry entry = diskGet(key);
+        if (entry != null) {
+            diskHits.incrementAndGet();
+            memoryPut(key, entry);
+            return hit(entry);
+        }
+        misses.incrementAndGet();
+        Map<String, Double> coordinates = loader.load(address);
+        if (coordinates == null) {
+            return null;
+        }
+        entry = new Entry(coordinates.get("lat"), coordinates.get("lon"), coordinates.size() == 2, clock.millis());
+        memoryPut(key, entry);
+        diskPut(key, entry);
+        return entry.coordinates();
+    }
+
+    private Map<String, Double> hit(Entry entry) {
+        if (!entry.found) {
+            negativeHits.incrementAndGet();
+        }
+        return entry.coordinates();
+    }
+
+    private synchronized Entry memoryGet(String key) {
+        Entry entry = memory.get(key);
+        if (entry != null && isExpired(entry)) {
+            memory.remove(key);
+            expirations.incrementAndGet();
+            return null;
+        }
+        return entry;
+    }
+
+    private synchronized void memoryPut(String key, Entry entry) {
+        memory.put(key, entry);
+    }
+
+    private Entry diskGet(String key) {
+        if (jdbcTemplate == null) {
+            return null;
+        }
+        List<Entry> entries = jdbcTemplate.query(SELECT_SQL, (rs, rowNum) -> new Entry(
+                rs.getDouble(1), rs.getDouble(2), rs.getBoolean(3), rs.getLong(4)), key);
+        if (entries.isEmpty()) {
+            return null;
+        }
+        Entry entry = entries.get(0);
+        if (isExpired(entry)) {
+            expirations.incrementAndGet();
+            return null;
+        }
+        return entry;
+    }
+
+    private void diskPut(String key, Entry entry) {
+        if (jdbcTemplate == null) {
+            return;
+        }
+        Object[] args = {entry.latitude, entry.longitude, entry.found, entry.createdAt, key};
+        if (jdbcTemplate.update(UPDATE_SQL, args) == 0) {
+            try {
+                jdbcTemplate.update(INSERT_SQL, args);
+            } catch (DuplicateKeyException e) {
+                // Ecrite entre temps par une autre exécution : la valeur est équivalente
+                logger.debug("Coordonnées déjà en cache pour " + key);
+            }
+        }
+    }
+
+    private boolean isExpired(Entry entry) {
+        return clock.millis() - entry.createdAt >= (entry.found ? ttl : negativeTtl).toMillis();
+    }
+
+    private static Map<String, Double> join(CompletableFuture<Map<String, Double>> future) throws NetworkException {
+        try {
+            Map<String, Double> coordinates = future.get();
+            return coordinates == null ? null : new HashMap<>(coordinates);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NetworkException(e.getMessage());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof NetworkException) {
+                throw (NetworkException) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    // Requête normalisée : sans accents, en majuscules, séparateurs réduits à un espace ("Saint-Étienne  42000" -> "SAINT ETIENNE 42000")
+    // Au-delà des 255 caractères de query_key, empreinte SHA-256 de la requête entière ("sha256:<hex>", préfixe en minuscules
+    // qu'une requête normalisée ne peut pas produire) : deux requêtes longues de même début ne partagent pas leur entrée
+    static String key(String nom, String codePostal) {
+        String query = normalize(nom + " " + codePostal);
+        return query.length() > 255 ? "sha256:" + Sha256.hex(query) : query;
+    }
+
+    static String normalize(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toUpperCase(Locale.ROOT)
+                .replaceAll("[^A-Z0-9]+", " ")
+                .trim();
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    // Réponses "introuvable" servies par le cache (compris dans les hits mémoire et base)
+    public long getNegativeHits() {
+        return negativeHits.get();
+    }
+
+    // Recherches qui ont attendu le résultat d'une recherche identique en cours
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    // Appels réels au géocodage
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // Entrées retirées de la mémoire car le nombre maximum d'entrées est atteint
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    // Entrées ignorées car leur durée de vie est dépassée (comptées en mémoire et en base)
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    @Override
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("memoryHits", getMemoryHits());
+        statistics.put("diskHits", getDiskHits());
+        statistics.put("negativeHits", getNegativeHits());
+        statistics.put("coalesced", getCoalesced());
+        statistics.put("misses", getMisses());
+        statistics.put("evictions", getEvictions());
+        statistics.put("expirations", getExpirations());
+        return statistics;
+    }
+
+    private static final class Entry {
+        private final Double latitude;
+        private final Double longitude;
+        private final boolean found;
+        private final long createdAt;
+
+        private Entry(Double latitude, Double longitude, boolean found, long createdAt) {
+            this.latitude = found ? latitude : null;
+            this.longitude = found ? longitude : null;
+            this.found = found;
+            this.createdAt = createdAt;
+        }
+
+        // Nouvelle map à chaque appel : l'appelant peut la modifier sans toucher au cache
+        private Map<String, Double> coordinates() {
+            if (!found) {
+                return new HashMap<>();
+            }
+            Map<String, Double> coordinates = new HashMap<>();
+            coordinates.put("lat", latitude);
+            coordinates.put("lon", longitude);
+            return coordinates;
+        }
+    }
+}
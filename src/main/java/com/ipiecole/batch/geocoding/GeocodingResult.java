@@ -0,0 +1,55 @@
+package com.ipiecole.batch.geocoding;
+
+import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.model.CoordinatesPrecision;
+import com.ipiecole.batch.model.CoordinatesSource;
+
+// Coordonnées trouvées par un Geocoder, avec leur origine et leur précision
+public class GeocodingResult {
+
+    private final double latitude;
+    private final double longitude;
+    private final CoordinatesSource source;
+    private final CoordinatesPrecision precision;
+
+    public GeocodingResult(double latitude, double longitude, CoordinatesSource source, CoordinatesPrecision precision) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.source = source;
+        this.precision = precision;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public CoordinatesSource getSource() {
+        return source;
+    }
+
+    public CoordinatesPrecision getPrecision() {
+        return precision;
+    }
+
+    // Renseigne les coordonnées de la commune et leur origine
+    public void applyTo(Commune commune) {
+        commune.setLatitude(latitude);
+        commune.setLongitude(longitude);
+        commune.setCoordinatesSource(source);
+        commune.setCoordinatesPrecision(precision);
+    }
+
+    @Override
+    public String toString() {
+        return "GeocodingResult{" +
+                "latitude=" + latitude +
+                ", longitude=" + longitude +
+                ", source=" + source +
+                ", precision=" + precision +
+                '}';
+    }
+}
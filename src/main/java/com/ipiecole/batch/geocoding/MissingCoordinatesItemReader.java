@@ -0,0 +1,98 @@
+package com.ipiecole.batch.geocoding;
+
+import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.model.CoordinatesPrecision;
+import com.ipiecole.batch.model.CoordinatesSource;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.List;
+
+// Lecture des communes sans coordonnées (file de travail), triées par code Insee, page par page à partir de la dernière clé lue
+// Chaque page est une recherche dans l'index COMMUNE(geocoding_pending, code_insee) : seules les communes à géocoder sont lues,
+// quelle que soit la taille de la table
+// Contrairement à la pagination par OFFSET, les communes géocodées (qui sortent de la file pendant la lecture) ne décalent pas
+// les pages suivantes : chaque commune à géocoder est lue une seule fois, aucune n'est sautée
+// Le dernier code Insee lu est conservé dans le contexte d'exécution : une reprise repart directement de cette clé
+public class MissingCoordinatesItemReader extends ItemStreamSupport implements ItemStreamReader<Commune> {
+
+    private static final String LAST_CODE_INSEE = "lastCodeInsee";
+
+    private static final String SELECT = "SELECT code_insee, nom, code_postal, latitude, longitude, coordinates_source, "
+            + "coordinates_precision, import_fingerprint FROM commune WHERE geocoding_pending = TRUE ";
+    private static final String FIRST_PAGE_SQL = SELECT + "ORDER BY code_insee LIMIT ?";
+    private static final String NEXT_PAGE_SQL = SELECT + "AND code_insee > ? ORDER BY code_insee LIMIT ?";
+
+    private static final RowMapper<Commune> ROW_MAPPER = (rs, rowNum) -> {
+        Commune commune = new Commune(rs.getString(1), rs.getString(2), rs.getString(3),
+                (Double) rs.getObject(4), (Double) rs.getObject(5));
+        String source = rs.getString(6);
+        commune.setCoordinatesSource(source == null ? null : CoordinatesSource.valueOf(source));
+        String precision = rs.getString(7);
+        commune.setCoordinatesPrecision(precision == null ? null : CoordinatesPrecision.valueOf(precision));
+        // Empreinte de la ligne importée conservée par l'écriture des coordonnées (cf. CommuneDeltaItemProcessor)
+        commune.setImportFingerprint((Long) rs.getObject(8));
+        return commune;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int pageSize;
+
+    // Code Insee de la dernière commune renvoyée par read() (null : aucune commune lue)
+    private String lastCodeInsee;
+    private boolean finished;
+    private List<Commune> page = Collections.emptyList();
+    private int index;
+
+    public MissingCoordinatesItemReader(DataSource dataSource, int pageSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.pageSize = pageSize;
+        setName("missingCoordinatesItemReader");
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        lastCodeInsee = executionContext.getString(getExecutionContextKey(LAST_CODE_INSEE), null);
+        finished = false;
+        page = Collections.emptyList();
+        index = 0;
+    }
+
+    @Override
+    public Commune read() {
+        if (index >= page.size()) {
+            if (finished) {
+                return null;
+            }
+            page = lastCodeInsee == null
+                    ? jdbcTemplate.query(FIRST_PAGE_SQL, ROW_MAPPER, pageSize)
+                    : jdbcTemplate.query(NEXT_PAGE_SQL, ROW_MAPPER, lastCodeInsee, pageSize);
+            finished = page.size() < pageSize;
+            index = 0;
+            if (page.isEmpty()) {
+                return null;
+            }
+        }
+        Commune commune = page.get(index++);
+        lastCodeInsee = commune.getCodeInsee();
+        return commune;
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (lastCodeInsee != null) {
+            executionContext.putString(getExecutionContextKey(LAST_CODE_INSEE), lastCodeInsee);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        page = Collections.emptyList();
+    }
+}
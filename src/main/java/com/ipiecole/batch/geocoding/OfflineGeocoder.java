@@ -0,0 +1,305 @@
+package com.ipiecole.batch.geocoding;
+
+import com.ipiecole.batch.exception.NetworkException;
+import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.model.CoordinatesPrecision;
+import com.ipiecole.batch.model.CoordinatesSource;
+import com.ipiecole.batch.utils.CommuneCodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Géocodage hors ligne à partir des communes déjà chargées en base avec leurs coordonnées
+// Les communes sans coordonnées partagent le plus souvent un code postal ou un département avec des communes qui en ont :
+//  1. nom proche d'une commune du même département (index de trigrammes, similarité >= minSimilarity) : précision NOM_PROCHE
+//  2. centre des communes de même code postal : précision CODE_POSTAL
+//  3. géocodage réseau (fallback, cf. GeocodingCache) pour les communes restantes
+//  4. à défaut, centre des communes du département : précision DEPARTEMENT
+// L'index est construit en mémoire à la première recherche de chaque step (la table a pu changer depuis)
+// Seules les coordonnées de précision COMMUNE (fichier ou OpenStreetMap) servent à l'index : une position recopiée
+// d'un nom proche n'est pas recopiée à son tour
+public class OfflineGeocoder implements Geocoder {
+
+    private static final String SELECT_SQL = "SELECT code_insee, nom, code_postal, latitude, longitude FROM commune "
+            + "WHERE latitude IS NOT NULL AND longitude IS NOT NULL "
+            + "AND (coordinates_precision IS NULL OR coordinates_precision = '" + CoordinatesPrecision.COMMUNE + "')";
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Geocoder fallback;
+    private final double minSimilarity;
+    private volatile Index index;
+
+    private final AtomicLong byName = new AtomicLong();
+    private final AtomicLong byPostalCode = new AtomicLong();
+    private final AtomicLong byDepartment = new AtomicLong();
+    private final AtomicLong fallbackCalls = new AtomicLong();
+    private final AtomicLong unresolved = new AtomicLong();
+
+    // fallback null : pas de géocodage réseau
+    public OfflineGeocoder(DataSource dataSource, Geocoder fallback, double minSimilarity) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.fallback = fallback;
+        this.minSimilarity = minSimilarity;
+    }
+
+    // L'index sera reconstruit à la première recherche de la step
+    @BeforeStep
+    public void beforeStep(StepExecution stepExecution) {
+        index = null;
+    }
+
+    @Override
+    public GeocodingResult geocode(Commune commune) throws NetworkException {
+        Index index = index();
+        String department = CommuneCodes.department(commune.getCodeInsee());
+        GeocodingResult result = index.byName(department, commune.getNom(), commune.getCodePostal(), minSimilarity);
+        if (result != null) {
+            byName.incrementAndGet();
+            return result;
+        }
+        double[] centroid = index.postalCodeCentroids.get(commune.getCodePostal());
+        if (centroid != null) {
+            byPostalCode.incrementAndGet();
+            return new GeocodingResult(centroid[0], centroid[1], CoordinatesSource.OFFLINE, CoordinatesPrecision.CODE_POSTAL);
+        }
+        if (fallback != null) {
+            fallbackCalls.incrementAndGet();
+            result = fallback.geocode(commune);
+            if (result != null) {
+                return result;
+            }
+        }
+        centroid = index.departmentCentroids.get(department);
+        if (centroid != null) {
+            byDepartment.incrementAndGet();
+            return new GeocodingResult(centroid[0], centroid[1], CoordinatesSource.OFFLINE, CoordinatesPrecision.DEPARTEMENT);
+        }
+        unresolved.incrementAndGet();
+        return null;
+    }
+
+    private Index index() {
+        Index current = index;
+        if (current == null) {
+            synchronized (this) {
+                current = index;
+                if (current == null) {
+                    current = load();
+                    index = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private Index load() {
+        long start = System.currentTimeMillis();
+        Map<String, double[]> postalCodeSums = new HashMap<>();
+        Map<String, double[]> departmentSums = new HashMap<>();
+        Map<String, NameIndex.Builder> names = new HashMap<>();
+        jdbcTemplate.query(SELECT_SQL, rs -> {
+            String department = CommuneCodes.department(rs.getString(1));
+            String codePostal = rs.getString(3);
+            double latitude = rs.getDouble(4);
+            double longitude = rs.getDouble(5);
+            add(postalCodeSums, codePostal, latitude, longitude);
+            add(departmentSums, department, latitude, longitude);
+            names.computeIfAbsent(department, key -> new NameIndex.Builder()).add(rs.getString(2), codePostal, latitude, longitude);
+        });
+        Map<String, NameIndex> nameIndexes = new HashMap<>();
+        names.forEach((department, builder) -> nameIndexes.put(department, builder.build()));
+        Index index = new Index(centroids(postalCodeSums), centroids(departmentSums), nameIndexes);
+        logger.info("Index de géocodage hors ligne => " + postalCodeSums.size() + " codes postaux, "
+                + departmentSums.size() + " départements en " + (System.currentTimeMillis() - start) + " ms");
+        return index;
+    }
+
+    private static void add(Map<String, double[]> sums, String key, double latitude, double longitude) {
+        if (key == null) {
+            return;
+        }
+        double[] sum = sums.computeIfAbsent(key, k -> new double[3]);
+        sum[0] += latitude;
+        sum[1] += longitude;
+        sum[2]++;
+    }
+
+    private static Map<String, double[]> centroids(Map<String, double[]> sums) {
+        Map<String, double[]> centroids = new HashMap<>(sums.size() * 2);
+        sums.forEach((key, sum) -> centroids.put(key, new double[]{sum[0] / sum[2], sum[1] / sum[2]}));
+        return centroids;
+    }
+
+    // Trigrammes distincts du nom normalisé (précédé de deux espaces et suivi d'un espace), codés sur un entier triés
+    static int[] trigrams(String nom) {
+        String padded = "  " + GeocodingCache.normalize(nom) + " ";
+        int[] trigrams = new int[padded.length() - 2];
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = (code(padded.charAt(i)) * 37 + code(padded.charAt(i + 1))) * 37 + code(padded.charAt(i + 2));
+        }
+        Arrays.sort(trigrams);
+        int distinct = 0;
+        for (int i = 0; i < trigrams.length; i++) {
+            if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+                trigrams[distinct++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    // Le nom normalisé ne contient que des espaces, lettres A-Z et chiffres
+    private static int code(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 1;
+        }
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 27;
+        }
+        return 0;
+    }
+
+    public long getByName() {
+        return byName.get();
+    }
+
+    public long getByPostalCode() {
+        return byPostalCode.get();
+    }
+
+    public long getByDepartment() {
+        return byDepartment.get();
+    }
+
+    // Communes transmises au géocodage réseau
+    public long getFallbackCalls() {
+        return fallbackCalls.get();
+    }
+
+    public long getUnresolved() {
+        return unresolved.get();
+    }
+
+    @Override
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("offlineByName", getByName());
+        statistics.put("offlineByPostalCode", getByPostalCode());
+        statistics.put("offlineByDepartment", getByDepartment());
+        statistics.put("fallbackCalls", getFallbackCalls());
+        statistics.put("unresolved", getUnresolved());
+        if (fallback != null) {
+            statistics.putAll(fallback.getStatistics());
+        }
+        return statistics;
+    }
+
+    private static final class Index {
+        private final Map<String, double[]> postalCodeCentroids;
+        private final Map<String, double[]> departmentCentroids;
+        private final Map<String, NameIndex> names;
+
+        private Index(Map<String, double[]> postalCodeCentroids, Map<String, double[]> departmentCentroids,
+                      Map<String, NameIndex> names) {
+            this.postalCodeCentroids = postalCodeCentroids;
+            this.departmentCentroids = departmentCentroids;
+            this.names = names;
+        }
+
+        private GeocodingResult byName(String department, String nom, String codePostal, double minSimilarity) {
+            NameIndex nameIndex = names.get(department);
+            return nameIndex == null || nom == null ? null : nameIndex.find(nom, codePostal, minSimilarity);
+        }
+    }
+
+    // Index de trigrammes des noms des communes d'un département
+    private static final class NameIndex {
+        private final String[] codesPostaux;
+        private final double[] latitudes;
+        private final double[] longitudes;
+        private final int[] trigramCounts;
+        private final Map<Integer, int[]> postings;
+
+        private NameIndex(Builder builder) {
+            int size = builder.codesPostaux.size();
+            codesPostaux = builder.codesPostaux.toArray(new String[0]);
+            latitudes = new double[size];
+            longitudes = new double[size];
+            trigramCounts = new int[size];
+            Map<Integer, List<Integer>> lists = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                latitudes[i] = builder.coordinates.get(i)[0];
+                longitudes[i] = builder.coordinates.get(i)[1];
+                int[] trigrams = builder.trigrams.get(i);
+                trigramCounts[i] = trigrams.length;
+                for (int trigram : trigrams) {
+                    lists.computeIfAbsent(trigram, key -> new ArrayList<>()).add(i);
+                }
+            }
+            postings = new HashMap<>(lists.size() * 2);
+            lists.forEach((trigram, communes) -> postings.put(trigram, communes.stream().mapToInt(Integer::intValue).toArray()));
+        }
+
+        // Commune la plus proche par similarité de Jaccard sur les trigrammes (à égalité, celle de même code postal)
+        private GeocodingResult find(String nom, String codePostal, double minSimilarity) {
+            int[] query = trigrams(nom);
+            int[] shared = new int[trigramCounts.length];
+            for (int trigram : query) {
+                int[] communes = postings.get(trigram);
+                if (communes != null) {
+                    for (int commune : communes) {
+                        shared[commune]++;
+                    }
+                }
+            }
+            int best = -1;
+            double bestSimilarity = minSimilarity;
+            for (int i = 0; i < shared.length; i++) {
+                if (shared[i] == 0) {
+                    continue;
+                }
+                double similarity = (double) shared[i] / (query.length + trigramCounts[i] - shared[i]);
+                if (similarity > bestSimilarity || (similarity >= bestSimilarity
+                        && (best < 0 || (!codesPostaux[best].equals(codePostal) && codesPostaux[i].equals(codePostal))))) {
+                    best = i;
+                    bestSimilarity = similarity;
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+            return new GeocodingResult(latitudes[best], longitudes[best], CoordinatesSource.OFFLINE, CoordinatesPrecision.NOM_PROCHE);
+        }
+
+        private static final class Builder {
+            private final List<String> codesPostaux = new ArrayList<>();
+            private final List<double[]> coordinates = new ArrayList<>();
+            private final List<int[]> trigrams = new ArrayList<>();
+
+            private void add(String nom, String codePostal, double latitude, double longitude) {
+                if (nom == null) {
+                    return;
+                }
+                codesPostaux.add(codePostal == null ? "" : codePostal);
+                coordinates.add(new double[]{latitude, longitude});
+                trigrams.add(trigrams(nom));
+            }
+
+            private NameIndex build() {
+                return new NameIndex(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.ipiecole.batch.index;
+
+import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.utils.CommuneCodes;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+// Index en lecture seule de toutes les communes, en colonnes de types primitifs (environ 1,5 Mo pour 35 000 communes) :
+//  - une case par commune dans chaque colonne, communes triées par code postal puis code Insee (ordre de l'export)
+//  - codes Insee et codes postaux sous forme d'entiers (cf. CommuneCodes), coordonnées en double (NaN si absentes)
+//  - noms distincts stockés une seule fois (octets UTF-8 à la suite), chaque commune ne conservant que le numéro de son nom
+// Recherche par code Insee dans une table de hachage (adressage ouvert), par plage de codes postaux par dichotomie ;
+// comptages calculés à la construction
+// Construit en une requête (cf. CommuneIndexHolder), jamais modifié : partagé sans synchronisation
+public final class CommuneIndex {
+
+    private static final String SELECT_SQL = "SELECT code_insee, nom, code_postal, latitude, longitude FROM commune";
+
+    private final int[] codesInsee;
+    private final int[] codesPostaux;
+    private final int[] noms;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    // Noms distincts : octets du nom n entre nameOffsets[n] et nameOffsets[n + 1]
+    private final byte[] nameBytes;
+    private final int[] nameOffsets;
+    // Table de hachage des codes Insee : position de la commune + 1 (0 : case vide)
+    private final int[] slots;
+    private final int distinctCodesPostaux;
+    private final int withoutCoordinates;
+
+    private CommuneIndex(Builder builder) {
+        int size = builder.codesInsee.size();
+        // Ordre de l'export ; communes sans code postal en tête
+        int[] order = IntStream.range(0, size).boxed()
+                .sorted(Comparator.<Integer> comparingInt(i -> builder.codesPostaux.get(i))
+                        .thenComparing(i -> builder.codesInsee.get(i)))
+                .mapToInt(Integer::intValue).toArray();
+        codesInsee = new int[size];
+        codesPostaux = new int[size];
+        noms = new int[size];
+        latitudes = new double[size];
+        longitudes = new double[size];
+        int distinct = 0;
+        int missing = 0;
+        for (int row = 0; row < size; row++) {
+            int i = order[row];
+            codesInsee[row] = builder.codesInsee.get(i);
+            codesPostaux[row] = builder.codesPostaux.get(i);
+            noms[row] = builder.noms.get(i);
+            latitudes[row] = builder.latitudes.get(i);
+            longitudes[row] = builder.longitudes.get(i);
+            if (codesPostaux[row] >= 0 && (row == 0 || codesPostaux[row] != codesPostaux[row - 1])) {
+                distinct++;
+            }
+            if (Double.isNaN(latitudes[row]) || Double.isNaN(longitudes[row])) {
+                missing++;
+            }
+        }
+        distinctCodesPostaux = distinct;
+        withoutCoordinates = missing;
+        nameBytes = builder.nameBytes.toByteArray();
+        nameOffsets = Arrays.copyOf(builder.nameOffsets.stream().mapToInt(Integer::intValue).toArray(), builder.nameOffsets.size() + 1);
+        nameOffsets[nameOffsets.length - 1] = nameBytes.length;
+
+        // Table remplie au plus à moitié
+        int capacity = 2;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        slots = new int[capacity];
+        for (int row = 0; row < size; row++) {
+            int slot = slot(codesInsee[row]);
+            while (slots[slot] != 0) {
+                if (codesInsee[slots[slot] - 1] == codesInsee[row]) {
+                    throw new IllegalArgumentException("Code Insee en double : " + CommuneCodes.codeInsee(codesInsee[row]));
+                }
+                slot = (slot + 1) & (slots.length - 1);
+            }
+            slots[slot] = row + 1;
+        }
+    }
+
+    // Toutes les communes de la table COMMUNE (codes Insee d'un autre format ignorés)
+    public static CommuneIndex load(DataSource dataSource) {
+        Builder builder = new Builder();
+        new JdbcTemplate(dataSource).query(SELECT_SQL, rs -> {
+            double latitude = rs.getDouble(4);
+            if (rs.wasNull()) {
+                latitude = Double.NaN;
+            }
+            double longitude = rs.getDouble(5);
+            if (rs.wasNull()) {
+                longitude = Double.NaN;
+            }
+            builder.add(rs.getString(1), rs.getString(2), rs.getString(3), latitude, longitude);
+        });
+        return builder.build();
+    }
+
+    // Position de la commune (ordre de l'export), -1 si absente
+    public int indexOf(String codeInsee) {
+        int code = CommuneCodes.codeInsee(codeInsee);
+        if (code < 0) {
+            return -1;
+        }
+        for (int slot = slot(code); slots[slot] != 0; slot = (slot + 1) & (slots.length - 1)) {
+            if (codesInsee[slots[slot] - 1] == code) {
+                return slots[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    // Commune du code Insee (nouvel objet à chaque appel), null si absente
+    public Commune get(String codeInsee) {
+        int row = indexOf(codeInsee);
+        return row < 0 ? null : commune(row);
+    }
+
+    // Communes dont le code postal est compris entre from et to (inclus), dans l'ordre de l'export
+    public List<Commune> findByCodePostal(String from, String to) {
+        int start = lowerBound(codePostal(from));
+        int end = lowerBound(codePostal(to) + 1);
+        List<Commune> communes = new ArrayList<>(Math.max(end - start, 0));
+        for (int row = start; row < end; row++) {
+            communes.add(commune(row));
+        }
+        return communes;
+    }
+
+    public int countByCodePostal(String from, String to) {
+        return Math.max(lowerBound(codePostal(to) + 1) - lowerBound(codePostal(from)), 0);
+    }
+
+    public Commune commune(int row) {
+        return new Commune(codeInsee(row), nom(row), codePostal(row),
+                Double.isNaN(latitudes[row]) ? null : latitudes[row],
+                Double.isNaN(longitudes[row]) ? null : longitudes[row]);
+    }
+
+    public String codeInsee(int row) {
+        return CommuneCodes.codeInsee(codesInsee[row]);
+    }
+
+    public String codePostal(int row) {
+        return codesPostaux[row] < 0 ? null : CommuneCodes.codePostal(codesPostaux[row]);
+    }
+
+    public String nom(int row) {
+        int nom = noms[row];
+        return nom < 0 ? null : new String(nameBytes, nameOffsets[nom], nameOffsets[nom + 1] - nameOffsets[nom], StandardCharsets.UTF_8);
+    }
+
+    public double latitude(int row) {
+        return latitudes[row];
+    }
+
+    public double longitude(int row) {
+        return longitudes[row];
+    }
+
+    public int size() {
+        return codesInsee.length;
+    }
+
+    // Mêmes valeurs que CommuneRepository.countDistinctCodePostal() et countDistinctNom() (valeurs absentes non comptées)
+    public int countDistinctCodePostal() {
+        return distinctCodesPostaux;
+    }
+
+    public int countDistinctNom() {
+        return nameOffsets.length - 1;
+    }
+
+    public int countWithoutCoordinates() {
+        return withoutCoordinates;
+    }
+
+    private int slot(int codeInsee) {
+        return (codeInsee * 0x9e3779b9) >>> (32 - Integer.numberOfTrailingZeros(slots.length)) & (slots.length - 1);
+    }
+
+    // Première position dont le code postal est supérieur ou égal à codePostal
+    private int lowerBound(int codePostal) {
+        int low = 0;
+        int high = codesPostaux.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (codesPostaux[middle] < codePostal) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int codePostal(String codePostal) {
+        int value = CommuneCodes.codePostal(codePostal);
+        if (value < 0) {
+            throw new IllegalArgumentException("Code postal invalide : " + codePostal);
+        }
+        return value;
+    }
+
+    // Communes ajoutées une à une, dans n'importe quel ordre
+    public static final class Builder {
+
+        private final List<Integer> codesInsee = new ArrayList<>();
+        private final List<Integer> codesPostaux = new ArrayList<>();
+        private final List<Integer> noms = new ArrayList<>();
+        private final List<Double> latitudes = new ArrayList<>();
+        private final List<Double> longitudes = new ArrayList<>();
+        private final Map<String, Integer> nameNumbers = new HashMap<>();
+        private final ByteArrayOutputStream nameBytes = new ByteArrayOutputStream();
+        private final List<Integer> nameOffsets = new ArrayList<>();
+
+        public Builder add(String codeInsee, String nom, String codePostal, double latitude, double longitude) {
+            int code = CommuneCodes.codeInsee(codeInsee);
+            if (code < 0) {
+                return this;
+            }
+            codesInsee.add(code);
+            codesPostaux.add(CommuneCodes.codePostal(codePostal));
+            noms.add(nom == null ? -1 : nameNumbers.computeIfAbsent(nom, name -> {
+                nameOffsets.add(nameBytes.size());
+                nameBytes.writeBytes(name.getBytes(StandardCharsets.UTF_8));
+                return nameOffsets.size() - 1;
+            }));
+            latitudes.add(latitude);
+            longitudes.add(longitude);
+            return this;
+        }
+
+        public CommuneIndex build() {
+            return new CommuneIndex(this);
+        }
+    }
+}
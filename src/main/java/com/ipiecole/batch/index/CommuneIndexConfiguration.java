@@ -0,0 +1,35 @@
+package com.ipiecole.batch.index;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+// Index en mémoire des communes, reconstruit à la fin de chaque import (cf. CommuneIndexHolder), et sa consultation HTTP
+@Configuration
+public class CommuneIndexConfiguration {
+
+    @Autowired
+    private DataSource dataSource;
+
+    // Construction de l'index à la fin de chaque import terminé, désactivée par défaut
+    // sauf si la consultation HTTP est ouverte (seul consommateur de l'index reconstruit après l'import)
+    @Value("${communeIndex.enabled:false}")
+    private boolean enabled;
+
+    // Port local de la consultation http://127.0.0.1:<port>/communes (0 : aucun serveur)
+    @Value("${communeIndex.port:0}")
+    private Integer port;
+
+    @Bean
+    public CommuneIndexHolder communeIndexHolder() {
+        return new CommuneIndexHolder(dataSource, enabled || port > 0);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public CommuneIndexHttpEndpoint communeIndexHttpEndpoint() {
+        return new CommuneIndexHttpEndpoint(communeIndexHolder(), port);
+    }
+}
@@ -0,0 +1,47 @@
+package com.ipiecole.batch.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.annotation.AfterJob;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Index en mémoire des communes (cf. CommuneIndex), reconstruit à la fin de chaque import terminé (importCsvJob)
+// puis remplacé d'un bloc : les lectures en cours se terminent sur l'index précédent
+public class CommuneIndexHolder {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final DataSource dataSource;
+    private final boolean enabled;
+    private final AtomicReference<CommuneIndex> index = new AtomicReference<>();
+
+    public CommuneIndexHolder(DataSource dataSource, boolean enabled) {
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+    }
+
+    @AfterJob
+    public void afterJob(JobExecution jobExecution) {
+        if (enabled && jobExecution.getStatus() == BatchStatus.COMPLETED) {
+            refresh();
+        }
+    }
+
+    public CommuneIndex refresh() {
+        long start = System.nanoTime();
+        CommuneIndex built = CommuneIndex.load(dataSource);
+        index.set(built);
+        logger.info("Index des communes construit en " + (System.nanoTime() - start) / 1_000_000 + " ms : "
+                + built.size() + " communes, " + built.countDistinctCodePostal() + " codes postaux");
+        return built;
+    }
+
+    // Dernier index construit, null avant la fin du premier import
+    public CommuneIndex get() {
+        return index.get();
+    }
+}
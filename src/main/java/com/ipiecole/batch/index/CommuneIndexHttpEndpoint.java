@@ -0,0 +1,152 @@
+package com.ipiecole.batch.index;
+
+import com.ipiecole.batch.model.Commune;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.simple.JSONValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// Consultation de l'index des communes (cf. CommuneIndexHolder) en JSON, servie sur l'interface locale par le serveur
+// HTTP du JDK (port 0 : aucun serveur ; sinon l'application reste active après les jobs, jusqu'à Ctrl+C) :
+//  - GET /communes/<code Insee> : la commune (404 si absente)
+//  - GET /communes?from=<code postal>&to=<code postal> (ou ?codePostal=<code postal>) : communes de la plage
+//  - GET /communes/count : nombres de communes, de codes postaux et de noms distincts, de communes sans coordonnées
+//    (et de communes de la plage, avec from et to)
+// 503 tant que le premier import n'est pas terminé
+public class CommuneIndexHttpEndpoint {
+
+    private static final String CONTENT_TYPE = "application/json; charset=utf-8";
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final CommuneIndexHolder holder;
+    private final int port;
+    private HttpServer server;
+
+    public CommuneIndexHttpEndpoint(CommuneIndexHolder holder, int port) {
+        this.holder = holder;
+        this.port = port;
+    }
+
+    public void start() throws IOException {
+        if (port <= 0) {
+            return;
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/communes", exchange -> {
+            try (exchange) {
+                handle(exchange);
+            }
+        });
+        server.start();
+        logger.info("Index des communes publié sur http://{}:{}/communes", server.getAddress().getHostString(), getPort());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+        CommuneIndex index = holder.get();
+        if (index == null) {
+            send(exchange, 503, error("Index des communes pas encore construit"));
+            return;
+        }
+        String path = exchange.getRequestURI().getPath().substring("/communes".length());
+        Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+        String from = parameters.getOrDefault("from", parameters.get("codePostal"));
+        String to = parameters.getOrDefault("to", from);
+        try {
+            if (path.equals("/count")) {
+                Map<String, Object> counts = new LinkedHashMap<>();
+                counts.put("communes", index.size());
+                counts.put("codesPostaux", index.countDistinctCodePostal());
+                counts.put("noms", index.countDistinctNom());
+                counts.put("sansCoordonnees", index.countWithoutCoordinates());
+                if (from != null) {
+                    counts.put("communesDeLaPlage", index.countByCodePostal(from, to));
+                }
+                send(exchange, 200, JSONValue.toJSONString(counts));
+            } else if (path.isEmpty() || path.equals("/")) {
+                if (from == null) {
+                    send(exchange, 400, error("Paramètres from et to (ou codePostal) attendus"));
+                    return;
+                }
+                List<Map<String, Object>> communes = index.findByCodePostal(from, to).stream()
+                        .map(CommuneIndexHttpEndpoint::json).collect(Collectors.toList());
+                send(exchange, 200, JSONValue.toJSONString(communes));
+            } else {
+                Commune commune = index.get(path.substring(1));
+                if (commune == null) {
+                    send(exchange, 404, error("Commune inconnue : " + path.substring(1)));
+                } else {
+                    send(exchange, 200, JSONValue.toJSONString(json(commune)));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error(e.getMessage()));
+        }
+    }
+
+    private static Map<String, Object> json(Commune commune) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("codeInsee", commune.getCodeInsee());
+        json.put("nom", commune.getNom());
+        json.put("codePostal", commune.getCodePostal());
+        json.put("latitude", commune.getLatitude());
+        json.put("longitude", commune.getLongitude());
+        return json;
+    }
+
+    private static String error(String message) {
+        return JSONValue.toJSONString(Map.of("erreur", message));
+    }
+
+    private static Map<String, String> parameters(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+                            URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    // Port effectif du serveur (utile avec un port attribué par le système)
+    public int getPort() {
+        return server == null ? port : server.getAddress().getPort();
+    }
+}
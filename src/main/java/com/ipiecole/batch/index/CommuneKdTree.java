@@ -0,0 +1,210 @@
+package com.ipiecole.batch.index;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+// Arbre k-d des coordonnées des communes d'un CommuneIndex, pour la recherche des plus proches voisins en mémoire :
+//  - chaque commune est un point de la sphère unité (x, y, z) : la distance en ligne droite entre deux points croît avec
+//    la distance sur la sphère, la recherche est donc exacte partout (antiméridien, pôles, DOM-TOM)
+//  - arbre équilibré implicite (médiane de la plage, axes x, y et z tour à tour), stocké dans des tableaux de types
+//    primitifs ; recherche en O(log n) en moyenne, quelques microsecondes pour 35 000 communes
+// Communes sans coordonnées ignorées ; construit une fois, jamais modifié : partagé sans synchronisation
+public final class CommuneKdTree {
+
+    // Rayon moyen de la Terre
+    public static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private final CommuneIndex index;
+    // Position de chaque point dans l'index des communes, et ses coordonnées, dans l'ordre de l'arbre
+    private final int[] rows;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] zs;
+
+    private CommuneKdTree(CommuneIndex index, int[] rows) {
+        this.index = index;
+        this.rows = rows;
+        xs = new double[rows.length];
+        ys = new double[rows.length];
+        zs = new double[rows.length];
+        double[][] points = new double[3][rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            points[0][i] = x(index.latitude(rows[i]), index.longitude(rows[i]));
+            points[1][i] = y(index.latitude(rows[i]), index.longitude(rows[i]));
+            points[2][i] = z(index.latitude(rows[i]));
+        }
+        int[] order = new int[rows.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        build(points, order, 0, order.length, 0);
+        int[] sourceRows = rows.clone();
+        for (int i = 0; i < order.length; i++) {
+            rows[i] = sourceRows[order[i]];
+            xs[i] = points[0][order[i]];
+            ys[i] = points[1][order[i]];
+            zs[i] = points[2][order[i]];
+        }
+    }
+
+    // Toutes les communes de l'index ayant des coordonnées
+    public static CommuneKdTree build(CommuneIndex index) {
+        return build(index, row -> true);
+    }
+
+    // Communes de l'index ayant des coordonnées et acceptées par le filtre (position dans l'index)
+    public static CommuneKdTree build(CommuneIndex index, IntPredicate filter) {
+        return build(index, IntStream.range(0, index.size()).filter(filter).toArray());
+    }
+
+    // Communes de l'index aux positions données, si elles ont des coordonnées
+    public static CommuneKdTree build(CommuneIndex index, int[] rows) {
+        return new CommuneKdTree(index, Arrays.stream(rows)
+                .filter(row -> !Double.isNaN(index.latitude(row)) && !Double.isNaN(index.longitude(row)))
+                .toArray());
+    }
+
+    public CommuneIndex getIndex() {
+        return index;
+    }
+
+    public int size() {
+        return rows.length;
+    }
+
+    // Position dans l'index de la commune la plus proche, -1 si l'arbre est vide
+    public int nearest(double latitude, double longitude) {
+        int[] nearest = nearest(latitude, longitude, 1);
+        return nearest.length == 0 ? -1 : nearest[0];
+    }
+
+    // Positions dans l'index des k communes les plus proches, de la plus proche à la plus éloignée
+    public int[] nearest(double latitude, double longitude, int k) {
+        Neighbours neighbours = new Neighbours(Math.min(k, rows.length));
+        if (neighbours.rows.length > 0) {
+            search(x(latitude, longitude), y(latitude, longitude), z(latitude), 0, rows.length, 0, neighbours);
+        }
+        return neighbours.rows;
+    }
+
+    // Distance en km entre le point et la commune (position dans l'index)
+    public double distanceKm(double latitude, double longitude, int row) {
+        return distanceKm(latitude, longitude, index.latitude(row), index.longitude(row));
+    }
+
+    // Formule de haversine
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dLatitude = Math.toRadians(latitude2 - latitude1);
+        double dLongitude = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(dLatitude / 2) * Math.sin(dLatitude / 2) + Math.cos(Math.toRadians(latitude1))
+                * Math.cos(Math.toRadians(latitude2)) * Math.sin(dLongitude / 2) * Math.sin(dLongitude / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    // Plage [from, to) : sa médiane est le noeud, les points avant et après sont ses deux sous-arbres
+    private static void build(double[][] points, int[] order, int from, int to, int depth) {
+        if (to - from <= 1) {
+            return;
+        }
+        int median = (from + to) >>> 1;
+        select(points[depth % 3], order, from, to - 1, median);
+        build(points, order, from, median, depth + 1);
+        build(points, order, median + 1, to, depth + 1);
+    }
+
+    // Sélection rapide : le point de rang k (sur l'axe) en position k, les points inférieurs avant, supérieurs après
+    private static void select(double[] axis, int[] order, int low, int high, int k) {
+        while (low < high) {
+            double pivot = axis[order[(low + high) >>> 1]];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (axis[order[i]] < pivot) {
+                    i++;
+                }
+                while (axis[order[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i++] = order[j];
+                    order[j--] = swap;
+                }
+            }
+            if (k <= j) {
+                high = j;
+            } else if (k >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void search(double x, double y, double z, int from, int to, int depth, Neighbours neighbours) {
+        if (from >= to) {
+            return;
+        }
+        int median = (from + to) >>> 1;
+        double dx = xs[median] - x;
+        double dy = ys[median] - y;
+        double dz = zs[median] - z;
+        neighbours.offer(rows[median], dx * dx + dy * dy + dz * dz);
+        double delta = depth % 3 == 0 ? x - xs[median] : depth % 3 == 1 ? y - ys[median] : z - zs[median];
+        // Côté du point d'abord, l'autre seulement s'il peut contenir un point plus proche que le k-ième trouvé
+        if (delta < 0) {
+            search(x, y, z, from, median, depth + 1, neighbours);
+            if (delta * delta < neighbours.worst()) {
+                search(x, y, z, median + 1, to, depth + 1, neighbours);
+            }
+        } else {
+            search(x, y, z, median + 1, to, depth + 1, neighbours);
+            if (delta * delta < neighbours.worst()) {
+                search(x, y, z, from, median, depth + 1, neighbours);
+            }
+        }
+    }
+
+    private static double x(double latitude, double longitude) {
+        return Math.cos(Math.toRadians(latitude)) * Math.cos(Math.toRadians(longitude));
+    }
+
+    private static double y(double latitude, double longitude) {
+        return Math.cos(Math.toRadians(latitude)) * Math.sin(Math.toRadians(longitude));
+    }
+
+    private static double z(double latitude) {
+        return Math.sin(Math.toRadians(latitude));
+    }
+
+    // k plus proches voisins trouvés, triés par distance (carré de la distance en ligne droite)
+    private static final class Neighbours {
+        final int[] rows;
+        final double[] distances;
+        int size;
+
+        Neighbours(int k) {
+            rows = new int[k];
+            distances = new double[k];
+        }
+
+        double worst() {
+            return size < rows.length ? Double.POSITIVE_INFINITY : distances[size - 1];
+        }
+
+        void offer(int row, double distance) {
+            if (distance >= worst()) {
+                return;
+            }
+            int i = size < rows.length ? size++ : size - 1;
+            while (i > 0 && distances[i - 1] > distance) {
+                rows[i] = rows[i - 1];
+                distances[i] = distances[i - 1];
+                i--;
+            }
+            rows[i] = row;
+            distances[i] = distance;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.ipiecole.batch.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.AfterChunk;
+import org.springframework.batch.core.annotation.AfterChunkError;
+import org.springframework.batch.core.annotation.AfterJob;
+import org.springframework.batch.core.annotation.BeforeChunk;
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.core.annotation.OnSkipInProcess;
+import org.springframework.batch.core.annotation.OnSkipInRead;
+import org.springframework.batch.core.annotation.OnSkipInWrite;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.listener.RetryListenerSupport;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToDoubleFunction;
+
+// Mesures des steps des jobs d'import et d'export, en plus de celles de Spring Batch (spring.batch.job, spring.batch.step,
+// spring.batch.item.read et spring.batch.item.process par élément, spring.batch.chunk.write par chunk) :
+//  - batch.chunk : durée de chaque chunk (lecture, traitement et écriture), par step et statut
+//  - batch.step.throughput : éléments lus et écrits par seconde depuis le début de la step (type=read|write)
+//  - batch.skip : éléments ignorés par phase (read, process, write) et type d'exception
+//  - batch.retry : tentatives en échec (réessayées ou non) par type d'exception (cf. retryListener)
+// A la fin du job, les mesures sont écrites au format texte de Prometheus dans metrics.prometheus.file (si renseigné)
+// Une seule instance pour toutes les steps (et partitions, en parallèle) : l'état d'un chunk est propre au thread
+public class BatchMetricsListener {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final MeterRegistry registry;
+    private final PrometheusMeterRegistry exportRegistry;
+    private final String file;
+    // Exécution courante de chaque step, lue par les jauges de débit (une même step peut être exécutée plusieurs fois)
+    private final Map<Tags, StepExecution> stepExecutions = new ConcurrentHashMap<>();
+    private final ThreadLocal<Timer.Sample> chunkSample = new ThreadLocal<>();
+
+    // registry : enregistrement des mesures ; exportRegistry : mesures écrites dans le fichier (file vide : aucun fichier)
+    public BatchMetricsListener(MeterRegistry registry, PrometheusMeterRegistry exportRegistry, String file) {
+        this.registry = registry;
+        this.exportRegistry = exportRegistry;
+        this.file = file;
+    }
+
+    @BeforeStep
+    public void beforeStep(StepExecution stepExecution) {
+        Tags tags = Tags.of("job", stepExecution.getJobExecution().getJobInstance().getJobName(),
+                "step", stepExecution.getStepName());
+        if (stepExecutions.put(tags, stepExecution) == null) {
+            throughputGauge(tags, "read", StepExecution::getReadCount);
+            throughputGauge(tags, "write", StepExecution::getWriteCount);
+        }
+    }
+
+    private void throughputGauge(Tags tags, String type, ToDoubleFunction<StepExecution> count) {
+        Gauge.builder("batch.step.throughput", stepExecutions, executions -> {
+                    StepExecution stepExecution = executions.get(tags);
+                    return stepExecution == null ? Double.NaN : throughput(stepExecution, count.applyAsDouble(stepExecution));
+                })
+                .tags(tags).tag("type", type)
+                .description("Eléments par seconde depuis le début de la step")
+                .strongReference(true)
+                .register(registry);
+    }
+
+    static double throughput(StepExecution stepExecution, double count) {
+        Date end = stepExecution.getEndTime() == null ? new Date() : stepExecution.getEndTime();
+        long elapsed = end.getTime() - stepExecution.getStartTime().getTime();
+        return elapsed <= 0 ? 0 : count * 1000 / elapsed;
+    }
+
+    @BeforeChunk
+    public void beforeChunk(ChunkContext context) {
+        chunkSample.set(Timer.start(registry));
+    }
+
+    @AfterChunk
+    public void afterChunk(ChunkContext context) {
+        stopChunk(context, "COMPLETED");
+    }
+
+    @AfterChunkError
+    public void afterChunkError(ChunkContext context) {
+        stopChunk(context, "FAILED");
+    }
+
+    private void stopChunk(ChunkContext context, String status) {
+        Timer.Sample sample = chunkSample.get();
+        if (sample == null) {
+            return;
+        }
+        chunkSample.remove();
+        StepContext stepContext = context.getStepContext();
+        sample.stop(Timer.builder("batch.chunk")
+                .description("Durée d'un chunk (lecture, traitement, écriture)")
+                .tags("job", stepContext.getJobName(), "step", stepContext.getStepName(), "status", status)
+                .register(registry));
+    }
+
+    @OnSkipInRead
+    public void onSkipInRead(Throwable t) {
+        skipped("read", t);
+    }
+
+    @OnSkipInProcess
+    public void onSkipInProcess(Object item, Throwable t) {
+        skipped("process", t);
+    }
+
+    @OnSkipInWrite
+    public void onSkipInWrite(Object item, Throwable t) {
+        skipped("write", t);
+    }
+
+    private void skipped(String phase, Throwable t) {
+        StepContext stepContext = StepSynchronizationManager.getContext();
+        registry.counter("batch.skip",
+                "job", stepContext == null ? "" : stepContext.getJobName(),
+                "step", stepContext == null ? "" : stepContext.getStepName(),
+                "phase", phase,
+                "exception", t.getClass().getSimpleName()).increment();
+    }
+
+    // Tentatives en échec d'une step (retry de la step "faultTolerant") ou d'une RetryTemplate
+    // La step est nommée explicitement : les réessais d'une RetryTemplate peuvent être faits hors du thread de la step
+    public RetryListenerSupport retryListener(String stepName) {
+        return new RetryListenerSupport() {
+            @Override
+            public <T, E extends Throwable> void onError(RetryContext context, RetryCallback<T, E> callback, Throwable throwable) {
+                registry.counter("batch.retry", "step", stepName, "exception", throwable.getClass().getSimpleName()).increment();
+            }
+        };
+    }
+
+    @AfterJob
+    public void afterJob(JobExecution jobExecution) {
+        if (file == null || file.isBlank()) {
+            return;
+        }
+        // Fichier remplacé d'un coup : jamais lu à moitié écrit (ex : par le collecteur de fichiers de node_exporter)
+        Path path = Paths.get(file).toAbsolutePath();
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(temp, exportRegistry.scrape().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Mesures du job {} écrites dans {}", jobExecution.getJobInstance().getJobName(), path);
+        } catch (IOException e) {
+            // Les mesures ne doivent pas faire échouer le job
+            logger.warn("Ecriture des mesures dans {} impossible : {}", path, e.getMessage());
+        }
+    }
+}
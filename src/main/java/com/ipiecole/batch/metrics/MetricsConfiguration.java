@@ -0,0 +1,67 @@
+package com.ipiecole.batch.metrics;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+// Mesures des jobs d'import et d'export (cf. BatchMetricsListener) : Spring Batch et les listeners enregistrent
+// dans le registre global de Micrometer, auquel est ajouté le registre Prometheus de Micrometer
+// (relevé écrit dans un fichier à la fin de chaque job et/ou page /metrics locale), sans serveur de supervision
+@Configuration
+public class MetricsConfiguration {
+
+    // Fichier des mesures réécrit à la fin de chaque job (vide : aucun fichier)
+    @Value("${metrics.prometheus.file:}")
+    private String prometheusFile;
+
+    // Port local de la page /metrics (0 : aucun serveur)
+    @Value("${metrics.prometheus.port:0}")
+    private Integer prometheusPort;
+
+    private PrometheusMeterRegistry registry;
+
+    @Bean
+    public PrometheusMeterRegistry batchMeterRegistry() {
+        registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        // Histogrammes et maximums cumulés sur toute l'exécution (et non sur une fenêtre glissante de quelques minutes) :
+        // le relevé de fin de job porte sur tout le job
+        registry.config().meterFilter(new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                return DistributionStatisticConfig.builder()
+                        .expiry(Duration.ofDays(3650))
+                        .bufferLength(1)
+                        .build()
+                        .merge(config);
+            }
+        });
+        Metrics.addRegistry(registry);
+        return registry;
+    }
+
+    @PreDestroy
+    public void removeRegistry() {
+        if (registry != null) {
+            Metrics.removeRegistry(registry);
+        }
+    }
+
+    @Bean
+    public BatchMetricsListener batchMetricsListener() {
+        return new BatchMetricsListener(Metrics.globalRegistry, batchMeterRegistry(), prometheusFile);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public PrometheusHttpEndpoint prometheusHttpEndpoint() {
+        return new PrometheusHttpEndpoint(batchMeterRegistry(), prometheusPort);
+    }
+}
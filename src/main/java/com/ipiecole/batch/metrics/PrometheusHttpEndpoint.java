@@ -0,0 +1,65 @@
+package com.ipiecole.batch.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+// Page /metrics au format texte de Prometheus, servie sur l'interface locale par le serveur HTTP du JDK
+// (port 0 : aucun serveur). Le serveur maintient l'application en vie une fois les jobs terminés, pour un dernier relevé :
+// elle s'arrête alors par Ctrl+C (ou SIGTERM)
+public class PrometheusHttpEndpoint {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final PrometheusMeterRegistry registry;
+    private final int port;
+    private HttpServer server;
+
+    public PrometheusHttpEndpoint(PrometheusMeterRegistry registry, int port) {
+        this.registry = registry;
+        this.port = port;
+    }
+
+    public void start() throws IOException {
+        if (port <= 0) {
+            return;
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            try (exchange) {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", TextFormat.CONTENT_TYPE_004);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.start();
+        logger.info("Mesures publiées sur http://{}:{}/metrics", server.getAddress().getHostString(), getPort());
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    // Port effectif du serveur (utile avec un port attribué par le système)
+    public int getPort() {
+        return server == null ? port : server.getAddress().getPort();
+    }
+}
@@ -1,18 +1,47 @@
 package com.ipiecole.batch.model;
 
+import javax.persistence.Access;
+import javax.persistence.AccessType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+// Table créée par le script versionné db/schema/<base>/V1__commune.sql (colonnes et index décrits ici pour le mapping) :
+// Index sur l'ordre de l'export (code postal puis code Insee), utilisé par la lecture par clé (CommuneKeysetItemReader)
+// Index sur les communes à géocoder (indicateur puis code Insee), utilisé par MissingCoordinatesItemReader
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_commune_code_postal_code_insee", columnList = "codePostal, codeInsee"),
+        @Index(name = "idx_commune_geocoding_pending", columnList = "geocodingPending, codeInsee")})
 public class Commune {
     @Id
     @Column(length = 5)
     private String codeInsee;
+    @Column(length = 64)
     private String nom;
     @Column(length = 5)
     private String codePostal;
     private Double latitude;
     private Double longitude;
+    // Origine et précision des coordonnées récupérées après l'import (null pour les coordonnées du fichier)
+    @Enumerated(EnumType.STRING)
+    @Column(length = 15)
+    private CoordinatesSource coordinatesSource;
+    @Enumerated(EnumType.STRING)
+    @Column(length = 15)
+    private CoordinatesPrecision coordinatesPrecision;
+    // Empreinte de la ligne du fichier lors du dernier import différentiel (cf. CommuneDeltaItemProcessor)
+    private Long importFingerprint;
+    // Ligne d'une commune déjà lue pendant l'import, et code postal pas encore enregistré pour cette commune
+    // (cf. CommuneDedupItemProcessor, non persistés)
+    @Transient
+    private boolean duplicate;
+    @Transient
+    private boolean newCodePostal;
     public Commune() {
     }
     public Commune(String codeInsee, String nom, String codePostal, Double latitude, Double longitude) {
@@ -52,6 +81,46 @@ public class Commune {
     public void setLongitude(Double longitude) {
         this.longitude = longitude;
     }
+    public CoordinatesSource getCoordinatesSource() {
+        return coordinatesSource;
+    }
+    public void setCoordinatesSource(CoordinatesSource coordinatesSource) {
+        this.coordinatesSource = coordinatesSource;
+    }
+    public CoordinatesPrecision getCoordinatesPrecision() {
+        return coordinatesPrecision;
+    }
+    public void setCoordinatesPrecision(CoordinatesPrecision coordinatesPrecision) {
+        this.coordinatesPrecision = coordinatesPrecision;
+    }
+    public Long getImportFingerprint() {
+        return importFingerprint;
+    }
+    public void setImportFingerprint(Long importFingerprint) {
+        this.importFingerprint = importFingerprint;
+    }
+    public boolean isDuplicate() {
+        return duplicate;
+    }
+    public void setDuplicate(boolean duplicate) {
+        this.duplicate = duplicate;
+    }
+    public boolean isNewCodePostal() {
+        return newCodePostal;
+    }
+    public void setNewCodePostal(boolean newCodePostal) {
+        this.newCodePostal = newCodePostal;
+    }
+    // Commune à géocoder : colonne GEOCODING_PENDING déduite des coordonnées à chaque écriture
+    // (JPA ici, CommuneJdbcUpsertItemWriter et CommuneBulkLoadTasklet pour les écritures JDBC)
+    @Access(AccessType.PROPERTY)
+    @Column(nullable = false, columnDefinition = "BOOLEAN DEFAULT FALSE")
+    public boolean isGeocodingPending() {
+        return latitude == null || longitude == null;
+    }
+    // Valeur lue en base ignorée : toujours recalculée à partir des coordonnées
+    protected void setGeocodingPending(boolean geocodingPending) {
+    }
 
     @Override
     public String toString() {
@@ -61,6 +130,8 @@ public class Commune {
                 ", codePostal='" + codePostal + '\'' +
                 ", latitude=" + latitude +
                 ", longitude=" + longitude +
+                (coordinatesSource == null ? "" : ", coordinatesSource=" + coordinatesSource +
+                        ", coordinatesPrecision=" + coordinatesPrecision) +
                 '}';
     }
 }
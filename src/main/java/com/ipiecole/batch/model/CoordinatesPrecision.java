@@ -0,0 +1,13 @@
+package com.ipiecole.batch.model;
+
+// Précision des coordonnées récupérées après l'import
+public enum CoordinatesPrecision {
+    // Position de la commune elle-même
+    COMMUNE,
+    // Position d'une autre commune du département au nom proche (rapprochement approximatif, cf. OfflineGeocoder)
+    NOM_PROCHE,
+    // Centre des communes de même code postal
+    CODE_POSTAL,
+    // Centre des communes du département
+    DEPARTEMENT
+}
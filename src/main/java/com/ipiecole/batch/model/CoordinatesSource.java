@@ -0,0 +1,9 @@
+package com.ipiecole.batch.model;
+
+// Origine des coordonnées d'une commune récupérées après l'import (null : coordonnées du fichier CSV)
+public enum CoordinatesSource {
+    // Géocodage en ligne (Nominatim)
+    OPENSTREETMAP,
+    // Déduites des communes déjà chargées en base (cf. OfflineGeocoder)
+    OFFLINE
+}
@@ -0,0 +1,56 @@
+package com.ipiecole.batch.nearest;
+
+// Commune la plus proche d'une position du fichier d'entrée (une ligne du fichier de sortie)
+public class NearestCommune {
+    private String identifiant;
+    private Double latitude;
+    private Double longitude;
+    private String codeInsee;
+    private String nom;
+    private String codePostal;
+    // Distance entre la position et les coordonnées de la commune, arrondie au mètre
+    private Double distanceKm;
+
+    public NearestCommune(String identifiant, Double latitude, Double longitude, String codeInsee, String nom,
+                          String codePostal, Double distanceKm) {
+        this.identifiant = identifiant;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.codeInsee = codeInsee;
+        this.nom = nom;
+        this.codePostal = codePostal;
+        this.distanceKm = distanceKm;
+    }
+
+    public String getIdentifiant() {
+        return identifiant;
+    }
+    public Double getLatitude() {
+        return latitude;
+    }
+    public Double getLongitude() {
+        return longitude;
+    }
+    public String getCodeInsee() {
+        return codeInsee;
+    }
+    public String getNom() {
+        return nom;
+    }
+    public String getCodePostal() {
+        return codePostal;
+    }
+    public Double getDistanceKm() {
+        return distanceKm;
+    }
+
+    @Override
+    public String toString() {
+        return "NearestCommune{" +
+                "identifiant='" + identifiant + '\'' +
+                ", codeInsee='" + codeInsee + '\'' +
+                ", nom='" + nom + '\'' +
+                ", distanceKm=" + distanceKm +
+                '}';
+    }
+}
@@ -0,0 +1,136 @@
+package com.ipiecole.batch.nearest;
+
+import com.ipiecole.batch.chunk.ChunkSizing;
+import com.ipiecole.batch.dto.PositionCSV;
+import com.ipiecole.batch.exception.PositionCSVException;
+import com.ipiecole.batch.index.CommuneIndexHolder;
+import com.ipiecole.batch.metrics.BatchMetricsListener;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.job.builder.FlowBuilder;
+import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.FlatFileItemWriter;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
+import org.springframework.batch.item.file.mapping.BeanWrapperFieldSetMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+
+// Géocodage inverse : commune la plus proche de chaque position d'un fichier CSV (identifiant;latitude;longitude),
+// recherchée en mémoire (cf. NearestCommuneItemProcessor)
+@Configuration
+@EnableBatchProcessing
+public class NearestCommuneBatch {
+
+    public static final String NO_INPUT = "NO_INPUT";
+
+    @Autowired
+    public JobBuilderFactory jobBuilderFactory;
+
+    @Autowired
+    public StepBuilderFactory stepBuilderFactory;
+
+    @Autowired
+    private CommuneIndexHolder communeIndexHolder;
+
+    @Autowired
+    private BatchMetricsListener batchMetricsListener;
+
+    @Autowired
+    private ChunkSizing chunkSizing;
+
+    // Fichier des positions, avec une ligne d'entête (fichier absent : aucune position traitée)
+    @Value("${nearestCommune.input:file:positions.csv}")
+    private Resource input;
+
+    // Fichier résultat (identifiant;latitude;longitude;code Insee;nom;code postal;distance en km), supprimé s'il est vide
+    @Value("${nearestCommune.output:file:target/nearest_communes.csv}")
+    private Resource output;
+
+    @Value("${nearestCommune.chunkSize:100}")
+    private Integer chunkSize;
+
+    @Bean
+    public FlatFileItemReader<PositionCSV> positionsItemReader(){
+        return new FlatFileItemReaderBuilder<PositionCSV>()
+                .name("positionsItemReader")
+                .resource(input)
+                .strict(false)
+                .linesToSkip(1)
+                .delimited()
+                .delimiter(";")
+                .names("identifiant", "latitude", "longitude")
+                .fieldSetMapper(new BeanWrapperFieldSetMapper<>(){{
+                    setTargetType(PositionCSV.class);
+                }})
+                .build();
+    }
+
+    @Bean
+    public NearestCommuneItemProcessor nearestCommuneItemProcessor(){
+        return new NearestCommuneItemProcessor(communeIndexHolder);
+    }
+
+    @Bean
+    public FlatFileItemWriter<NearestCommune> nearestCommuneItemWriter(){
+        return new FlatFileItemWriterBuilder<NearestCommune>()
+                .name("nearestCommuneItemWriter")
+                .resource(output)
+                .encoding("UTF-8")
+                .shouldDeleteIfEmpty(true)
+                .headerCallback(writer -> writer.write("IDENTIFIANT;LATITUDE;LONGITUDE;CODE_INSEE;NOM;CODE_POSTAL;DISTANCE_KM"))
+                .lineAggregator(nearest -> nearest.getIdentifiant() + ";" + nearest.getLatitude() + ";" + nearest.getLongitude() + ";"
+                        + nearest.getCodeInsee() + ";" + nearest.getNom() + ";"
+                        + (nearest.getCodePostal() == null ? "" : nearest.getCodePostal()) + ";" + nearest.getDistanceKm())
+                .build();
+    }
+
+    @Bean
+    public Step stepNearestCommune(){
+        return chunkSizing.<PositionCSV, NearestCommune>chunk(stepBuilderFactory.get("nearestCommune"), chunkSize)
+                .reader(positionsItemReader())
+                .processor(nearestCommuneItemProcessor())
+                .writer(nearestCommuneItemWriter())
+                .listener(nearestCommuneItemProcessor())
+
+                // positions illisibles ou hors bornes ignorées, limitées ici à 10
+                .faultTolerant()
+                .skipLimit(10)
+                .skip(PositionCSVException.class)
+                .skip(FlatFileParseException.class)
+                .listener(batchMetricsListener)
+                .build();
+    }
+
+    // Fichier des positions absent : le job se termine sans charger l'index des communes
+    @Bean
+    public JobExecutionDecider nearestCommuneInputDecider(){
+        return (jobExecution, stepExecution) -> input.exists() ? FlowExecutionStatus.COMPLETED : new FlowExecutionStatus(NO_INPUT);
+    }
+
+    @Bean
+    public Job nearestCommuneJob(){
+        Flow flow = new FlowBuilder<Flow>("nearestCommuneFlow")
+                .start(nearestCommuneInputDecider())
+                .on(NO_INPUT).end(NO_INPUT)
+                .from(nearestCommuneInputDecider()).on("*").to(stepNearestCommune())
+                .end();
+        return jobBuilderFactory.get("nearestCommuneJob")
+                .incrementer(new RunIdIncrementer())
+                .listener(batchMetricsListener)
+                .start(flow)
+                .end()
+                .build();
+    }
+}
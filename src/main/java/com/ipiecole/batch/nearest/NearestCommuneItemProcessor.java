@@ -0,0 +1,65 @@
+package com.ipiecole.batch.nearest;
+
+import com.ipiecole.batch.dto.PositionCSV;
+import com.ipiecole.batch.exception.PositionCSVException;
+import com.ipiecole.batch.index.CommuneIndex;
+import com.ipiecole.batch.index.CommuneIndexHolder;
+import com.ipiecole.batch.index.CommuneKdTree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.item.ItemProcessor;
+
+// Commune la plus proche de chaque position lue, recherchée dans un arbre k-d (cf. CommuneKdTree) construit au début
+// de la step à partir de l'index en mémoire des communes : aucune requête SQL par position
+// Index de la fin du dernier import, ou construit à partir de la table si aucun import n'a encore eu lieu
+public class NearestCommuneItemProcessor implements ItemProcessor<PositionCSV, NearestCommune> {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final CommuneIndexHolder communeIndexHolder;
+    private volatile CommuneKdTree tree;
+
+    public NearestCommuneItemProcessor(CommuneIndexHolder communeIndexHolder) {
+        this.communeIndexHolder = communeIndexHolder;
+    }
+
+    @BeforeStep
+    public void beforeStep(StepExecution stepExecution) {
+        long start = System.nanoTime();
+        CommuneIndex index = communeIndexHolder.get();
+        if (index == null) {
+            index = communeIndexHolder.refresh();
+        }
+        tree = CommuneKdTree.build(index);
+        logger.info("Arbre des coordonnées construit en " + (System.nanoTime() - start) / 1_000_000 + " ms : "
+                + tree.size() + " communes");
+    }
+
+    @Override
+    public NearestCommune process(PositionCSV item) throws PositionCSVException {
+        double latitude = coordinate(item.getLatitude(), 90, "latitude");
+        double longitude = coordinate(item.getLongitude(), 180, "longitude");
+        int row = tree.nearest(latitude, longitude);
+        if (row < 0) {
+            throw new PositionCSVException("Aucune commune avec des coordonnées");
+        }
+        CommuneIndex index = tree.getIndex();
+        return new NearestCommune(item.getIdentifiant(), latitude, longitude, index.codeInsee(row), index.nom(row),
+                index.codePostal(row), Math.round(tree.distanceKm(latitude, longitude, row) * 1000) / 1000.0);
+    }
+
+    private static double coordinate(String value, double bound, String name) throws PositionCSVException {
+        double coordinate;
+        try {
+            coordinate = Double.parseDouble(value == null ? "" : value.trim());
+        } catch (NumberFormatException e) {
+            throw new PositionCSVException("La " + name + " n'est pas un nombre : " + value);
+        }
+        if (!(Math.abs(coordinate) <= bound)) {
+            throw new PositionCSVException("La " + name + " n'est pas comprise entre -" + (int) bound + " et " + (int) bound + " : " + value);
+        }
+        return coordinate;
+    }
+}
@@ -5,6 +5,8 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface CommuneRepository extends JpaRepository<Commune, Long> {
 
@@ -14,4 +16,8 @@ public interface CommuneRepository extends JpaRepository<Commune, Long> {
     @Query("select count(distinct c.nom) from Commune c")
     Long countDistinctNom();
 
+    Commune findByCodeInsee(String codeInsee);
+
+    List<Commune> findByCodePostalBetweenOrderByCodePostalAscCodeInseeAsc(String from, String to);
+
 }
@@ -0,0 +1,29 @@
+package com.ipiecole.batch.schema;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.data.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+// Schéma de la base créé par les scripts versionnés (SchemaMigrator) au démarrage, avant Hibernate
+// (spring.jpa.hibernate.ddl-auto=validate : le mapping des entités est seulement vérifié)
+// et avant les jobs (spring.batch.initialize-schema=never : tables BATCH_* créées par les scripts)
+@Configuration
+public class SchemaConfiguration {
+
+    @Value("${schema.location:" + SchemaMigrator.DEFAULT_LOCATION + "}")
+    private String schemaLocation;
+
+    @Bean(initMethod = "migrate")
+    public SchemaMigrator schemaMigrator(DataSource dataSource) {
+        return new SchemaMigrator(dataSource, schemaLocation);
+    }
+
+    // L'EntityManagerFactory (validation du mapping) attend la mise à jour du schéma
+    @Bean
+    public static EntityManagerFactoryDependsOnPostProcessor schemaMigratorEntityManagerFactoryDependsOnPostProcessor() {
+        return new EntityManagerFactoryDependsOnPostProcessor("schemaMigrator");
+    }
+}
@@ -0,0 +1,165 @@
+package com.ipiecole.batch.schema;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.support.DatabaseType;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.util.StreamUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+// Création et mise à jour du schéma de la base par des scripts versionnés livrés avec l'application
+// (db/schema/<base>/V<version>__<description>.sql, base : h2 ou mysql), à la manière de Flyway :
+//  - les scripts sont appliqués une seule fois, par ordre de version, et enregistrés dans la table SCHEMA_VERSION
+//  - la somme de contrôle de chaque script appliqué est conservée : un script modifié après coup arrête le démarrage
+//    (ajouter un nouveau script plutôt que de modifier un script déjà livré)
+public class SchemaMigrator {
+
+    public static final String DEFAULT_LOCATION = "classpath:db/schema";
+
+    private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+
+    private static final String CREATE_TABLE_SQL = "CREATE TABLE IF NOT EXISTS schema_version ("
+            + "version INT NOT NULL PRIMARY KEY, description VARCHAR(200) NOT NULL, checksum BIGINT NOT NULL, "
+            + "installed_on TIMESTAMP NOT NULL)";
+    private static final String SELECT_SQL = "SELECT version, checksum FROM schema_version";
+    private static final String INSERT_SQL = "INSERT INTO schema_version (version, description, checksum, installed_on) "
+            + "VALUES (?, ?, ?, ?)";
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final String location;
+    private final ResourcePatternResolver resourceResolver = new PathMatchingResourcePatternResolver();
+
+    public SchemaMigrator(DataSource dataSource) {
+        this(dataSource, DEFAULT_LOCATION);
+    }
+
+    public SchemaMigrator(DataSource dataSource, String location) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.location = location;
+    }
+
+    // Applique les scripts qui ne l'ont pas encore été et renvoie leur nombre
+    public int migrate() {
+        jdbcTemplate.execute(CREATE_TABLE_SQL);
+        Map<Integer, Long> applied = new HashMap<>();
+        jdbcTemplate.query(SELECT_SQL, rs -> {
+            applied.put(rs.getInt(1), rs.getLong(2));
+        });
+        int count = 0;
+        for (Script script : scripts()) {
+            Long checksum = applied.get(script.version);
+            if (checksum != null) {
+                if (checksum != script.checksum) {
+                    throw new IllegalStateException("Script " + script.resource.getFilename()
+                            + " modifié depuis son application (somme de contrôle " + checksum + ", actuelle " + script.checksum + ")");
+                }
+                continue;
+            }
+            logger.info("Mise à jour du schéma : version " + script.version + " (" + script.description + ")");
+            Connection connection = DataSourceUtils.getConnection(dataSource);
+            try {
+                ScriptUtils.executeSqlScript(connection, new EncodedResource(script.resource, StandardCharsets.UTF_8));
+            } finally {
+                DataSourceUtils.releaseConnection(connection, dataSource);
+            }
+            jdbcTemplate.update(INSERT_SQL, script.version, script.description, script.checksum,
+                    new Timestamp(System.currentTimeMillis()));
+            count++;
+        }
+        return count;
+    }
+
+    // Scripts de la base utilisée, triés par version
+    List<Script> scripts() {
+        String pattern = location + "/" + vendor() + "/V*__*.sql";
+        List<Script> scripts = new ArrayList<>();
+        try {
+            for (Resource resource : resourceResolver.getResources(pattern)) {
+                Matcher matcher = SCRIPT_NAME.matcher(resource.getFilename());
+                if (!matcher.matches()) {
+                    throw new IllegalStateException("Nom de script invalide : " + resource.getFilename());
+                }
+                scripts.add(new Script(Integer.parseInt(matcher.group(1)), matcher.group(2).replace('_', ' '),
+                        checksum(resource), resource));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Impossible de lire les scripts du schéma " + pattern, e);
+        }
+        scripts.sort(Comparator.comparingInt(script -> script.version));
+        for (int i = 1; i < scripts.size(); i++) {
+            if (scripts.get(i).version == scripts.get(i - 1).version) {
+                throw new IllegalStateException("Deux scripts pour la version " + scripts.get(i).version + " du schéma");
+            }
+        }
+        return scripts;
+    }
+
+    private String vendor() {
+        DatabaseType databaseType;
+        try {
+            databaseType = DatabaseType.fromMetaData(dataSource);
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Impossible de déterminer le type de base de données", e);
+        }
+        switch (databaseType) {
+            case H2:
+                return "h2";
+            case MYSQL:
+                return "mysql";
+            default:
+                throw new IllegalStateException("Base de données non supportée par les scripts du schéma : " + databaseType);
+        }
+    }
+
+    // Fins de ligne ignorées (même somme de contrôle pour un dépôt extrait sous Windows)
+    private static long checksum(Resource resource) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = resource.getInputStream()) {
+            for (byte b : StreamUtils.copyToByteArray(in)) {
+                if (b != '\r') {
+                    crc.update(b);
+                }
+            }
+        }
+        return crc.getValue();
+    }
+
+    static final class Script {
+        final int version;
+        final String description;
+        final long checksum;
+        final Resource resource;
+
+        Script(int version, String description, long checksum, Resource resource) {
+            this.version = version;
+            this.description = description;
+            this.checksum = checksum;
+            this.resource = resource;
+        }
+    }
+}
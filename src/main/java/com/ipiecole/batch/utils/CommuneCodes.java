@@ -0,0 +1,68 @@
+package com.ipiecole.batch.utils;
+
+// Codes des communes sous forme d'entiers (dédoublonnage de l'import, index en mémoire) :
+//  - code Insee : 5 caractères (chiffres, A et B pour la Corse) lus en base 36, de 0 à 36^5 - 1
+//  - code postal : 5 chiffres, de 0 à 99 999
+// -1 pour un code absent ou d'un autre format
+public final class CommuneCodes {
+
+    private CommuneCodes() {
+    }
+
+    public static int codeInsee(String codeInsee) {
+        if (codeInsee == null || codeInsee.length() != 5) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < 5; i++) {
+            char c = codeInsee.charAt(i);
+            // Majuscules seulement : le code rendu par codeInsee(int) est celui qui a été lu
+            if ((c < '0' || c > '9') && (c < 'A' || c > 'Z')) {
+                return -1;
+            }
+            value = value * 36 + Character.digit(c, 36);
+        }
+        return value;
+    }
+
+    public static String codeInsee(int value) {
+        char[] chars = new char[5];
+        for (int i = 4; i >= 0; i--) {
+            chars[i] = Character.toUpperCase(Character.forDigit(value % 36, 36));
+            value /= 36;
+        }
+        return new String(chars);
+    }
+
+    public static int codePostal(String codePostal) {
+        if (codePostal == null || codePostal.length() != 5) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < 5; i++) {
+            char c = codePostal.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    public static String codePostal(int value) {
+        char[] chars = new char[5];
+        for (int i = 4; i >= 0; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(chars);
+    }
+
+    // Département d'après le code Insee : 2 caractères (2A et 2B pour la Corse), 3 pour l'outre-mer (971 à 989)
+    public static String department(String codeInsee) {
+        if (codeInsee == null || codeInsee.length() < 3) {
+            return codeInsee;
+        }
+        return codeInsee.startsWith("97") || codeInsee.startsWith("98") ? codeInsee.substring(0, 3) : codeInsee.substring(0, 2);
+    }
+}
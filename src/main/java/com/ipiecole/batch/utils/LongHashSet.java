@@ -0,0 +1,117 @@
+package com.ipiecole.batch.utils;
+
+import java.util.Arrays;
+
+// Ensemble de valeurs long positives ou nulles, sans objet par valeur : table à adressage ouvert (sondage linéaire)
+// 8 octets par case, table agrandie au-delà de 3/4 de remplissage (40 000 codes Insee : 64 Ki cases, 512 Ko)
+// Suppression par décalage arrière (aucune marque de case supprimée, les recherches restent courtes)
+// Non synchronisé
+public class LongHashSet {
+
+    // Case vide : les valeurs sont stockées + 1
+    private static final long EMPTY = 0;
+
+    private long[] table;
+    private int size;
+
+    public LongHashSet(int expectedSize) {
+        int capacity = 16;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        table = new long[capacity];
+    }
+
+    // Faux si la valeur était déjà présente
+    public boolean add(long value) {
+        long key = key(value);
+        int mask = table.length - 1;
+        int i = index(key, mask);
+        while (table[i] != EMPTY) {
+            if (table[i] == key) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        table[i] = key;
+        if (++size > table.length * 3 / 4) {
+            resize();
+        }
+        return true;
+    }
+
+    public boolean contains(long value) {
+        long key = key(value);
+        int mask = table.length - 1;
+        for (int i = index(key, mask); table[i] != EMPTY; i = (i + 1) & mask) {
+            if (table[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Faux si la valeur était absente
+    public boolean remove(long value) {
+        long key = key(value);
+        int mask = table.length - 1;
+        int i = index(key, mask);
+        while (table[i] != key) {
+            if (table[i] == EMPTY) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        // Les valeurs suivantes de la même série sont ramenées vers leur case d'origine
+        int gap = i;
+        for (int j = (gap + 1) & mask; table[j] != EMPTY; j = (j + 1) & mask) {
+            int home = index(table[j], mask);
+            // Déplaçable si sa case d'origine n'est pas entre le trou (exclu) et sa position (incluse)
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                table[gap] = table[j];
+                gap = j;
+            }
+        }
+        table[gap] = EMPTY;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(table, EMPTY);
+        size = 0;
+    }
+
+    private void resize() {
+        long[] old = table;
+        table = new long[old.length << 1];
+        int mask = table.length - 1;
+        for (long key : old) {
+            if (key != EMPTY) {
+                int i = index(key, mask);
+                while (table[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = key;
+            }
+        }
+    }
+
+    private static long key(long value) {
+        if (value < 0 || value == Long.MAX_VALUE) {
+            throw new IllegalArgumentException("Valeur hors limites : " + value);
+        }
+        return value + 1;
+    }
+
+    // Mélange de SplitMix64 : les codes proches ne tombent pas dans des cases voisines
+    private static int index(long key, int mask) {
+        long hash = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return (int) (hash ^ (hash >>> 31)) & mask;
+    }
+}
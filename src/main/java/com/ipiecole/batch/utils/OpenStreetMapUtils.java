@@ -1,115 +1,241 @@
 package com.ipiecole.batch.utils;
 
 import com.ipiecole.batch.exception.NetworkException;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.JSONValue;
+import com.ipiecole.batch.geocoding.Geocoder;
+import com.ipiecole.batch.geocoding.GeocodingResult;
+import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.model.CoordinatesPrecision;
+import com.ipiecole.batch.model.CoordinatesSource;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.json.simple.parser.ContentHandler;
 import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
-public class OpenStreetMapUtils {
+// Géocodage en ligne par Nominatim (sans cache ni limite de débit, cf. GeocodingCache et TokenBucketRateLimiter)
+//  - un seul HttpClient par instance : les connexions sont conservées et réutilisées d'une recherche à l'autre
+//  - délais maximum de connexion et de réponse, réponse compressée (gzip)
+//  - seul le premier résultat est demandé (limit=1) et la lecture du JSON s'arrête dès ses coordonnées lues
+//  - durée de chaque appel mesurée (histogramme geocoding.nominatim.requests par résultat : found, not_found, http_error, error)
+// Une instance peut être utilisée par plusieurs threads
+public class OpenStreetMapUtils implements Geocoder {
 
     public final Logger log = LoggerFactory.getLogger(this.getClass());
 
-    private static OpenStreetMapUtils instance = null;
-    private JSONParser jsonParser;
+    public static final String DEFAULT_SEARCH_URL = "https://nominatim.openstreetmap.org/search";
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+
+    // Identification demandée par la politique d'utilisation de Nominatim
+    private static final String USER_AGENT = "ipiecole-batch (import des communes)";
+
+    // Seuils de l'histogramme des durées d'appel, jusqu'au délai de réponse par défaut
+    private static final Duration[] LATENCY_BUCKETS = {Duration.ofMillis(50), Duration.ofMillis(100), Duration.ofMillis(250),
+            Duration.ofMillis(500), Duration.ofSeconds(1), Duration.ofMillis(2500), Duration.ofSeconds(5), Duration.ofSeconds(10)};
+
+    // Histogramme de chaque résultat, enregistré une seule fois
+    private static final Timer FOUND = timer("found");
+    private static final Timer NOT_FOUND = timer("not_found");
+    private static final Timer HTTP_ERROR = timer("http_error");
+    private static final Timer ERROR = timer("error");
+
+    private final String searchUrl;
+    private final Duration timeout;
+    private final HttpClient httpClient;
 
     public OpenStreetMapUtils() {
-        jsonParser = new JSONParser();
+        this(DEFAULT_SEARCH_URL);
     }
 
-    public static OpenStreetMapUtils getInstance() {
-        if (instance == null) {
-            instance = new OpenStreetMapUtils();
-        }
-        return instance;
+    // URL de recherche d'une autre instance de Nominatim (ou d'un serveur de test)
+    public OpenStreetMapUtils(String searchUrl) {
+        this(searchUrl, DEFAULT_CONNECT_TIMEOUT, DEFAULT_TIMEOUT);
     }
 
-    private String  getRequest(String url) throws Exception {
+    // timeout : délai maximum entre l'envoi de la requête et la réception de la réponse
+    public OpenStreetMapUtils(String searchUrl, Duration connectTimeout, Duration timeout) {
+        this.searchUrl = searchUrl;
+        this.timeout = timeout;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
 
-        final URL obj = new URL(url);
-        final HttpURLConnection con = (HttpURLConnection) obj.openConnection();
+    // Instance créée au premier appel (initialisation de la classe Holder, sûre entre threads)
+    public static OpenStreetMapUtils getInstance() {
+        return Holder.INSTANCE;
+    }
 
-        con.setRequestMethod("GET");
+    private static final class Holder {
+        private static final OpenStreetMapUtils INSTANCE = new OpenStreetMapUtils();
+    }
 
-        if (con.getResponseCode() != 200 && con.getResponseCode() != 301) {
+    @Override
+    public GeocodingResult geocode(Commune commune) throws NetworkException {
+        Map<String, Double> coordinates = getCoordinates(commune.getNom() + " " + commune.getCodePostal());
+        if (coordinates == null || coordinates.size() != 2) {
             return null;
         }
+        return new GeocodingResult(coordinates.get("lat"), coordinates.get("lon"),
+                CoordinatesSource.OPENSTREETMAP, CoordinatesPrecision.COMMUNE);
+    }
 
-        BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-        String inputLine;
-        StringBuffer response = new StringBuffer();
-
-        while ((inputLine = in.readLine()) != null) {
-            response.append(inputLine);
+    // {lat, lon} si trouvé, map vide si introuvable, null si la réponse HTTP est en erreur
+    public Map<String, Double> getCoordinates(String address) throws NetworkException {
+        if (address == null || address.isBlank()) {
+            return null;
         }
-        in.close();
+        String query = searchUrl + "?q=" + URLEncoder.encode(address.trim(), StandardCharsets.UTF_8) + "&format=json&limit=1";
+        log.debug("Query:" + query);
 
-        return response.toString();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(query))
+                .timeout(timeout)
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip")
+                .header("User-Agent", USER_AGENT)
+                .GET()
+                .build();
+        Timer.Sample sample = Timer.start(Metrics.globalRegistry);
+        Timer outcome = ERROR;
+        try {
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                Map<String, Double> res = null;
+                if (response.statusCode() == 200) {
+                    res = firstResult(decode(response, body));
+                    log.debug("lon=" + res.get("lon"));
+                    log.debug("lat=" + res.get("lat"));
+                    outcome = res.isEmpty() ? NOT_FOUND : FOUND;
+                } else {
+                    log.debug("status=" + response.statusCode());
+                    outcome = HTTP_ERROR;
+                }
+                // La suite de la réponse est lue jusqu'au bout (sans être analysée) pour que la connexion soit réutilisée
+                body.transferTo(OutputStream.nullOutputStream());
+                return res;
+            }
+        } catch (IOException | ParseException | NumberFormatException e) {
+            // NumberFormatException : "lat" ou "lon" illisible dans la réponse
+            outcome = ERROR;
+            throw new NetworkException(e.getMessage());
+        } catch (InterruptedException e) {
+            outcome = ERROR;
+            Thread.currentThread().interrupt();
+            throw new NetworkException(e.getMessage());
+        } finally {
+            sample.stop(outcome);
+        }
     }
 
-    public Map<String, Double> getCoordinates(String address) throws NetworkException {
-        Map<String, Double> res;
-        StringBuffer query;
-        String[] split = address.split(" ");
-        String queryResult = null;
+    private static Timer timer(String outcome) {
+        return Timer.builder("geocoding.nominatim.requests")
+                .description("Durée des appels à Nominatim")
+                .tag("outcome", outcome)
+                .serviceLevelObjectives(LATENCY_BUCKETS)
+                .register(Metrics.globalRegistry);
+    }
 
-        query = new StringBuffer();
-        res = new HashMap<String, Double>();
+    private static InputStream decode(HttpResponse<InputStream> response, InputStream body) throws IOException {
+        boolean gzip = response.headers().firstValue("Content-Encoding")
+                .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+                .orElse(false);
+        return gzip ? new GZIPInputStream(body) : body;
+    }
 
-        query.append("https://nominatim.openstreetmap.org/search?q=");
+    private static Map<String, Double> firstResult(InputStream body) throws IOException, ParseException {
+        FirstResultHandler handler = new FirstResultHandler();
+        Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8);
+        new JSONParser().parse(reader, handler);
+        Map<String, Double> res = new HashMap<>();
+        if (handler.lat != null && handler.lon != null) {
+            res.put("lon", handler.lon);
+            res.put("lat", handler.lat);
+        }
+        return res;
+    }
 
-        if (split.length == 0) {
-            return null;
+    // Lecture au fil de l'eau du tableau renvoyé par Nominatim : seuls "lat" et "lon" du premier élément sont retenus,
+    // l'analyse s'arrête dès qu'ils sont lus (ou à la fin du premier élément)
+    private static final class FirstResultHandler implements ContentHandler {
+        // 1 : tableau des résultats, 2 : premier résultat, au-delà : objets ou tableaux imbriqués
+        private int depth;
+        private String key;
+        private Double lat;
+        private Double lon;
+
+        @Override
+        public void startJSON() {
         }
 
-        for (int i = 0; i < split.length; i++) {
-            query.append(split[i]);
-            if (i < (split.length - 1)) {
-                query.append("+");
-            }
+        @Override
+        public void endJSON() {
         }
-        query.append("&format=json&addressdetails=1");
 
-        log.debug("Query:" + query);
+        @Override
+        public boolean startObject() {
+            depth++;
+            return true;
+        }
 
-        try {
-            queryResult = getRequest(query.toString());
-        } catch (Exception e) {
-            throw new NetworkException(e.getMessage());
+        @Override
+        public boolean endObject() {
+            return --depth != 1;
         }
 
-        if (queryResult == null) {
-            return null;
+        @Override
+        public boolean startObjectEntry(String key) {
+            this.key = depth == 2 ? key : null;
+            return true;
         }
 
-        Object obj = JSONValue.parse(queryResult);
-        log.debug("obj=" + obj);
+        @Override
+        public boolean endObjectEntry() {
+            key = null;
+            return true;
+        }
 
-        if (obj instanceof JSONArray) {
-            JSONArray array = (JSONArray) obj;
-            if (array.size() > 0) {
-                JSONObject jsonObject = (JSONObject) array.get(0);
+        @Override
+        public boolean startArray() {
+            depth++;
+            return true;
+        }
 
-                String lon = (String) jsonObject.get("lon");
-                String lat = (String) jsonObject.get("lat");
-                log.debug("lon=" + lon);
-                log.debug("lat=" + lat);
-                res.put("lon", Double.parseDouble(lon));
-                res.put("lat", Double.parseDouble(lat));
+        @Override
+        public boolean endArray() {
+            depth--;
+            return true;
+        }
 
+        @Override
+        public boolean primitive(Object value) {
+            if (key == null || value == null) {
+                return true;
+            }
+            if ("lat".equals(key)) {
+                lat = Double.parseDouble(value.toString());
+            } else if ("lon".equals(key)) {
+                lon = Double.parseDouble(value.toString());
             }
+            return lat == null || lon == null;
         }
-
-        return res;
     }
 }
-
@@ -0,0 +1,48 @@
+package com.ipiecole.batch.utils;
+
+import java.util.concurrent.TimeUnit;
+
+// Limitation de débit par seau à jetons, partagée par le géocodage (politique d'utilisation de Nominatim : 1 requête par seconde,
+// cf. GeocodingCache.limit) et les messages de diagnostics (cf. ItemDiagnostics)
+// Le seau se remplit de permitsPerSecond jetons par seconde, jusqu'à burst jetons
+// Chaque appel réserve un jeton : s'il n'y en a plus, l'appel attend son tour (les réservations sont servies dans l'ordre)
+public class TokenBucketRateLimiter {
+
+    private final double permitsPerSecond;
+    private final double burst;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucketRateLimiter(double permitsPerSecond, int burst) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefillNanos) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+            lastRefillNanos = now;
+            tokens -= 1;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    // Sans attente : prend un jeton s'il y en a un, sinon renvoie faux (aucune réservation)
+    public synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+}
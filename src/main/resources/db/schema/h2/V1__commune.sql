@@ -0,0 +1,28 @@
+-- Table des communes (remplace la création par Hibernate, ddl-auto=create)
+-- Table éventuellement déjà créée par Hibernate avant la gestion des versions du schéma : conservée, complétée plus bas
+
+-- Colonnes dimensionnées sur les données : codes Insee et postaux sur 5 caractères,
+-- noms de 38 caractères au plus dans le fichier La Poste
+CREATE TABLE IF NOT EXISTS commune (
+	code_insee VARCHAR(5) NOT NULL PRIMARY KEY,
+	nom VARCHAR(64),
+	code_postal VARCHAR(5),
+	latitude DOUBLE,
+	longitude DOUBLE,
+	coordinates_source VARCHAR(15),
+	coordinates_precision VARCHAR(15),
+	geocoding_pending BOOLEAN DEFAULT FALSE NOT NULL
+);
+
+-- Table créée par Hibernate avec l'entité d'origine (code_insee, nom VARCHAR(255), code_postal, latitude, longitude) :
+-- colonnes du géocodage ajoutées, nom redimensionné, communes sans coordonnées placées dans la file du géocodage
+ALTER TABLE commune ADD COLUMN IF NOT EXISTS coordinates_source VARCHAR(15);
+ALTER TABLE commune ADD COLUMN IF NOT EXISTS coordinates_precision VARCHAR(15);
+ALTER TABLE commune ADD COLUMN IF NOT EXISTS geocoding_pending BOOLEAN DEFAULT FALSE NOT NULL;
+ALTER TABLE commune ALTER COLUMN nom VARCHAR(64);
+UPDATE commune SET geocoding_pending = TRUE WHERE latitude IS NULL OR longitude IS NULL;
+
+-- Ordre de l'export (CommuneKeysetItemReader, plages de l'export partitionné) et COUNT(DISTINCT code_postal)
+CREATE INDEX IF NOT EXISTS idx_commune_code_postal_code_insee ON commune (code_postal, code_insee);
+-- File des communes à géocoder (MissingCoordinatesItemReader)
+CREATE INDEX IF NOT EXISTS idx_commune_geocoding_pending ON commune (geocoding_pending, code_insee);
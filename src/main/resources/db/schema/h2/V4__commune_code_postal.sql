@@ -0,0 +1,9 @@
+-- Dédoublonnage de l'import (importFile.dedup=true, cf. CommuneDedupItemProcessor et CommuneDedupItemWriter)
+
+-- Codes postaux de chaque commune : une ligne par couple (code Insee, code postal) lu dans le fichier
+-- (COMMUNE.CODE_POSTAL reste celui de la première ligne de la commune)
+CREATE TABLE commune_code_postal (
+	code_insee VARCHAR(5) NOT NULL,
+	code_postal VARCHAR(5) NOT NULL,
+	PRIMARY KEY (code_insee, code_postal)
+);
@@ -0,0 +1,12 @@
+-- Cache du géocodage conservé entre deux exécutions (geocoding.cache.persistent=true, cf. GeocodingCache)
+
+-- Coordonnées trouvées (ou commune introuvable, found = FALSE) pour chaque requête "nom + code postal" normalisée,
+-- created_at en millisecondes depuis l'epoch
+-- IF NOT EXISTS : table déjà créée par GeocodingCache dans les bases antérieures à ce script
+CREATE TABLE IF NOT EXISTS geocoding_cache (
+	query_key VARCHAR(255) NOT NULL PRIMARY KEY,
+	latitude DOUBLE,
+	longitude DOUBLE,
+	found BOOLEAN NOT NULL,
+	created_at BIGINT NOT NULL
+);
@@ -0,0 +1,45 @@
+-- Table des communes (remplace la création par Hibernate, ddl-auto=create)
+-- Table éventuellement déjà créée par Hibernate avant la gestion des versions du schéma : conservée, complétée plus bas
+
+-- Colonnes dimensionnées sur les données : codes Insee et postaux sur 5 caractères,
+-- noms de 38 caractères au plus dans le fichier La Poste
+CREATE TABLE IF NOT EXISTS commune (
+	code_insee VARCHAR(5) NOT NULL PRIMARY KEY,
+	nom VARCHAR(64),
+	code_postal VARCHAR(5),
+	latitude DOUBLE,
+	longitude DOUBLE,
+	coordinates_source VARCHAR(15),
+	coordinates_precision VARCHAR(15),
+	geocoding_pending BOOLEAN DEFAULT FALSE NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- Table créée par Hibernate avec l'entité d'origine (code_insee, nom VARCHAR(255), code_postal, latitude, longitude) :
+-- colonnes du géocodage ajoutées, nom redimensionné, communes sans coordonnées placées dans la file du géocodage
+-- (MySQL ne permet pas ADD COLUMN IF NOT EXISTS : colonne ajoutée par une requête préparée si elle manque)
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns
+		WHERE table_schema = DATABASE() AND table_name = 'commune' AND column_name = 'coordinates_source') = 0,
+	'ALTER TABLE commune ADD COLUMN coordinates_source VARCHAR(15)', 'DO 0');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns
+		WHERE table_schema = DATABASE() AND table_name = 'commune' AND column_name = 'coordinates_precision') = 0,
+	'ALTER TABLE commune ADD COLUMN coordinates_precision VARCHAR(15)', 'DO 0');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns
+		WHERE table_schema = DATABASE() AND table_name = 'commune' AND column_name = 'geocoding_pending') = 0,
+	'ALTER TABLE commune ADD COLUMN geocoding_pending BOOLEAN DEFAULT FALSE NOT NULL', 'DO 0');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+DEALLOCATE PREPARE ddl;
+ALTER TABLE commune MODIFY COLUMN nom VARCHAR(64);
+UPDATE commune SET geocoding_pending = TRUE WHERE latitude IS NULL OR longitude IS NULL;
+
+-- (MySQL ne permet pas IF NOT EXISTS : index créés une seule fois, avec cette version du schéma)
+-- Ordre de l'export (CommuneKeysetItemReader, plages de l'export partitionné) et COUNT(DISTINCT code_postal)
+CREATE INDEX idx_commune_code_postal_code_insee ON commune (code_postal, code_insee);
+-- File des communes à géocoder (MissingCoordinatesItemReader)
+CREATE INDEX idx_commune_geocoding_pending ON commune (geocoding_pending, code_insee);
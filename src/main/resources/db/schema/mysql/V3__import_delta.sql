@@ -0,0 +1,11 @@
+-- Import différentiel (importFile.delta=true, cf. CommuneDeltaItemProcessor et CommuneImportDeltaTasklet)
+
+-- Empreinte de la dernière ligne importée du fichier pour chaque commune (nom, code postal et coordonnées du fichier)
+ALTER TABLE commune ADD COLUMN import_fingerprint BIGINT;
+
+-- Empreinte SHA-256 du dernier fichier importé entièrement, par fichier
+CREATE TABLE import_file (
+	resource VARCHAR(255) NOT NULL PRIMARY KEY,
+	sha256 VARCHAR(64) NOT NULL,
+	imported_on TIMESTAMP NOT NULL
+) ENGINE=InnoDB;
@@ -0,0 +1,13 @@
+-- Import en masse (importFile.mode=bulk, cf. CommuneBulkLoadTasklet)
+
+-- Table de transit du fichier propre, vidée avant et après chaque chargement ;
+-- id dans l'ordre du fichier pour qu'un code Insee en double garde la dernière ligne
+CREATE TABLE IF NOT EXISTS commune_staging (
+	id BIGINT AUTO_INCREMENT PRIMARY KEY,
+	code_insee VARCHAR(5),
+	nom VARCHAR(255),
+	code_postal VARCHAR(5),
+	latitude DOUBLE,
+	longitude DOUBLE,
+	import_fingerprint BIGINT
+) ENGINE=InnoDB;
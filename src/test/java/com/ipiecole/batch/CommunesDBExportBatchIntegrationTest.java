@@ -1,5 +1,6 @@
 package com.ipiecole.batch;
 
+import com.ipiecole.batch.dbexport.CommuneExportAssemblyTasklet;
 import com.ipiecole.batch.model.Commune;
 import com.ipiecole.batch.repository.CommuneRepository;
 import com.ipiecole.batch.utils.BatchTest;
@@ -15,7 +16,12 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @ExtendWith(SpringExtension.class)
 @SpringBootTest
@@ -54,4 +60,35 @@ public class CommunesDBExportBatchIntegrationTest extends BatchTest {
         Assert.assertEquals(ExitStatus.COMPLETED, actualJobExitStatus);
         AssertFile.assertFileEquals(new File("src/test/ressources/laposte_out_test.txt"), new File("target/test.txt"));
     }
-}
\ No newline at end of file
+
+    // Fichier final impossible à écrire (un répertoire porte son nom) : le job échoue, les lignes restent dans le fichier
+    // intermédiaire et la reprise ne relance que l'assemblage
+    @Test
+    public void testAssemblageEnEchec() throws Exception {
+        //Given
+        communeRepository.save(new Commune("01006", "Saint Ambleon", "01300", 45.7494989044, 5.59432017366));
+        communeRepository.save(new Commune("01454", "Virignin", "01300", 45.7267387762, 5.71282330936));
+        communeRepository.save(new Commune("07024", "Banne", "07460", 44.3607782702, 4.15113804507));
+        JobParameters jobParameters = new JobParametersBuilder().addDate("date", new Date()).toJobParameters();
+        Path output = Paths.get("target/test.txt");
+        Files.deleteIfExists(output);
+        Files.createDirectory(output);
+        // when
+        JobExecution jobExecution;
+        try {
+            jobExecution = jobLauncherTestUtils.launchJob(jobParameters);
+        } finally {
+            Files.delete(output);
+        }
+        // then
+        Assert.assertEquals(BatchStatus.FAILED, jobExecution.getStatus());
+        Assert.assertTrue(Files.exists(CommuneExportAssemblyTasklet.bodyFile(output.toString())));
+
+        JobExecution restart = jobLauncherTestUtils.launchJob(jobParameters);
+        Assert.assertEquals(ExitStatus.COMPLETED, restart.getExitStatus());
+        Assert.assertEquals(List.of("exportFileAssembly"),
+                restart.getStepExecutions().stream().map(StepExecution::getStepName).collect(Collectors.toList()));
+        AssertFile.assertFileEquals(new File("src/test/ressources/laposte_out_test.txt"), output.toFile());
+        Assert.assertFalse(Files.exists(CommuneExportAssemblyTasklet.bodyFile(output.toString())));
+    }
+}
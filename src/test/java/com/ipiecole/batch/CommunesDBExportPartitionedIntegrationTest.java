@@ -0,0 +1,115 @@
+package com.ipiecole.batch;
+
+import com.ipiecole.batch.dbexport.CommuneExportPartitioner;
+import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.repository.CommuneRepository;
+import com.ipiecole.batch.utils.BatchTest;
+import org.junit.Assert;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.test.AssertFile;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = {"exportFile.mode=partitioned", "exportFile.gridSize=3", "exportFile.pageSize=50"})
+public class CommunesDBExportPartitionedIntegrationTest extends BatchTest {
+
+    @Autowired
+    @Qualifier("exportCommunes")
+    private Job exportCommunes;
+
+    @Autowired
+    @Qualifier("stepExport")
+    private Step stepExport;
+
+    @Autowired
+    @Qualifier("stepExportFileAssembly")
+    private Step stepExportFileAssembly;
+
+    @Autowired
+    private JobBuilderFactory jobBuilderFactory;
+
+    @Autowired
+    private CommuneRepository communeRepository;
+
+    @BeforeEach
+    public void setup() {
+        communeRepository.deleteAll();
+        this.initializeJobLauncherTestUtils(exportCommunes);
+    }
+
+    @Test
+    public void testPartitionedJobOk() throws Exception {
+        //Given
+        communeRepository.save(new Commune("01006", "Saint Ambleon", "01300", 45.7494989044, 5.59432017366));
+        communeRepository.save(new Commune("01454", "Virignin", "01300", 45.7267387762, 5.71282330936));
+        communeRepository.save(new Commune("07024", "Banne", "07460", 44.3607782702, 4.15113804507));
+        // when
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(jobParameters());
+        // then
+        Assert.assertEquals(ExitStatus.COMPLETED, jobExecution.getExitStatus());
+        AssertFile.assertFileEquals(new File("src/test/ressources/laposte_out_test.txt"), new File("target/test.txt"));
+        Assert.assertFalse(Files.exists(CommuneExportPartitioner.partFile("target/test.txt", 0)));
+    }
+
+    @Test
+    public void testPartitionedJobSameAsSequential() throws Exception {
+        //Given : communes de plusieurs départements, dont certaines sans code postal
+        Random random = new Random(42);
+        List<Commune> communes = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String codeInsee = String.format("%05d", 1000 + i * 47);
+            String codePostal = i % 97 == 0 ? null : codeInsee.substring(0, 2) + String.format("%03d", random.nextInt(1000));
+            communes.add(new Commune(codeInsee, "Commune " + i, codePostal,
+                    40 + random.nextDouble() * 10, random.nextDouble() * 8));
+        }
+        communeRepository.saveAll(communes);
+        Job sequential = jobBuilderFactory.get("exportCommunesSequential").start(stepExport)
+                .next(stepExportFileAssembly).build();
+        JobExecution sequentialExecution = jobLauncher.run(sequential, jobParameters());
+        Assert.assertEquals(ExitStatus.COMPLETED, sequentialExecution.getExitStatus());
+        Path expected = Paths.get("target/test-sequential.txt");
+        Files.copy(Paths.get("target/test.txt"), expected, StandardCopyOption.REPLACE_EXISTING);
+        // when
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(jobParameters());
+        // then
+        Assert.assertEquals(ExitStatus.COMPLETED, jobExecution.getExitStatus());
+        long partitions = jobExecution.getStepExecutions().stream()
+                .filter(stepExecution -> stepExecution.getStepName().startsWith("exportFilePartition:"))
+                .count();
+        Assert.assertEquals(3, partitions);
+        Assert.assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(Paths.get("target/test.txt")));
+        // Entête et pied de page calculés pendant l'export : mêmes valeurs que les requêtes COUNT(DISTINCT ...)
+        List<String> lines = Files.readAllLines(expected);
+        Assert.assertEquals("Total codes postaux : " + communeRepository.countDistinctCodePostal(), lines.get(0));
+        Assert.assertEquals("Total communes : " + communeRepository.countDistinctNom(), lines.get(lines.size() - 1));
+    }
+
+    private JobParameters jobParameters() {
+        return new JobParametersBuilder()
+                .addDate("date", new Date())
+                .addLong("nonce", System.nanoTime())
+                .toJobParameters();
+    }
+}
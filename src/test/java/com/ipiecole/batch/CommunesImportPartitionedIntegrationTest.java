@@ -0,0 +1,336 @@
+package com.ipiecole.batch;
+
+import com.ipiecole.batch.csvImport.CommuneCSVFilePartitioner;
+import com.ipiecole.batch.csvImport.CommuneCSVItemProcessor;
+import com.ipiecole.batch.csvImport.CommunesCSVImportSkipListener;
+import com.ipiecole.batch.dto.CommuneCSV;
+import com.ipiecole.batch.utils.BatchTest;
+import org.junit.Assert;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+// Import partitionné comparé à l'import séquentiel du même fichier : mêmes lignes lues, mêmes rejets,
+// même nombre de communes sans coordonnées et même contenu de la table COMMUNE
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = {"importFile.mode=partitioned", "importFile.gridSize=3",
+        "importFile.resource=file:target/communes_partitioned_test.csv"})
+public class CommunesImportPartitionedIntegrationTest extends BatchTest {
+
+    private static final Path CSV_FILE = Paths.get("target/communes_partitioned_test.csv");
+    private static final String HEADER = "Code_commune_INSEE;Nom_commune;Code_postal;Ligne_5;Libellé_d_acheminement;coordonnees_gps";
+    // Ligne rejetée (nom incorrect) au milieu du fichier, utilisée pour faire échouer une partition
+    private static final String NOM_PANNE = "PANNE_PARTITION";
+
+    @Autowired
+    @Qualifier("stepImportCSV")
+    private Step stepImportCSV;
+
+    @Autowired
+    @Qualifier("stepImportCSVPartitioned")
+    private Step stepImportCSVPartitioned;
+
+    @Autowired
+    private JobBuilderFactory jobBuilderFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @SpyBean
+    private CommunesCSVImportSkipListener communesCSVImportSkipListener;
+
+    // Armé par le test de reprise : le SkipListener échoue une fois sur la ligne NOM_PANNE (erreur fatale pour la partition)
+    private final AtomicBoolean panne = new AtomicBoolean();
+
+    // Les jobs de l'application sont lancés au démarrage du contexte : fichier sans commune d'ici là
+    @BeforeAll
+    public static void createFile() throws Exception {
+        Files.createDirectories(CSV_FILE.getParent());
+        Files.write(CSV_FILE, (HEADER + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @BeforeEach
+    public void setup() {
+        jdbcTemplate.update("DELETE FROM commune");
+        panne.set(false);
+        doAnswer(invocation -> {
+            CommuneCSV item = invocation.getArgument(0);
+            if (NOM_PANNE.equals(item.getNom()) && panne.compareAndSet(true, false)) {
+                throw new IllegalStateException("Panne de la partition");
+            }
+            return invocation.callRealMethod();
+        }).when(communesCSVImportSkipListener).onSkipInProcess(any(), any());
+        this.initializeJobLauncherTestUtils(jobBuilderFactory.get("importCsvPartitionedTest")
+                .start(stepImportCSVPartitioned).build());
+    }
+
+    @Test
+    public void testPartitionedSameAsSequential() throws Exception {
+        assertPartitionedSameAsSequential("\n", true);
+    }
+
+    @Test
+    public void testPartitionedSameAsSequentialCRLF() throws Exception {
+        assertPartitionedSameAsSequential("\r\n", true);
+    }
+
+    @Test
+    public void testPartitionedSameAsSequentialSansFinDeLigneFinale() throws Exception {
+        assertPartitionedSameAsSequential("\n", false);
+    }
+
+    @Test
+    public void testPartitionedSameAsSequentialCRLFSansFinDeLigneFinale() throws Exception {
+        assertPartitionedSameAsSequential("\r\n", false);
+    }
+
+    @Test
+    public void testCommuneSurPlusieursPartitions() throws Exception {
+        //Given : communes 00100 et 00101 en tête de fichier (première partition) et à la fin (dernière partition)
+        List<String> lines = communes(600);
+        lines.add(1, "00100;COMMUNE A;00100;;COMMUNE A;45.0,5.0");
+        lines.add(2, "00101;COMMUNE B;00200;;COMMUNE B;45.1,5.1");
+        lines.add(lines.size() - 1, "00101;COMMUNE B;00201;;COMMUNE B;45.2,5.2");
+        lines.add("00100;COMMUNE A;00999;;COMMUNE A;46.0,6.0");
+        lines.add("00101;COMMUNE B;00202;;COMMUNE B;45.3,5.3");
+        writeFile(lines, "\n", true);
+        // when
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(jobParameters());
+        // then : chaque commune n'est écrite que par la partition de sa dernière ligne, qui est conservée
+        Assert.assertEquals(BatchStatus.COMPLETED, jobExecution.getStatus());
+        Set<String> ignoredFirst = ignoredCodesInsee(partition(jobExecution, "partition0"));
+        Assert.assertTrue(ignoredFirst.contains("00100"));
+        Assert.assertTrue(ignoredFirst.contains("00101"));
+        Set<String> ignoredLast = ignoredCodesInsee(partition(jobExecution, "partition2"));
+        Assert.assertFalse(ignoredLast.contains("00100"));
+        Assert.assertFalse(ignoredLast.contains("00101"));
+        Assert.assertEquals("00999", codePostal("00100"));
+        Assert.assertEquals(Double.valueOf(46.0), jdbcTemplate.queryForObject(
+                "SELECT latitude FROM commune WHERE code_insee = '00100'", Double.class));
+        Assert.assertEquals("00202", codePostal("00101"));
+        // Aucune insertion concurrente de la même commune : aucune écriture rejetée
+        Assert.assertEquals(0, partitionedStep(jobExecution).getWriteSkipCount());
+    }
+
+    @Test
+    public void testReprisePartitionEnEchec() throws Exception {
+        //Given : la ligne NOM_PANNE se trouve au milieu du fichier (deuxième partition)
+        List<String> lines = communes(600);
+        lines.add(lines.size() / 2, "09999;" + NOM_PANNE + ";09999;;PANNE;45.0,5.0");
+        writeFile(lines, "\n", true);
+        List<Map<String, Object>> expected = importSequential(jobParameters()).communes;
+        jdbcTemplate.update("DELETE FROM commune");
+        panne.set(true);
+        JobParameters jobParameters = jobParameters();
+        JobExecution failedExecution = jobLauncherTestUtils.launchJob(jobParameters);
+        Assert.assertEquals(BatchStatus.FAILED, failedExecution.getStatus());
+        List<StepExecution> failedPartitions = partitions(failedExecution).stream()
+                .filter(stepExecution -> stepExecution.getStatus() == BatchStatus.FAILED)
+                .collect(Collectors.toList());
+        Assert.assertEquals(1, failedPartitions.size());
+        StepExecution failedPartition = failedPartitions.get(0);
+        Assert.assertEquals("importFilePartition:partition1", failedPartition.getStepName());
+        // when : relance avec les mêmes paramètres
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(jobParameters);
+        // then : seule la partition en échec est relancée, depuis le dernier chunk validé
+        Assert.assertEquals(BatchStatus.COMPLETED, jobExecution.getStatus());
+        List<StepExecution> restartedPartitions = partitions(jobExecution);
+        Assert.assertEquals(1, restartedPartitions.size());
+        StepExecution restartedPartition = restartedPartitions.get(0);
+        Assert.assertEquals(failedPartition.getStepName(), restartedPartition.getStepName());
+        PartitionRange range = new PartitionRange(restartedPartition);
+        Assert.assertEquals(new PartitionRange(failedPartition), range);
+        // Le lecteur reprend après la dernière ligne validée : aucune ligne de la plage perdue ni écrite deux fois
+        int committedReads = failedPartition.getExecutionContext().getInt("communesCSVPartitionItemReader.read.count");
+        Assert.assertTrue(committedReads > 0);
+        Assert.assertEquals(countLines(range.start, range.end), committedReads + restartedPartition.getReadCount());
+        Assert.assertEquals(expected, communes());
+    }
+
+    private void assertPartitionedSameAsSequential(String lineSeparator, boolean trailingLineSeparator) throws Exception {
+        //Given : communes dont certaines rejetées, sans coordonnées ou présentes plusieurs fois dans le fichier
+        List<String> lines = communes(600);
+        writeFile(lines, lineSeparator, trailingLineSeparator);
+        Sequential sequential = importSequential(jobParameters());
+        jdbcTemplate.update("DELETE FROM commune");
+        // when
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(jobParameters());
+        // then
+        Assert.assertEquals(new ExitStatus(CommuneCSVItemProcessor.COMPLETED_WITH_MISSING_COORDINATES),
+                jobExecution.getExitStatus());
+        List<StepExecution> partitions = partitions(jobExecution);
+        Assert.assertEquals(3, partitions.size());
+        StepExecution partitioned = partitionedStep(jobExecution);
+        // Aucune ligne perdue ni lue deux fois aux limites des plages
+        Assert.assertEquals(lines.size() - 1, partitioned.getReadCount());
+        Assert.assertEquals(sequential.stepExecution.getReadCount(), partitioned.getReadCount());
+        Assert.assertEquals(sequential.stepExecution.getSkipCount(), partitioned.getSkipCount());
+        Assert.assertEquals(0, partitioned.getWriteSkipCount());
+        // Les lignes des communes attribuées à une autre partition sont filtrées au lieu d'être écrites
+        Assert.assertTrue(partitioned.getFilterCount() > 0);
+        Assert.assertEquals(sequential.stepExecution.getWriteCount(), partitioned.getWriteCount() + partitioned.getFilterCount());
+        Assert.assertEquals(sequential.stepExecution.getExecutionContext().getInt(CommuneCSVItemProcessor.MISSING_COORDINATES_KEY),
+                partitioned.getExecutionContext().getInt(CommuneCSVItemProcessor.MISSING_COORDINATES_KEY));
+        Assert.assertTrue(partitioned.getExecutionContext().getInt(CommuneCSVItemProcessor.MISSING_COORDINATES_KEY) > 0);
+        Assert.assertEquals(sequential.communes, communes());
+    }
+
+    // Entête puis une ligne par commune : une sur 20 sans coordonnées valides, une sur 37 avec un nom incorrect,
+    // et les communes multiples de 7 présentes une seconde fois, 250 lignes plus loin, avec un autre code postal
+    private List<String> communes(int count) {
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        for (int i = 0; i < count + 250; i++) {
+            if (i < count) {
+                lines.add(commune(i, String.format("%05d", 1000 + i)));
+            }
+            if (i >= 250 && (i - 250) % 7 == 0) {
+                lines.add(commune(i - 250, String.format("%05d", 90000 + i - 250)));
+            }
+        }
+        return lines;
+    }
+
+    private static String commune(int i, String codePostal) {
+        String nom = i % 37 == 0 ? "COMMUNE_" + i : "COMMUNE " + nom(i);
+        String coordonnees = i % 20 == 0 ? "abc" : (45 + i / 1000.0) + "," + (5 + i / 1000.0);
+        return String.format("%05d", 1000 + i) + ";" + nom + ";" + codePostal + ";;" + nom + ";" + coordonnees;
+    }
+
+    private static String nom(int i) {
+        StringBuilder nom = new StringBuilder();
+        do {
+            nom.append((char) ('A' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return nom.toString();
+    }
+
+    private void writeFile(List<String> lines, String lineSeparator, boolean trailingLineSeparator) throws Exception {
+        String content = String.join(lineSeparator, lines) + (trailingLineSeparator ? lineSeparator : "");
+        Files.write(CSV_FILE, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Nombre de lignes de la plage [start, end[ du fichier
+    private long countLines(long start, long end) throws Exception {
+        byte[] content = Files.readAllBytes(CSV_FILE);
+        long count = 0;
+        for (long i = start; i < end; i++) {
+            if (content[(int) i] == '\n' || i == content.length - 1) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Sequential importSequential(JobParameters jobParameters) throws Exception {
+        Job job = jobBuilderFactory.get("importCsvSequentialTest").start(stepImportCSV).build();
+        JobExecution jobExecution = jobLauncher.run(job, jobParameters);
+        Assert.assertEquals(new ExitStatus(CommuneCSVItemProcessor.COMPLETED_WITH_MISSING_COORDINATES),
+                jobExecution.getExitStatus());
+        return new Sequential(jobExecution.getStepExecutions().iterator().next(), communes());
+    }
+
+    private List<Map<String, Object>> communes() {
+        return jdbcTemplate.queryForList("SELECT code_insee, nom, code_postal, latitude, longitude FROM commune ORDER BY code_insee");
+    }
+
+    private static Set<String> ignoredCodesInsee(StepExecution partition) {
+        return CommuneCSVFilePartitioner.ignoredCodesInsee(
+                partition.getExecutionContext().getString(CommuneCSVFilePartitioner.IGNORED_CODES_INSEE_KEY));
+    }
+
+    private String codePostal(String codeInsee) {
+        return jdbcTemplate.queryForObject("SELECT code_postal FROM commune WHERE code_insee = ?", String.class, codeInsee);
+    }
+
+    private static StepExecution partitionedStep(JobExecution jobExecution) {
+        return jobExecution.getStepExecutions().stream()
+                .filter(stepExecution -> stepExecution.getStepName().equals("importFilePartitioned"))
+                .findFirst().orElseThrow();
+    }
+
+    // Partitions exécutées (lors d'une reprise, celles déjà terminées ne sont pas enregistrées)
+    private static List<StepExecution> partitions(JobExecution jobExecution) {
+        return jobExecution.getStepExecutions().stream()
+                .filter(stepExecution -> stepExecution.getStepName().startsWith("importFilePartition:"))
+                .filter(stepExecution -> stepExecution.getId() != null)
+                .collect(Collectors.toList());
+    }
+
+    private static StepExecution partition(JobExecution jobExecution, String name) {
+        return partitions(jobExecution).stream()
+                .filter(stepExecution -> stepExecution.getStepName().equals("importFilePartition:" + name))
+                .findFirst().orElseThrow();
+    }
+
+    private JobParameters jobParameters() {
+        return new JobParametersBuilder()
+                .addDate("date", new Date())
+                .addLong("nonce", System.nanoTime())
+                .toJobParameters();
+    }
+
+    private static class Sequential {
+        private final StepExecution stepExecution;
+        private final List<Map<String, Object>> communes;
+
+        private Sequential(StepExecution stepExecution, List<Map<String, Object>> communes) {
+            this.stepExecution = stepExecution;
+            this.communes = communes;
+        }
+    }
+
+    // Plage d'octets d'une partition (cf. CommuneCSVFilePartitioner)
+    private static class PartitionRange {
+        private final long start;
+        private final long end;
+
+        private PartitionRange(StepExecution stepExecution) {
+            this.start = stepExecution.getExecutionContext().getLong(CommuneCSVFilePartitioner.START_OFFSET_KEY);
+            this.end = stepExecution.getExecutionContext().getLong(CommuneCSVFilePartitioner.END_OFFSET_KEY);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PartitionRange && ((PartitionRange) o).start == start
+                    && ((PartitionRange) o).end == end;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(start) * 31 + Long.hashCode(end);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.ipiecole.batch;
+
+import com.ipiecole.batch.nearest.NearestCommuneBatch;
+import com.ipiecole.batch.utils.BatchTest;
+import org.junit.Assert;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.Date;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = "nearestCommune.input=file:target/positions-absent.csv")
+public class NearestCommuneJobIntegrationTest extends BatchTest {
+
+    @Autowired
+    @Qualifier("nearestCommuneJob")
+    private Job nearestCommuneJob;
+
+    @BeforeEach
+    public void setup() {
+        this.initializeJobLauncherTestUtils(nearestCommuneJob);
+    }
+
+    // Fichier des positions absent : aucune step exécutée (index des communes non chargé)
+    @Test
+    public void testFichierAbsent() throws Exception {
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(new JobParametersBuilder()
+                .addDate("date", new Date())
+                .toJobParameters());
+        Assert.assertEquals(BatchStatus.COMPLETED, jobExecution.getStatus());
+        Assert.assertEquals(NearestCommuneBatch.NO_INPUT, jobExecution.getExitStatus().getExitCode());
+        Assert.assertTrue(jobExecution.getStepExecutions().isEmpty());
+    }
+}
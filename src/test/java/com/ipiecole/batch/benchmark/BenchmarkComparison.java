@@ -0,0 +1,106 @@
+package com.ipiecole.batch.benchmark;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Comparaison des résultats JMH (JSON, -rf json) d'une exécution à ceux d'une exécution de référence
+// Un benchmark (et ses paramètres) est en régression s'il est plus lent de plus de tolerance % et si l'écart dépasse
+// la somme des marges d'erreur des deux mesures (intervalles de confiance à 99,9 % de JMH) ; le sens dépend du mode
+// (thrpt : plus grand est meilleur ; avgt, sample, ss : plus petit est meilleur)
+// Lancé par le profil benchmark après les benchmarks (cf. pom.xml) : code de sortie 1 en cas de régression
+// java ... BenchmarkComparison <référence.json|none> <résultats.json> [tolérance en %, 10 par défaut]
+public final class BenchmarkComparison {
+
+    private BenchmarkComparison() {
+    }
+
+    public static void main(String[] args) throws IOException, ParseException {
+        Path current = Paths.get(args[1]);
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        if ("none".equals(args[0]) || !Files.exists(Paths.get(args[0]))) {
+            System.out.println("Aucune référence (-Djmh.baseline=<fichier>) : résultats enregistrés dans " + current
+                    + ", à copier pour servir de référence");
+            return;
+        }
+        List<String> regressions = compare(read(Paths.get(args[0])), read(current), tolerance, System.out);
+        if (!regressions.isEmpty()) {
+            System.out.println(regressions.size() + " régression(s) par rapport à " + args[0] + " : " + regressions);
+            System.exit(1);
+        }
+    }
+
+    static JSONArray read(Path path) throws IOException, ParseException {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return (JSONArray) new JSONParser().parse(reader);
+        }
+    }
+
+    // Tableau comparatif écrit dans out ; renvoie les benchmarks en régression
+    static List<String> compare(JSONArray baseline, JSONArray current, double tolerance, PrintStream out) {
+        Map<String, JSONObject> baselineResults = byKey(baseline);
+        List<String> regressions = new ArrayList<>();
+        out.printf("%-70s %5s %14s %14s %9s%n", "Benchmark", "Mode", "Référence", "Mesure", "Ecart");
+        for (Map.Entry<String, JSONObject> entry : byKey(current).entrySet()) {
+            JSONObject result = entry.getValue();
+            String mode = (String) result.get("mode");
+            JSONObject metric = (JSONObject) result.get("primaryMetric");
+            double score = number(metric.get("score"));
+            JSONObject previous = baselineResults.get(entry.getKey());
+            if (previous == null) {
+                out.printf("%-70s %5s %14s %14.3f %9s%n", entry.getKey(), mode, "-", score, "nouveau");
+                continue;
+            }
+            JSONObject previousMetric = (JSONObject) previous.get("primaryMetric");
+            double previousScore = number(previousMetric.get("score"));
+            double change = previousScore == 0 ? 0 : (score - previousScore) * 100 / previousScore;
+            // Ecart défavorable en % : une baisse du débit ou une hausse du temps
+            double slowdown = "thrpt".equals(mode) ? -change : change;
+            boolean significant = Math.abs(score - previousScore)
+                    > number(metric.get("scoreError")) + number(previousMetric.get("scoreError"));
+            boolean regression = significant && slowdown > tolerance;
+            if (regression) {
+                regressions.add(entry.getKey());
+            }
+            out.printf("%-70s %5s %14.3f %14.3f %+8.1f%%%s%n", entry.getKey(), mode, previousScore, score, change,
+                    regression ? "  REGRESSION" : "");
+        }
+        return regressions;
+    }
+
+    // Résultats indexés par benchmark et paramètres (ex : CommuneExportWriterBenchmark.write:writer=fixed)
+    private static Map<String, JSONObject> byKey(JSONArray results) {
+        Map<String, JSONObject> byKey = new LinkedHashMap<>();
+        for (Object item : results) {
+            JSONObject result = (JSONObject) item;
+            String benchmark = (String) result.get("benchmark");
+            String name = benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1);
+            Map<?, ?> params = result.get("params") == null ? Map.of() : new TreeMap<>((Map<?, ?>) result.get("params"));
+            StringBuilder key = new StringBuilder(name);
+            params.forEach((param, value) -> key.append(key.length() == name.length() ? ":" : ",").append(param).append('=').append(value));
+            byKey.put(key.toString(), result);
+        }
+        return byKey;
+    }
+
+    // Score JMH : nombre, ou "NaN" (marge d'erreur d'une seule itération, comptée comme nulle)
+    private static double number(Object value) {
+        double number = value instanceof Number ? ((Number) value).doubleValue()
+                : value == null ? Double.NaN : Double.parseDouble(value.toString());
+        return Double.isNaN(number) ? 0 : number;
+    }
+}
@@ -0,0 +1,56 @@
+package com.ipiecole.batch.benchmark;
+
+import org.json.simple.JSONArray;
+import org.json.simple.parser.JSONParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class BenchmarkComparisonTest {
+
+    // Résultat au format JSON de JMH (champs utilisés seulement)
+    private static String result(String benchmark, String mode, String params, double score, double error) {
+        return "{\"benchmark\":\"com.ipiecole.batch.benchmark." + benchmark + "\",\"mode\":\"" + mode + "\","
+                + (params == null ? "" : "\"params\":{" + params + "},")
+                + "\"primaryMetric\":{\"score\":" + score + ",\"scoreError\":" + error + ",\"scoreUnit\":\"ms/op\"}}";
+    }
+
+    private static JSONArray results(String... results) throws Exception {
+        return (JSONArray) new JSONParser().parse("[" + String.join(",", results) + "]");
+    }
+
+    @Test
+    public void testRegressions() throws Exception {
+        JSONArray baseline = results(
+                result("CommuneExportWriterBenchmark.write", "avgt", "\"writer\":\"fixed\"", 100, 2),
+                result("CommuneExportWriterBenchmark.write", "avgt", "\"writer\":\"formatter\"", 300, 5),
+                result("ImportDiagnosticsBenchmark.importFile", "thrpt", "\"diagnostics\":\"off\"", 50, 1),
+                result("CommuneCSVProcessorBenchmark.rules", "avgt", null, 10, 4));
+        JSONArray current = results(
+                // Plus lent de 20 % : régression
+                result("CommuneExportWriterBenchmark.write", "avgt", "\"writer\":\"fixed\"", 120, 2),
+                // Plus rapide
+                result("CommuneExportWriterBenchmark.write", "avgt", "\"writer\":\"formatter\"", 200, 5),
+                // Débit en baisse de 30 % : régression
+                result("ImportDiagnosticsBenchmark.importFile", "thrpt", "\"diagnostics\":\"off\"", 35, 1),
+                // Plus lent de 20 %, mais dans la marge d'erreur
+                result("CommuneCSVProcessorBenchmark.rules", "avgt", null, 12, 4),
+                result("CommuneExportWriterBenchmark.formatLines", "avgt", "\"writer\":\"fixed\"", 20, 1));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<String> regressions = BenchmarkComparison.compare(baseline, current, 10, new PrintStream(out, true, StandardCharsets.UTF_8));
+        Assertions.assertEquals(List.of("CommuneExportWriterBenchmark.write:writer=fixed",
+                "ImportDiagnosticsBenchmark.importFile:diagnostics=off"), regressions);
+        String table = out.toString(StandardCharsets.UTF_8);
+        Assertions.assertTrue(table.contains("CommuneExportWriterBenchmark.formatLines:writer=fixed"), table);
+        Assertions.assertTrue(table.contains("nouveau"), table);
+
+        // Tolérance plus large : plus de régression pour l'écriture
+        Assertions.assertEquals(List.of("ImportDiagnosticsBenchmark.importFile:diagnostics=off"),
+                BenchmarkComparison.compare(baseline, current, 25, new PrintStream(new ByteArrayOutputStream())));
+    }
+}
@@ -0,0 +1,46 @@
+package com.ipiecole.batch.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+// Fichiers de données des benchmarks, générés une seule fois dans target/benchmark
+public final class BenchmarkFiles {
+
+    private static final Path SOURCE = Paths.get("src/main/resources/laposte_hexasmal.csv");
+    private static final Path DIRECTORY = Paths.get("target/benchmark");
+
+    private BenchmarkFiles() {
+    }
+
+    // Fichier au format laposte_hexasmal.csv contenant le nombre de lignes demandé (hors entête),
+    // obtenu en répétant les lignes du fichier La Poste
+    public static Path communesCSV(int lines) throws IOException {
+        Path file = DIRECTORY.resolve("laposte_hexasmal_" + lines + ".csv");
+        if (Files.exists(file)) {
+            return file;
+        }
+        List<String> source = Files.readAllLines(SOURCE, StandardCharsets.UTF_8);
+        Files.createDirectories(DIRECTORY);
+        Path tmp = Files.createTempFile(DIRECTORY, "laposte_hexasmal_", ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write(source.get(0));
+            writer.write('\n');
+            for (int i = 0; i < lines; i++) {
+                writer.write(source.get(1 + i % (source.size() - 1)));
+                writer.write('\n');
+            }
+        }
+        return Files.move(tmp, file);
+    }
+
+    // Lignes du fichier La Poste (hors entête)
+    public static List<String> communesCSVLines() throws IOException {
+        List<String> lines = Files.readAllLines(SOURCE, StandardCharsets.UTF_8);
+        return lines.subList(1, lines.size());
+    }
+}
@@ -0,0 +1,110 @@
+package com.ipiecole.batch.benchmark;
+
+import com.ipiecole.batch.csvImport.CommuneCSVItemProcessor;
+import com.ipiecole.batch.csvImport.LegacyCommuneCSVProcessing;
+import com.ipiecole.batch.dto.CommuneCSV;
+import com.ipiecole.batch.exception.CommuneCSVException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Traitement de toutes les lignes du fichier La Poste : expressions régulières et remplacements successifs
+// (LegacyCommuneCSVProcessing) comparés au CommuneCSVItemProcessor (CommuneCSVRules)
+// rulesValid / rulesInvalid : CommuneCSVItemProcessor sur les seules lignes acceptées ou rejetées (exception levée),
+// en temps par ligne
+// mvn -Pbenchmark test -Djmh.args="CommuneCSVProcessorBenchmark -prof gc"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommuneCSVProcessorBenchmark {
+
+    private CommuneCSV[] items;
+    private CommuneCSV[] validItems;
+    private CommuneCSV[] invalidItems;
+    private CommuneCSVItemProcessor processor;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        List<String> lines = BenchmarkFiles.communesCSVLines();
+        items = new CommuneCSV[lines.size()];
+        for (int i = 0; i < items.length; i++) {
+            String[] columns = lines.get(i).split(";", -1);
+            CommuneCSV communeCSV = new CommuneCSV();
+            communeCSV.setCodeInsee(columns[0].trim());
+            communeCSV.setNom(columns[1].trim());
+            communeCSV.setCodePostal(columns[2].trim());
+            communeCSV.setCoordonneesGps(columns[5].trim());
+            items[i] = communeCSV;
+        }
+        processor = new CommuneCSVItemProcessor();
+        List<CommuneCSV> valid = new ArrayList<>();
+        List<CommuneCSV> invalid = new ArrayList<>();
+        for (CommuneCSV item : items) {
+            try {
+                processor.process(item);
+                valid.add(item);
+            } catch (CommuneCSVException e) {
+                invalid.add(item);
+            }
+        }
+        validItems = valid.toArray(new CommuneCSV[0]);
+        invalidItems = invalid.toArray(new CommuneCSV[0]);
+    }
+
+    @Benchmark
+    public int legacy(Blackhole blackhole) {
+        int skipped = 0;
+        for (CommuneCSV item : items) {
+            try {
+                blackhole.consume(LegacyCommuneCSVProcessing.process(item));
+            } catch (Exception e) {
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+
+    @Benchmark
+    public int rules(Blackhole blackhole) throws Exception {
+        int skipped = 0;
+        for (CommuneCSV item : items) {
+            try {
+                blackhole.consume(processor.process(item));
+            } catch (CommuneCSVException e) {
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+
+    // Ligne suivante de chaque tableau, d'une invocation à l'autre
+    @State(Scope.Thread)
+    public static class Cursor {
+        int valid;
+        int invalid;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Object rulesValid(Cursor cursor) throws Exception {
+        CommuneCSV item = validItems[cursor.valid++ % validItems.length];
+        return processor.process(item);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Object rulesInvalid(Cursor cursor) throws Exception {
+        CommuneCSV item = invalidItems[cursor.invalid++ % invalidItems.length];
+        try {
+            return processor.process(item);
+        } catch (CommuneCSVException e) {
+            return e;
+        }
+    }
+}
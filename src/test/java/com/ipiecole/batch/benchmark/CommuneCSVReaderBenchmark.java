@@ -0,0 +1,73 @@
+package com.ipiecole.batch.benchmark;
+
+import com.ipiecole.batch.csvImport.CommuneCSVChannelItemReader;
+import com.ipiecole.batch.dto.CommuneCSV;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.batch.item.file.mapping.BeanWrapperFieldSetMapper;
+import org.springframework.core.io.FileSystemResource;
+
+import java.util.concurrent.TimeUnit;
+
+// Lecture complète d'un fichier de 1M et 10M lignes : FlatFileItemReader (configuration de CommunesImportBatch)
+// comparé au CommuneCSVChannelItemReader
+// mvn -Pbenchmark test -Djmh.args="CommuneCSVReaderBenchmark"
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class CommuneCSVReaderBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int lines;
+
+    private FileSystemResource resource;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        resource = new FileSystemResource(BenchmarkFiles.communesCSV(lines));
+    }
+
+    @Benchmark
+    public long flatFileItemReader(Blackhole blackhole) throws Exception {
+        return readAll(new FlatFileItemReaderBuilder<CommuneCSV>()
+                .name("communesCSVItemReader")
+                .linesToSkip(1)
+                .resource(resource)
+                .delimited()
+                .delimiter(";")
+                .names("codeInsee", "nom", "codePostal", "ligne5", "libelleAcheminement", "coordonneesGPS")
+                .fieldSetMapper(new BeanWrapperFieldSetMapper<>(){{
+                    setTargetType(CommuneCSV.class);
+                }})
+                .build(), blackhole);
+    }
+
+    @Benchmark
+    public long channelItemReader(Blackhole blackhole) throws Exception {
+        CommuneCSVChannelItemReader reader = new CommuneCSVChannelItemReader();
+        reader.setResource(resource);
+        reader.setLinesToSkip(1);
+        return readAll(reader, blackhole);
+    }
+
+    private long readAll(ItemStreamReader<CommuneCSV> reader, Blackhole blackhole) throws Exception {
+        long count = 0;
+        reader.open(new ExecutionContext());
+        try {
+            CommuneCSV item;
+            while ((item = reader.read()) != null) {
+                blackhole.consume(item);
+                count++;
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+}
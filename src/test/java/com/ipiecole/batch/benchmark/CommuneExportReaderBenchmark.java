@@ -0,0 +1,81 @@
+package com.ipiecole.batch.benchmark;
+
+import com.ipiecole.batch.BatchApplication;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Export complet de la table COMMUNE (step exportFile seule, base H2 en mémoire) selon sa taille et le reader :
+// RepositoryItemReader (pagination par OFFSET, pages de 40) ou CommuneKeysetItemReader (pagination par clé)
+// mvn -Pbenchmark test -Djmh.args="CommuneExportReaderBenchmark"
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class CommuneExportReaderBenchmark {
+
+    @Param({"repository", "keyset"})
+    public String reader;
+
+    @Param({"10000", "40000", "160000"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+    private JobLauncher jobLauncher;
+    private Job job;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(BatchApplication.class).run(
+                "--spring.batch.job.enabled=false",
+                "--logging.level.root=ERROR",
+                "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                "--exportFile.reader=" + reader,
+                "--importFile.chunkSize=1000");
+        jobLauncher = context.getBean(JobLauncher.class);
+        job = context.getBean(JobBuilderFactory.class).get("exportFileBenchmark")
+                .start(context.getBean("stepExport", Step.class))
+                .next(context.getBean("stepExportFileAssembly", Step.class))
+                .build();
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.execute("TRUNCATE TABLE commune");
+        List<Object[]> communes = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            // Codes Insee sur 5 caractères en base 36, environ 10 communes par code postal
+            String codeInsee = String.format("%5s", Integer.toString(i, 36)).replace(' ', '0');
+            String codePostal = String.format("%05d", (i * 7919) % (rows / 10));
+            communes.add(new Object[]{codeInsee, "Commune " + i, codePostal, 45.0 + i * 1e-6, 5.0 - i * 1e-6});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO commune (code_insee, nom, code_postal, latitude, longitude) VALUES (?, ?, ?, ?, ?)", communes);
+    }
+
+    @Benchmark
+    public JobExecution exportFile() throws Exception {
+        JobExecution jobExecution = jobLauncher.run(job, new JobParametersBuilder()
+                .addLong("run", System.nanoTime())
+                .toJobParameters());
+        if (jobExecution.getStatus() != BatchStatus.COMPLETED) {
+            throw new IllegalStateException("Export en échec : " + jobExecution.getAllFailureExceptions());
+        }
+        return jobExecution;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+}
@@ -0,0 +1,110 @@
+package com.ipiecole.batch.benchmark;
+
+import com.ipiecole.batch.dbexport.CommuneFileItemWriter;
+import com.ipiecole.batch.dbexport.CommuneLineAggregator;
+import com.ipiecole.batch.model.Commune;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.batch.item.file.FlatFileItemWriter;
+import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
+import org.springframework.batch.item.file.transform.FormatterLineAggregator;
+import org.springframework.batch.item.file.transform.LineAggregator;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Ecriture du fichier d'export (toutes les communes du fichier La Poste, chunks de 1000) :
+// FlatFileItemWriter avec BeanWrapperFieldExtractor et FormatterLineAggregator (String.format)
+// comparé au CommuneFileItemWriter (format écrit à la main, buffer NIO)
+// formatLines : mise en forme seule des lignes, sans écriture (FormatterLineAggregator ou CommuneLineAggregator)
+// mvn -Pbenchmark test -Djmh.args="CommuneExportWriterBenchmark -prof gc"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommuneExportWriterBenchmark {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    @Param({"formatter", "fixed"})
+    public String writer;
+
+    private List<List<Commune>> chunks;
+    private Path output;
+    private LineAggregator<Commune> lineAggregator;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        List<String> lines = BenchmarkFiles.communesCSVLines();
+        List<Commune> communes = new ArrayList<>();
+        for (String line : lines) {
+            String[] columns = line.split(";", -1);
+            String[] gps = columns[5].split(",");
+            if (gps.length == 2) {
+                communes.add(new Commune(columns[0], columns[1], columns[2],
+                        Double.valueOf(gps[0].trim()), Double.valueOf(gps[1].trim())));
+            }
+        }
+        chunks = new ArrayList<>();
+        for (int i = 0; i < communes.size(); i += CHUNK_SIZE) {
+            chunks.add(communes.subList(i, Math.min(i + CHUNK_SIZE, communes.size())));
+        }
+        Files.createDirectories(Paths.get("target/benchmark"));
+        output = Paths.get("target/benchmark/export_" + writer + ".txt");
+        lineAggregator = "formatter".equals(writer) ? formatterLineAggregator() : new CommuneLineAggregator();
+    }
+
+    // Mise en forme de la configuration "formatter" de CommunesDBExportBatch
+    private static FormatterLineAggregator<Commune> formatterLineAggregator() {
+        BeanWrapperFieldExtractor<Commune> bwfe = new BeanWrapperFieldExtractor<>();
+        bwfe.setNames(new String[]{"codePostal", "codeInsee", "nom", "latitude", "longitude"});
+        FormatterLineAggregator<Commune> agg = new FormatterLineAggregator<>();
+        agg.setFormat("%5s - %5s - %s : %.5f %.5f");
+        agg.setFieldExtractor(bwfe);
+        return agg;
+    }
+
+    private ItemStreamWriter<Commune> newWriter() throws Exception {
+        if ("formatter".equals(writer)) {
+            FlatFileItemWriter<Commune> flatFileItemWriter = new FlatFileItemWriter<>();
+            flatFileItemWriter.setResource(new FileSystemResource(output.toFile()));
+            flatFileItemWriter.setLineAggregator(formatterLineAggregator());
+            flatFileItemWriter.afterPropertiesSet();
+            return flatFileItemWriter;
+        }
+        CommuneFileItemWriter communeFileItemWriter = new CommuneFileItemWriter();
+        communeFileItemWriter.setPath(output);
+        return communeFileItemWriter;
+    }
+
+    @Benchmark
+    public long write() throws Exception {
+        ItemStreamWriter<Commune> itemWriter = newWriter();
+        ExecutionContext executionContext = new ExecutionContext();
+        itemWriter.open(executionContext);
+        for (List<Commune> chunk : chunks) {
+            itemWriter.write(chunk);
+            itemWriter.update(executionContext);
+        }
+        itemWriter.close();
+        return Files.size(output);
+    }
+
+    @Benchmark
+    public void formatLines(Blackhole blackhole) {
+        for (List<Commune> chunk : chunks) {
+            for (Commune commune : chunk) {
+                blackhole.consume(lineAggregator.aggregate(commune));
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.ipiecole.batch.benchmark;
+
+import com.ipiecole.batch.BatchApplication;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+// Import complet du fichier La Poste (step importFile seule, base H2 en mémoire) selon le writer :
+// JpaItemWriter, upsert JDBC par lot, upsert JDBC par lot avec filtre d'existence
+// La table est vidée avant chaque import ("empty") ou contient déjà toutes les communes ("full", ré-import)
+// mvn -Pbenchmark test -Djmh.args="CommuneImportWriterBenchmark"
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class CommuneImportWriterBenchmark {
+
+    @Param({"jpa", "jdbc", "jdbc-filter"})
+    public String writer;
+
+    @Param({"10", "1000"})
+    public int chunkSize;
+
+    @Param({"empty", "full"})
+    public String table;
+
+    private ConfigurableApplicationContext context;
+    private JobLauncher jobLauncher;
+    private Job job;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new SpringApplicationBuilder(BatchApplication.class).run(
+                "--spring.batch.job.enabled=false",
+                "--logging.level.root=ERROR",
+                "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                "--importFile.writer=" + (writer.startsWith("jdbc") ? "jdbc" : "jpa"),
+                "--importFile.existenceFilter=" + writer.endsWith("filter"),
+                "--importFile.chunkSize=" + chunkSize);
+        jobLauncher = context.getBean(JobLauncher.class);
+        job = context.getBean(JobBuilderFactory.class).get("importFileBenchmark")
+                .start(context.getBean("stepImportCSV", Step.class))
+                .build();
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareTable() throws Exception {
+        if ("empty".equals(table)) {
+            jdbcTemplate.execute("TRUNCATE TABLE commune");
+        } else if (jdbcTemplate.queryForObject("SELECT COUNT(*) FROM commune", Integer.class) == 0) {
+            importFile();
+        }
+    }
+
+    @Benchmark
+    public JobExecution importFile() throws Exception {
+        JobExecution jobExecution = jobLauncher.run(job, new JobParametersBuilder()
+                .addLong("run", System.nanoTime())
+                .toJobParameters());
+        if (jobExecution.getStatus() != BatchStatus.COMPLETED) {
+            throw new IllegalStateException("Import en échec : " + jobExecution.getAllFailureExceptions());
+        }
+        return jobExecution;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+}
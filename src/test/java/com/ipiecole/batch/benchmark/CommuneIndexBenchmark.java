@@ -0,0 +1,84 @@
+package com.ipiecole.batch.benchmark;
+
+import com.ipiecole.batch.BatchApplication;
+import com.ipiecole.batch.index.CommuneIndex;
+import com.ipiecole.batch.index.CommuneIndexHolder;
+import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.repository.CommuneRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Recherches sur les communes du fichier La Poste (base H2 en mémoire, import fait une fois) selon la source :
+// CommuneRepository (requête SQL à chaque appel) ou CommuneIndex (index en mémoire construit à la fin de l'import)
+// Mesures : commune par code Insee (codes parcourus tour à tour), communes d'un département par plage de codes postaux,
+// nombre de codes postaux distincts (entête de l'export)
+// mvn -Pbenchmark test -Djmh.args="CommuneIndexBenchmark"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class CommuneIndexBenchmark {
+
+    @Param({"repository", "index"})
+    public String source;
+
+    private ConfigurableApplicationContext context;
+    private CommuneRepository communeRepository;
+    private CommuneIndex communeIndex;
+    private String[] codesInsee;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = new SpringApplicationBuilder(BatchApplication.class).run(
+                "--spring.batch.job.enabled=false",
+                "--logging.level.root=ERROR",
+                "--spring.datasource.url=jdbc:h2:mem:indexBenchmark;DB_CLOSE_DELAY=-1");
+        JobExecution jobExecution = context.getBean(JobLauncher.class).run(context.getBean(JobBuilderFactory.class)
+                .get("importFileBenchmark")
+                .start(context.getBean("stepImportCSV", Step.class))
+                .build(), new JobParameters());
+        if (jobExecution.getStatus() != BatchStatus.COMPLETED) {
+            throw new IllegalStateException("Import en échec : " + jobExecution.getAllFailureExceptions());
+        }
+        communeRepository = context.getBean(CommuneRepository.class);
+        communeIndex = context.getBean(CommuneIndexHolder.class).refresh();
+        List<String> codes = context.getBean(JdbcTemplate.class).queryForList("SELECT code_insee FROM commune ORDER BY nom", String.class);
+        codesInsee = codes.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public Commune findByCodeInsee() {
+        String codeInsee = codesInsee[next++ % codesInsee.length];
+        return "index".equals(source) ? communeIndex.get(codeInsee) : communeRepository.findByCodeInsee(codeInsee);
+    }
+
+    @Benchmark
+    public List<Commune> findByCodePostal() {
+        return "index".equals(source) ? communeIndex.findByCodePostal("01000", "01999")
+                : communeRepository.findByCodePostalBetweenOrderByCodePostalAscCodeInseeAsc("01000", "01999");
+    }
+
+    @Benchmark
+    public long countDistinctCodePostal() {
+        return "index".equals(source) ? communeIndex.countDistinctCodePostal() : communeRepository.countDistinctCodePostal();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+}
@@ -0,0 +1,125 @@
+package com.ipiecole.batch.benchmark;
+
+import com.ipiecole.batch.dbexport.CommuneKeysetItemReader;
+import com.ipiecole.batch.geocoding.MissingCoordinatesItemReader;
+import com.ipiecole.batch.schema.SchemaMigrator;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Table COMMUNE d'un million de lignes (base H2 en mémoire) selon son schéma :
+//  - "hibernate" : table créée par ddl-auto=create avant les scripts versionnés (clé primaire seule, nom VARCHAR(255))
+//  - "versioned" : scripts db/schema/h2 (index de l'export et de la file des communes à géocoder, colonnes dimensionnées)
+// Mesures : 10 pages de l'export lues à partir du milieu de la table (CommuneKeysetItemReader), COUNT(DISTINCT code_postal)
+// de l'entête, lecture de toutes les communes à géocoder (1 %) par pages de 100 : requête de l'ancien
+// JpaPagingItemReader (latitude/longitude nulles, pagination par OFFSET) ou MissingCoordinatesItemReader
+// mvn -Pbenchmark test -Djmh.args="CommuneSchemaBenchmark"
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class CommuneSchemaBenchmark {
+
+    private static final int EXPORT_PAGE_SIZE = 1000;
+    private static final int EXPORT_PAGES = 10;
+    private static final int GEOCODING_PAGE_SIZE = 100;
+
+    private static final String HIBERNATE_DDL = "CREATE TABLE commune (code_insee VARCHAR(5) NOT NULL PRIMARY KEY, "
+            + "nom VARCHAR(255), code_postal VARCHAR(5), latitude DOUBLE, longitude DOUBLE)";
+    private static final String OFFSET_PAGE_SQL = "SELECT code_insee, nom, code_postal, latitude, longitude FROM commune "
+            + "WHERE latitude IS NULL OR longitude IS NULL LIMIT ? OFFSET ?";
+
+    @Param({"hibernate", "versioned"})
+    public String schema;
+
+    @Param({"1000000"})
+    public int rows;
+
+    private JdbcDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:schemaBenchmark;DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        boolean versioned = "versioned".equals(schema);
+        if (versioned) {
+            new SchemaMigrator(dataSource).migrate();
+        } else {
+            jdbcTemplate.execute(HIBERNATE_DDL);
+        }
+        String insert = versioned
+                ? "INSERT INTO commune (code_insee, nom, code_postal, latitude, longitude, geocoding_pending) VALUES (?, ?, ?, ?, ?, ?)"
+                : "INSERT INTO commune (code_insee, nom, code_postal, latitude, longitude) VALUES (?, ?, ?, ?, ?)";
+        List<Object[]> communes = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            // Codes Insee sur 5 caractères en base 36, environ 10 communes par code postal, 1 % sans coordonnées
+            String codeInsee = String.format("%5s", Integer.toString(i, 36)).replace(' ', '0');
+            String codePostal = String.format("%05d", (i * 7919L) % (rows / 10));
+            boolean pending = i % 100 == 0;
+            Double latitude = pending ? null : 45.0 + i * 1e-6;
+            Object[] values = {codeInsee, "Commune " + i, codePostal, latitude, 5.0 - i * 1e-6, pending};
+            communes.add(versioned ? values : Arrays.copyOf(values, 5));
+            if (communes.size() == 10000) {
+                jdbcTemplate.batchUpdate(insert, communes);
+                communes.clear();
+            }
+        }
+        jdbcTemplate.batchUpdate(insert, communes);
+    }
+
+    @Benchmark
+    public int exportPages() {
+        CommuneKeysetItemReader reader = new CommuneKeysetItemReader(dataSource, EXPORT_PAGE_SIZE);
+        // Reprise au milieu de la table : chaque page démarre après la dernière clé lue
+        ExecutionContext executionContext = new ExecutionContext();
+        executionContext.putString("communeKeysetItemReader.lastCodePostal", String.format("%05d", rows / 20));
+        executionContext.putString("communeKeysetItemReader.lastCodeInsee", "");
+        reader.open(executionContext);
+        int count = 0;
+        while (count < EXPORT_PAGE_SIZE * EXPORT_PAGES && reader.read() != null) {
+            count++;
+        }
+        reader.close();
+        return count;
+    }
+
+    @Benchmark
+    public long countDistinctCodePostal() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(DISTINCT code_postal) FROM commune", Long.class);
+    }
+
+    @Benchmark
+    public int geocodingRead() {
+        int count = 0;
+        if ("versioned".equals(schema)) {
+            MissingCoordinatesItemReader reader = new MissingCoordinatesItemReader(dataSource, GEOCODING_PAGE_SIZE);
+            reader.open(new ExecutionContext());
+            while (reader.read() != null) {
+                count++;
+            }
+            reader.close();
+            return count;
+        }
+        int page;
+        do {
+            page = jdbcTemplate.queryForList(OFFSET_PAGE_SQL, GEOCODING_PAGE_SIZE, count).size();
+            count += page;
+        } while (page == GEOCODING_PAGE_SIZE);
+        return count;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+}
@@ -0,0 +1,137 @@
+package com.ipiecole.batch.benchmark;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.ipiecole.batch.csvImport.CommuneCSVItemListener;
+import com.ipiecole.batch.csvImport.CommuneCSVItemProcessor;
+import com.ipiecole.batch.diagnostics.ItemDiagnostics;
+import com.ipiecole.batch.dto.CommuneCSV;
+import com.ipiecole.batch.exception.CommuneCSVException;
+import com.ipiecole.batch.model.Commune;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Traitement de toutes les lignes du fichier La Poste par chunks de 10 avec les hooks des listeners d'import
+// (lecture, traitement, écriture) selon le réglage des diagnostics :
+//  - "legacy" : anciens hooks (chaque élément et chaque chunk journalisés en INFO par concaténation)
+//  - "off", "every:1000", "first:1", "all" : CommuneCSVItemListener et CommuneCSVItemProcessor échantillonnés
+// Les messages sont formatés puis écrits dans un flux vide (coût de la journalisation sans celui de la console),
+// sans limite de débit pour mesurer l'échantillonnage seul
+// mvn -Pbenchmark test -Djmh.args="ImportDiagnosticsBenchmark"
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImportDiagnosticsBenchmark {
+
+    private static final int CHUNK_SIZE = 10;
+
+    @Param({"legacy", "off", "every:1000", "first:1", "all"})
+    public String diagnostics;
+
+    private CommuneCSV[] items;
+    private CommuneCSVItemProcessor processor;
+    private CommuneCSVItemListener listener;
+    private final Logger legacyLogger = LoggerFactory.getLogger(CommuneCSVItemProcessor.class);
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        List<String> lines = BenchmarkFiles.communesCSVLines();
+        items = new CommuneCSV[lines.size()];
+        for (int i = 0; i < items.length; i++) {
+            String[] columns = lines.get(i).split(";", -1);
+            CommuneCSV communeCSV = new CommuneCSV();
+            communeCSV.setCodeInsee(columns[0].trim());
+            communeCSV.setNom(columns[1].trim());
+            communeCSV.setCodePostal(columns[2].trim());
+            communeCSV.setCoordonneesGps(columns[5].trim());
+            items[i] = communeCSV;
+        }
+        discardLogs(CommuneCSVItemProcessor.class, CommuneCSVItemListener.class, ItemDiagnostics.class);
+
+        ItemDiagnostics itemDiagnostics = new ItemDiagnostics(
+                "legacy".equals(diagnostics) ? "" : "importFile=" + diagnostics, 1e9);
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution("importFile", 1L);
+        processor = new CommuneCSVItemProcessor();
+        processor.setDiagnostics(itemDiagnostics);
+        processor.beforeStep(stepExecution);
+        listener = new CommuneCSVItemListener(itemDiagnostics);
+        listener.beforeStep(stepExecution);
+    }
+
+    // Journalisation INFO formatée puis écrite dans un flux vide
+    private static void discardLogs(Class<?>... classes) {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d %-5level [%thread] %logger{36} : %msg%n");
+        encoder.start();
+        OutputStreamAppender<ILoggingEvent> appender = new OutputStreamAppender<>();
+        appender.setContext(context);
+        appender.setEncoder(encoder);
+        appender.setOutputStream(OutputStream.nullOutputStream());
+        appender.start();
+        for (Class<?> type : classes) {
+            ch.qos.logback.classic.Logger logger = context.getLogger(type);
+            logger.detachAndStopAllAppenders();
+            logger.setAdditive(false);
+            logger.setLevel(ch.qos.logback.classic.Level.INFO);
+            logger.addAppender(appender);
+        }
+    }
+
+    @Benchmark
+    public int importFile() throws Exception {
+        boolean legacy = "legacy".equals(diagnostics);
+        List<Commune> chunk = new ArrayList<>(CHUNK_SIZE);
+        int written = 0;
+        for (int start = 0; start < items.length; start += CHUNK_SIZE) {
+            if (!legacy) {
+                listener.beforeChunk(null);
+                processor.beforeChunk(null);
+            }
+            chunk.clear();
+            for (int i = start; i < Math.min(start + CHUNK_SIZE, items.length); i++) {
+                CommuneCSV item = items[i];
+                if (legacy) {
+                    legacyLogger.info("After Read CSV Import => " + item.toString());
+                    legacyLogger.info("Before Process => " + item.toString());
+                } else {
+                    listener.afterRead(item);
+                }
+                try {
+                    Commune commune = processor.process(item);
+                    if (legacy) {
+                        legacyLogger.info("After Process => " + item.toString() + " => " + commune.toString());
+                    } else {
+                        processor.afterProcess(item, commune);
+                    }
+                    chunk.add(commune);
+                } catch (CommuneCSVException e) {
+                    // Ligne rejetée (les erreurs sont journalisées dans tous les modes : hors mesure)
+                }
+            }
+            if (legacy) {
+                legacyLogger.info("Before Write CSV Import => " + chunk.toString());
+                legacyLogger.info("After Write CSV Import => " + chunk.toString());
+            } else {
+                listener.beforeWrite(chunk);
+                listener.afterWrite(chunk);
+            }
+            written += chunk.size();
+        }
+        return written;
+    }
+}
@@ -0,0 +1,107 @@
+package com.ipiecole.batch.benchmark;
+
+import com.ipiecole.batch.csvImport.CommuneMissingCoordinatesItemProcessor;
+import com.ipiecole.batch.exception.NetworkException;
+import com.ipiecole.batch.geocoding.ConcurrentGeocodingItemReader;
+import com.ipiecole.batch.geocoding.GeocodingCache;
+import com.ipiecole.batch.geocoding.NominatimStubServer;
+import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.utils.OpenStreetMapUtils;
+import com.ipiecole.batch.utils.TokenBucketRateLimiter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.support.ListItemReader;
+import org.springframework.retry.backoff.FixedBackOffPolicy;
+import org.springframework.retry.policy.SimpleRetryPolicy;
+import org.springframework.retry.support.RetryTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Géocodage de 20 communes sans coordonnées auprès d'un serveur Nominatim simulé (latence fixe),
+// avec la même limite de débit : traitement commune par commune (processor de la step séquentielle)
+// comparé au lecteur concurrent (missingCoordinates.mode=concurrent, 4 recherches en cours au plus)
+// Le cache est vide à chaque itération : toutes les recherches partent sur le réseau
+// mvn -Pbenchmark test -Djmh.args="MissingCoordinatesGeocodingBenchmark"
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MissingCoordinatesGeocodingBenchmark {
+
+    private static final int COMMUNES = 20;
+
+    @Param({"100", "500"})
+    public long latencyMillis;
+
+    @Param({"10"})
+    public double rateLimit;
+
+    private NominatimStubServer server;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = new NominatimStubServer(latencyMillis, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public int sequential() throws Exception {
+        CommuneMissingCoordinatesItemProcessor processor = new CommuneMissingCoordinatesItemProcessor(geocodingCache());
+        RetryTemplate retryTemplate = retryTemplate();
+        int resolved = 0;
+        for (Commune commune : communes()) {
+            if (retryTemplate.execute(context -> processor.process(commune)) != null) {
+                resolved++;
+            }
+        }
+        return resolved;
+    }
+
+    @Benchmark
+    public int concurrent() throws Exception {
+        ConcurrentGeocodingItemReader reader = new ConcurrentGeocodingItemReader(new ListItemReader<>(communes()),
+                geocodingCache(), retryTemplate(), 4);
+        reader.open(new ExecutionContext());
+        try {
+            int resolved = 0;
+            while (reader.read() != null) {
+                resolved++;
+            }
+            return resolved;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private GeocodingCache geocodingCache() {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(rateLimit, 1);
+        return new GeocodingCache(GeocodingCache.limit(rateLimiter, new OpenStreetMapUtils(server.getSearchUrl())::getCoordinates),
+                null, 100, Duration.ofDays(1), Duration.ofDays(1), Clock.systemUTC());
+    }
+
+    private static RetryTemplate retryTemplate() {
+        RetryTemplate retryTemplate = new RetryTemplate();
+        retryTemplate.setRetryPolicy(new SimpleRetryPolicy(5, Collections.singletonMap(NetworkException.class, true)));
+        retryTemplate.setBackOffPolicy(new FixedBackOffPolicy());
+        return retryTemplate;
+    }
+
+    private static List<Commune> communes() {
+        List<Commune> communes = new ArrayList<>();
+        for (int i = 0; i < COMMUNES; i++) {
+            communes.add(new Commune(String.format("%05d", i), "COMMUNE " + i, "01000", null, null));
+        }
+        return communes;
+    }
+}
@@ -0,0 +1,118 @@
+package com.ipiecole.batch.chunk;
+
+import com.ipiecole.batch.schema.SchemaMigrator;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.support.ListItemReader;
+import org.springframework.batch.repeat.RepeatContext;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class AdaptiveCompletionPolicyTest {
+
+    @Test
+    public void testTailleSuivante() {
+        // 100 ms par chunk, 1 Mo au plus
+        AdaptiveCompletionPolicy policy = new AdaptiveCompletionPolicy(10, 10, 1000, Duration.ofMillis(100), 1_000_000);
+        // 1 ms par élément : 100 éléments visés, mais au plus le double
+        Assertions.assertEquals(20, policy.nextSize(10, 1_000_000, 0));
+        Assertions.assertEquals(100, policy.nextSize(80, 1_000_000, 0));
+        // 10 ms par élément : 10 éléments visés, mais au moins la moitié
+        Assertions.assertEquals(40, policy.nextSize(80, 10_000_000, 0));
+        // Bornes
+        Assertions.assertEquals(10, policy.nextSize(10, 100_000_000, 0));
+        Assertions.assertEquals(1000, policy.nextSize(800, 1, 0));
+        // 20 Ko alloués par élément : 50 éléments au plus
+        Assertions.assertEquals(50, policy.nextSize(80, 1, 20_000));
+        // La taille minimum l'emporte sur la mémoire
+        Assertions.assertEquals(10, policy.nextSize(80, 1, 1_000_000));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new AdaptiveCompletionPolicy(10, 100, 10, Duration.ofMillis(100), 0));
+    }
+
+    @Test
+    public void testTailleDeReprise() {
+        AdaptiveCompletionPolicy policy = new AdaptiveCompletionPolicy(10, 10, 1000, Duration.ofMillis(100), 0);
+        StepExecution stepExecution = new StepExecution("importFile", null);
+        stepExecution.setExecutionContext(new ExecutionContext());
+        stepExecution.getExecutionContext().putInt(AdaptiveCompletionPolicy.SIZE_KEY, 320);
+        policy.beforeStep(stepExecution);
+        StepSynchronizationManager.register(stepExecution);
+        try {
+            // Le premier chunk reprend la dernière taille enregistrée
+            RepeatContext context = policy.start(null);
+            for (int i = 0; i < 319; i++) {
+                policy.update(context);
+            }
+            Assertions.assertFalse(policy.isComplete(context));
+            policy.update(context);
+            Assertions.assertTrue(policy.isComplete(context));
+        } finally {
+            StepSynchronizationManager.close();
+            policy.afterStep(stepExecution);
+        }
+    }
+
+    @Test
+    public void testTaillesDUneStep() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:chunk" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        new SchemaMigrator(dataSource).migrate();
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        JobRepositoryFactoryBean factory = new JobRepositoryFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setTransactionManager(transactionManager);
+        factory.afterPropertiesSet();
+        JobRepository jobRepository = factory.getObject();
+        SimpleJobLauncher jobLauncher = new SimpleJobLauncher();
+        jobLauncher.setJobRepository(jobRepository);
+        jobLauncher.afterPropertiesSet();
+
+        // Eléments traités très vite : la taille double à chaque chunk jusqu'au maximum
+        ChunkSizing chunkSizing = new ChunkSizing(true, 10, 640, Duration.ofSeconds(10), 0);
+        List<Integer> items = IntStream.range(0, 3000).boxed().collect(Collectors.toList());
+        List<Integer> chunkSizes = new ArrayList<>();
+        List<Integer> written = new ArrayList<>();
+        Job job = new JobBuilder("chunkJob").repository(jobRepository)
+                .start(chunkSizing.<Integer, Integer> chunk(new StepBuilder("importFile").repository(jobRepository)
+                        .transactionManager(transactionManager), 10)
+                        .reader(new ListItemReader<>(items))
+                        .writer(chunk -> {
+                            chunkSizes.add(chunk.size());
+                            written.addAll(chunk);
+                        })
+                        .build())
+                .build();
+        JobExecution jobExecution = jobLauncher.run(job, new JobParameters());
+        Assertions.assertEquals(BatchStatus.COMPLETED, jobExecution.getStatus());
+        Assertions.assertEquals(items, written);
+        Assertions.assertEquals(List.of(10, 20, 40, 80, 160, 320, 640, 640, 640, 450), chunkSizes);
+
+        // Tailles enregistrées dans le contexte d'exécution de la step
+        ExecutionContext context = jobRepository.getLastStepExecution(jobExecution.getJobInstance(), "importFile")
+                .getExecutionContext();
+        Assertions.assertEquals(640, context.getInt(AdaptiveCompletionPolicy.SIZE_KEY));
+        Assertions.assertTrue(context.getString(AdaptiveCompletionPolicy.SIZES_KEY).startsWith("10x1,20x1,40x1,80x1,160x1,320x1,640x"),
+                context.getString(AdaptiveCompletionPolicy.SIZES_KEY));
+        Assertions.assertTrue(context.containsKey(AdaptiveCompletionPolicy.ITEM_MICROS_KEY));
+    }
+}
@@ -0,0 +1,157 @@
+package com.ipiecole.batch.chunk;
+
+import com.ipiecole.batch.csvImport.CommuneCSVChannelItemReader;
+import com.ipiecole.batch.csvImport.CommuneCSVItemProcessor;
+import com.ipiecole.batch.dto.CommuneCSV;
+import com.ipiecole.batch.exception.CommuneCSVException;
+import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.schema.SchemaMigrator;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.batch.core.step.builder.FaultTolerantStepBuilder;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+public class PipelinedItemReaderTest {
+
+    private static final int LINES = 1000;
+    private static final int CHUNK_SIZE = 10;
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+    private JobRepository jobRepository;
+    private SimpleJobLauncher jobLauncher;
+    private DataSourceTransactionManager transactionManager;
+    private final List<String> written = new ArrayList<>();
+    // Nombre d'écritures avant l'arrêt brutal de la step (-1 : aucun arrêt)
+    private int failAfterWrites = -1;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        // Par centaine de lignes : une ligne illisible, un code postal invalide, des coordonnées invalides
+        StringBuilder content = new StringBuilder("Code_commune_INSEE;Nom_commune;Code_postal;Ligne_5;Libellé_d_acheminement;coordonnees_gps\n");
+        for (int i = 0; i < LINES; i++) {
+            if (i % 100 == 7) {
+                content.append(String.format("%05d;COMMUNE;01000\n", i));
+            } else {
+                content.append(String.format("%05d;SAINT GENIS;%s;;SAINT GENIS;%s\n", i, i % 100 == 13 ? "1000" : "01000",
+                        i % 100 == 29 ? "nord" : "45.0,5.0"));
+            }
+        }
+        file = tempDir.resolve("laposte_hexasmal.csv");
+        Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pipeline" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        new SchemaMigrator(dataSource).migrate();
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        JobRepositoryFactoryBean factory = new JobRepositoryFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setTransactionManager(transactionManager);
+        factory.afterPropertiesSet();
+        jobRepository = factory.getObject();
+        jobLauncher = new SimpleJobLauncher();
+        jobLauncher.setJobRepository(jobRepository);
+        jobLauncher.afterPropertiesSet();
+    }
+
+    // Chaque exécution utilise de nouveaux reader et processor, comme après le redémarrage de l'application
+    private JobExecution run(String jobName, boolean pipelined) throws Exception {
+        CommuneCSVChannelItemReader reader = new CommuneCSVChannelItemReader();
+        reader.setName("communesCSVItemReader");
+        reader.setResource(new FileSystemResource(file));
+        reader.setLinesToSkip(1);
+        reader.setBufferSize(256);
+        CommuneCSVItemProcessor processor = new CommuneCSVItemProcessor();
+        int[] writes = {0};
+        ItemWriter<Commune> writer = items -> {
+            if (++writes[0] == failAfterWrites + 1) {
+                throw new IllegalStateException("Arrêt de la step");
+            }
+            items.forEach(item -> written.add(item.getCodeInsee()));
+        };
+        StepBuilder stepBuilder = new StepBuilder("importFile").repository(jobRepository).transactionManager(transactionManager);
+        FaultTolerantStepBuilder<CommuneCSV, Commune> builder;
+        if (pipelined) {
+            PipelinedItemReader<CommuneCSV, Commune> pipeline = new PipelinedItemReader<>(reader, processor, 3, 50);
+            builder = stepBuilder.<CommuneCSV, Commune> chunk(CHUNK_SIZE).reader(pipeline).processor(pipeline.processor())
+                    .faultTolerant();
+        } else {
+            builder = stepBuilder.<CommuneCSV, Commune> chunk(CHUNK_SIZE).reader(reader).processor(processor)
+                    .faultTolerant();
+        }
+        Job job = new JobBuilder(jobName).repository(jobRepository)
+                .start(builder.skipLimit(100)
+                        .skip(CommuneCSVException.class)
+                        .skip(FlatFileParseException.class)
+                        .writer(writer)
+                        .listener(processor)
+                        .build())
+                .build();
+        return jobLauncher.run(job, new JobParametersBuilder().addString("file", file.toString()).toJobParameters());
+    }
+
+    @Test
+    public void testMemeResultatQueLaStepSequentielle() throws Exception {
+        StepExecution sequential = run("sequentialJob", false).getStepExecutions().iterator().next();
+        List<String> sequentialWritten = new ArrayList<>(written);
+        written.clear();
+        JobExecution jobExecution = run("pipelinedJob", true);
+        StepExecution pipelined = jobExecution.getStepExecutions().iterator().next();
+
+        Assertions.assertEquals(BatchStatus.COMPLETED, jobExecution.getStatus());
+        Assertions.assertEquals(LINES - 30, written.size());
+        Assertions.assertEquals(sequentialWritten, written);
+        Assertions.assertEquals(sequential.getReadSkipCount(), pipelined.getReadSkipCount());
+        Assertions.assertEquals(10, pipelined.getReadSkipCount());
+        Assertions.assertEquals(sequential.getProcessSkipCount(), pipelined.getProcessSkipCount());
+        Assertions.assertEquals(20, pipelined.getProcessSkipCount());
+        Assertions.assertEquals(sequential.getWriteCount(), pipelined.getWriteCount());
+        // Compteur des threads de traitement regroupé dans la step
+        Assertions.assertEquals(10, pipelined.getExecutionContext().getInt(CommuneCSVItemProcessor.MISSING_COORDINATES_KEY));
+        Assertions.assertEquals(CommuneCSVItemProcessor.COMPLETED_WITH_MISSING_COORDINATES, pipelined.getExitStatus().getExitCode());
+    }
+
+    @Test
+    public void testRepriseApresLeDernierChunkValide() throws Exception {
+        // Arrêt au 7e chunk : les lignes lues d'avance ne sont pas comptées dans la position enregistrée
+        failAfterWrites = 6;
+        JobExecution failed = run("importCsvJob", true);
+        Assertions.assertEquals(BatchStatus.FAILED, failed.getStatus());
+        Assertions.assertEquals(6, failed.getStepExecutions().iterator().next().getCommitCount());
+        StepExecution failedStep = failed.getStepExecutions().iterator().next();
+        long offset = failedStep.getExecutionContext().getLong("communesCSVItemReader.byte.offset");
+        Assertions.assertTrue(offset > 0 && offset < Files.size(file) / 10, "position " + offset);
+
+        failAfterWrites = -1;
+        JobExecution restarted = run("importCsvJob", true);
+        Assertions.assertEquals(BatchStatus.COMPLETED, restarted.getStatus());
+        // Aucune commune écrite deux fois, aucune oubliée
+        Assertions.assertEquals(LINES - 30, written.size());
+        Assertions.assertEquals(LINES - 30, new HashSet<>(written).size());
+    }
+}
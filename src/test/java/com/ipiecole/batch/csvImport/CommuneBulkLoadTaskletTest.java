@@ -0,0 +1,72 @@
+package com.ipiecole.batch.csvImport;
+
+import com.ipiecole.batch.schema.SchemaMigrator;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+public class CommuneBulkLoadTaskletTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testCoordonneesDuFichierRemplacentLeGeocodage() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:bulkLoad" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        new SchemaMigrator(dataSource).migrate();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        // Commune géocodée hors ligne lors d'un import précédent
+        jdbcTemplate.update("INSERT INTO commune (code_insee, nom, code_postal, latitude, longitude, coordinates_source, "
+                + "coordinates_precision, geocoding_pending) VALUES ('01006', 'AMBLEON', '01300', 45.7, 5.6, 'OFFLINE', "
+                + "'CODE_POSTAL', FALSE)");
+
+        Path bulkFile = directory.resolve("communes_bulk.csv");
+        Files.write(bulkFile, ("CODE_INSEE;NOM;CODE_POSTAL;LATITUDE;LONGITUDE;IMPORT_FINGERPRINT\n"
+                + "01006;AMBLEON;01300;45.7494989044;5.59432017366;\n"
+                + "01454;VIRIGNIN;01300;;;\n").getBytes(StandardCharsets.UTF_8));
+        CommuneBulkLoadTasklet tasklet = new CommuneBulkLoadTasklet(dataSource, new FileSystemResource(bulkFile));
+        tasklet.execute(new StepContribution(new StepExecution("importFileBulkLoad", new JobExecution(1L))), null);
+
+        Map<String, Object> ambleon = jdbcTemplate.queryForMap("SELECT * FROM commune WHERE code_insee = '01006'");
+        Assertions.assertEquals(45.7494989044, ambleon.get("LATITUDE"));
+        Assertions.assertNull(ambleon.get("COORDINATES_SOURCE"));
+        Assertions.assertNull(ambleon.get("COORDINATES_PRECISION"));
+        Assertions.assertEquals(Boolean.FALSE, ambleon.get("GEOCODING_PENDING"));
+        Assertions.assertEquals(Boolean.TRUE, jdbcTemplate.queryForObject(
+                "SELECT geocoding_pending FROM commune WHERE code_insee = '01454'", Boolean.class));
+    }
+
+    // Fichier aux fins de ligne Windows : dernière colonne lue sans le \r, table de transit vidée après le chargement
+    @Test
+    public void testFinsDeLigneWindows() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:bulkLoad" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        new SchemaMigrator(dataSource).migrate();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        Path bulkFile = directory.resolve("communes_bulk.csv");
+        Files.write(bulkFile, ("CODE_INSEE;NOM;CODE_POSTAL;LATITUDE;LONGITUDE;IMPORT_FINGERPRINT\r\n"
+                + "01006;AMBLEON;01300;45.7494989044;5.59432017366;42\r\n"
+                + "01454;VIRIGNIN;01300;;;\r\n").getBytes(StandardCharsets.UTF_8));
+        CommuneBulkLoadTasklet tasklet = new CommuneBulkLoadTasklet(dataSource, new FileSystemResource(bulkFile));
+        tasklet.execute(new StepContribution(new StepExecution("importFileBulkLoad", new JobExecution(1L))), null);
+
+        Assertions.assertEquals(42L, jdbcTemplate.queryForObject(
+                "SELECT import_fingerprint FROM commune WHERE code_insee = '01006'", Long.class));
+        Assertions.assertNull(jdbcTemplate.queryForObject(
+                "SELECT import_fingerprint FROM commune WHERE code_insee = '01454'", Long.class));
+        Assertions.assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM commune_staging", Integer.class));
+    }
+}
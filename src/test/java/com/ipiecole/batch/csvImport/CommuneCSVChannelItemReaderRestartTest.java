@@ -0,0 +1,161 @@
+package com.ipiecole.batch.csvImport;
+
+import com.ipiecole.batch.dto.CommuneCSV;
+import com.ipiecole.batch.schema.SchemaMigrator;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CommuneCSVChannelItemReaderRestartTest {
+
+    private static final int LINES = 1000;
+    private static final int CHUNK_SIZE = 10;
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+    private JobRepository jobRepository;
+    private SimpleJobLauncher jobLauncher;
+    private DataSourceTransactionManager transactionManager;
+    private final List<String> written = new ArrayList<>();
+    // Nombre d'écritures avant l'arrêt brutal de la step (-1 : aucun arrêt)
+    private int failAfterWrites;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        StringBuilder content = new StringBuilder("Code_commune_INSEE;Nom_commune;Code_postal;Ligne_5;Libellé_d_acheminement;coordonnees_gps\n");
+        for (int i = 0; i < LINES; i++) {
+            content.append(String.format("%05d;COMMUNE %d;01000;;COMMUNE %d;45.0,5.0\n", i, i, i));
+        }
+        file = tempDir.resolve("laposte_hexasmal.csv");
+        Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:importRestart" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        new SchemaMigrator(dataSource).migrate();
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        JobRepositoryFactoryBean factory = new JobRepositoryFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setTransactionManager(transactionManager);
+        factory.afterPropertiesSet();
+        jobRepository = factory.getObject();
+        jobLauncher = new SimpleJobLauncher();
+        jobLauncher.setJobRepository(jobRepository);
+        jobLauncher.afterPropertiesSet();
+    }
+
+    // Ressource lue comme un flux (hors système de fichiers) : les octets sautés ne sont pas comptés comme lus
+    private AbstractResource countingResource(AtomicLong bytesRead) {
+        return new AbstractResource() {
+            @Override
+            public String getDescription() {
+                return "fichier " + file;
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return new FilterInputStream(Files.newInputStream(file)) {
+                    @Override
+                    public int read() throws IOException {
+                        int b = super.read();
+                        if (b >= 0) {
+                            bytesRead.incrementAndGet();
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        int read = super.read(b, off, len);
+                        if (read > 0) {
+                            bytesRead.addAndGet(read);
+                        }
+                        return read;
+                    }
+                };
+            }
+        };
+    }
+
+    // Chaque exécution utilise un nouveau lecteur, comme après le redémarrage de l'application
+    private JobExecution run(AtomicLong bytesRead) throws Exception {
+        CommuneCSVChannelItemReader reader = new CommuneCSVChannelItemReader();
+        reader.setName("communesCSVItemReader");
+        reader.setResource(countingResource(bytesRead));
+        reader.setLinesToSkip(1);
+        reader.setBufferSize(256);
+        int[] writes = {0};
+        ItemWriter<CommuneCSV> writer = items -> {
+            if (++writes[0] == failAfterWrites + 1) {
+                throw new IllegalStateException("Arrêt de la step");
+            }
+            items.forEach(item -> written.add(item.getCodeInsee()));
+        };
+        Job job = new JobBuilder("importCsvJob").repository(jobRepository)
+                .start(new StepBuilder("importFile").repository(jobRepository).transactionManager(transactionManager)
+                        .<CommuneCSV, CommuneCSV> chunk(CHUNK_SIZE)
+                        .reader(reader)
+                        .writer(writer)
+                        .build())
+                .build();
+        JobParameters parameters = new JobParametersBuilder().addString("file", file.toString()).toJobParameters();
+        return jobLauncher.run(job, parameters);
+    }
+
+    @Test
+    public void testRepriseALaPositionEnregistree() throws Exception {
+        long fileLength = Files.size(file);
+
+        // Arrêt au milieu du fichier : les 60 premières communes (6 commits) sont écrites
+        failAfterWrites = 60 / CHUNK_SIZE;
+        AtomicLong firstRunBytes = new AtomicLong();
+        JobExecution failed = run(firstRunBytes);
+        Assertions.assertEquals(BatchStatus.FAILED, failed.getStatus());
+        Assertions.assertEquals(60, written.size());
+        StepExecution failedStep = failed.getStepExecutions().iterator().next();
+        long offset = failedStep.getExecutionContext().getLong("communesCSVItemReader.byte.offset");
+        Assertions.assertTrue(offset > 0 && offset < fileLength / 2);
+
+        // Reprise : seuls les octets qui suivent le dernier commit sont lus
+        failAfterWrites = -1;
+        AtomicLong restartBytes = new AtomicLong();
+        JobExecution restarted = run(restartBytes);
+        Assertions.assertEquals(BatchStatus.COMPLETED, restarted.getStatus());
+        Assertions.assertEquals(fileLength - offset, restartBytes.get());
+
+        // Aucune commune écrite deux fois, aucune oubliée
+        Assertions.assertEquals(LINES, written.size());
+        Assertions.assertEquals(LINES, new HashSet<>(written).size());
+        Assertions.assertEquals("00060", written.get(60));
+        StepExecution restartedStep = restarted.getStepExecutions().iterator().next();
+        Assertions.assertEquals(LINES - 60, restartedStep.getReadCount());
+    }
+}
@@ -0,0 +1,116 @@
+package com.ipiecole.batch.csvImport;
+
+import com.ipiecole.batch.dto.CommuneCSV;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+// Le CommuneCSVItemProcessor (CommuneCSVRules) doit donner exactement le même résultat que l'ancien traitement
+// à base d'expressions régulières (LegacyCommuneCSVProcessing) : même commune, ou même exception
+public class CommuneCSVRulesTest {
+
+    private static final String NOM_CHARS = "LDSTEA '-";
+    private static final String GPS_CHARS = "0123456789.,-+ 9";
+
+    private final CommuneCSVItemProcessor processor = new CommuneCSVItemProcessor();
+
+    @Test
+    public void testFichiersLaPoste() throws Exception {
+        for (String file : new String[]{"src/main/resources/laposte_hexasmal.csv", "src/test/ressources/laposte_hexasmal_test.csv"}) {
+            List<String> lines = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+            for (String line : lines.subList(1, lines.size())) {
+                String[] columns = line.split(";", -1);
+                if (columns.length == 6) {
+                    assertSameResult(communeCSV(columns[0].trim(), columns[1].trim(), columns[2].trim(), columns[5].trim()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNoms() throws Exception {
+        // Tous les noms de 1 à 5 caractères construits sur les caractères qui déclenchent les remplacements
+        for (int length = 1; length <= 5; length++) {
+            int combinations = (int) Math.pow(NOM_CHARS.length(), length);
+            char[] nom = new char[length];
+            for (int n = 0; n < combinations; n++) {
+                for (int i = 0, rest = n; i < length; i++, rest /= NOM_CHARS.length()) {
+                    nom[i] = NOM_CHARS.charAt(rest % NOM_CHARS.length());
+                }
+                assertSameResult(communeCSV("01001", new String(nom), "01400", "46.15,4.92"));
+            }
+        }
+        // Noms plus longs tirés au hasard
+        Random random = new Random(42);
+        for (int n = 0; n < 100000; n++) {
+            assertSameResult(communeCSV("01001", randomString(random, NOM_CHARS, 6 + random.nextInt(10)), "01400", "46.15,4.92"));
+        }
+    }
+
+    @Test
+    public void testCoordonneesGps() throws Exception {
+        String[] coordonnees = {"", ",", "0,0", "-0,-0", "+0,+0", "90,180", "90.0,180.000", "90.01,0", "0,180.1", "91,0",
+                "09,0", "0,09", "0,099", "0,179.99999999", "0,181", "1.,2", ".1,2", "1,\t 2", "1, ", "1 ,2",
+                "45.7494989044, 5.59432017366", "-12.345678901234567890,-123.456789012345678901234", "1,2,3"};
+        for (String gps : coordonnees) {
+            assertSameResult(communeCSV("01001", "L ABERGEMENT", "01400", gps));
+        }
+        Random random = new Random(42);
+        for (int n = 0; n < 200000; n++) {
+            assertSameResult(communeCSV("01001", "L ABERGEMENT", "01400", randomString(random, GPS_CHARS, 1 + random.nextInt(14))));
+        }
+        // Coordonnées valides avec beaucoup de décimales (lecture exacte ou repli sur Double.parseDouble)
+        for (int n = 0; n < 100000; n++) {
+            String gps = String.format(java.util.Locale.ROOT, "%." + random.nextInt(20) + "f,%." + random.nextInt(20) + "f",
+                    random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+            assertSameResult(communeCSV("01001", "L ABERGEMENT", "01400", gps));
+        }
+    }
+
+    @Test
+    public void testCodes() throws Exception {
+        for (String code : new String[]{"", "0100", "01001", "2A004", "2B033", "2C001", "010011", "0100a", "\u0660\u0661\u0660\u0660\u0661"}) {
+            assertSameResult(communeCSV(code, "L ABERGEMENT", "01400", "46.15,4.92"));
+            assertSameResult(communeCSV("01001", "L ABERGEMENT", code, "46.15,4.92"));
+        }
+    }
+
+    private void assertSameResult(CommuneCSV item) {
+        Assertions.assertEquals(result(() -> LegacyCommuneCSVProcessing.process(item).toString()),
+                result(() -> processor.process(item).toString()), item.toString());
+    }
+
+    private static String result(ProcessCall call) {
+        try {
+            return call.call();
+        } catch (Exception e) {
+            return e.getClass().getName() + " : " + e.getMessage();
+        }
+    }
+
+    private static String randomString(Random random, String chars, int length) {
+        char[] s = new char[length];
+        for (int i = 0; i < length; i++) {
+            s[i] = chars.charAt(random.nextInt(chars.length()));
+        }
+        return new String(s);
+    }
+
+    private static CommuneCSV communeCSV(String codeInsee, String nom, String codePostal, String coordonneesGps) {
+        CommuneCSV communeCSV = new CommuneCSV();
+        communeCSV.setCodeInsee(codeInsee);
+        communeCSV.setNom(nom);
+        communeCSV.setCodePostal(codePostal);
+        communeCSV.setCoordonneesGps(coordonneesGps);
+        return communeCSV;
+    }
+
+    private interface ProcessCall {
+        String call() throws Exception;
+    }
+}
@@ -0,0 +1,37 @@
+package com.ipiecole.batch.csvImport;
+
+import com.ipiecole.batch.index.CommuneIndex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class CommuneCoordinatesValidationTaskletTest {
+
+    @Test
+    public void testCommunesEloigneesDeLeurDepartement() {
+        Random random = new Random(7);
+        CommuneIndex.Builder builder = new CommuneIndex.Builder();
+        // Ain (01) autour de Bourg-en-Bresse, Corse-du-Sud (2A) autour d'Ajaccio, Guadeloupe (971)
+        for (int i = 1; i < 100; i++) {
+            builder.add(String.format("01%03d", i), "AIN " + i, "01000", 46.0 + random.nextDouble() * 0.6, 5.0 + random.nextDouble() * 0.8);
+            builder.add(String.format("2A%03d", i), "CORSE " + i, "20000", 41.6 + random.nextDouble() * 0.6, 8.6 + random.nextDouble() * 0.6);
+        }
+        for (int i = 1; i < 30; i++) {
+            builder.add(String.format("971%02d", i), "GUADELOUPE " + i, "97100", 16.0 + random.nextDouble() * 0.4, -61.7 + random.nextDouble() * 0.4);
+        }
+        // Commune de l'Ain placée en Bretagne, commune corse inversée (longitude à la place de la latitude)
+        builder.add("01999", "AIN EN BRETAGNE", "01000", 48.1, -1.7);
+        builder.add("2A999", "CORSE INVERSEE", "20000", 8.8, 41.9);
+        builder.add("01998", "AIN SANS COORDONNEES", "01000", Double.NaN, Double.NaN);
+
+        List<CommuneCoordinatesValidationTasklet.Outlier> outliers =
+                new CommuneCoordinatesValidationTasklet(null, 3, 20, 10).outliers(builder.build());
+        Assertions.assertEquals(List.of("2A999", "01999"),
+                outliers.stream().map(outlier -> outlier.codeInsee).collect(Collectors.toList()));
+        Assertions.assertEquals("2A", outliers.get(0).departement);
+        Assertions.assertTrue(outliers.get(1).distanceKm > 400);
+    }
+}
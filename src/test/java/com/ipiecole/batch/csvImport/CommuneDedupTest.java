@@ -0,0 +1,125 @@
+package com.ipiecole.batch.csvImport;
+
+import com.ipiecole.batch.dto.CommuneCSV;
+import com.ipiecole.batch.exception.CommuneCSVException;
+import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.schema.SchemaMigrator;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.support.CompositeItemProcessor;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class CommuneDedupTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+    private JdbcDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private JobRepository jobRepository;
+    private SimpleJobLauncher jobLauncher;
+    private DataSourceTransactionManager transactionManager;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        // 20 communes sur 3 lignes chacune, non consécutives : codes postaux 01000, 01001 puis 01002
+        // (01000 de nouveau pour les communes paires) ; première ligne de la commune 01010 invalide
+        StringBuilder content = new StringBuilder("Code_commune_INSEE;Nom_commune;Code_postal;Ligne_5;Libellé_d_acheminement;coordonnees_gps\n");
+        for (int i = 0; i < 60; i++) {
+            String codePostal = i == 10 ? "1000" : i >= 40 && i % 2 == 0 ? "01000" : "0100" + i / 20;
+            content.append(String.format("%05d;SAINT GENIS;%s;;SAINT GENIS;45.0,5.0\n", 1000 + i % 20, codePostal));
+        }
+        file = tempDir.resolve("laposte_hexasmal.csv");
+        Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:dedup" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        new SchemaMigrator(dataSource).migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        JobRepositoryFactoryBean factory = new JobRepositoryFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setTransactionManager(transactionManager);
+        factory.afterPropertiesSet();
+        jobRepository = factory.getObject();
+        jobLauncher = new SimpleJobLauncher();
+        jobLauncher.setJobRepository(jobRepository);
+        jobLauncher.afterPropertiesSet();
+    }
+
+    @Test
+    public void testCommunesEcritesUneSeuleFois() throws Exception {
+        CommuneCSVChannelItemReader reader = new CommuneCSVChannelItemReader();
+        reader.setName("communesCSVItemReader");
+        reader.setResource(new FileSystemResource(file));
+        reader.setLinesToSkip(1);
+        CommuneDedupItemProcessor dedup = new CommuneDedupItemProcessor();
+        CompositeItemProcessor<CommuneCSV, Commune> processor = new CompositeItemProcessor<>();
+        processor.setDelegates(List.of(new CommuneCSVItemProcessor(), dedup));
+        List<String> written = new ArrayList<>();
+        // Chunks de 7 lignes : la ligne invalide annule le 2e chunk, retraité sans elle
+        Job job = new JobBuilder("importCsvJob").repository(jobRepository)
+                .start(new StepBuilder("importFile").repository(jobRepository).transactionManager(transactionManager)
+                        .<CommuneCSV, Commune> chunk(7)
+                        .reader(reader)
+                        .processor(processor)
+                        .faultTolerant()
+                        .skipLimit(10)
+                        .skip(CommuneCSVException.class)
+                        .skip(FlatFileParseException.class)
+                        .writer(new CommuneDedupItemWriter(items -> items.forEach(commune ->
+                                written.add(commune.getCodeInsee() + ":" + commune.getCodePostal())), dataSource))
+                        .listener(dedup)
+                        .build())
+                .build();
+        JobExecution jobExecution = jobLauncher.run(job, new JobParameters());
+        Assertions.assertEquals(BatchStatus.COMPLETED, jobExecution.getStatus());
+
+        // Chaque commune écrite une fois, avec le code postal de sa première ligne valide
+        List<String> expected = IntStream.range(0, 20).filter(i -> i != 10)
+                .mapToObj(i -> String.format("%05d:01000", 1000 + i)).collect(Collectors.toList());
+        expected.add("01010:01001");
+        Assertions.assertEquals(expected, written);
+
+        // Tous les couples (code Insee, code postal) valides, une seule fois
+        Assertions.assertEquals(50, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM commune_code_postal", Integer.class));
+        Assertions.assertEquals(List.of("01000", "01001", "01002"), jdbcTemplate.queryForList(
+                "SELECT code_postal FROM commune_code_postal WHERE code_insee = '01001' ORDER BY code_postal", String.class));
+        Assertions.assertEquals(List.of("01000", "01001"), jdbcTemplate.queryForList(
+                "SELECT code_postal FROM commune_code_postal WHERE code_insee = '01010' ORDER BY code_postal", String.class));
+
+        StepExecution stepExecution = jobExecution.getStepExecutions().iterator().next();
+        Assertions.assertEquals(1, stepExecution.getProcessSkipCount());
+        ExecutionContext context = stepExecution.getExecutionContext();
+        Assertions.assertEquals(59, context.getInt(CommuneDedupItemProcessor.ROWS_KEY));
+        Assertions.assertEquals(20, context.getInt(CommuneDedupItemProcessor.COMMUNES_KEY));
+        Assertions.assertEquals(50, context.getInt(CommuneDedupItemProcessor.CODES_POSTAUX_KEY));
+        Assertions.assertEquals(39, context.getInt(CommuneDedupItemProcessor.REDUNDANT_WRITES_AVOIDED_KEY));
+    }
+}
@@ -0,0 +1,225 @@
+package com.ipiecole.batch.csvImport;
+
+import com.ipiecole.batch.dto.CommuneCSV;
+import com.ipiecole.batch.exception.CommuneCSVException;
+import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.schema.SchemaMigrator;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.support.CompositeItemProcessor;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CommuneImportDeltaTaskletTest {
+
+    private JdbcDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private CommuneJdbcUpsertItemWriter writer;
+    private CommuneDeltaItemProcessor processor;
+
+    @BeforeEach
+    public void setup() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:importDelta" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        new SchemaMigrator(dataSource).migrate();
+        writer = new CommuneJdbcUpsertItemWriter(dataSource, false);
+        processor = new CommuneDeltaItemProcessor(dataSource);
+    }
+
+    private static Commune commune(String codeInsee, String nom, Double latitude) {
+        return new Commune(codeInsee, nom, "01000", latitude, latitude == null ? null : 5.0);
+    }
+
+    // Import des communes à travers le filtre différentiel, comme une step d'import d'un seul chunk :
+    // renvoie le nombre de communes écrites
+    private int importCommunes(StepExecution stepExecution, Commune... communes) throws Exception {
+        processor.stepListener().beforeStep(stepExecution);
+        List<Commune> written = new ArrayList<>();
+        for (Commune commune : communes) {
+            CommuneCSV communeCSV = new CommuneCSV();
+            communeCSV.setCodeInsee(commune.getCodeInsee());
+            processor.afterRead(communeCSV);
+            Commune processed = processor.process(commune);
+            if (processed != null) {
+                written.add(processed);
+            }
+        }
+        writer.write(written);
+        processor.afterChunk(null);
+        processor.stepListener().afterStep(stepExecution);
+        return written.size();
+    }
+
+    private static ChunkContext chunkContext(JobExecution jobExecution) {
+        return new ChunkContext(new StepContext(jobExecution.createStepExecution("importFileDelta")));
+    }
+
+    private static Resource file(String content) {
+        return new ByteArrayResource(content.getBytes(StandardCharsets.UTF_8), "laposte_hexasmal.csv");
+    }
+
+    @Test
+    public void testCommunesInchangeesFiltrees() throws Exception {
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        Assertions.assertEquals(3, importCommunes(stepExecution, commune("01001", "A", 46.0), commune("01002", "B", 46.1),
+                commune("01003", "C", null)));
+        // Coordonnées récupérées après l'import : conservées tant que la ligne du fichier ne change pas
+        jdbcTemplate.update("UPDATE commune SET latitude = 46.2, longitude = 5.1, geocoding_pending = FALSE WHERE code_insee = '01003'");
+
+        processor = new CommuneDeltaItemProcessor(dataSource);
+        Assertions.assertEquals(2, importCommunes(stepExecution, commune("01001", "A", 46.0), commune("01002", "B2", 46.1),
+                commune("01003", "C", null), commune("01004", "D", 46.3)));
+        Assertions.assertEquals("B2", jdbcTemplate.queryForObject("SELECT nom FROM commune WHERE code_insee = '01002'", String.class));
+        Assertions.assertEquals(46.2, jdbcTemplate.queryForObject("SELECT latitude FROM commune WHERE code_insee = '01003'", Double.class));
+        Assertions.assertEquals(4, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM commune WHERE import_fingerprint IS NOT NULL",
+                Integer.class));
+    }
+
+    // Chunk annulé par une ligne rejetée puis retraité sans elle : ses autres communes sont bien écrites
+    @Test
+    public void testChunkAnnuleRetraite(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("laposte_hexasmal.csv");
+        Files.write(file, ("Code_commune_INSEE;Nom_commune;Code_postal;Ligne_5;Libellé_d_acheminement;coordonnees_gps\n"
+                + "01001;A;01000;;A;46.0,5.0\n"
+                + "01002;B;1000;;B;46.0,5.0\n"
+                + "01003;C;01000;;C;46.0,5.0\n"
+                + "01004;D;01000;;D;46.0,5.0\n").getBytes(StandardCharsets.UTF_8));
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        JobRepositoryFactoryBean factory = new JobRepositoryFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setTransactionManager(transactionManager);
+        factory.afterPropertiesSet();
+        JobRepository jobRepository = factory.getObject();
+        SimpleJobLauncher jobLauncher = new SimpleJobLauncher();
+        jobLauncher.setJobRepository(jobRepository);
+        jobLauncher.afterPropertiesSet();
+
+        for (long run = 1; run <= 2; run++) {
+            CommuneCSVChannelItemReader reader = new CommuneCSVChannelItemReader();
+            reader.setName("communesCSVItemReader");
+            reader.setResource(new FileSystemResource(file));
+            reader.setLinesToSkip(1);
+            CompositeItemProcessor<CommuneCSV, Commune> composite = new CompositeItemProcessor<>();
+            composite.setDelegates(List.of(new CommuneCSVItemProcessor(), processor));
+            Job job = new JobBuilder("importCsvJob").repository(jobRepository)
+                    .start(new StepBuilder("importFile").repository(jobRepository).transactionManager(transactionManager)
+                            .<CommuneCSV, Commune> chunk(4)
+                            .reader(reader)
+                            .processor(composite)
+                            .writer(writer)
+                            .faultTolerant()
+                            .skipLimit(10)
+                            .skip(CommuneCSVException.class)
+                            .skip(FlatFileParseException.class)
+                            .listener(processor.stepListener())
+                            .listener(processor)
+                            .build())
+                    .build();
+            JobExecution jobExecution = jobLauncher.run(job, new JobParametersBuilder().addLong("run", run).toJobParameters());
+            Assertions.assertEquals(BatchStatus.COMPLETED, jobExecution.getStatus());
+            StepExecution stepExecution = jobExecution.getStepExecutions().iterator().next();
+            Assertions.assertEquals(1, stepExecution.getProcessSkipCount());
+            Assertions.assertEquals(1, stepExecution.getRollbackCount());
+            // Premier import : toutes les communes valides écrites ; second import : toutes inchangées
+            Assertions.assertEquals(run == 1 ? 3 : 0, stepExecution.getWriteCount());
+            Assertions.assertEquals(run == 1 ? 0 : 3, stepExecution.getFilterCount());
+            Assertions.assertEquals(List.of("01001", "01003", "01004"),
+                    jdbcTemplate.queryForList("SELECT code_insee FROM commune ORDER BY code_insee", String.class));
+        }
+    }
+
+    @Test
+    public void testEmpreinte() {
+        long fingerprint = CommuneDeltaItemProcessor.fingerprint(commune("01001", "AB", 46.0));
+        Assertions.assertEquals(fingerprint, CommuneDeltaItemProcessor.fingerprint(commune("01001", "AB", 46.0)));
+        Assertions.assertNotEquals(fingerprint, CommuneDeltaItemProcessor.fingerprint(commune("01001", "AB", 46.000001)));
+        Assertions.assertNotEquals(fingerprint, CommuneDeltaItemProcessor.fingerprint(commune("01001", "AB", null)));
+        Assertions.assertNotEquals(CommuneDeltaItemProcessor.fingerprint(new Commune("01001", "A", "B01000", null, null)),
+                CommuneDeltaItemProcessor.fingerprint(new Commune("01001", "AB", "01000", null, null)));
+    }
+
+    @Test
+    public void testFichierInchangeEtCommunesDisparues() throws Exception {
+        Resource file = file("Code_commune_INSEE;Nom_commune\n01001;A\n01003;C\n");
+        CommuneImportDeltaTasklet tasklet = new CommuneImportDeltaTasklet(dataSource, file, processor, true);
+        JobExecution jobExecution = MetaDataInstanceFactory.createJobExecution();
+
+        // Premier import : fichier inconnu
+        ChunkContext check = chunkContext(jobExecution);
+        StepContribution contribution = check.getStepContext().getStepExecution().createStepContribution();
+        tasklet.checkFile(contribution, check);
+        Assertions.assertEquals(ExitStatus.EXECUTING, contribution.getExitStatus());
+
+        importCommunes(MetaDataInstanceFactory.createStepExecution(), commune("01001", "A", 46.0), commune("01003", "C", 46.0));
+        // Communes importées par un fichier précédent
+        writer.write(List.of(commune("01000", "Z", 46.0), commune("01002", "B", 46.0), commune("01009", "I", 46.0)));
+        Assertions.assertEquals(List.of("01000", "01002", "01009"), tasklet.removedCodesInsee(processor.getCodesInsee()));
+
+        ChunkContext complete = chunkContext(jobExecution);
+        contribution = complete.getStepContext().getStepExecution().createStepContribution();
+        tasklet.complete(contribution, complete);
+        Assertions.assertEquals(3, complete.getStepContext().getStepExecution().getExecutionContext()
+                .getInt(CommuneImportDeltaTasklet.REMOVED_KEY));
+        Assertions.assertEquals(List.of("01001", "01003"),
+                jdbcTemplate.queryForList("SELECT code_insee FROM commune ORDER BY code_insee", String.class));
+
+        // Relance avec le même fichier : rien à importer
+        check = chunkContext(MetaDataInstanceFactory.createJobExecution(2L));
+        contribution = check.getStepContext().getStepExecution().createStepContribution();
+        tasklet.checkFile(contribution, check);
+        Assertions.assertEquals(CommuneImportDeltaTasklet.UNCHANGED, contribution.getExitStatus().getExitCode());
+
+        // Fichier modifié
+        tasklet = new CommuneImportDeltaTasklet(dataSource, file("Code_commune_INSEE;Nom_commune\n01001;A\n"), processor, true);
+        contribution = check.getStepContext().getStepExecution().createStepContribution();
+        tasklet.checkFile(contribution, check);
+        Assertions.assertEquals(ExitStatus.EXECUTING, contribution.getExitStatus());
+    }
+
+    @Test
+    public void testRepriseSansSuppression() throws Exception {
+        CommuneImportDeltaTasklet tasklet = new CommuneImportDeltaTasklet(dataSource, file("01001;A\n"), processor, true);
+        JobExecution jobExecution = MetaDataInstanceFactory.createJobExecution();
+        ChunkContext check = chunkContext(jobExecution);
+        tasklet.checkFile(check.getStepContext().getStepExecution().createStepContribution(), check);
+        importCommunes(MetaDataInstanceFactory.createStepExecution(), commune("01001", "A", 46.0));
+        writer.write(List.of(commune("01002", "B", 46.0)));
+
+        // Reprise : exécution du job différente de celle qui a vérifié le fichier, contexte du job conservé
+        JobExecution restart = MetaDataInstanceFactory.createJobExecution(2L);
+        restart.setExecutionContext(jobExecution.getExecutionContext());
+        ChunkContext complete = chunkContext(restart);
+        tasklet.complete(complete.getStepContext().getStepExecution().createStepContribution(), complete);
+        Assertions.assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM commune", Integer.class));
+        Assertions.assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM import_file", Integer.class));
+    }
+}
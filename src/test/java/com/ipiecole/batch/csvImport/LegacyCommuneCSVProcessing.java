@@ -0,0 +1,60 @@
+package com.ipiecole.batch.csvImport;
+
+import com.ipiecole.batch.dto.CommuneCSV;
+import com.ipiecole.batch.exception.CommuneCSVException;
+import com.ipiecole.batch.model.Commune;
+import org.apache.commons.text.WordUtils;
+
+// Traitement d'une ligne tel qu'il était fait par CommuneCSVItemProcessor avant CommuneCSVRules
+// (expressions régulières et remplacements successifs), conservé comme référence pour les tests et benchmarks
+public final class LegacyCommuneCSVProcessing {
+
+    private LegacyCommuneCSVProcessing() {
+    }
+
+    public static Commune process(CommuneCSV item) throws Exception {
+        Commune commune = new Commune();
+        validateCommuneCSV(item);
+        commune.setCodeInsee(item.getCodeInsee());
+        commune.setCodePostal(item.getCodePostal());
+        commune.setNom(normalizeNom(item.getNom()));
+        String[] coordonnees = item.getCoordonneesGps().split(",");
+        if(coordonnees.length == 2){
+            commune.setLatitude(Double.valueOf(coordonnees[0]));
+            commune.setLongitude(Double.valueOf(coordonnees[1]));
+        }
+        return commune;
+    }
+
+    public static String normalizeNom(String nom) {
+        String nomCommune = WordUtils.capitalizeFully(nom);
+        nomCommune = nomCommune.replaceAll("^L ", "L'");
+        nomCommune = nomCommune.replaceAll(" L ", " L'");
+        nomCommune = nomCommune.replaceAll("^D ", "D'");
+        nomCommune = nomCommune.replaceAll(" D ", " D'");
+        nomCommune = nomCommune.replaceAll("^St ", "Saint ");
+        nomCommune = nomCommune.replaceAll(" St ", " Saint ");
+        nomCommune = nomCommune.replaceAll("^Ste ", "Sainte ");
+        nomCommune = nomCommune.replaceAll(" Sainte ", " Sainte ");
+        return nomCommune;
+    }
+
+    public static boolean isCoordonneesGps(String coordonneesGps) {
+        return coordonneesGps.matches("^[-+]?([1-8]?\\d(\\.\\d+)?|90(\\.0+)?),\\s*[-+]?(180(\\.0+)?|((1[0-7]\\d)|([1-9]?\\d))(\\.\\d+)?)$");
+    }
+
+    private static void validateCommuneCSV(CommuneCSV item) throws CommuneCSVException {
+        if(item.getCodeInsee() != null && !item.getCodeInsee().matches("^[0-9AB]{5}$")){
+            throw new CommuneCSVException("Le code Insee ne contient pas 5 chiffres");
+        }
+        if(item.getCodePostal() != null && !item.getCodePostal().matches("^[0-9]{5}$")){
+            throw new CommuneCSVException("Le code Postal ne contient pas 5 chiffres");
+        }
+        if(item.getNom() != null && !item.getNom().matches("^[A-Z-' ]+$")){
+            throw new CommuneCSVException("Le nom de la commune n'est pas composé uniquement de lettres, espaces et tirets");
+        }
+        if(item.getCoordonneesGps() != null && !isCoordonneesGps(item.getCoordonneesGps())){
+            throw new CommuneCSVException("Les coordonnées GPS sont incorrectes ! " + item.getCoordonneesGps());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.ipiecole.batch.dbexport;
+
+import com.ipiecole.batch.model.Commune;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class CommuneExportStatisticsTest {
+
+    @TempDir
+    Path directory;
+
+    // Communes triées par code postal (ordre de l'export), communes sans code postal ou sans nom en premier
+    private static List<Commune> communes(int size) {
+        List<Commune> communes = new ArrayList<>();
+        communes.add(new Commune("97501", "Saint-Pierre", null, 46.78, -56.17));
+        communes.add(new Commune("97502", null, null, 46.76, -56.18));
+        for (int i = 0; i < size; i++) {
+            communes.add(new Commune(String.format("%05d", i), "Commune " + (i % (size / 3 + 1)),
+                    String.format("%05d", 1000 + i / 5), 45.0, 5.0));
+        }
+        return communes;
+    }
+
+    @Test
+    public void testExact() throws Exception {
+        List<Commune> communes = communes(1000);
+        CommuneExportStatistics statistics = CommuneExportStatistics.exact();
+        communes.forEach(statistics::add);
+        // Mêmes valeurs que COUNT(DISTINCT ...) : valeurs absentes non comptées
+        Set<String> codesPostaux = new HashSet<>();
+        Set<String> noms = new HashSet<>();
+        for (Commune commune : communes) {
+            if (commune.getCodePostal() != null) {
+                codesPostaux.add(commune.getCodePostal());
+            }
+            if (commune.getNom() != null) {
+                noms.add(commune.getNom());
+            }
+        }
+        Assertions.assertEquals(codesPostaux.size(), statistics.getCodesPostaux());
+        Assertions.assertEquals(noms.size(), statistics.getNoms());
+        Assertions.assertEquals(communes.size(), statistics.getCommunes());
+        StringWriter header = new StringWriter();
+        statistics.writeHeader(header);
+        Assertions.assertEquals("Total codes postaux : 200", header.toString());
+        StringWriter footer = new StringWriter();
+        statistics.writeFooter(footer);
+        Assertions.assertEquals("Total communes : " + noms.size(), footer.toString());
+
+        // Plages additionnées, lignes relues depuis un fichier
+        CommuneExportStatistics merged = CommuneExportStatistics.exact();
+        CommuneLineAggregator aggregator = new CommuneLineAggregator();
+        for (int from = 0; from < communes.size(); from += 251) {
+            List<String> lines = new ArrayList<>();
+            for (Commune commune : communes.subList(from, Math.min(from + 251, communes.size()))) {
+                lines.add(aggregator.aggregate(commune));
+            }
+            Path part = Files.write(directory.resolve("part" + from), lines, StandardCharsets.UTF_8);
+            CommuneExportStatistics partStatistics = merged.newEmpty();
+            partStatistics.addLines(part, StandardCharsets.UTF_8, 0);
+            merged.merge(partStatistics);
+        }
+        Assertions.assertEquals(noms.size(), merged.getNoms());
+        Assertions.assertEquals(communes.size(), merged.getCommunes());
+    }
+
+    @Test
+    public void testHyperLogLog() {
+        for (int size : new int[]{10, 1000, 100000, 1000000}) {
+            CommuneExportStatistics statistics = CommuneExportStatistics.hyperLogLog(14);
+            CommuneExportStatistics half1 = statistics.newEmpty();
+            CommuneExportStatistics half2 = statistics.newEmpty();
+            for (int i = 0; i < size; i++) {
+                // Chaque nom apparaît deux fois
+                Commune commune = new Commune(null, "Commune " + (i / 2), null, 45.0, 5.0);
+                statistics.add(commune);
+                (i < size / 2 ? half1 : half2).add(commune);
+            }
+            double expected = size / 2.0;
+            // Erreur type 0,8 % en précision 14 : marge de 4 erreurs types
+            Assertions.assertEquals(expected, statistics.getNoms(), Math.max(1, expected * 0.033), "size=" + size);
+            half1.merge(half2);
+            Assertions.assertEquals(statistics.getNoms(), half1.getNoms());
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.ipiecole.batch.dbexport;
+
+import com.ipiecole.batch.model.Commune;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.FlatFileFooterCallback;
+import org.springframework.batch.item.file.FlatFileHeaderCallback;
+import org.springframework.batch.item.file.FlatFileItemWriter;
+import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
+import org.springframework.batch.item.file.transform.FormatterLineAggregator;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IllegalFormatConversionException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+public class CommuneFileItemWriterTest {
+
+    private static final FlatFileHeaderCallback HEADER = writer -> writer.write("Total codes postaux : 2");
+    private static final FlatFileFooterCallback FOOTER = writer -> writer.write("Total communes : 3");
+
+    @TempDir
+    Path directory;
+
+    // Ligne de référence : configuration du FlatFileItemWriter de CommunesDBExportBatch
+    private static FormatterLineAggregator<Commune> formatter(Locale locale) {
+        BeanWrapperFieldExtractor<Commune> bwfe = new BeanWrapperFieldExtractor<>();
+        bwfe.setNames(new String[]{"codePostal", "codeInsee", "nom", "latitude", "longitude"});
+        FormatterLineAggregator<Commune> agg = new FormatterLineAggregator<>();
+        agg.setFormat("%5s - %5s - %s : %.5f %.5f");
+        agg.setFieldExtractor(bwfe);
+        agg.setLocale(locale);
+        return agg;
+    }
+
+    @Test
+    public void testLigneCasLimites() {
+        // Arrondis à égalité sur la 6ème décimale, arrondis qui propagent une retenue, signes, zéros, valeurs absentes
+        List<Double> values = new ArrayList<>(Arrays.asList(0.0, -0.0, 0.000004, 0.000005, 0.000006, -0.000004,
+                -0.000005, 1.000005, 0.125, 2.5, 45.123455, 45.123465, 45.1234549999, 5.999995, 9.999999, -9.999995,
+                99999.999995, 0.15, 1.0E-10, 45.7494989044, 5.59432017366, -61.53400, 9999999.5, 12345678.123455,
+                1.0E20, Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, Double.NaN,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY));
+        for (int i = 0; i < 1000; i++) {
+            values.add(i / 100000.0 + 0.000005);
+            values.add(-i / 1000000.0);
+        }
+        // Codes de moins de 5 caractères (complétés par des espaces), absents ou plus longs
+        String[] codes = {"01300", "973", "", null, "2A004", "1234567"};
+        for (Locale locale : new Locale[]{Locale.FRANCE, Locale.US, Locale.GERMANY,
+                Locale.forLanguageTag("ar-SA-u-nu-arab"), Locale.forLanguageTag("hi-IN-u-nu-deva")}) {
+            FormatterLineAggregator<Commune> expected = formatter(locale);
+            CommuneLineAggregator actual = new CommuneLineAggregator(locale);
+            for (int i = 0; i < values.size(); i++) {
+                Commune commune = new Commune(codes[i % codes.length], i % 7 == 0 ? null : "Saint-Étienne " + i,
+                        codes[(i + 1) % codes.length], values.get(i), values.get(values.size() - 1 - i));
+                Assertions.assertEquals(expected.aggregate(commune), actual.aggregate(commune), locale + " " + commune);
+            }
+        }
+        // Coordonnées absentes : même erreur que le FormatterLineAggregator
+        Commune commune = new Commune("01006", "Saint Ambleon", "01300", null, 5.59432017366);
+        Assertions.assertThrows(IllegalFormatConversionException.class, () -> formatter(Locale.FRANCE).aggregate(commune));
+        Assertions.assertThrows(IllegalFormatConversionException.class, () -> new CommuneLineAggregator().aggregate(commune));
+    }
+
+    @Test
+    public void testLigneCoordonneesAleatoires() {
+        Random random = new Random(42);
+        FormatterLineAggregator<Commune> expected = formatter(Locale.FRANCE);
+        CommuneLineAggregator actual = new CommuneLineAggregator(Locale.FRANCE);
+        for (int i = 0; i < 200000; i++) {
+            double latitude = -90 + random.nextDouble() * 180;
+            // Coordonnées du fichier La Poste (11 décimales) et valeurs courtes, plus souvent proches d'une égalité
+            double longitude = i % 2 == 0 ? Math.round(random.nextDouble() * 1e11) / 1e10 - 5
+                    : Math.round(random.nextDouble() * 1e7) / 1e6 - 5;
+            Commune commune = new Commune("01006", "Saint Ambleon", "01300", latitude, longitude);
+            Assertions.assertEquals(expected.aggregate(commune), actual.aggregate(commune));
+        }
+    }
+
+    private CommuneFileItemWriter writer(Path path, int bufferSize) {
+        CommuneFileItemWriter writer = new CommuneFileItemWriter();
+        writer.setPath(path);
+        writer.setLineAggregator(new CommuneLineAggregator(Locale.FRANCE));
+        writer.setBufferSize(bufferSize);
+        writer.setHeaderCallback(HEADER);
+        writer.setFooterCallback(FOOTER);
+        return writer;
+    }
+
+    @Test
+    public void testFichierDeReference() throws Exception {
+        Path path = directory.resolve("export.txt");
+        CommuneFileItemWriter writer = writer(path, 1024);
+        writer.open(new ExecutionContext());
+        writer.write(Arrays.asList(
+                new Commune("01006", "Saint Ambleon", "01300", 45.7494989044, 5.59432017366),
+                new Commune("01454", "Virignin", "01300", 45.7267387762, 5.71282330936)));
+        writer.write(Arrays.asList(new Commune("07024", "Banne", "07460", 44.3607782702, 4.15113804507)));
+        writer.close();
+        Assertions.assertArrayEquals(Files.readAllBytes(Paths.get("src/test/ressources/laposte_out_test.txt")),
+                Files.readAllBytes(path));
+    }
+
+    @Test
+    public void testMemesOctetsQueFlatFileItemWriter() throws Exception {
+        List<Commune> communes = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 5000; i++) {
+            communes.add(new Commune(String.format("%05d", i), i % 3 == 0 ? "Évry-Courcouronnes " + i : "Œuilly " + i,
+                    String.format("%05d", 1000 + i), 41 + random.nextDouble() * 10, -5 + random.nextDouble() * 13));
+        }
+        Path expectedPath = directory.resolve("formatter.txt");
+        FlatFileItemWriter<Commune> expected = new FlatFileItemWriter<>();
+        expected.setResource(new FileSystemResource(expectedPath.toFile()));
+        expected.setLineAggregator(formatter(Locale.FRANCE));
+        expected.setHeaderCallback(HEADER);
+        expected.setFooterCallback(FOOTER);
+        expected.afterPropertiesSet();
+        expected.open(new ExecutionContext());
+
+        // Buffer plus petit qu'un chunk : le buffer est vidé en cours d'écriture
+        Path actualPath = directory.resolve("fixed.txt");
+        CommuneFileItemWriter actual = writer(actualPath, 4096);
+        actual.open(new ExecutionContext());
+        for (int i = 0; i < communes.size(); i += 1000) {
+            expected.write(communes.subList(i, i + 1000));
+            actual.write(communes.subList(i, i + 1000));
+        }
+        expected.close();
+        actual.close();
+        Assertions.assertEquals(5000, actual.getWritten());
+        Assertions.assertArrayEquals(Files.readAllBytes(expectedPath), Files.readAllBytes(actualPath));
+    }
+
+    @Test
+    public void testReprise() throws Exception {
+        List<Commune> communes = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            communes.add(new Commune(String.format("%05d", i), "Commune " + i, "01300", 45.0 + i / 7.0, 5.0 - i / 3.0));
+        }
+        Path expectedPath = directory.resolve("complet.txt");
+        CommuneFileItemWriter expected = writer(expectedPath, 1024);
+        expected.open(new ExecutionContext());
+        expected.write(communes);
+        expected.close();
+
+        // Arrêt brutal après 2 chunks validés et un 3ème écrit mais non validé : la reprise repart du 2ème chunk
+        Path path = directory.resolve("reprise.txt");
+        ExecutionContext executionContext = new ExecutionContext();
+        CommuneFileItemWriter writer = writer(path, 1024);
+        writer.open(executionContext);
+        writer.write(communes.subList(0, 10));
+        writer.update(executionContext);
+        writer.write(communes.subList(10, 20));
+        writer.update(executionContext);
+        writer.write(communes.subList(20, 25));
+
+        CommuneFileItemWriter restarted = writer(path, 1024);
+        restarted.open(executionContext);
+        restarted.write(communes.subList(20, 30));
+        restarted.close();
+        Assertions.assertEquals(30, restarted.getWritten());
+        Assertions.assertArrayEquals(Files.readAllBytes(expectedPath), Files.readAllBytes(path));
+    }
+
+    @Test
+    public void testRepriseAvecStatistiques() throws Exception {
+        List<Commune> communes = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            communes.add(new Commune(String.format("%05d", i), "Commune " + (i % 12), String.format("%05d", 1000 + i / 4),
+                    45.0 + i / 7.0, 5.0 - i / 3.0));
+        }
+        Path expectedPath = directory.resolve("complet.txt");
+        CommuneExportAssemblyTasklet expectedAssembly = assembly(expectedPath);
+        CommuneExportStatistics expectedStatistics = expectedAssembly.statisticsFor(body(expectedPath).toString());
+        CommuneFileItemWriter expected = writer(body(expectedPath), 1024, expectedStatistics);
+        expected.open(new ExecutionContext());
+        expected.write(communes);
+        expected.close();
+        execute(expectedAssembly);
+        Assertions.assertEquals(8, expectedStatistics.getCodesPostaux());
+        Assertions.assertEquals(12, expectedStatistics.getNoms());
+        Assertions.assertFalse(Files.exists(body(expectedPath)));
+
+        // Arrêt brutal après un chunk validé : les statistiques sont recalculées à partir des lignes déjà écrites
+        Path path = directory.resolve("reprise.txt");
+        ExecutionContext executionContext = new ExecutionContext();
+        CommuneFileItemWriter writer = writer(body(path), 1024, CommuneExportStatistics.exact());
+        writer.open(executionContext);
+        writer.write(communes.subList(0, 13));
+        writer.update(executionContext);
+        writer.write(communes.subList(13, 20));
+
+        CommuneExportAssemblyTasklet assembly = assembly(path);
+        CommuneExportStatistics statistics = assembly.statisticsFor(body(path).toString());
+        CommuneFileItemWriter restarted = writer(body(path), 1024, statistics);
+        restarted.open(executionContext);
+        restarted.write(communes.subList(13, 30));
+        restarted.close();
+        execute(assembly);
+        Assertions.assertEquals(30, statistics.getCommunes());
+        Assertions.assertArrayEquals(Files.readAllBytes(expectedPath), Files.readAllBytes(path));
+    }
+
+    // Reprise après un échec de l'assemblage : statistiques recalculées à partir du fichier intermédiaire
+    @Test
+    public void testAssemblageSansStatistiquesEnMemoire() throws Exception {
+        List<Commune> communes = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            communes.add(new Commune(String.format("%05d", i), "Commune " + i, String.format("%05d", 1000 + i / 2),
+                    45.0 + i / 7.0, 5.0 - i / 3.0));
+        }
+        Path expectedPath = directory.resolve("complet.txt");
+        CommuneExportAssemblyTasklet expectedAssembly = assembly(expectedPath);
+        CommuneFileItemWriter expected = writer(body(expectedPath), 1024,
+                expectedAssembly.statisticsFor(body(expectedPath).toString()));
+        expected.open(new ExecutionContext());
+        expected.write(communes);
+        expected.close();
+        execute(expectedAssembly);
+
+        Path path = directory.resolve("reprise.txt");
+        CommuneFileItemWriter writer = writer(body(path), 1024, CommuneExportStatistics.exact());
+        writer.open(new ExecutionContext());
+        writer.write(communes);
+        writer.close();
+        execute(assembly(path));
+        Assertions.assertFalse(Files.exists(body(path)));
+        Assertions.assertArrayEquals(Files.readAllBytes(expectedPath), Files.readAllBytes(path));
+    }
+
+    private static Path body(Path path) {
+        return CommuneExportAssemblyTasklet.bodyFile(path.toString());
+    }
+
+    private static CommuneExportAssemblyTasklet assembly(Path path) {
+        return new CommuneExportAssemblyTasklet(path.toString(), null, CommuneExportStatistics.exact());
+    }
+
+    private static void execute(CommuneExportAssemblyTasklet assembly) throws Exception {
+        StepExecution stepExecution = new StepExecution("exportFileAssembly", new JobExecution(1L));
+        assembly.execute(stepExecution.createStepContribution(), new ChunkContext(new StepContext(stepExecution)));
+    }
+
+    // Lignes seules (fichier intermédiaire), communes comptées pendant l'écriture
+    private CommuneFileItemWriter writer(Path path, int bufferSize, CommuneExportStatistics statistics) {
+        CommuneFileItemWriter writer = writer(path, bufferSize);
+        writer.setStatistics(statistics);
+        writer.setHeaderCallback(null);
+        writer.setFooterCallback(null);
+        return writer;
+    }
+}
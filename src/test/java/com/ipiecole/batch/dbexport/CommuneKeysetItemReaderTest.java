@@ -0,0 +1,81 @@
+package com.ipiecole.batch.dbexport;
+
+import com.ipiecole.batch.model.Commune;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class CommuneKeysetItemReaderTest {
+
+    private JdbcDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setup() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:keysetReader" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE commune (code_insee VARCHAR(5) PRIMARY KEY, nom VARCHAR(255), code_postal VARCHAR(5), "
+                + "latitude DOUBLE, longitude DOUBLE)");
+        // Plusieurs communes par code postal, codes Insee dans le désordre, quelques communes sans code postal
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            String codePostal = i % 37 == 0 ? null : String.format("%05d", 1000 + random.nextInt(20) * 10);
+            jdbcTemplate.update("INSERT INTO commune VALUES (?, ?, ?, ?, ?)", String.format("%05d", (i * 7919) % 100000),
+                    "Commune " + i, codePostal, i % 11 == 0 ? null : 45.0 + i / 1000.0, 5.0);
+        }
+    }
+
+    // Même ordre que le RepositoryItemReader : code postal puis code Insee, communes sans code postal en premier
+    private List<String> expectedKeys() {
+        return jdbcTemplate.queryForList("SELECT code_insee FROM commune ORDER BY code_postal, code_insee", String.class);
+    }
+
+    @Test
+    public void testOrdre() {
+        for (int pageSize : new int[]{1, 3, 6, 1000}) {
+            CommuneKeysetItemReader reader = new CommuneKeysetItemReader(dataSource, pageSize);
+            reader.open(new ExecutionContext());
+            List<String> keys = new ArrayList<>();
+            Commune commune;
+            while ((commune = reader.read()) != null) {
+                keys.add(commune.getCodeInsee());
+            }
+            reader.close();
+            Assertions.assertEquals(expectedKeys(), keys, "pageSize=" + pageSize);
+        }
+    }
+
+    @Test
+    public void testReprise() {
+        List<String> expected = expectedKeys();
+        // Reprise juste après les communes sans code postal, au milieu d'une page et en fin de lecture
+        for (int stopAfter : new int[]{2, 6, 7, 100, 200}) {
+            ExecutionContext executionContext = new ExecutionContext();
+            CommuneKeysetItemReader reader = new CommuneKeysetItemReader(dataSource, 4);
+            reader.open(executionContext);
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < stopAfter; i++) {
+                keys.add(reader.read().getCodeInsee());
+            }
+            reader.update(executionContext);
+            reader.close();
+
+            CommuneKeysetItemReader restarted = new CommuneKeysetItemReader(dataSource, 4);
+            restarted.open(executionContext);
+            Commune commune;
+            while ((commune = restarted.read()) != null) {
+                keys.add(commune.getCodeInsee());
+            }
+            restarted.close();
+            Assertions.assertEquals(expected, keys, "stopAfter=" + stopAfter);
+        }
+    }
+}
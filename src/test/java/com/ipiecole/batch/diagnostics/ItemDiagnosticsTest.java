@@ -0,0 +1,56 @@
+package com.ipiecole.batch.diagnostics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ItemDiagnosticsTest {
+
+    private static int sampled(ItemDiagnostics.Probe probe, int chunks, int chunkSize) {
+        int count = 0;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            probe.startChunk();
+            for (int i = 0; i < chunkSize; i++) {
+                if (probe.sample()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testEchantillonnage() {
+        ItemDiagnostics diagnostics = new ItemDiagnostics("importFile=every:100, importFilePartition=first:2,exportFile=all", 1e9);
+        Assertions.assertEquals(10, sampled(diagnostics.probe("importFile"), 100, 10));
+        // Partitions : réglage de la step partitionnée
+        Assertions.assertEquals(200, sampled(diagnostics.probe("importFilePartition:partition3"), 100, 10));
+        Assertions.assertEquals(1000, sampled(diagnostics.probe("exportFile"), 100, 10));
+        // Step sans réglage, sonde d'un listener utilisé sans diagnostics
+        Assertions.assertEquals(0, sampled(diagnostics.probe("getMissingCoordinates"), 100, 10));
+        Assertions.assertEquals(0, sampled(ItemDiagnostics.Probe.OFF, 100, 10));
+        Assertions.assertEquals("{exportFile=all, getMissingCoordinates=off, importFile=every:100, importFilePartition=first:2}",
+                diagnostics.getConfiguration());
+    }
+
+    @Test
+    public void testReglagePendantLExecution() {
+        ItemDiagnostics diagnostics = new ItemDiagnostics("", 1e9);
+        ItemDiagnostics.Probe probe = diagnostics.probe("importFile");
+        Assertions.assertEquals(0, sampled(probe, 10, 10));
+        diagnostics.configure("importFile", "first:1");
+        Assertions.assertEquals(10, sampled(probe, 10, 10));
+        diagnostics.configure("importFile", "off");
+        Assertions.assertEquals(0, sampled(probe, 10, 10));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> diagnostics.configure("importFile", "every:0"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ItemDiagnostics("importFile", 1));
+    }
+
+    @Test
+    public void testLimiteDeDebit() {
+        ItemDiagnostics diagnostics = new ItemDiagnostics("importFile=all", 5);
+        // Seau plein au départ (5 messages), puis les messages au-delà du débit sont ignorés et comptés
+        int sampled = sampled(diagnostics.probe("importFile"), 1, 1000);
+        Assertions.assertTrue(sampled >= 5 && sampled < 10, "messages écrits : " + sampled);
+        Assertions.assertEquals(1000 - sampled, diagnostics.getDropped());
+    }
+}
@@ -0,0 +1,192 @@
+package com.ipiecole.batch.geocoding;
+
+import com.ipiecole.batch.exception.NetworkException;
+import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.utils.OpenStreetMapUtils;
+import com.ipiecole.batch.utils.TokenBucketRateLimiter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.support.ListItemReader;
+import org.springframework.retry.backoff.FixedBackOffPolicy;
+import org.springframework.retry.policy.SimpleRetryPolicy;
+import org.springframework.retry.support.RetryTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public class ConcurrentGeocodingItemReaderTest {
+
+    private NominatimStubServer server;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        server = new NominatimStubServer(30, 0);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testGeocodageConcurrent() throws Exception {
+        // Une requête sur 7 est coupée : elle est réessayée par la RetryTemplate
+        server.setErrorEvery(7);
+        List<Commune> communes = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            communes.add(new Commune(String.format("%05d", i), (i % 10 == 0 ? "INCONNUE " : "COMMUNE ") + i, "01000", null, null));
+        }
+        double rateLimit = 100;
+        ConcurrentGeocodingItemReader reader = reader(communes, rateLimit, 4);
+
+        long start = System.nanoTime();
+        Map<String, Commune> resolved = readAll(reader);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        Assertions.assertEquals(36, resolved.size());
+        for (Commune commune : communes) {
+            Commune geocoded = resolved.get(commune.getCodeInsee());
+            if (commune.getNom().startsWith("INCONNUE")) {
+                Assertions.assertNull(geocoded);
+            } else {
+                Assertions.assertEquals(NominatimStubServer.latitude(commune.getNom() + " 01000"), geocoded.getLatitude());
+                Assertions.assertEquals(NominatimStubServer.longitude(commune.getNom() + " 01000"), geocoded.getLongitude());
+            }
+        }
+        ExecutionContext executionContext = new ExecutionContext();
+        reader.update(executionContext);
+        Assertions.assertEquals(40, executionContext.getInt("geocoding.submitted"));
+        Assertions.assertEquals(4, executionContext.getInt("geocoding.notFound"));
+        Assertions.assertEquals(0, executionContext.getInt("geocoding.errors"));
+        // Au plus 4 recherches en cours, et pas plus d'une requête toutes les 10 ms
+        Assertions.assertTrue(server.getMaxInFlight() <= 4, "maxInFlight=" + server.getMaxInFlight());
+        Assertions.assertTrue(server.getRequests() > 40);
+        Assertions.assertTrue(elapsedMillis >= (server.getRequests() - 1) * 1000 / rateLimit * 0.9,
+                server.getRequests() + " requêtes en " + elapsedMillis + " ms");
+        reader.close();
+    }
+
+    @Test
+    public void testRechercheEnErreur() throws Exception {
+        // Toutes les requêtes sont coupées : la commune reste sans coordonnées, la lecture continue
+        server.setErrorEvery(1);
+        ConcurrentGeocodingItemReader reader = reader(
+                Collections.singletonList(new Commune("01001", "COMMUNE", "01000", null, null)), 100, 4);
+        Assertions.assertTrue(readAll(reader).isEmpty());
+        ExecutionContext executionContext = new ExecutionContext();
+        reader.update(executionContext);
+        Assertions.assertEquals(1, executionContext.getInt("geocoding.errors"));
+        // 3 tentatives (le client HTTP renvoie lui-même une fois un GET dont la connexion est coupée)
+        Assertions.assertTrue(server.getRequests() >= 3);
+        reader.close();
+    }
+
+    private ConcurrentGeocodingItemReader reader(List<Commune> communes, double rateLimit, int maxInFlight) {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(rateLimit, 1);
+        GeocodingCache cache = new GeocodingCache(GeocodingCache.limit(rateLimiter, new OpenStreetMapUtils(server.getSearchUrl())::getCoordinates),
+                null, 100, Duration.ofDays(1), Duration.ofDays(1), Clock.systemUTC());
+        ConcurrentGeocodingItemReader reader = new ConcurrentGeocodingItemReader(new ListItemReader<>(communes), cache,
+                retryTemplate(), maxInFlight);
+        reader.open(new ExecutionContext());
+        return reader;
+    }
+
+    @Test
+    public void testErreurInattendueArreteLeGeocodage() throws Exception {
+        List<Commune> communes = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            communes.add(new Commune(String.format("%05d", i), "COMMUNE " + i, "01000", null, null));
+        }
+        AtomicInteger calls = new AtomicInteger();
+        ConcurrentGeocodingItemReader reader = new ConcurrentGeocodingItemReader(new ListItemReader<>(communes), commune -> {
+            if (calls.incrementAndGet() == 3) {
+                throw new IllegalStateException("erreur inattendue");
+            }
+            LockSupport.parkNanos(1_000_000);
+            return null;
+        }, retryTemplate(), 4);
+        reader.open(new ExecutionContext());
+        IllegalStateException failure = Assertions.assertThrows(IllegalStateException.class, () -> readAll(reader));
+        Assertions.assertEquals("erreur inattendue", failure.getMessage());
+        // Plus aucune recherche lancée après l'erreur : le délégué n'est pas lu jusqu'au bout
+        Thread.sleep(50);
+        int callsAfterFailure = calls.get();
+        Assertions.assertTrue(callsAfterFailure < 100, callsAfterFailure + " recherches");
+        Thread.sleep(50);
+        Assertions.assertEquals(callsAfterFailure, calls.get());
+        reader.close();
+    }
+
+    // Fermeture pendant une lecture du délégué : il n'est fermé qu'une fois cette lecture terminée
+    @Test
+    public void testFermetureApresLaDerniereLecture() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        AtomicBoolean readInProgress = new AtomicBoolean();
+        AtomicBoolean closedDuringRead = new AtomicBoolean();
+        class SlowReader implements ItemStreamReader<Commune> {
+            @Override
+            public Commune read() {
+                readInProgress.set(true);
+                reading.countDown();
+                // Lecture non interruptible, comme une requête JDBC
+                long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+                while (System.nanoTime() < end) {
+                    LockSupport.parkNanos(end - System.nanoTime());
+                }
+                readInProgress.set(false);
+                return new Commune("01001", "COMMUNE", "01000", null, null);
+            }
+
+            @Override
+            public void open(ExecutionContext executionContext) {
+            }
+
+            @Override
+            public void update(ExecutionContext executionContext) {
+            }
+
+            @Override
+            public void close() {
+                closedDuringRead.set(readInProgress.get());
+            }
+        }
+        ConcurrentGeocodingItemReader reader = new ConcurrentGeocodingItemReader(new SlowReader(), commune -> null,
+                retryTemplate(), 4);
+        reader.open(new ExecutionContext());
+        Assertions.assertTrue(reading.await(5, TimeUnit.SECONDS));
+        reader.close();
+        Assertions.assertFalse(closedDuringRead.get());
+    }
+
+    static RetryTemplate retryTemplate() {
+        FixedBackOffPolicy backOffPolicy = new FixedBackOffPolicy();
+        backOffPolicy.setBackOffPeriod(10);
+        RetryTemplate retryTemplate = new RetryTemplate();
+        retryTemplate.setRetryPolicy(new SimpleRetryPolicy(3, Collections.singletonMap(NetworkException.class, true)));
+        retryTemplate.setBackOffPolicy(backOffPolicy);
+        return retryTemplate;
+    }
+
+    private static Map<String, Commune> readAll(ConcurrentGeocodingItemReader reader) throws Exception {
+        Map<String, Commune> communes = new HashMap<>();
+        Commune commune;
+        while ((commune = reader.read()) != null) {
+            communes.put(commune.getCodeInsee(), commune);
+        }
+        return communes;
+    }
+}
@@ -0,0 +1,189 @@
+package com.ipiecole.batch.geocoding;
+
+import com.ipiecole.batch.exception.NetworkException;
+import com.ipiecole.batch.schema.SchemaMigrator;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class GeocodingCacheTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final MutableClock clock = new MutableClock();
+    private JdbcDataSource dataSource;
+
+    @BeforeEach
+    public void setup() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:geocodingCache" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        new SchemaMigrator(dataSource).migrate();
+    }
+
+    // Coordonnées trouvées pour toute adresse sauf "INCONNUE ..." (map vide) et "ERREUR ..." (réponse HTTP en erreur)
+    private Map<String, Double> load(String address) {
+        calls.incrementAndGet();
+        Map<String, Double> coordinates = new HashMap<>();
+        if (address.startsWith("ERREUR")) {
+            return null;
+        }
+        if (!address.startsWith("INCONNUE")) {
+            coordinates.put("lat", 45.0);
+            coordinates.put("lon", 5.0);
+        }
+        return coordinates;
+    }
+
+    private GeocodingCache cache(int maxSize) {
+        return new GeocodingCache(this::load, dataSource, maxSize, Duration.ofDays(30), Duration.ofDays(1), clock);
+    }
+
+    @Test
+    public void testRequeteNormalisee() throws Exception {
+        GeocodingCache cache = cache(10);
+        Assertions.assertEquals(45.0, cache.getCoordinates("Saint-Étienne", "42000").get("lat"));
+        Assertions.assertEquals(5.0, cache.getCoordinates("SAINT ETIENNE ", "42000").get("lon"));
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(1, cache.getMisses());
+        Assertions.assertEquals(1, cache.getMemoryHits());
+    }
+
+    // Requêtes de plus de 255 caractères de même début : une entrée chacune, en mémoire comme en base
+    @Test
+    public void testRequetesLonguesDistinctes() throws Exception {
+        String debut = "A".repeat(300);
+        GeocodingCache cache = cache(10);
+        cache.getCoordinates(debut + " NORD", "01000");
+        cache.getCoordinates(debut + " SUD", "01000");
+        Assertions.assertEquals(2, calls.get());
+        Assertions.assertNotEquals(GeocodingCache.key(debut + " NORD", "01000"), GeocodingCache.key(debut + " SUD", "01000"));
+        Assertions.assertTrue(GeocodingCache.key(debut + " NORD", "01000").length() <= 255);
+
+        cache(10).getCoordinates(debut + " SUD", "01000");
+        Assertions.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testCacheNegatif() throws Exception {
+        GeocodingCache cache = cache(10);
+        Assertions.assertTrue(cache.getCoordinates("INCONNUE", "01000").isEmpty());
+        Assertions.assertTrue(cache.getCoordinates("INCONNUE", "01000").isEmpty());
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(1, cache.getNegativeHits());
+        // La durée de vie des communes introuvables est plus courte que celle des coordonnées trouvées
+        cache.getCoordinates("LYON", "69000");
+        clock.advance(Duration.ofDays(2));
+        cache.getCoordinates("INCONNUE", "01000");
+        cache.getCoordinates("LYON", "69000");
+        Assertions.assertEquals(3, calls.get());
+        // Entrée périmée en mémoire puis en base
+        Assertions.assertEquals(2, cache.getExpirations());
+    }
+
+    @Test
+    public void testErreursNonMisesEnCache() throws Exception {
+        GeocodingCache cache = cache(10);
+        Assertions.assertNull(cache.getCoordinates("ERREUR", "01000"));
+        Assertions.assertNull(cache.getCoordinates("ERREUR", "01000"));
+        Assertions.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testEvictionEtCacheEnBase() throws Exception {
+        GeocodingCache cache = cache(2);
+        cache.getCoordinates("A", "01000");
+        cache.getCoordinates("B", "01000");
+        cache.getCoordinates("C", "01000");
+        Assertions.assertEquals(1, cache.getEvictions());
+        // "A" a été retirée de la mémoire mais est relue en base
+        cache.getCoordinates("A", "01000");
+        Assertions.assertEquals(3, calls.get());
+        Assertions.assertEquals(1, cache.getDiskHits());
+        // Nouvelle exécution : tout est relu en base, aucun appel
+        GeocodingCache restarted = cache(10);
+        for (String nom : new String[]{"A", "B", "C"}) {
+            Assertions.assertEquals(45.0, restarted.getCoordinates(nom, "01000").get("lat"));
+        }
+        Assertions.assertEquals(3, calls.get());
+        Assertions.assertEquals(3, restarted.getDiskHits());
+        Assertions.assertEquals(0, restarted.getMisses());
+    }
+
+    @Test
+    public void testRecherchesIdentiquesRegroupees() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GeocodingCache cache = new GeocodingCache(address -> {
+            started.countDown();
+            await(release);
+            return load(address);
+        }, null, 10, Duration.ofDays(30), Duration.ofDays(1), clock);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Map<String, Double>>> results = new ArrayList<>();
+            results.add(executor.submit(() -> cache.getCoordinates("LYON", "69000")));
+            started.await(5, TimeUnit.SECONDS);
+            for (int i = 0; i < 7; i++) {
+                results.add(executor.submit(() -> cache.getCoordinates("LYON", "69000")));
+            }
+            while (cache.getCoalesced() < 7) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            for (Future<Map<String, Double>> result : results) {
+                Assertions.assertEquals(45.0, result.get(5, TimeUnit.SECONDS).get("lat"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(7, cache.getCoalesced());
+    }
+
+    private static void await(CountDownLatch latch) throws NetworkException {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new NetworkException(e.getMessage());
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant = Instant.parse("2021-03-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
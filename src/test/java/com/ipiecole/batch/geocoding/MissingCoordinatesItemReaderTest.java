@@ -0,0 +1,108 @@
+package com.ipiecole.batch.geocoding;
+
+import com.ipiecole.batch.csvImport.CommuneJdbcUpsertItemWriter;
+import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.model.CoordinatesPrecision;
+import com.ipiecole.batch.model.CoordinatesSource;
+import com.ipiecole.batch.schema.SchemaMigrator;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class MissingCoordinatesItemReaderTest {
+
+    private JdbcDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private CommuneJdbcUpsertItemWriter writer;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:missingCoordinatesReader" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        new SchemaMigrator(dataSource).migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        // Indicateur renseigné par l'écriture de l'import : une commune sur trois sans coordonnées (ou sans longitude)
+        writer = new CommuneJdbcUpsertItemWriter(dataSource, false);
+        List<Commune> communes = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            communes.add(new Commune(String.format("%05d", (i * 7919) % 100000), "Commune " + i, "01300",
+                    i % 3 == 0 ? null : (Double) 45.0, i % 6 == 3 ? (Double) 5.0 : i % 3 == 0 ? null : (Double) 5.0));
+        }
+        writer.write(communes);
+    }
+
+    private List<String> pendingKeys() {
+        return jdbcTemplate.queryForList("SELECT code_insee FROM commune WHERE latitude IS NULL OR longitude IS NULL "
+                + "ORDER BY code_insee", String.class);
+    }
+
+    @Test
+    public void testIndicateurEtIndex() {
+        Assertions.assertEquals(100, pendingKeys().size());
+        Assertions.assertEquals(pendingKeys(), jdbcTemplate.queryForList(
+                "SELECT code_insee FROM commune WHERE geocoding_pending = TRUE ORDER BY code_insee", String.class));
+        // Pages lues par une recherche dans l'index, sans parcourir la table
+        String plan = jdbcTemplate.queryForObject("EXPLAIN SELECT code_insee FROM commune WHERE geocoding_pending = TRUE "
+                + "AND code_insee > '01000' ORDER BY code_insee LIMIT 10", String.class);
+        Assertions.assertTrue(plan.toUpperCase().contains("IDX_COMMUNE_GEOCODING_PENDING"), plan);
+    }
+
+    @Test
+    public void testCommunesGeocodeesPendantLaLecture() throws Exception {
+        List<String> expected = pendingKeys();
+        for (int pageSize : new int[]{1, 7, 100, 1000}) {
+            setup();
+            // Une commune lue sur deux est géocodée (et sort de la file) avant la lecture de la page suivante
+            MissingCoordinatesItemReader reader = new MissingCoordinatesItemReader(dataSource, pageSize);
+            reader.open(new ExecutionContext());
+            List<String> keys = new ArrayList<>();
+            Commune commune;
+            while ((commune = reader.read()) != null) {
+                Assertions.assertTrue(commune.isGeocodingPending());
+                if (keys.size() % 2 == 0) {
+                    commune.setLatitude(45.5);
+                    commune.setLongitude(5.5);
+                    commune.setCoordinatesSource(CoordinatesSource.OFFLINE);
+                    commune.setCoordinatesPrecision(CoordinatesPrecision.CODE_POSTAL);
+                    writer.write(Collections.singletonList(commune));
+                }
+                keys.add(commune.getCodeInsee());
+            }
+            reader.close();
+            Assertions.assertEquals(expected, keys, "pageSize=" + pageSize);
+            Assertions.assertEquals(50, pendingKeys().size());
+        }
+    }
+
+    @Test
+    public void testReprise() {
+        List<String> expected = pendingKeys();
+        for (int stopAfter : new int[]{0, 1, 6, 7, 50, 100}) {
+            ExecutionContext executionContext = new ExecutionContext();
+            MissingCoordinatesItemReader reader = new MissingCoordinatesItemReader(dataSource, 7);
+            reader.open(executionContext);
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < stopAfter; i++) {
+                keys.add(reader.read().getCodeInsee());
+            }
+            reader.update(executionContext);
+            reader.close();
+
+            MissingCoordinatesItemReader restarted = new MissingCoordinatesItemReader(dataSource, 7);
+            restarted.open(executionContext);
+            Commune commune;
+            while ((commune = restarted.read()) != null) {
+                keys.add(commune.getCodeInsee());
+            }
+            restarted.close();
+            Assertions.assertEquals(expected, keys, "stopAfter=" + stopAfter);
+        }
+    }
+}
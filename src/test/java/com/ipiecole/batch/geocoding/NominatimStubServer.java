@@ -0,0 +1,166 @@
+package com.ipiecole.batch.geocoding;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+// Serveur HTTP local imitant la recherche de Nominatim, pour les tests et benchmarks du géocodage
+//  - latence de chaque réponse configurable
+//  - injection d'erreurs : une requête sur errorEvery est coupée sans réponse (erreur réseau côté client)
+//  - les recherches contenant "INCONNUE" ne renvoient aucun résultat, celles contenant "ERREUR" une erreur HTTP 500
+//  - les recherches contenant "HOMONYME" renvoient deux résultats (le second à l'opposé du premier)
+//  - réponse compressée si le client accepte gzip
+// Les coordonnées renvoyées sont calculées à partir de la recherche (cf. latitude / longitude)
+public class NominatimStubServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private volatile long latencyMillis;
+    private volatile int errorEvery;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    // Adresses (port compris) des clients : une par connexion ouverte
+    private final Set<InetSocketAddress> clients = ConcurrentHashMap.newKeySet();
+    private volatile String lastRawQuery;
+    private volatile boolean lastResponseCompressed;
+
+    public NominatimStubServer(long latencyMillis, int errorEvery) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.errorEvery = errorEvery;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/search", this::search);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getSearchUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/search";
+    }
+
+    private void search(HttpExchange exchange) throws IOException {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            int number = requests.incrementAndGet();
+            clients.add(exchange.getRemoteAddress());
+            Thread.sleep(latencyMillis);
+            if (errorEvery > 0 && number % errorEvery == 0) {
+                exchange.close();
+                return;
+            }
+            lastRawQuery = exchange.getRequestURI().getRawQuery();
+            String query = query(exchange);
+            String upperCaseQuery = query.toUpperCase(Locale.ROOT);
+            int status = upperCaseQuery.contains("ERREUR") ? 500 : 200;
+            String body;
+            if (status != 200) {
+                body = "{\"error\":\"erreur simulée\"}";
+            } else if (upperCaseQuery.contains("INCONNUE")) {
+                body = "[]";
+            } else if (upperCaseQuery.contains("INVALIDE")) {
+                body = "[{\"place_id\":1,\"lat\":\"n/a\",\"lon\":\"5.0\"}]";
+            } else {
+                body = "[" + result(query, latitude(query), longitude(query));
+                if (upperCaseQuery.contains("HOMONYME")) {
+                    body += "," + result(query, -latitude(query), -longitude(query));
+                }
+                body += "]";
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            lastResponseCompressed = acceptEncoding != null && acceptEncoding.contains("gzip");
+            if (lastResponseCompressed) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                    gzip.write(bytes);
+                }
+                bytes = compressed.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    // Résultat au format de Nominatim, avec le détail de l'adresse (comme addressdetails=1)
+    private static String result(String query, double latitude, double longitude) {
+        return "{\"place_id\":1,\"address\":{\"lat\":\"0\",\"country\":\"France\"},\"boundingbox\":[\"0\",\"1\",\"0\",\"1\"],"
+                + "\"lat\":\"" + latitude + "\",\"lon\":\"" + longitude + "\",\"display_name\":\"" + query.replace("\"", "") + "\"}";
+    }
+
+    private static String query(HttpExchange exchange) {
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        for (String parameter : rawQuery.split("&")) {
+            if (parameter.startsWith("q=")) {
+                return URLDecoder.decode(parameter.substring(2), StandardCharsets.UTF_8);
+            }
+        }
+        return "";
+    }
+
+    // Coordonnées déterministes d'une recherche ("+" et espaces sont équivalents)
+    public static double latitude(String query) {
+        return 41 + Math.floorMod(query.replace('+', ' ').hashCode(), 10000) / 1000.0;
+    }
+
+    public static double longitude(String query) {
+        return -4 + Math.floorMod(query.replace('+', ' ').hashCode() / 10000, 10000) / 1000.0;
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public void setErrorEvery(int errorEvery) {
+        this.errorEvery = errorEvery;
+    }
+
+    public String getLastRawQuery() {
+        return lastRawQuery;
+    }
+
+    public boolean isLastResponseCompressed() {
+        return lastResponseCompressed;
+    }
+
+    public int getConnections() {
+        return clients.size();
+    }
+
+    public int getRequests() {
+        return requests.get();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
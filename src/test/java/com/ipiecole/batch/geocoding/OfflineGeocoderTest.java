@@ -0,0 +1,92 @@
+package com.ipiecole.batch.geocoding;
+
+import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.model.CoordinatesPrecision;
+import com.ipiecole.batch.model.CoordinatesSource;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class OfflineGeocoderTest {
+
+    private final List<Commune> networkCalls = new ArrayList<>();
+    private JdbcDataSource dataSource;
+
+    @BeforeEach
+    public void setup() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:offlineGeocoder" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE commune (code_insee VARCHAR(5) PRIMARY KEY, nom VARCHAR(255), code_postal VARCHAR(5), "
+                + "latitude DOUBLE, longitude DOUBLE, coordinates_source VARCHAR(15), coordinates_precision VARCHAR(15))");
+        String insert = "INSERT INTO commune VALUES (?, ?, ?, ?, ?, ?, ?)";
+        jdbcTemplate.update(insert, "38185", "Grenoble", "38000", 45.18, 5.72, null, null);
+        jdbcTemplate.update(insert, "38421", "Saint-Martin-d'Hères", "38400", 45.17, 5.76, null, null);
+        jdbcTemplate.update(insert, "38151", "Échirolles", "38130", 45.14, 5.71, "OPENSTREETMAP", "COMMUNE");
+        // Coordonnées approchées : ignorées par l'index
+        jdbcTemplate.update(insert, "38998", "Approchée", "38000", 0.0, 0.0, "OFFLINE", "CODE_POSTAL");
+        // Sans coordonnées
+        jdbcTemplate.update(insert, "38999", "Sans Coordonnées", "38000", null, null, null, null);
+        jdbcTemplate.update(insert, "73065", "Chambéry", "73000", 45.57, 5.92, null, null);
+    }
+
+    // Géocodage réseau simulé : seule "Vizille" est trouvée
+    private GeocodingResult network(Commune commune) {
+        networkCalls.add(commune);
+        return "Vizille".equals(commune.getNom())
+                ? new GeocodingResult(45.08, 5.77, CoordinatesSource.OPENSTREETMAP, CoordinatesPrecision.COMMUNE) : null;
+    }
+
+    @Test
+    public void testOrdreDeResolution() throws Exception {
+        OfflineGeocoder geocoder = new OfflineGeocoder(dataSource, this::network, 0.8);
+
+        // Nom proche dans le même département
+        GeocodingResult result = geocoder.geocode(new Commune("38422", "SAINT MARTIN D HERES", "38401", null, null));
+        assertResult(45.17, 5.76, CoordinatesSource.OFFLINE, CoordinatesPrecision.NOM_PROCHE, result);
+        // Nom proche dans un autre département : centre du code postal
+        result = geocoder.geocode(new Commune("38500", "Chambery", "38000", null, null));
+        assertResult(45.18, 5.72, CoordinatesSource.OFFLINE, CoordinatesPrecision.CODE_POSTAL, result);
+        Assertions.assertTrue(networkCalls.isEmpty());
+
+        // Code postal inconnu : géocodage réseau
+        result = geocoder.geocode(new Commune("38562", "Vizille", "38220", null, null));
+        assertResult(45.08, 5.77, CoordinatesSource.OPENSTREETMAP, CoordinatesPrecision.COMMUNE, result);
+        // Introuvable sur le réseau : centre du département
+        result = geocoder.geocode(new Commune("38001", "Les Abrets", "38490", null, null));
+        assertResult((45.18 + 45.17 + 45.14) / 3, (5.72 + 5.76 + 5.71) / 3, CoordinatesSource.OFFLINE, CoordinatesPrecision.DEPARTEMENT, result);
+        Assertions.assertEquals(2, networkCalls.size());
+        // Département sans aucune commune géocodée
+        Assertions.assertNull(geocoder.geocode(new Commune("01001", "L'Abergement-Clémenciat", "01400", null, null)));
+
+        Assertions.assertEquals(1, geocoder.getByName());
+        Assertions.assertEquals(1, geocoder.getByPostalCode());
+        Assertions.assertEquals(1, geocoder.getByDepartment());
+        Assertions.assertEquals(3, geocoder.getFallbackCalls());
+        Assertions.assertEquals(1, geocoder.getUnresolved());
+    }
+
+    @Test
+    public void testSimilariteDesNoms() throws Exception {
+        OfflineGeocoder geocoder = new OfflineGeocoder(dataSource, null, 0.5);
+        GeocodingResult result = geocoder.geocode(new Commune("38186", "Grenobles", "38999", null, null));
+        assertResult(45.18, 5.72, CoordinatesSource.OFFLINE, CoordinatesPrecision.NOM_PROCHE, result);
+        // Trop éloigné : centre du département
+        result = geocoder.geocode(new Commune("38187", "Voiron", "38999", null, null));
+        Assertions.assertEquals(CoordinatesPrecision.DEPARTEMENT, result.getPrecision());
+    }
+
+    private static void assertResult(double latitude, double longitude, CoordinatesSource source,
+                                     CoordinatesPrecision precision, GeocodingResult result) {
+        Assertions.assertNotNull(result);
+        Assertions.assertEquals(latitude, result.getLatitude(), 1e-9);
+        Assertions.assertEquals(longitude, result.getLongitude(), 1e-9);
+        Assertions.assertEquals(source, result.getSource());
+        Assertions.assertEquals(precision, result.getPrecision());
+    }
+}
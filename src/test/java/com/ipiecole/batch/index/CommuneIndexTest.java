@@ -0,0 +1,130 @@
+package com.ipiecole.batch.index;
+
+import com.ipiecole.batch.model.Commune;
+import com.ipiecole.batch.schema.SchemaMigrator;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class CommuneIndexTest {
+
+    private static final String INSERT_SQL = "INSERT INTO commune (code_insee, nom, code_postal, latitude, longitude, "
+            + "geocoding_pending) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private JdbcDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setup() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:communeIndex" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        new SchemaMigrator(dataSource).migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        insert("01454", "VIRIGNIN", "01300", 45.7267387762, 5.71282330936);
+        insert("01006", "AMBLEON", "01300", 45.7494989044, 5.59432017366);
+        insert("07024", "BANNE", "07460", 44.3607782702, 4.15113804507);
+        insert("2A004", "AJACCIO", "20000", 41.9347926638, 8.70132275974);
+        insert("2B033", "BASTIA", "20200", null, null);
+        insert("27001", "BANNE", "27000", 49.0, 1.1);
+    }
+
+    private void insert(String codeInsee, String nom, String codePostal, Double latitude, Double longitude) {
+        jdbcTemplate.update(INSERT_SQL, codeInsee, nom, codePostal, latitude, longitude, latitude == null);
+    }
+
+    @Test
+    public void testRecherches() {
+        CommuneIndex index = CommuneIndex.load(dataSource);
+        Assertions.assertEquals(6, index.size());
+
+        Commune commune = index.get("2A004");
+        Assertions.assertEquals("2A004", commune.getCodeInsee());
+        Assertions.assertEquals("AJACCIO", commune.getNom());
+        Assertions.assertEquals("20000", commune.getCodePostal());
+        Assertions.assertEquals(41.9347926638, commune.getLatitude());
+        Assertions.assertNull(index.get("2B033").getLatitude());
+        Assertions.assertNull(index.get("99999"));
+        Assertions.assertNull(index.get("inconnu"));
+
+        // Ordre de l'export : code postal puis code Insee
+        Assertions.assertEquals(List.of("01006", "01454"), codes(index.findByCodePostal("01300", "01300")));
+        Assertions.assertEquals(List.of("01006", "01454", "07024", "2A004", "2B033"), codes(index.findByCodePostal("01000", "20999")));
+        Assertions.assertEquals(List.of(), codes(index.findByCodePostal("02000", "06999")));
+        Assertions.assertEquals(3, index.countByCodePostal("20000", "29999"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> index.findByCodePostal("2A000", "2A999"));
+
+        // Mêmes comptages que CommuneRepository : noms stockés une seule fois
+        Assertions.assertEquals(jdbcTemplate.queryForObject("SELECT COUNT(DISTINCT code_postal) FROM commune", Integer.class),
+                index.countDistinctCodePostal());
+        Assertions.assertEquals(5, index.countDistinctCodePostal());
+        Assertions.assertEquals(5, index.countDistinctNom());
+        Assertions.assertEquals(1, index.countWithoutCoordinates());
+    }
+
+    @Test
+    public void testIndexRemplaceALaFinDeLImport() throws Exception {
+        CommuneIndexHolder holder = new CommuneIndexHolder(dataSource, true);
+        JobExecution jobExecution = new JobExecution(1L);
+        jobExecution.setStatus(BatchStatus.FAILED);
+        holder.afterJob(jobExecution);
+        Assertions.assertNull(holder.get());
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        CommuneIndexHttpEndpoint endpoint = new CommuneIndexHttpEndpoint(holder, port);
+        endpoint.start();
+        try {
+            Assertions.assertEquals(503, get(port, "/communes/01006").getResponseCode());
+
+            jobExecution.setStatus(BatchStatus.COMPLETED);
+            holder.afterJob(jobExecution);
+            CommuneIndex index = holder.get();
+            Assertions.assertEquals(6, index.size());
+
+            Assertions.assertEquals("{\"codeInsee\":\"01006\",\"nom\":\"AMBLEON\",\"codePostal\":\"01300\","
+                    + "\"latitude\":45.7494989044,\"longitude\":5.59432017366}", body(get(port, "/communes/01006")));
+            Assertions.assertEquals(404, get(port, "/communes/99999").getResponseCode());
+            Assertions.assertTrue(body(get(port, "/communes?codePostal=01300")).matches("\\[\\{\"codeInsee\":\"01006\".*\\{\"codeInsee\":\"01454\".*]"));
+            Assertions.assertEquals(400, get(port, "/communes?from=01&to=02").getResponseCode());
+            Assertions.assertEquals("{\"communes\":6,\"codesPostaux\":5,\"noms\":5,\"sansCoordonnees\":1,\"communesDeLaPlage\":2}",
+                    body(get(port, "/communes/count?from=01000&to=01999")));
+
+            // Nouvel import : nouvel index, l'ancien reste valable pour qui le lit encore
+            insert("01001", "ABERGEMENT", "01400", 46.15, 4.92);
+            holder.afterJob(jobExecution);
+            Assertions.assertEquals(7, holder.get().size());
+            Assertions.assertEquals(6, index.size());
+        } finally {
+            endpoint.stop();
+        }
+    }
+
+    private static List<String> codes(List<Commune> communes) {
+        return communes.stream().map(Commune::getCodeInsee).collect(Collectors.toList());
+    }
+
+    private static HttpURLConnection get(int port, String path) throws Exception {
+        return (HttpURLConnection) new URL("http://127.0.0.1:" + port + path).openConnection();
+    }
+
+    private static String body(HttpURLConnection connection) throws Exception {
+        Assertions.assertEquals(200, connection.getResponseCode());
+        try (InputStream in = connection.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
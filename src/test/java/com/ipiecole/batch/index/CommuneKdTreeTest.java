@@ -0,0 +1,58 @@
+package com.ipiecole.batch.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+public class CommuneKdTreeTest {
+
+    @Test
+    public void testPlusProchesVoisinsCommeUneRechercheExhaustive() {
+        Random random = new Random(42);
+        CommuneIndex.Builder builder = new CommuneIndex.Builder();
+        for (int i = 0; i < 2000; i++) {
+            // Métropole et quelques points de part et d'autre de l'antiméridien
+            boolean pacific = i % 10 == 0;
+            builder.add(String.format("%05d", i), "COMMUNE " + i, "01000",
+                    pacific ? -20 + random.nextDouble() * 10 : 42 + random.nextDouble() * 9,
+                    pacific ? (random.nextBoolean() ? 175 + random.nextDouble() * 5 : -180 + random.nextDouble() * 5)
+                            : -5 + random.nextDouble() * 13);
+        }
+        builder.add("99999", "SANS COORDONNEES", "01000", Double.NaN, Double.NaN);
+        CommuneIndex index = builder.build();
+        CommuneKdTree tree = CommuneKdTree.build(index);
+        Assertions.assertEquals(2000, tree.size());
+
+        for (int i = 0; i < 500; i++) {
+            double latitude = i % 10 == 0 ? -20 + random.nextDouble() * 10 : 40 + random.nextDouble() * 13;
+            double longitude = i % 10 == 0 ? (i % 20 == 0 ? 179.9 : -179.9) : -6 + random.nextDouble() * 15;
+            int[] expected = IntStream.range(0, index.size())
+                    .filter(row -> !Double.isNaN(index.latitude(row)))
+                    .boxed()
+                    .sorted(Comparator.comparingDouble(row -> CommuneKdTree.distanceKm(latitude, longitude,
+                            index.latitude(row), index.longitude(row))))
+                    .limit(5).mapToInt(Integer::intValue).toArray();
+            Assertions.assertArrayEquals(expected, tree.nearest(latitude, longitude, 5));
+            Assertions.assertEquals(expected[0], tree.nearest(latitude, longitude));
+        }
+    }
+
+    @Test
+    public void testDistances() {
+        // Paris - Lyon : environ 392 km
+        Assertions.assertEquals(392, CommuneKdTree.distanceKm(48.8566, 2.3522, 45.764, 4.8357), 1);
+        // De part et d'autre de l'antiméridien
+        Assertions.assertEquals(22.2, CommuneKdTree.distanceKm(0, 179.9, 0, -179.9), 0.1);
+
+        CommuneIndex index = new CommuneIndex.Builder()
+                .add("2B033", "BASTIA", "20200", Double.NaN, Double.NaN)
+                .build();
+        CommuneKdTree tree = CommuneKdTree.build(index);
+        Assertions.assertEquals(0, tree.size());
+        Assertions.assertEquals(-1, tree.nearest(45, 5));
+        Assertions.assertArrayEquals(new int[0], tree.nearest(45, 5, 3));
+    }
+}
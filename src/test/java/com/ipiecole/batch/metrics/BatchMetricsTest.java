@@ -0,0 +1,166 @@
+package com.ipiecole.batch.metrics;
+
+import com.ipiecole.batch.exception.CommuneCSVException;
+import com.ipiecole.batch.schema.SchemaMigrator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.support.ListItemReader;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class BatchMetricsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testFormatPrometheus() {
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        Counter.builder("batch.skip").tags("step", "importFile", "exception", "CommuneCSVException").register(registry)
+                .increment(3);
+        Timer timer = Timer.builder("geocoding.nominatim.requests").tag("outcome", "found")
+                .serviceLevelObjectives(Duration.ofMillis(100), Duration.ofSeconds(1))
+                .register(registry);
+        timer.record(Duration.ofMillis(50));
+        timer.record(Duration.ofMillis(500));
+        timer.record(Duration.ofSeconds(2));
+        registry.gauge("batch.step.throughput", 12.5);
+
+        String text = registry.scrape();
+        Assertions.assertTrue(text.contains("# TYPE batch_skip_total counter\n"
+                + "batch_skip_total{exception=\"CommuneCSVException\",step=\"importFile\",} 3.0\n"), text);
+        Assertions.assertTrue(text.contains("# TYPE batch_step_throughput gauge\nbatch_step_throughput 12.5\n"), text);
+        Assertions.assertTrue(text.contains("# TYPE geocoding_nominatim_requests_seconds histogram\n"
+                + "geocoding_nominatim_requests_seconds_bucket{outcome=\"found\",le=\"0.1\",} 1.0\n"
+                + "geocoding_nominatim_requests_seconds_bucket{outcome=\"found\",le=\"1.0\",} 2.0\n"
+                + "geocoding_nominatim_requests_seconds_bucket{outcome=\"found\",le=\"+Inf\",} 3.0\n"
+                + "geocoding_nominatim_requests_seconds_count{outcome=\"found\",} 3.0\n"
+                + "geocoding_nominatim_requests_seconds_sum{outcome=\"found\",} 2.55\n"), text);
+        Assertions.assertTrue(text.contains("geocoding_nominatim_requests_seconds_max{outcome=\"found\",} 2.0\n"), text);
+        Assertions.assertFalse(text.contains("geocoding_nominatim_requests_histogram"), text);
+    }
+
+    @Test
+    public void testMesuresDUnJob() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:metrics" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        new SchemaMigrator(dataSource).migrate();
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        JobRepositoryFactoryBean factory = new JobRepositoryFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setTransactionManager(transactionManager);
+        factory.afterPropertiesSet();
+        JobRepository jobRepository = factory.getObject();
+        SimpleJobLauncher jobLauncher = new SimpleJobLauncher();
+        jobLauncher.setJobRepository(jobRepository);
+        jobLauncher.afterPropertiesSet();
+
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        Path file = tempDir.resolve("metrics/batch.prom");
+        BatchMetricsListener listener = new BatchMetricsListener(registry, registry, file.toString());
+        // 95 éléments (10 chunks), les multiples de 10 sont rejetés, la première écriture échoue une fois
+        List<Integer> items = IntStream.range(0, 95).boxed().collect(Collectors.toList());
+        AtomicInteger writes = new AtomicInteger();
+        List<Integer> written = new ArrayList<>();
+        Job job = new JobBuilder("metricsJob").repository(jobRepository)
+                .listener(listener)
+                .start(new StepBuilder("importFile").repository(jobRepository).transactionManager(transactionManager)
+                        .<Integer, Integer> chunk(10)
+                        .reader(new ListItemReader<>(items))
+                        .processor((ItemProcessor<Integer, Integer>) item -> {
+                            if (item % 10 == 0) {
+                                throw new CommuneCSVException("Rejet " + item);
+                            }
+                            return item;
+                        })
+                        .writer(chunk -> {
+                            if (writes.getAndIncrement() == 0) {
+                                throw new IOException("Indisponible");
+                            }
+                            written.addAll(chunk);
+                        })
+                        .faultTolerant()
+                        .skip(CommuneCSVException.class)
+                        .skipLimit(100)
+                        .retry(IOException.class)
+                        .retryLimit(2)
+                        .listener(listener.retryListener("importFile"))
+                        .listener(listener)
+                        .build())
+                .build();
+        JobExecution jobExecution = jobLauncher.run(job, new JobParameters());
+        Assertions.assertEquals(BatchStatus.COMPLETED, jobExecution.getStatus());
+        Assertions.assertEquals(85, written.size());
+
+        // Chaque chunk contenant un élément rejeté est annulé puis rejoué sans lui (10), de même que celui dont l'écriture a échoué (1)
+        Assertions.assertEquals(10, registry.get("batch.chunk").tags("job", "metricsJob", "step", "importFile", "status", "COMPLETED")
+                .timer().count());
+        Assertions.assertEquals(11, registry.get("batch.chunk").tags("status", "FAILED").timer().count());
+        Assertions.assertEquals(10, registry.get("batch.skip").tags("phase", "process", "exception", "CommuneCSVException")
+                .counter().count());
+        Assertions.assertEquals(1, registry.get("batch.retry").tags("step", "importFile", "exception", "IOException")
+                .counter().count());
+        Assertions.assertTrue(registry.get("batch.step.throughput").tags("step", "importFile", "type", "read").gauge().value() > 0);
+
+        // Relevé écrit à la fin du job
+        String text = Files.readString(file);
+        Assertions.assertTrue(text.contains("batch_chunk_seconds_count{job=\"metricsJob\",status=\"COMPLETED\",step=\"importFile\",} 10.0\n"),
+                text);
+        Assertions.assertTrue(text.contains("batch_skip_total{exception=\"CommuneCSVException\",job=\"metricsJob\",phase=\"process\","
+                + "step=\"importFile\",} 10.0\n"), text);
+        Assertions.assertFalse(Files.exists(tempDir.resolve("metrics/batch.prom.tmp")));
+    }
+
+    @Test
+    public void testPageMetrics() throws Exception {
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        registry.counter("batch.retry", "step", "getMissingCoordinates", "exception", "NetworkException").increment();
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        PrometheusHttpEndpoint endpoint = new PrometheusHttpEndpoint(registry, port);
+        endpoint.start();
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/metrics").openConnection();
+            Assertions.assertEquals(200, connection.getResponseCode());
+            Assertions.assertEquals(TextFormat.CONTENT_TYPE_004, connection.getContentType());
+            try (InputStream in = connection.getInputStream()) {
+                Assertions.assertEquals(registry.scrape(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        } finally {
+            endpoint.stop();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.ipiecole.batch.nearest;
+
+import com.ipiecole.batch.dto.PositionCSV;
+import com.ipiecole.batch.exception.PositionCSVException;
+import com.ipiecole.batch.index.CommuneIndexHolder;
+import com.ipiecole.batch.schema.SchemaMigrator;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class NearestCommuneItemProcessorTest {
+
+    private static final String INSERT_SQL = "INSERT INTO commune (code_insee, nom, code_postal, latitude, longitude, "
+            + "geocoding_pending) VALUES (?, ?, ?, ?, ?, ?)";
+
+    @Test
+    public void testCommuneLaPlusProche() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:nearestCommune" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        new SchemaMigrator(dataSource).migrate();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update(INSERT_SQL, "01454", "VIRIGNIN", "01300", 45.7267387762, 5.71282330936, false);
+        jdbcTemplate.update(INSERT_SQL, "01006", "AMBLEON", "01300", 45.7494989044, 5.59432017366, false);
+        jdbcTemplate.update(INSERT_SQL, "2A004", "AJACCIO", "20000", 41.9347926638, 8.70132275974, false);
+        jdbcTemplate.update(INSERT_SQL, "2B033", "BASTIA", "20200", null, null, true);
+
+        // Aucun import terminé : index construit à partir de la table au début de la step
+        NearestCommuneItemProcessor processor = new NearestCommuneItemProcessor(new CommuneIndexHolder(dataSource, true));
+        processor.beforeStep(null);
+
+        NearestCommune nearest = processor.process(position("A", "45.73", "5.70"));
+        Assertions.assertEquals("A", nearest.getIdentifiant());
+        Assertions.assertEquals("01454", nearest.getCodeInsee());
+        Assertions.assertEquals("VIRIGNIN", nearest.getNom());
+        Assertions.assertEquals("01300", nearest.getCodePostal());
+        Assertions.assertEquals(1.1, nearest.getDistanceKm(), 0.1);
+        // Bastia n'a pas de coordonnées : Ajaccio
+        Assertions.assertEquals("2A004", processor.process(position("B", "42.70", "9.45")).getCodeInsee());
+
+        Assertions.assertThrows(PositionCSVException.class, () -> processor.process(position("C", "45,73", "5.70")));
+        Assertions.assertThrows(PositionCSVException.class, () -> processor.process(position("D", "95", "5.70")));
+        Assertions.assertThrows(PositionCSVException.class, () -> processor.process(position("E", "45", "NaN")));
+        Assertions.assertThrows(PositionCSVException.class, () -> processor.process(position("F", "45", null)));
+    }
+
+    private static PositionCSV position(String identifiant, String latitude, String longitude) {
+        PositionCSV position = new PositionCSV();
+        position.setIdentifiant(identifiant);
+        position.setLatitude(latitude);
+        position.setLongitude(longitude);
+        return position;
+    }
+}
@@ -0,0 +1,82 @@
+package com.ipiecole.batch.schema;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+public class SchemaMigratorTest {
+
+    private JdbcDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setup() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:schemaMigrator" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    private List<String> indexes(String table) {
+        return jdbcTemplate.queryForList("SELECT DISTINCT index_name FROM information_schema.indexes WHERE table_name = ?",
+                String.class, table);
+    }
+
+    @Test
+    public void testScriptsAppliquesUneSeuleFois() {
+        SchemaMigrator migrator = new SchemaMigrator(dataSource);
+        Assertions.assertEquals(6, migrator.migrate());
+        Assertions.assertEquals(0, migrator.migrate());
+        Assertions.assertEquals(0, new SchemaMigrator(dataSource).migrate());
+        Assertions.assertEquals(List.of(1, 2, 3, 4, 5, 6), jdbcTemplate.queryForList("SELECT version FROM schema_version ORDER BY version",
+                Integer.class));
+
+        Assertions.assertTrue(indexes("COMMUNE").containsAll(List.of("IDX_COMMUNE_CODE_POSTAL_CODE_INSEE",
+                "IDX_COMMUNE_GEOCODING_PENDING")));
+        Assertions.assertTrue(indexes("BATCH_JOB_INSTANCE").contains("JOB_INST_NAME_IDX"));
+        Assertions.assertTrue(indexes("BATCH_JOB_EXECUTION").contains("JOB_EXEC_INST_IDX"));
+        Assertions.assertTrue(indexes("BATCH_STEP_EXECUTION").contains("STEP_EXEC_NAME_IDX"));
+        Assertions.assertEquals(64, jdbcTemplate.queryForObject("SELECT character_maximum_length FROM information_schema.columns "
+                + "WHERE table_name = 'COMMUNE' AND column_name = 'NOM'", Integer.class));
+    }
+
+    @Test
+    public void testBaseCreeeAvantLesVersions() {
+        // Table COMMUNE créée par Hibernate (entité d'origine, sans colonnes de géocodage) et tables BATCH_* par
+        // spring.batch.initialize-schema (sans index)
+        jdbcTemplate.execute("CREATE TABLE commune (code_insee VARCHAR(5) NOT NULL PRIMARY KEY, nom VARCHAR(255), code_postal VARCHAR(5), "
+                + "latitude DOUBLE, longitude DOUBLE)");
+        jdbcTemplate.update("INSERT INTO commune VALUES ('01006', 'AMBLEON', '01300', 45.7, 5.6)");
+        jdbcTemplate.update("INSERT INTO commune VALUES ('01454', 'VIRIGNIN', '01300', NULL, NULL)");
+        jdbcTemplate.execute("CREATE TABLE BATCH_JOB_INSTANCE (JOB_INSTANCE_ID BIGINT IDENTITY NOT NULL PRIMARY KEY, "
+                + "VERSION BIGINT, JOB_NAME VARCHAR(100) NOT NULL, JOB_KEY VARCHAR(32) NOT NULL)");
+        jdbcTemplate.update("INSERT INTO BATCH_JOB_INSTANCE (JOB_INSTANCE_ID, VERSION, JOB_NAME, JOB_KEY) VALUES (1, 0, 'importCsvJob', 'cle')");
+        // Table GEOCODING_CACHE créée auparavant par GeocodingCache
+        jdbcTemplate.execute("CREATE TABLE geocoding_cache (query_key VARCHAR(255) PRIMARY KEY, latitude DOUBLE, longitude DOUBLE, "
+                + "found BOOLEAN NOT NULL, created_at BIGINT NOT NULL)");
+        jdbcTemplate.update("INSERT INTO geocoding_cache VALUES ('ambleon 01300', 45.7, 5.6, TRUE, 0)");
+
+        Assertions.assertEquals(6, new SchemaMigrator(dataSource).migrate());
+        Assertions.assertTrue(indexes("COMMUNE").contains("IDX_COMMUNE_GEOCODING_PENDING"));
+        Assertions.assertEquals(64, jdbcTemplate.queryForObject("SELECT character_maximum_length FROM information_schema.columns "
+                + "WHERE table_name = 'COMMUNE' AND column_name = 'NOM'", Integer.class));
+        // Communes conservées, celles sans coordonnées placées dans la file du géocodage
+        Assertions.assertEquals(List.of("01454"), jdbcTemplate.queryForList(
+                "SELECT code_insee FROM commune WHERE geocoding_pending = TRUE", String.class));
+        Assertions.assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM commune", Integer.class));
+        // Historique des jobs et cache du géocodage conservés
+        Assertions.assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM BATCH_JOB_INSTANCE", Integer.class));
+        Assertions.assertTrue(indexes("BATCH_JOB_INSTANCE").contains("JOB_INST_NAME_IDX"));
+        Assertions.assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM geocoding_cache", Integer.class));
+    }
+
+    @Test
+    public void testScriptModifie() {
+        new SchemaMigrator(dataSource).migrate();
+        jdbcTemplate.update("UPDATE schema_version SET checksum = checksum + 1 WHERE version = 1");
+        Assertions.assertThrows(IllegalStateException.class, () -> new SchemaMigrator(dataSource).migrate());
+    }
+}
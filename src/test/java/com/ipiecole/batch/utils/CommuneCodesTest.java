@@ -0,0 +1,32 @@
+package com.ipiecole.batch.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CommuneCodesTest {
+
+    @Test
+    public void testCodes() {
+        Assertions.assertEquals(0, CommuneCodes.codeInsee("00000"));
+        Assertions.assertEquals(2 * 36 * 36 * 36 * 36 + 10 * 36 * 36 * 36 + 4, CommuneCodes.codeInsee("2A004"));
+        Assertions.assertEquals("2A004", CommuneCodes.codeInsee(CommuneCodes.codeInsee("2A004")));
+        Assertions.assertEquals("ZZZZZ", CommuneCodes.codeInsee(CommuneCodes.codeInsee("ZZZZZ")));
+        Assertions.assertEquals(-1, CommuneCodes.codeInsee("2a004"));
+        Assertions.assertEquals(-1, CommuneCodes.codeInsee("2A00"));
+        Assertions.assertEquals(-1, CommuneCodes.codeInsee(null));
+
+        Assertions.assertEquals(1000, CommuneCodes.codePostal("01000"));
+        Assertions.assertEquals("01000", CommuneCodes.codePostal(1000));
+        Assertions.assertEquals(-1, CommuneCodes.codePostal("2A000"));
+        Assertions.assertEquals(-1, CommuneCodes.codePostal("100"));
+    }
+
+    @Test
+    public void testDepartement() {
+        Assertions.assertEquals("38", CommuneCodes.department("38185"));
+        Assertions.assertEquals("2A", CommuneCodes.department("2A004"));
+        Assertions.assertEquals("971", CommuneCodes.department("97101"));
+        Assertions.assertEquals("98", CommuneCodes.department("98"));
+        Assertions.assertNull(CommuneCodes.department(null));
+    }
+}
@@ -0,0 +1,51 @@
+package com.ipiecole.batch.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class LongHashSetTest {
+
+    @Test
+    public void testAjoutEtSuppression() {
+        LongHashSet set = new LongHashSet(4);
+        Assertions.assertTrue(set.add(0));
+        Assertions.assertFalse(set.add(0));
+        Assertions.assertTrue(set.add(Long.MAX_VALUE - 1));
+        Assertions.assertTrue(set.contains(0));
+        Assertions.assertFalse(set.contains(1));
+        Assertions.assertTrue(set.remove(0));
+        Assertions.assertFalse(set.remove(0));
+        Assertions.assertFalse(set.contains(0));
+        Assertions.assertEquals(1, set.size());
+        set.clear();
+        Assertions.assertEquals(0, set.size());
+        Assertions.assertFalse(set.contains(Long.MAX_VALUE - 1));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> set.add(-1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> set.add(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testMemeContenuQuUnHashSet() {
+        // Petites valeurs (séries longues, suppressions au milieu des séries) et agrandissements successifs
+        LongHashSet set = new LongHashSet(16);
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            long value = random.nextInt(20_000);
+            if (random.nextInt(3) == 0) {
+                Assertions.assertEquals(expected.remove(value), set.remove(value));
+            } else {
+                Assertions.assertEquals(expected.add(value), set.add(value));
+            }
+        }
+        Assertions.assertEquals(expected.size(), set.size());
+        for (long value = 0; value < 20_000; value++) {
+            Assertions.assertEquals(expected.contains(value), set.contains(value), "valeur " + value);
+        }
+    }
+}
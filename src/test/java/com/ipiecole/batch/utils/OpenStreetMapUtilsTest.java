@@ -0,0 +1,74 @@
+package com.ipiecole.batch.utils;
+
+import com.ipiecole.batch.exception.NetworkException;
+import com.ipiecole.batch.geocoding.NominatimStubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+public class OpenStreetMapUtilsTest {
+
+    private NominatimStubServer server;
+    private OpenStreetMapUtils openStreetMapUtils;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        server = new NominatimStubServer(0, 0);
+        openStreetMapUtils = new OpenStreetMapUtils(server.getSearchUrl(), Duration.ofSeconds(1), Duration.ofMillis(500));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testRequeteEncodee() throws Exception {
+        String address = "L'Haÿ-les-Roses & Co 94240";
+        Map<String, Double> coordinates = openStreetMapUtils.getCoordinates(address);
+        Assertions.assertEquals(NominatimStubServer.latitude(address), coordinates.get("lat"));
+        Assertions.assertEquals(NominatimStubServer.longitude(address), coordinates.get("lon"));
+        Assertions.assertEquals("q=L%27Ha%C3%BF-les-Roses+%26+Co+94240&format=json&limit=1", server.getLastRawQuery());
+        Assertions.assertTrue(server.isLastResponseCompressed());
+    }
+
+    @Test
+    public void testPremierResultat() throws Exception {
+        // Seul le premier résultat compte (les coordonnées de l'adresse détaillée sont ignorées)
+        String address = "HOMONYME 01000";
+        Map<String, Double> coordinates = openStreetMapUtils.getCoordinates(address);
+        Assertions.assertEquals(NominatimStubServer.latitude(address), coordinates.get("lat"));
+        Assertions.assertEquals(NominatimStubServer.longitude(address), coordinates.get("lon"));
+    }
+
+    @Test
+    public void testReponses() throws Exception {
+        Assertions.assertTrue(openStreetMapUtils.getCoordinates("INCONNUE 01000").isEmpty());
+        Assertions.assertNull(openStreetMapUtils.getCoordinates("ERREUR 01000"));
+        Assertions.assertNull(openStreetMapUtils.getCoordinates(" "));
+    }
+
+    // Coordonnées illisibles : même exception que les erreurs réseau (réessais, commune ignorée)
+    @Test
+    public void testCoordonneesInvalides() {
+        Assertions.assertThrows(NetworkException.class, () -> openStreetMapUtils.getCoordinates("INVALIDE 01000"));
+    }
+
+    @Test
+    public void testDelaiDepasse() {
+        server.setLatencyMillis(2000);
+        Assertions.assertThrows(NetworkException.class, () -> openStreetMapUtils.getCoordinates("COMMUNE 01000"));
+    }
+
+    @Test
+    public void testConnexionReutilisee() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            Assertions.assertEquals(2, openStreetMapUtils.getCoordinates("COMMUNE " + i).size());
+        }
+        Assertions.assertEquals(1, server.getConnections());
+    }
+}